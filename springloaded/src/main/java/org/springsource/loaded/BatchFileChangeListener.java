@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A FileChangeListener that can process all the changes observed during one quiet period together, rather than being
+ * told about them one file at a time.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public interface BatchFileChangeListener extends FileChangeListener {
+
+	void filesChanged(List<File> files);
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed form of some class bytes that are rarely needed once the class has been defined, kept this way when
+ * {@link GlobalConfiguration#compactBytes} is set. Class files typically compress to less than half their size.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+final class CompactBytes {
+
+	private final byte[] compressed;
+
+	private final int length;
+
+	private CompactBytes(byte[] compressed, int length) {
+		this.compressed = compressed;
+		this.length = length;
+	}
+
+	/**
+	 * @param bytes the bytes to compress
+	 * @return the compressed bytes, or null if bytes is null
+	 */
+	static CompactBytes of(byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			byte[] buffer = new byte[bytes.length + 64];
+			int compressedLength = 0;
+			while (!deflater.finished()) {
+				if (compressedLength == buffer.length) {
+					byte[] newBuffer = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, compressedLength);
+					buffer = newBuffer;
+				}
+				compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+			}
+			byte[] compressed = new byte[compressedLength];
+			System.arraycopy(buffer, 0, compressed, 0, compressedLength);
+			return new CompactBytes(compressed, bytes.length);
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @return a new copy of the original bytes
+	 */
+	byte[] expand() {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] bytes = new byte[length];
+			int expandedLength = 0;
+			while (expandedLength < length) {
+				int n = inflater.inflate(bytes, expandedLength, length - expandedLength);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				expandedLength += n;
+			}
+			if (expandedLength != length) {
+				throw new IllegalStateException("Expected " + length + " bytes but only expanded " + expandedLength);
+			}
+			return bytes;
+		}
+		catch (DataFormatException dfe) {
+			throw new IllegalStateException("Unable to expand compacted bytes", dfe);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return the size of the original bytes
+	 */
+	int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the size of the bytes actually held
+	 */
+	int getCompressedLength() {
+		return compressed.length;
+	}
+}
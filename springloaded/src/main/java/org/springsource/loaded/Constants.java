@@ -116,8 +116,6 @@ public interface Constants extends Opcodes {
 
 	static String mPerformInvokeDynamicName = "idyrun";
 
-	static String descriptorChangedForInvokeSpecialName = "(ILjava/lang/String;)Lorg/springsource/loaded/__DynamicallyDispatchable;";
-
 	static String mChangedForConstructorName = "ccheck";
 
 	static int WAS_INVOKESTATIC = 0x0001;
@@ -18,11 +18,14 @@ package org.springsource.loaded;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.MethodNode;
+import org.springsource.loaded.TypeDiffComputer.MethodSummary;
 
 /**
  * Captures the information about the reloaded parts of a type that vary each time a new version is loaded.
@@ -47,17 +50,24 @@ public class CurrentLiveVersion {
 
 	String dispatcherName;
 
+	// null once compacted, see getDispatcherBytes()
 	byte[] dispatcher;
 
-	Class<?> dispatcherClass;
+	private CompactBytes compactDispatcher;
 
-	Object dispatcherInstance;
+	// The defined classes are volatile as they are cleared when the ChildClassLoader is discarded, see discardClasses()
+	volatile Class<?> dispatcherClass;
+
+	volatile Object dispatcherInstance;
 
 	String executorName;
 
+	// null once compacted, see getExecutorBytes()
 	byte[] executor;
 
-	Class<?> executorClass;
+	private CompactBytes compactExecutor;
+
+	volatile Class<?> executorClass;
 
 	TypeDelta typeDelta;
 
@@ -67,7 +77,37 @@ public class CurrentLiveVersion {
 
 	public boolean staticInitializedNeedsRerunningOnDefine = false;
 
+	/**
+	 * What ReloadableType.changed() answers for each method of the original type, indexed by method id. One of
+	 * {@link #METHOD_UNCHANGED}, {@link #METHOD_CHANGED} or {@link #METHOD_DELETED}.
+	 */
+	final byte[] methodStates;
+
+	static final byte METHOD_UNCHANGED = 0;
+
+	static final byte METHOD_CHANGED = 1;
+
+	static final byte METHOD_DELETED = 2;
+
+	// Set when the ChildClassLoader holding the classes for this version has been discarded, they are defined again in
+	// the new one on next use (see ensureDefined())
+	volatile boolean needsRedefining;
+
 	public CurrentLiveVersion(ReloadableType reloadableType, String versionstamp, byte[] newbytedata) {
+		this(reloadableType, versionstamp, newbytedata, true);
+	}
+
+	/**
+	 * Generate the dispatcher and executor for a new version. If <tt>defineNow</tt> is false nothing is defined and
+	 * {@link #define()} must be called before the version is used; that allows several versions to be generated in
+	 * parallel and then defined together (see {@link TypeRegistry#loadNewVersions(ReloadableType[], String[], byte[][])}).
+	 *
+	 * @param reloadableType the type this is a new version of
+	 * @param versionstamp the suffix for the generated class names
+	 * @param newbytedata the bytes for the new version
+	 * @param defineNow whether to define the dispatcher and executor immediately
+	 */
+	CurrentLiveVersion(ReloadableType reloadableType, String versionstamp, byte[] newbytedata, boolean defineNow) {
 		if (GlobalConfiguration.logging && log.isLoggable(Level.FINER)) {
 			log.entering("CurrentLiveVersion", "<init>", " new version of " + reloadableType.getName()
 					+ " loaded, version stamp '"
@@ -85,13 +125,14 @@ public class CurrentLiveVersion {
 			}
 		}
 
+		this.incrementalTypeDescriptor = new IncrementalTypeDescriptor(reloadableType.typedescriptor);
+		this.incrementalTypeDescriptor.setLatestTypeDescriptor(this.typeDescriptor);
+		this.methodStates = computeMethodStates(newbytedata);
+
 		newbytedata = GlobalConfiguration.callsideRewritingOn ? MethodInvokerRewriter.rewrite(
 				reloadableType.typeRegistry,
 				newbytedata) : newbytedata;
 
-		this.incrementalTypeDescriptor = new IncrementalTypeDescriptor(reloadableType.typedescriptor);
-		this.incrementalTypeDescriptor.setLatestTypeDescriptor(this.typeDescriptor);
-
 		// Executors for interfaces simply hold annotations
 		this.executor = reloadableType.getTypeRegistry().executorBuilder.createFor(reloadableType, versionstamp,
 				typeDescriptor,
@@ -107,8 +148,52 @@ public class CurrentLiveVersion {
 			this.executorName = Utils.getExecutorName(reloadableType.getName(), versionstamp);
 			this.dispatcher = DispatcherBuilder.createFor(reloadableType, incrementalTypeDescriptor, versionstamp);
 		}
-		reloadableType.typeRegistry.checkChildClassLoader(reloadableType);
-		define();
+		if (defineNow) {
+			reloadableType.typeRegistry.checkChildClassLoader(reloadableType);
+			define();
+		}
+	}
+
+	/**
+	 * Work out up front whether each method of the original type must now run in the executor, so the check made on
+	 * entry to every method is a single array access. A method that is declared as before and whose code is the same
+	 * as in the original type keeps running the original code. The code is only considered the same when the exact
+	 * encodings of the instructions and exception tables match (see TypeDiffComputer.MethodSummary.sameCode()), a
+	 * change that is missed here would be lost.
+	 */
+	private byte[] computeMethodStates(byte[] newbytedata) {
+		MethodMember[] methods = reloadableType.typedescriptor.getMethods();
+		byte[] states = new byte[methods.length];
+		List<MethodMember> newOrChangedMethods = incrementalTypeDescriptor.getNewOrChangedMethods();
+		Map<String, MethodSummary> initialSummaries = null;
+		Map<String, MethodSummary> latestSummaries = null;
+		for (int methodId = 0; methodId < methods.length; methodId++) {
+			if (incrementalTypeDescriptor.hasBeenDeleted(methodId)) {
+				states[methodId] = METHOD_DELETED;
+			}
+			else if (incrementalTypeDescriptor.mustUseExecutorForThisMethod(methodId)) {
+				states[methodId] = METHOD_CHANGED;
+				MethodMember method = methods[methodId];
+				if (MethodMember.isCatcher(method) || MethodMember.isSuperDispatcher(method)) {
+					continue;
+				}
+				String nameAndDescriptor = method.getNameAndDescriptor();
+				MethodMember latest = incrementalTypeDescriptor.getFromLatestByDescriptor(nameAndDescriptor);
+				if (latest == null || newOrChangedMethods.contains(latest)) {
+					continue;
+				}
+				if (latestSummaries == null) {
+					initialSummaries = reloadableType.getInitialMethodSummaries();
+					latestSummaries = TypeDiffComputer.summarizeMethods(newbytedata);
+				}
+				MethodSummary initialSummary = initialSummaries.get(nameAndDescriptor);
+				MethodSummary latestSummary = latestSummaries.get(nameAndDescriptor);
+				if (initialSummary != null && latestSummary != null && initialSummary.sameCode(latestSummary)) {
+					states[methodId] = METHOD_UNCHANGED;
+				}
+			}
+		}
+		return states;
 	}
 
 	/**
@@ -121,7 +206,8 @@ public class CurrentLiveVersion {
 		// DEFAULT METHODS - remove the if
 		if (!typeDescriptor.isInterface()) {
 			try {
-				dispatcherClass = reloadableType.typeRegistry.defineClass(dispatcherName, dispatcher, false);
+				dispatcherClass = reloadableType.typeRegistry.defineClass(dispatcherName, getDispatcherBytes(),
+						false);
 			}
 			catch (RuntimeException t) {
 				// TODO check for something strange.  something to do with the file detection misbehaving, see the same file attempted to be reloaded twice...
@@ -134,7 +220,7 @@ public class CurrentLiveVersion {
 			}
 		}
 		try {
-			executorClass = reloadableType.typeRegistry.defineClass(executorName, executor, false);
+			executorClass = reloadableType.typeRegistry.defineClass(executorName, getExecutorBytes(), false);
 		}
 		catch (RuntimeException t) {
 			// TODO check for something strange.  something to do with the file detection misbehaving, see the same file attempted to be reloaded twice...
@@ -157,6 +243,28 @@ public class CurrentLiveVersion {
 				throw new RuntimeException("Unable to build dispatcher class instance", e);
 			}
 		}
+		if (GlobalConfiguration.compactBytes && executor != null) {
+			// Only needed again if the classes have to be defined again in a new child loader
+			compactDispatcher = CompactBytes.of(dispatcher);
+			compactExecutor = CompactBytes.of(executor);
+			dispatcher = null;
+			executor = null;
+		}
+	}
+
+	byte[] getDispatcherBytes() {
+		byte[] bytes = dispatcher;
+		return (bytes != null || compactDispatcher == null ? bytes : compactDispatcher.expand());
+	}
+
+	byte[] getExecutorBytes() {
+		byte[] bytes = executor;
+		return (bytes != null || compactExecutor == null ? bytes : compactExecutor.expand());
+	}
+
+	void addFootprint(long[] held, long[] full) {
+		ReloadableType.addFootprint(held, full, 3, dispatcher, compactDispatcher);
+		ReloadableType.addFootprint(held, full, 4, executor, compactExecutor);
 	}
 
 	public MethodMember getReloadableMethod(String name, String descriptor) {
@@ -187,6 +295,7 @@ public class CurrentLiveVersion {
 		executorDescriptor = getExecutorDescriptor(methodMember);
 
 		//Search for it:
+		Class<?> executorClass = getExecutorClass();
 		if (executorClass != null) {
 			Method[] executorMethods = executorClass.getDeclaredMethods();
 			for (Method executor : executorMethods) {
@@ -219,7 +328,24 @@ public class CurrentLiveVersion {
 	}
 
 	public Class<?> getExecutorClass() {
-		return executorClass;
+		ensureDefined();
+		Class<?> clazz = executorClass;
+		if (clazz == null) {
+			// the classes may have been discarded since the check
+			ensureDefined();
+			clazz = executorClass;
+		}
+		return clazz;
+	}
+
+	Class<?> getDispatcherClass() {
+		ensureDefined();
+		Class<?> clazz = dispatcherClass;
+		if (clazz == null) {
+			ensureDefined();
+			clazz = dispatcherClass;
+		}
+		return clazz;
 	}
 
 	public String getVersionStamp() {
@@ -227,7 +353,7 @@ public class CurrentLiveVersion {
 	}
 
 	public Field getExecutorField(String name) throws SecurityException, NoSuchFieldException {
-		return executorClass.getDeclaredField(name);
+		return getExecutorClass().getDeclaredField(name);
 	}
 
 	public TypeDelta getTypeDelta() {
@@ -285,6 +411,9 @@ public class CurrentLiveVersion {
 	public void clearClassloaderLinks() {
 		this.executorClass = null;
 		this.dispatcherClass = null;
+		this.dispatcherInstance = null;
+		this.staticInitializer = null;
+		this.haveLookedForStaticInitializer = false;
 	}
 
 	public void reloadMostRecentDispatcherAndExecutor() {
@@ -292,11 +421,49 @@ public class CurrentLiveVersion {
 	}
 
 	public Object getDispatcherInstance() {
-		// TODO Auto-generated method stub
-		return null;
+		ensureDefined();
+		Object instance = dispatcherInstance;
+		if (instance == null) {
+			ensureDefined();
+			instance = dispatcherInstance;
+		}
+		return instance;
+	}
+
+	/**
+	 * Called when the ChildClassLoader these classes were defined in is discarded. Nothing here keeps them (or the
+	 * loader) alive afterwards, they are defined again in the new loader on next use.
+	 */
+	synchronized void discardClasses() {
+		// set before the classes are cleared, so that anyone finding them cleared will define them again
+		needsRedefining = true;
+		clearClassloaderLinks();
+	}
+
+	/**
+	 * Define this version again if the classloader its classes were defined in has been discarded since it was last
+	 * used.
+	 */
+	void ensureDefined() {
+		if (needsRedefining) {
+			redefine();
+		}
+	}
+
+	private synchronized void redefine() {
+		if (needsRedefining) {
+			reloadableType.clearInvokedynamicCallSites();
+			define();
+			// cleared once the classes are defined, but before the static initializer is rerun as that comes back
+			// through here
+			needsRedefining = false;
+			if (staticInitializedNeedsRerunningOnDefine) {
+				runStaticInitializer();
+			}
+		}
 	}
 
-	public void runStaticInitializer() {
+	public synchronized void runStaticInitializer() {
 		if (!haveLookedForStaticInitializer) {
 			try {
 				staticInitializer = this.getExecutorClass().getDeclaredMethod(Constants.mStaticInitializerName);
@@ -17,7 +17,11 @@
 package org.springsource.loaded;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
@@ -51,7 +55,7 @@ public class DispatcherBuilder {
 	 */
 	public static byte[] createFor(ReloadableType rtype, IncrementalTypeDescriptor newVersionTypeDescriptor,
 			String versionstamp) {
-		ClassReader fileReader = new ClassReader(rtype.interfaceBytes);
+		ClassReader fileReader = new ClassReader(rtype.getInterfaceBytes());
 		DispatcherBuilderVisitor dispatcherVisitor = new DispatcherBuilderVisitor(rtype, newVersionTypeDescriptor,
 				versionstamp);
 		fileReader.accept(dispatcherVisitor, 0);
@@ -162,8 +166,8 @@ public class DispatcherBuilder {
 			// Entries required here for all methods that exist in the new version but didn't exist in the original version
 			// There should be no entries for catchers
 
-			int maxStack = 0;
-			// Basically generate a long if..else sequence for each method
+			// Collect the candidates, the first entry for any particular name+descriptor wins
+			Map<String, MethodMember> candidates = new LinkedHashMap<String, MethodMember>();
 			List<MethodMember> methods = new ArrayList<MethodMember>(typeDescriptor.getNewOrChangedMethods());
 
 			// these are added because we may be calling through the dynamic dispatcher if calling from an invokeinterface - the invokeinterface
@@ -181,77 +185,70 @@ public class DispatcherBuilder {
 					continue;
 					// would the implementation for a catcher call the super catcher?
 				}
-				//				System.out.println("Generating handler for " + method.name);
 				String nameWithDescriptor = new StringBuilder(method.name).append(method.descriptor).toString();
-
-				// 2. Load the input name+descriptor and compare it with this method:
-				mv.visitVarInsn(ALOAD, 3);
-				mv.visitLdcInsn(nameWithDescriptor);
-				mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-				Label label = new Label();
-				mv.visitJumpInsn(IFEQ, label); // means if false
-
-				// 3. Generate the code that will call the method on the executor:
-				if (!method.isStatic()) {
-					mv.visitVarInsn(Opcodes.ALOAD, 2);
-					mv.visitTypeInsn(CHECKCAST, classname);
-				}
-				String callDescriptor = method.isStatic() ? method.descriptor : Utils.insertExtraParameter(classname,
-						method.descriptor);
-
-				int pcount = Utils.getParameterCount(method.descriptor);
-				if (pcount > maxStack) {
-					pcount = maxStack;
-				}
-
-				// 4. Unpack parameter array to fit the descriptor for that method
-				Utils.generateInstructionsToUnpackArrayAccordingToDescriptor(mv, method.descriptor, 1);
-
-				ReturnType returnType = Utils.getReturnTypeDescriptor(method.descriptor);
-				mv.visitMethodInsn(Opcodes.INVOKESTATIC, executorClassName, method.name, callDescriptor, false);
-				if (returnType.isVoid()) {
-					mv.visitInsn(ACONST_NULL);
-				}
-				else if (returnType.isPrimitive()) {
-					Utils.insertBoxInsns(mv, returnType.descriptor);
+				if (!candidates.containsKey(nameWithDescriptor)) {
+					candidates.put(nameWithDescriptor, method);
 				}
-				mv.visitInsn(Opcodes.ARETURN);
-				mv.visitLabel(label);
 			}
 			for (MethodMember ctor : typeDescriptor.getLatestTypeDescriptor().getConstructors()) {
 				String nameWithDescriptor = new StringBuilder(ctor.name).append(ctor.descriptor).toString();
-
-				// 2. Load the input name+descriptor and compare it with this method:
-				//    if (nameAndDescriptor.equals(xxx)) {
-				mv.visitVarInsn(ALOAD, indexNameAndDescriptor);
-				mv.visitLdcInsn(nameWithDescriptor);
-				mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-				Label label = new Label();
-				mv.visitJumpInsn(IFEQ, label); // means if false
-
-				// 3. Generate the code that will call the method on the executor:
-				mv.visitVarInsn(Opcodes.ALOAD, 2);
-				mv.visitTypeInsn(CHECKCAST, classname);
-				String callDescriptor = Utils.insertExtraParameter(classname, ctor.descriptor);
-
-				int pcount = Utils.getParameterCount(ctor.descriptor);
-				if (pcount > maxStack) {
-					pcount = maxStack;
+				if (!candidates.containsKey(nameWithDescriptor)) {
+					candidates.put(nameWithDescriptor, ctor);
 				}
+			}
 
-				// 4. Unpack parameter array to fit the descriptor for that method
-				Utils.generateInstructionsToUnpackArrayAccordingToDescriptor(mv, ctor.descriptor, 1);
+			// Rather than a long if..else sequence of equals() calls, switch on the hashCode of the incoming
+			// name+descriptor and only then confirm the candidate(s) with that hashCode using equals()
+			SortedMap<Integer, List<String>> buckets = new TreeMap<Integer, List<String>>();
+			for (String nameWithDescriptor : candidates.keySet()) {
+				Integer hash = nameWithDescriptor.hashCode();
+				List<String> bucket = buckets.get(hash);
+				if (bucket == null) {
+					bucket = new ArrayList<String>();
+					buckets.put(hash, bucket);
+				}
+				bucket.add(nameWithDescriptor);
+			}
+			Label notFound = new Label();
+			int[] keys = new int[buckets.size()];
+			Label[] labels = new Label[buckets.size()];
+			int k = 0;
+			for (Integer hash : buckets.keySet()) {
+				keys[k] = hash;
+				labels[k++] = new Label();
+			}
 
-				//				ReturnType returnType = Utils.getReturnTypeDescriptor(method.descriptor);
-				mv.visitMethodInsn(Opcodes.INVOKESTATIC, executorClassName, "___init___", callDescriptor, false);
-				//				if (returnType.isVoid()) {
-				mv.visitInsn(ACONST_NULL);
-				//				} else if (returnType.isPrimitive()) {
-				//					Utils.insertBoxInsns(mv, returnType.descriptor);
-				//				}
-				mv.visitInsn(Opcodes.ARETURN);
-				mv.visitLabel(label);
+			// 1. switch (nameAndDescriptor.hashCode()) {
+			mv.visitVarInsn(ALOAD, indexNameAndDescriptor);
+			mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "hashCode", "()I", false);
+			mv.visitLookupSwitchInsn(notFound, keys, labels);
+
+			k = 0;
+			for (List<String> bucket : buckets.values()) {
+				mv.visitLabel(labels[k++]);
+				for (String nameWithDescriptor : bucket) {
+					MethodMember method = candidates.get(nameWithDescriptor);
+
+					// 2. Load the input name+descriptor and compare it with this method:
+					//    if (nameAndDescriptor.equals(xxx)) {
+					mv.visitVarInsn(ALOAD, indexNameAndDescriptor);
+					mv.visitLdcInsn(nameWithDescriptor);
+					mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
+					Label label = new Label();
+					mv.visitJumpInsn(IFEQ, label); // means if false
+
+					// 3. Generate the code that will call the method on the executor
+					if (method.name.equals("<init>")) {
+						generateExecutorCallForConstructor(mv, method);
+					}
+					else {
+						generateExecutorCallForMethod(mv, method);
+					}
+					mv.visitLabel(label);
+				}
+				mv.visitJumpInsn(GOTO, notFound);
 			}
+			mv.visitLabel(notFound);
 
 			// 5. Throw exception as dynamic dispatcher has been called for something it shouldn't have
 
@@ -284,10 +281,49 @@ public class DispatcherBuilder {
 			//			mv.visitVarInsn(ALOAD, 3);
 			//			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(Ljava/lang/String;)V");
 			//			mv.visitInsn(ATHROW);
-			mv.visitMaxs(maxStack, 6);
+			mv.visitMaxs(0, 6);
 			mv.visitEnd();
 		}
 
+		private void generateExecutorCallForMethod(MethodVisitor mv, MethodMember method) {
+			final int indexArgs = 1;
+			final int indexTarget = 2;
+			if (!method.isStatic()) {
+				mv.visitVarInsn(Opcodes.ALOAD, indexTarget);
+				mv.visitTypeInsn(CHECKCAST, classname);
+			}
+			String callDescriptor = method.isStatic() ? method.descriptor : Utils.insertExtraParameter(classname,
+					method.descriptor);
+
+			// 4. Unpack parameter array to fit the descriptor for that method
+			Utils.generateInstructionsToUnpackArrayAccordingToDescriptor(mv, method.descriptor, indexArgs);
+
+			ReturnType returnType = Utils.getReturnTypeDescriptor(method.descriptor);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, executorClassName, method.name, callDescriptor, false);
+			if (returnType.isVoid()) {
+				mv.visitInsn(ACONST_NULL);
+			}
+			else if (returnType.isPrimitive()) {
+				Utils.insertBoxInsns(mv, returnType.descriptor);
+			}
+			mv.visitInsn(Opcodes.ARETURN);
+		}
+
+		private void generateExecutorCallForConstructor(MethodVisitor mv, MethodMember ctor) {
+			final int indexArgs = 1;
+			final int indexTarget = 2;
+			mv.visitVarInsn(Opcodes.ALOAD, indexTarget);
+			mv.visitTypeInsn(CHECKCAST, classname);
+			String callDescriptor = Utils.insertExtraParameter(classname, ctor.descriptor);
+
+			// 4. Unpack parameter array to fit the descriptor for that method
+			Utils.generateInstructionsToUnpackArrayAccordingToDescriptor(mv, ctor.descriptor, indexArgs);
+
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, executorClassName, "___init___", callDescriptor, false);
+			mv.visitInsn(ACONST_NULL);
+			mv.visitInsn(Opcodes.ARETURN);
+		}
+
 		/**
 		 * Called to generate the implementation of a normal method on the interface - a normal method is one that did
 		 * exist when the type was first defined. Might be a catcher.
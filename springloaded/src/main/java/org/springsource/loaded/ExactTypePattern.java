@@ -33,6 +33,13 @@ public class ExactTypePattern extends TypePattern {
 		this.pattern = pattern;
 	}
 
+	/**
+	 * @return the name matched
+	 */
+	String getName() {
+		return pattern;
+	}
+
 	protected boolean internalMatches(String input) {
 		boolean b = input.equals(pattern);
 		return b;
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+/**
+ * Where the values of the fields declared by a reloadable type are kept once they are held by a state manager (ISMgr or
+ * SSMgr) rather than in the real fields. Each field is given a slot the first time it is needed and keeps that slot for
+ * the life of the type, primitive fields get a slot in the primitive storage and other fields a slot in the object
+ * storage (see {@link FieldValues}). A field that changes type on a reload is a different field and gets a new slot.
+ * <p>
+ * Working out the slot for a field involves a search, so the result is remembered on the FieldMember.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+class FieldLayout {
+
+	private final String typename;
+
+	// append only, a new array each time so it can be read without holding the lock
+	private Slot[] slots = new Slot[0];
+
+	private int objectSlots = 0;
+
+	private int primitiveSlots = 0;
+
+	static class Slot {
+
+		final FieldLayout layout;
+
+		final String name;
+
+		final String descriptor;
+
+		// the primitive descriptor character, or 0 for a field held as an object
+		final char kind;
+
+		final int index;
+
+		Slot(FieldLayout layout, String name, String descriptor, int index) {
+			this.layout = layout;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.kind = descriptor.length() == 1 ? descriptor.charAt(0) : 0;
+			this.index = index;
+		}
+
+		boolean isPrimitive() {
+			return kind != 0;
+		}
+	}
+
+	FieldLayout(String typename) {
+		this.typename = typename;
+	}
+
+	/**
+	 * @param registry the registry containing the type that declares the field
+	 * @param field a field declared by a reloadable type
+	 * @return the slot for the field
+	 */
+	static Slot slotFor(TypeRegistry registry, FieldMember field) {
+		Slot slot = field.slot;
+		if (slot == null) {
+			ReloadableType declaringType = registry.getReloadableType(field.getDeclaringTypeName());
+			slot = declaringType.getFieldLayout().slotFor(field.getName(), field.getDescriptor());
+			field.slot = slot;
+		}
+		return slot;
+	}
+
+	synchronized Slot slotFor(String name, String descriptor) {
+		for (Slot slot : slots) {
+			if (slot.name.equals(name) && slot.descriptor.equals(descriptor)) {
+				return slot;
+			}
+		}
+		Slot slot = new Slot(this, name, descriptor, descriptor.length() == 1 ? primitiveSlots++ : objectSlots++);
+		Slot[] newSlots = new Slot[slots.length + 1];
+		System.arraycopy(slots, 0, newSlots, 0, slots.length);
+		newSlots[slots.length] = slot;
+		slots = newSlots;
+		return slot;
+	}
+
+	/**
+	 * @return every slot handed out so far, in the order they were handed out
+	 */
+	synchronized Slot[] getSlots() {
+		return slots;
+	}
+
+	String getTypename() {
+		return typename;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder("FieldLayout:").append(typename);
+		for (Slot slot : getSlots()) {
+			s.append(" ").append(slot.name).append(":").append(slot.descriptor).append("=").append(
+					slot.isPrimitive() ? "p" : "o").append(slot.index);
+		}
+		return s.toString();
+	}
+}
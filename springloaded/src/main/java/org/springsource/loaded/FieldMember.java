@@ -28,6 +28,9 @@ public class FieldMember extends AbstractMember {
 
 	String typename;
 
+	// Where the value is kept when held by a state manager, worked out on first use (see FieldLayout)
+	FieldLayout.Slot slot;
+
 	protected FieldMember(String typename, int modifiers, String name, String descriptor, String signature) {
 		super(modifiers, name, descriptor, signature);
 		this.typename = typename;
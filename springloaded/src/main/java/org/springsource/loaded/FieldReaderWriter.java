@@ -18,8 +18,6 @@ package org.springsource.loaded;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -66,14 +64,7 @@ public class FieldReaderWriter {
 				// Look it up using reflection
 				stateManager = findInstanceStateManager(instance);
 			}
-			String declaringTypeName = typeDescriptor.getName();
-			Map<String, Object> typeLevelValues = stateManager.getMap().get(declaringTypeName);
-			if (typeLevelValues == null) {
-				// first time we've accessed this type for an instance field
-				typeLevelValues = new HashMap<String, Object>();
-				stateManager.getMap().put(declaringTypeName, typeLevelValues);
-			}
-			typeLevelValues.put(theField.getName(), newValue);
+			stateManager.set(getSlot(), newValue);
 		}
 		else { // the type is not reloadable, must use reflection to access the value
 			// TODO generate get/set in the topmost reloader for these kinds of field and use them?
@@ -100,13 +91,7 @@ public class FieldReaderWriter {
 				// need to go and find it, there *will* be one but it will be slow to retrieve (reflection)
 				stateManager = findStaticStateManager(clazz);
 			}
-			String declaringTypeName = typeDescriptor.getName();
-			Map<String, Object> typeLevelValues = stateManager.getMap().get(declaringTypeName);
-			if (typeLevelValues == null) {
-				typeLevelValues = new HashMap<String, Object>();
-				stateManager.getMap().put(declaringTypeName, typeLevelValues);
-			}
-			typeLevelValues.put(theField.getName(), newValue);
+			stateManager.set(getSlot(), newValue);
 		}
 		else { // the type is not reloadable, must use reflection to access the value
 			try {
@@ -142,36 +127,25 @@ public class FieldReaderWriter {
 				stateManager = findInstanceStateManager(instance);
 			}
 			String declaringTypeName = typeDescriptor.getName();
-			Map<String, Object> typeLevelValues = stateManager.getMap().get(declaringTypeName);
-			boolean knownField = false;
-			if (typeLevelValues != null) {
-				knownField = typeLevelValues.containsKey(fieldname);
-			}
-			if (knownField) {
-				result = typeLevelValues.get(fieldname);
-			}
+			FieldLayout.Slot slot = getSlot();
+			result = stateManager.get(slot);
 
 			// If a field has been deleted it may 'reveal' a field in a supertype.  The revealed field may be in a type
-			// not yet dealt with.  In this case typeLevelValues may be null (type not seen before) or the typelevelValues
-			// may not have heard of our field name.  In these cases we need to go and find the field and 'relocate' it
-			// into our map, where it will be processed from now on.
-			if (typeLevelValues == null || !knownField) {
+			// not yet dealt with.  In this case no value will be held for it yet.  We need to go and find the field and
+			// 'relocate' it into the state manager, where it will be processed from now on.
+			if (result == FieldValues.NOT_HELD) {
 
 				FieldMember fieldOnOriginalType = typeDescriptor.getReloadableType().getTypeRegistry()
 						.getReloadableType(declaringTypeName).getTypeDescriptor().getField(fieldname);
 
 				if (fieldOnOriginalType != null) {
-					// Copy the field into the map - that is where it will live from now on
+					// Copy the field into the state manager - that is where it will live from now on
 					ReloadableType rt = typeDescriptor.getReloadableType();
 					try {
 						Field f = rt.getClazz().getDeclaredField(fieldname);
 						f.setAccessible(true);
 						result = f.get(instance);
-						if (typeLevelValues == null) {
-							typeLevelValues = new HashMap<String, Object>();
-							stateManager.getMap().put(declaringTypeName, typeLevelValues);
-						}
-						typeLevelValues.put(fieldname, result);
+						stateManager.set(slot, result);
 					}
 					catch (Exception e) {
 						throw new IllegalStateException("Unexpectedly unable to access field " + fieldname
@@ -182,11 +156,7 @@ public class FieldReaderWriter {
 				else {
 					// The field was not on the original type.  As not seen before, can default it
 					result = Utils.toResultCheckIfNull(null, theField.getDescriptor());
-					if (typeLevelValues == null) {
-						typeLevelValues = new HashMap<String, Object>();
-						stateManager.getMap().put(declaringTypeName, typeLevelValues);
-					}
-					typeLevelValues.put(fieldname, result);
+					stateManager.set(slot, result);
 					return result;
 				}
 			}
@@ -194,7 +164,7 @@ public class FieldReaderWriter {
 				result = Utils.checkCompatibility(typeDescriptor.getTypeRegistry(), result, theField.getDescriptor());
 				if (result == null) {
 					// Was not compatible, forget it
-					typeLevelValues.remove(fieldname);
+					stateManager.remove(slot);
 				}
 			}
 			result = Utils.toResultCheckIfNull(result, theField.getDescriptor());
@@ -236,22 +206,15 @@ public class FieldReaderWriter {
 				}
 			}
 			String declaringTypeName = typeDescriptor.getName();
-			Map<String, Object> typeLevelValues = stateManager.getMap().get(declaringTypeName);
 			String fieldname = theField.getName();
-			boolean knownField = false;
-			if (typeLevelValues != null) {
-				knownField = typeLevelValues.containsKey(fieldname);
-			}
-			if (knownField) {
-				result = typeLevelValues.get(fieldname);
-			}
+			FieldLayout.Slot slot = getSlot();
+			result = stateManager.get(slot);
 			// If a field has been deleted it may 'reveal' a field in a supertype.  The revealed field may be in a type
-			// not yet dealt with.  In this case typeLevelValues may be null (type not seen before) or the typelevelValues
-			// may not have heard of our field name.  In these cases we need to go and find the field and 'relocate' it
-			// into our map, where it will be processed from now on.
+			// not yet dealt with.  In this case no value will be held for it yet.  We need to go and find the field and
+			// 'relocate' it into the state manager, where it will be processed from now on.
 
 			// These revealed fields are not necessarily in the original form of the type so cannot always be accessed via reflection
-			if (typeLevelValues == null || !knownField) {
+			if (result == FieldValues.NOT_HELD) {
 
 				FieldMember fieldOnOriginalType = typeDescriptor.getReloadableType().getTypeRegistry()
 						.getReloadableType(declaringTypeName).getTypeDescriptor().getField(fieldname);
@@ -265,21 +228,13 @@ public class FieldReaderWriter {
 							// need to default it anyway, cant see that original value
 							// TODO  this is a dup of the code below, refactor
 							result = Utils.toResultCheckIfNull(null, theField.getDescriptor());
-							if (typeLevelValues == null) {
-								typeLevelValues = new HashMap<String, Object>();
-								stateManager.getMap().put(declaringTypeName, typeLevelValues);
-							}
-							typeLevelValues.put(fieldname, result);
+							stateManager.set(slot, result);
 							return result;
 						}
 						f.setAccessible(true);
 						// TODO can fail on this next line if the field we've found is non-static
 						result = f.get(null);
-						if (typeLevelValues == null) {
-							typeLevelValues = new HashMap<String, Object>();
-							stateManager.getMap().put(declaringTypeName, typeLevelValues);
-						}
-						typeLevelValues.put(theField.getName(), result);
+						stateManager.set(slot, result);
 					}
 					catch (Exception e) {
 						throw new IllegalStateException("Unexpectedly unable to read field " + theField.getName()
@@ -290,11 +245,7 @@ public class FieldReaderWriter {
 				else {
 					// The field was not on the original type.  As not seen before, can default it
 					result = Utils.toResultCheckIfNull(null, theField.getDescriptor());
-					if (typeLevelValues == null) {
-						typeLevelValues = new HashMap<String, Object>();
-						stateManager.getMap().put(declaringTypeName, typeLevelValues);
-					}
-					typeLevelValues.put(fieldname, result);
+					stateManager.set(slot, result);
 					return result;
 				}
 			}
@@ -304,7 +255,7 @@ public class FieldReaderWriter {
 			if (result != null) {
 				result = Utils.checkCompatibility(typeDescriptor.getTypeRegistry(), result, theField.getDescriptor());
 				if (result == null) {
-					typeLevelValues.remove(theField.getName());
+					stateManager.remove(slot);
 				}
 			}
 			result = Utils.toResultCheckIfNull(result, theField.getDescriptor());
@@ -439,6 +390,10 @@ public class FieldReaderWriter {
 		return theField.isStatic();
 	}
 
+	private FieldLayout.Slot getSlot() {
+		return FieldLayout.slotFor(typeDescriptor.getTypeRegistry(), theField);
+	}
+
 	/**
 	 * Walk up the instance hierarchy looking for the field, and when it is found access it and return the result. Will
 	 * exit via exception if it cannot find the field or something goes wrong when accessing it.
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import org.springsource.loaded.FieldLayout.Slot;
+
+/**
+ * Field values held by a state manager, for each declaring type an Object[] for reference fields and a long[] for
+ * primitive fields, indexed by the slots in the {@link FieldLayout} of that type. Primitives are held unboxed and boxed
+ * again when read.
+ * <p>
+ * A state manager usually only holds values for one or two types in a hierarchy so the storage for a type is found by
+ * a search on the layout.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class FieldValues {
+
+	/**
+	 * Returned by {@link #get(Slot)} when no value is held for a field.
+	 */
+	static final Object NOT_HELD = new Object();
+
+	// Held in object storage to record a value of null, an empty entry means no value is held
+	private static final Object NULL = new Object();
+
+	private static final TypeValues[] NONE = new TypeValues[0];
+
+	private TypeValues[] typeValues = NONE;
+
+	private static class TypeValues {
+
+		final FieldLayout layout;
+
+		Object[] objects;
+
+		long[] primitives;
+
+		// bit per primitive slot, set if a value is held
+		long[] primitivesHeld;
+
+		TypeValues(FieldLayout layout) {
+			this.layout = layout;
+		}
+	}
+
+	private TypeValues getTypeValues(FieldLayout layout, boolean create) {
+		for (TypeValues values : typeValues) {
+			if (values.layout == layout) {
+				return values;
+			}
+		}
+		if (!create) {
+			return null;
+		}
+		TypeValues values = new TypeValues(layout);
+		TypeValues[] newTypeValues = new TypeValues[typeValues.length + 1];
+		System.arraycopy(typeValues, 0, newTypeValues, 0, typeValues.length);
+		newTypeValues[typeValues.length] = values;
+		typeValues = newTypeValues;
+		return values;
+	}
+
+	/**
+	 * Retrieve the value held for a field. If no value is held but one is held for a field of the same name and a
+	 * different type (the field changed type on a reload) that value is moved across and returned, the caller is
+	 * expected to check it is compatible.
+	 *
+	 * @param slot the slot for the field
+	 * @return the value (boxed if primitive) or NOT_HELD
+	 */
+	Object get(Slot slot) {
+		TypeValues values = getTypeValues(slot.layout, false);
+		if (values == null) {
+			return NOT_HELD;
+		}
+		Object value = get(values, slot);
+		if (value == NOT_HELD) {
+			for (Slot other : slot.layout.getSlots()) {
+				if (other != slot && other.name.equals(slot.name)) {
+					value = get(values, other);
+					if (value != NOT_HELD) {
+						remove(values, other);
+						set(slot, value);
+						break;
+					}
+				}
+			}
+		}
+		return value;
+	}
+
+	private Object get(TypeValues values, Slot slot) {
+		int index = slot.index;
+		if (slot.isPrimitive()) {
+			long[] held = values.primitivesHeld;
+			if (held == null || (index >> 6) >= held.length || (held[index >> 6] & (1L << index)) == 0) {
+				return NOT_HELD;
+			}
+			return box(slot.kind, values.primitives[index]);
+		}
+		else {
+			Object[] objects = values.objects;
+			if (objects == null || index >= objects.length || objects[index] == null) {
+				return NOT_HELD;
+			}
+			Object value = objects[index];
+			return value == NULL ? null : value;
+		}
+	}
+
+	/**
+	 * Hold a value for a field.
+	 *
+	 * @param slot the slot for the field
+	 * @param value the value, boxed if the field is primitive
+	 */
+	void set(Slot slot, Object value) {
+		TypeValues values = getTypeValues(slot.layout, true);
+		int index = slot.index;
+		if (slot.isPrimitive()) {
+			long bits;
+			try {
+				bits = unbox(slot.kind, value);
+			}
+			catch (RuntimeException re) {
+				// null or not a value of this type, as if it had been found to be incompatible
+				remove(values, slot);
+				return;
+			}
+			if (values.primitives == null || index >= values.primitives.length) {
+				long[] newPrimitives = new long[index + 1];
+				if (values.primitives != null) {
+					System.arraycopy(values.primitives, 0, newPrimitives, 0, values.primitives.length);
+				}
+				values.primitives = newPrimitives;
+			}
+			if (values.primitivesHeld == null || (index >> 6) >= values.primitivesHeld.length) {
+				long[] newHeld = new long[(index >> 6) + 1];
+				if (values.primitivesHeld != null) {
+					System.arraycopy(values.primitivesHeld, 0, newHeld, 0, values.primitivesHeld.length);
+				}
+				values.primitivesHeld = newHeld;
+			}
+			values.primitives[index] = bits;
+			values.primitivesHeld[index >> 6] |= (1L << index);
+		}
+		else {
+			if (values.objects == null || index >= values.objects.length) {
+				Object[] newObjects = new Object[index + 1];
+				if (values.objects != null) {
+					System.arraycopy(values.objects, 0, newObjects, 0, values.objects.length);
+				}
+				values.objects = newObjects;
+			}
+			values.objects[index] = value == null ? NULL : value;
+		}
+	}
+
+	/**
+	 * Forget any value held for a field.
+	 *
+	 * @param slot the slot for the field
+	 */
+	void remove(Slot slot) {
+		TypeValues values = getTypeValues(slot.layout, false);
+		if (values != null) {
+			remove(values, slot);
+		}
+	}
+
+	private void remove(TypeValues values, Slot slot) {
+		int index = slot.index;
+		if (slot.isPrimitive()) {
+			if (values.primitivesHeld != null && (index >> 6) < values.primitivesHeld.length) {
+				values.primitivesHeld[index >> 6] &= ~(1L << index);
+			}
+		}
+		else if (values.objects != null && index < values.objects.length) {
+			values.objects[index] = null;
+		}
+	}
+
+	private static long unbox(char kind, Object value) {
+		switch (kind) {
+			case 'Z':
+				return ((Boolean) value).booleanValue() ? 1 : 0;
+			case 'C':
+				return ((Character) value).charValue();
+			case 'F':
+				return Float.floatToRawIntBits(((Float) value).floatValue());
+			case 'D':
+				return Double.doubleToRawLongBits(((Double) value).doubleValue());
+			case 'J':
+				return ((Long) value).longValue();
+			case 'I':
+				return ((Integer) value).intValue();
+			case 'S':
+				return ((Short) value).shortValue();
+			case 'B':
+				return ((Byte) value).byteValue();
+			default:
+				throw new IllegalStateException("Invalid primitive descriptor " + kind);
+		}
+	}
+
+	private static Object box(char kind, long bits) {
+		switch (kind) {
+			case 'Z':
+				return bits != 0 ? Boolean.TRUE : Boolean.FALSE;
+			case 'C':
+				return Character.valueOf((char) bits);
+			case 'F':
+				return Float.valueOf(Float.intBitsToFloat((int) bits));
+			case 'D':
+				return Double.valueOf(Double.longBitsToDouble(bits));
+			case 'J':
+				return Long.valueOf(bits);
+			case 'I':
+				return Integer.valueOf((int) bits);
+			case 'S':
+				return Short.valueOf((short) bits);
+			case 'B':
+				return Byte.valueOf((byte) bits);
+			default:
+				throw new IllegalStateException("Invalid primitive descriptor " + kind);
+		}
+	}
+
+	String valuesToString(String header) {
+		StringBuilder s = new StringBuilder();
+		s.append(header + System.identityHashCode(this)).append("\n");
+		for (TypeValues values : typeValues) {
+			s.append("Type " + values.layout.getTypename()).append("\n");
+			for (Slot slot : values.layout.getSlots()) {
+				Object value = get(values, slot);
+				if (value != NOT_HELD) {
+					s.append(" " + slot.name + "=" + value).append("\n");
+				}
+			}
+		}
+		return s.toString();
+	}
+}
@@ -111,6 +111,33 @@ public class GlobalConfiguration {
 	 */
 	public static String cacheDir = null;
 
+	/**
+	 * Upper bound on the size of the pack file holding the rewrite cache, in megabytes. When it is exceeded the least
+	 * recently used entries are evicted.
+	 */
+	public static int cacheMaxSizeMB = 256;
+
+	/**
+	 * Determine whether file changes are observed through java.nio.file.WatchService, when the platform offers a native
+	 * one. If false (or there is no native WatchService) the last modification time of each watched file is polled.
+	 */
+	public static boolean useWatchService = true;
+
+	/**
+	 * How long (ms) the file system must be quiet, with no further changes observed, before the changes seen are
+	 * reloaded as one batch.
+	 */
+	public static int reloadQuietPeriod = 200;
+
+	/**
+	 * Determine whether the bytes kept for each reloadable type (and its current dispatcher and executor) are compacted
+	 * once the classes have been defined. When true the original bytes are kept compressed, the interface bytes are
+	 * dropped and extracted again if needed, and the rewritten, dispatcher and executor bytes are kept compressed. This
+	 * trades a little time when the bytes are next needed (on reload) for less heap when there are many reloadable
+	 * types. See {@link TypeRegistry#getFootprintReport()}.
+	 */
+	public static boolean compactBytes = false;
+
 	public final static boolean logNonInterceptedReflectiveCalls = false;
 
 	/**
@@ -139,6 +166,33 @@ public class GlobalConfiguration {
 	 */
 	public static boolean verifyReloads = true;
 
+	/**
+	 * When running as an agent and a reload only changes the code inside existing methods, redefine the class in place
+	 * with the instrumentation API rather than loading a new dispatcher and executor for it. Calls to the type stay
+	 * direct, so there is no overhead once the reload is done. Once a type has had a reload that changed its shape
+	 * the dispatcher is used for all its later reloads. Relies on verifyReloads to find out what changed.
+	 */
+	public static boolean redefineBodyChanges = false;
+
+	/**
+	 * When true reloadable types are only recorded (their bytes and type descriptor) as they are loaded, they are not
+	 * rewritten and neither are the call sites in other types, so nothing is paid for reloading unless it is used.
+	 * Members the dispatcher relies on cannot be added to a class once it is loaded, so this reduces what can be
+	 * reloaded: only changes to the code inside existing methods, which are redefined in place as with
+	 * redefineBodyChanges. Any other change (a new or removed member, a changed signature, a changed static initializer)
+	 * is reported and not reloaded, nothing can be reloaded without the agent's instrumentation to redefine the class,
+	 * and Groovy types cannot be reloaded at all. Intended for environments that run with the agent but rarely or never
+	 * reload.
+	 */
+	public static boolean deferInstrumentation = false;
+
+	/**
+	 * By default rewritten call sites pass the type registry id and type id to the guard methods packed into an int (16
+	 * bits each). With wide ids they are packed into a long instead, lifting the limit on the number of type names and
+	 * registries from 65536 to Integer.MAX_VALUE. Must be set before any types are rewritten.
+	 */
+	public static boolean wideIds = false;
+
 	/**
 	 * When classes are dumped by Utils.dump() this specifies where. A null value will cause us to dump into the default
 	 * temp folder.
@@ -250,6 +304,18 @@ public class GlobalConfiguration {
 						else if (key.equals("cacheDir")) {
 							cacheDir = kv.substring(equals + 1);
 						}
+						else if (key.equals("useWatchService")) {
+							useWatchService = kv.substring(equals + 1).equalsIgnoreCase("true");
+						}
+						else if (key.equals("reloadQuietPeriod")) {
+							reloadQuietPeriod = toInt(kv.substring(equals + 1), reloadQuietPeriod);
+						}
+						else if (key.equals("compactBytes")) {
+							compactBytes = kv.substring(equals + 1).equalsIgnoreCase("true");
+						}
+						else if (key.equals("cacheMaxSizeMB")) {
+							cacheMaxSizeMB = toInt(kv.substring(equals + 1), cacheMaxSizeMB);
+						}
 						else if (key.equals("callsideRewritingOn")) { // global setting
 							callsideRewritingOn = kv.substring(equals + 1).equalsIgnoreCase("true");
 							if (isRuntimeLogging && log.isLoggable(Level.INFO)) {
@@ -267,6 +333,24 @@ public class GlobalConfiguration {
 								log.info("configuration: verifyReloads = " + verifyReloads);
 							}
 						}
+						else if (key.equals("redefineBodyChanges")) { // global setting
+							redefineBodyChanges = kv.substring(equals + 1).equalsIgnoreCase("true");
+							if (isRuntimeLogging && log.isLoggable(Level.INFO)) {
+								log.info("configuration: redefineBodyChanges = " + redefineBodyChanges);
+							}
+						}
+						else if (key.equals("deferInstrumentation")) { // global setting
+							deferInstrumentation = kv.substring(equals + 1).equalsIgnoreCase("true");
+							if (isRuntimeLogging && log.isLoggable(Level.INFO)) {
+								log.info("configuration: deferInstrumentation = " + deferInstrumentation);
+							}
+						}
+						else if (key.equals("wideIds")) { // global setting
+							wideIds = kv.substring(equals + 1).equalsIgnoreCase("true");
+							if (isRuntimeLogging && log.isLoggable(Level.INFO)) {
+								log.info("configuration: wideIds = " + wideIds);
+							}
+						}
 						else if (key.equals("dumpFolder")) { // global setting
 							dumpFolder = kv.substring(equals + 1);
 							if (isRuntimeLogging && log.isLoggable(Level.INFO)) {
@@ -17,27 +17,23 @@
 package org.springsource.loaded;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Every reloadable hierarchy gets an Instance State Manager (ISMgr). The instance state manager is used to find the
  * value of a field for a particular object instance. The manager is added to the top most type in a reloadable
- * hierarchy and is accessible to all the subtypes. It maintains a map from types to secondary maps. The secondary maps
- * record name,value pairs for each field. The maps are only used if something has happened to mean we cannot continue
+ * hierarchy and is accessible to all the subtypes. It holds field values for each type, in the slots given out by the
+ * {@link FieldLayout} of that type. The values are only held here if something has happened to mean we cannot continue
  * to store the values in the original fields.
  * 
  * @author Andy Clement
  * @since 0.5.0
  */
-public class ISMgr {
+public class ISMgr extends FieldValues {
 
 	private static Logger log = Logger.getLogger(ISMgr.class.getName());
 
-	Map<String, Map<String, Object>> values = new HashMap<String, Map<String, Object>>();
-
 	// TODO rtype in here means no need to have it on the getValue calls
 	public ISMgr(Object instance, ReloadableType rtype) {
 		//		System.out.println("Instance passed to ISMgr " + instance + " rtype=" + rtype);
@@ -87,23 +83,15 @@ public class ISMgr {
 				throw new IncompatibleClassChangeError("Expected non-static field " + rtype.dottedtypename + "."
 						+ field.getName());
 			}
-			String declaringTypeName = field.getDeclaringTypeName();
-			Map<String, Object> typeLevelValues = values.get(declaringTypeName);
-			boolean knownField = false;
-			if (typeLevelValues != null) {
-				knownField = typeLevelValues.containsKey(name);
-			}
-			if (knownField) {
-				result = typeLevelValues.get(name);
-			}
+			FieldLayout.Slot slot = FieldLayout.slotFor(rtype.getTypeRegistry(), field);
+			result = get(slot);
 
 			// If a field has been deleted it may 'reveal' a field in a supertype.  The revealed field may be in a type
-			// not yet dealt with.  In this case typeLevelValues may be null (type not seen before) or the typelevelValues
-			// may not have heard of our field name.  In these cases we need to go and find the field and 'relocate' it
-			// into our map, where it will be processed from now on.
+			// not yet dealt with.  In this case no value will be held for it yet.  We need to go and find the field and
+			// 'relocate' it into our values, where it will be processed from now on.
 
 			// These revealed fields are not necessarily in the original form of the type so cannot be accessed via reflection
-			if (typeLevelValues == null || !knownField) {
+			if (result == NOT_HELD) {
 				// Determine whether we need to use reflection or not:
 				// 'field' tells us if we know about it now, it doesn't tell us if we've always known about it
 
@@ -119,11 +107,7 @@ public class ISMgr {
 						Field f = rt.getClazz().getDeclaredField(name);
 						f.setAccessible(true);
 						result = f.get(instance);
-						if (typeLevelValues == null) {
-							typeLevelValues = new HashMap<String, Object>();
-							values.put(declaringTypeName, typeLevelValues);
-						}
-						typeLevelValues.put(name, result);
+						set(slot, result);
 					}
 					catch (Exception e) {
 						throw new IllegalStateException("Unexpectedly unable to access field " + name + " on type "
@@ -133,11 +117,7 @@ public class ISMgr {
 				else {
 					// The field was not on the original type.  As not seen before, can default it
 					result = Utils.toResultCheckIfNull(null, field.getDescriptor());
-					if (typeLevelValues == null) {
-						typeLevelValues = new HashMap<String, Object>();
-						values.put(declaringTypeName, typeLevelValues);
-					}
-					typeLevelValues.put(name, result);
+					set(slot, result);
 					return result;
 				}
 			}
@@ -145,7 +125,7 @@ public class ISMgr {
 			if (result != null) {
 				result = Utils.checkCompatibility(rtype.getTypeRegistry(), result, field.getDescriptor());
 				if (result == null) {
-					typeLevelValues.remove(field.getName());
+					remove(slot);
 				}
 			}
 			result = Utils.toResultCheckIfNull(result, field.getDescriptor());
@@ -191,32 +171,11 @@ public class ISMgr {
 				throw new IncompatibleClassChangeError("Expected non-static field " + rtype.dottedtypename + "."
 						+ fieldmember.getName());
 			}
-			Map<String, Object> typeValues = values.get(fieldmember.getDeclaringTypeName());
-			if (typeValues == null) {
-				typeValues = new HashMap<String, Object>();
-				values.put(fieldmember.getDeclaringTypeName(), typeValues);
-			}
-			typeValues.put(name, value);
+			set(FieldLayout.slotFor(rtype.getTypeRegistry(), fieldmember), value);
 		}
 	}
 
-	private String valuesToString() {
-		StringBuilder s = new StringBuilder();
-		s.append("InstanceState:" + System.identityHashCode(this)).append("\n");
-		for (Map.Entry<String, Map<String, Object>> entry : values.entrySet()) {
-			s.append("Type " + entry.getKey()).append("\n");
-			for (Map.Entry<String, Object> entry2 : entry.getValue().entrySet()) {
-				s.append(" " + entry2.getKey() + "=" + entry2.getValue()).append("\n");
-			}
-		}
-		return s.toString();
-	}
-
 	public String toString() {
-		return valuesToString();
-	}
-
-	Map<String, Map<String, Object>> getMap() {
-		return values;
+		return valuesToString("InstanceState:");
 	}
 }
@@ -77,6 +77,11 @@ public class InterfaceExtractor {
 		return extractorVisitor.getBytes();
 	}
 
+	/**
+	 * The visitor only needs to see the class declaration, the method declarations and the end of the class, so rather
+	 * than making its own pass over the bytes it can be fed those events by a visitor making some other pass (see
+	 * ReloadableType.MergedRewrite).
+	 */
 	class ExtractorVisitor extends ClassVisitor implements Constants {
 
 		private TypeDescriptor typeDescriptor;
@@ -85,6 +90,8 @@ public class InterfaceExtractor {
 
 		private String slashedtypename;
 
+		private boolean complete = false;
+
 		public ExtractorVisitor(TypeDescriptor typeDescriptor) {
 			super(ASM5);
 			this.typeDescriptor = typeDescriptor;
@@ -94,6 +101,13 @@ public class InterfaceExtractor {
 			return interfaceWriter.toByteArray();
 		}
 
+		/**
+		 * @return true if the visitor has seen the whole class
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
 		public void visit(int version, int flags, String name, String signature, String superclassName,
 				String[] interfaceNames) {
 			// Create interface "public interface [typename]__I {"
@@ -164,6 +178,7 @@ public class InterfaceExtractor {
 				interfaceWriter.visitMethod(ACC_PUBLIC_ABSTRACT, method.getName(), descriptor, null,
 						method.getExceptions());
 			}
+			complete = true;
 		}
 
 		/**
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springsource.loaded.ri.Invoker;
+
+/**
+ * Remembers the decisions made by the invocation guards in the TypeRegistry (ivicheck/istcheck/iincheck/ispcheck) for
+ * the methods of one reloadable type. Every rewritten call site that targets the same method asks the same question,
+ * so once the answer has been worked out it is kept here. Each decision is stamped with the reload generation it was
+ * computed in (see {@link ReloadableType#getReloadGeneration()}) and is ignored once a further reload has occurred.
+ * <p>
+ * The name and descriptor keys come from LDC instructions at the call sites, so no string building is needed to
+ * consult the cache.
+ * <p>
+ * The invokers that reflective calls to the methods of the type are dispatched to (see
+ * ReflectiveInterceptor.jlrMethodInvoke()) are kept here too, keyed by the Method being invoked.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class InvocationCache {
+
+	public static final int IVICHECK = 0;
+
+	public static final int ISTCHECK = 1;
+
+	public static final int IINCHECK = 2;
+
+	public static final int ISPCHECK = 3;
+
+	/**
+	 * Cached value used to record that a guard decided there was nothing to return.
+	 */
+	public static final Object NONE = new Object();
+
+	private final Decisions[] decisions = new Decisions[4];
+
+	private final ConcurrentHashMap<Method, MethodInvocation> methodInvocations = new ConcurrentHashMap<Method, MethodInvocation>(
+			16, 0.75f, 1);
+
+	public InvocationCache() {
+		for (int i = 0; i < decisions.length; i++) {
+			decisions[i] = new Decisions();
+		}
+	}
+
+	/**
+	 * @param kind which guard is asking (e.g. {@link #IVICHECK})
+	 * @param nameAndDescriptor the method name and descriptor the guard is being asked about
+	 * @param generation the current reload generation
+	 * @return the previously computed decision or null if there is no decision for the current generation
+	 */
+	public Object get(int kind, String nameAndDescriptor, int generation) {
+		Decision decision = decisions[kind].get(nameAndDescriptor);
+		if (decision == null || decision.generation != generation) {
+			return null;
+		}
+		return decision.value;
+	}
+
+	/**
+	 * Record a decision. The generation passed in must be the generation observed <em>before</em> the decision was
+	 * computed, that ensures a decision computed whilst a reload was in progress is not reused.
+	 *
+	 * @param kind which guard is recording the decision (e.g. {@link #IVICHECK})
+	 * @param nameAndDescriptor the method name and descriptor the decision is for
+	 * @param generation the reload generation observed before computing the decision
+	 * @param value the decision, use {@link #NONE} rather than null
+	 */
+	public void put(int kind, String nameAndDescriptor, int generation, Object value) {
+		decisions[kind].put(nameAndDescriptor, new Decision(generation, value));
+	}
+
+	/**
+	 * @param method the method being invoked reflectively
+	 * @param generation the current reload generation of this type
+	 * @param declaringGeneration the current reload generation of the type declaring the method
+	 * @return the previously recorded invocation or null if there is none for the current generations
+	 */
+	public MethodInvocation getMethodInvocation(Method method, int generation, int declaringGeneration) {
+		MethodInvocation invocation = methodInvocations.get(method);
+		if (invocation == null || invocation.generation != generation
+				|| invocation.declaringGeneration != declaringGeneration) {
+			return null;
+		}
+		return invocation;
+	}
+
+	/**
+	 * Record how a method is invoked reflectively. As with {@link #put(int, String, int, Object)} the generations must
+	 * be those observed before the invoker was looked up.
+	 */
+	public void putMethodInvocation(Method method, MethodInvocation invocation) {
+		methodInvocations.put(method, invocation);
+	}
+
+	public void clear() {
+		for (Decisions map : decisions) {
+			map.clear();
+		}
+		methodInvocations.clear();
+	}
+
+	/**
+	 * The invoker found for a reflective call to a method, and whether callers must be checked for access to it.
+	 */
+	public static class MethodInvocation {
+
+		public final Invoker invoker;
+
+		public final boolean checkAccess;
+
+		final int generation;
+
+		final int declaringGeneration;
+
+		public MethodInvocation(Invoker invoker, boolean checkAccess, int generation, int declaringGeneration) {
+			this.invoker = invoker;
+			this.checkAccess = checkAccess;
+			this.generation = generation;
+			this.declaringGeneration = declaringGeneration;
+		}
+	}
+
+	/**
+	 * The decisions made by one kind of guard, a named type so that the maps can be held in an array without raw types.
+	 */
+	private static class Decisions extends ConcurrentHashMap<String, Decision> {
+
+		private static final long serialVersionUID = 1L;
+
+		Decisions() {
+			super(16, 0.75f, 1);
+		}
+	}
+
+	private static class Decision {
+
+		final int generation;
+
+		final Object value;
+
+		Decision(int generation, Object value) {
+			this.generation = generation;
+			this.value = value;
+		}
+	}
+}
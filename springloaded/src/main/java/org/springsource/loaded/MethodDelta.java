@@ -77,6 +77,15 @@ public class MethodDelta {
 		return (changed & CHANGED_CODE) != 0;
 	}
 
+	/**
+	 * @return true if only the code of the method has changed, not its access, annotations or (for a constructor) the
+	 *         constructor it delegates to
+	 */
+	public boolean hasOnlyCodeChanged() {
+		return (changed & (CHANGED_ACCESS | CHANGED_ANNOTATIONS | CHANGED_INVOKESPECIAL)) == 0
+				&& (changed & (CHANGED_INSTRUCTIONS | CHANGED_CODE)) != 0;
+	}
+
 	public void setAccessChanged(int oldAccess, int newAccess) {
 		this.oAccess = oldAccess;
 		this.nAccess = newAccess;
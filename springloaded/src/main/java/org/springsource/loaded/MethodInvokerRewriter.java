@@ -16,19 +16,8 @@
 
 package org.springsource.loaded;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,15 +38,11 @@ import org.springsource.loaded.ri.ReflectiveInterceptor;
  * Rewrite method calls and field accesses. This is not only references to reloadable types but also calls to reflective
  * APIs which must be intercepted in case they refer to reloadable types at runtime.
  * <p>
- * The MethodInvokerRewriter actually manages a portion of the .slcache - it keeps track of two things:
- * <ul>
- * <li>There is an index file (.index) that records types and whether they were modified on a previous run. A later run
- * can then quickly determine it doesn't need to do anything, or if it should look for a cache file containing the
- * modified form.
- * <li>There is a file 'per-modified-file' that captures the previously determined woven form of the class. The files
- * are named after the classname suffixed with the length of the bytecode (e.g. java_lang_String_3322.bytes). If one of
- * these files exists, we know it contains the appropriate modified bytecode created on a previous run.
- * </ul>
+ * The MethodInvokerRewriter actually manages a portion of the .slcache - a {@link RewriteCache} pack file that records,
+ * keyed on a digest of the original bytecode, whether each type was modified on a previous run and if so its modified
+ * form. A later run can then quickly determine it doesn't need to do anything, or pull the modified form straight out
+ * of the pack.
+ * <p>
  * The cache is for types that are *only* getting reflection interception done, not for types touching anything
  * reloadable.
  *
@@ -71,13 +56,9 @@ public class MethodInvokerRewriter {
 	private static boolean anyNecessaryCacheCleanupDone = false;
 
 	/**
-	 * Populated by the file in &lt;cacheDir&gt;/.index - this describes which types were not modified on a previous run
-	 * and which files were. If a type is not mentioned then it hasn't been seen before. If the type is mentioned then
-	 * there will likely be the bytecode for the modified form on disk in a file named something like
-	 * 'com/foo/Bar_22233.bytes'- the number is the length of the unmodified form. The key into this map is the slashed
-	 * form of the typename suffixed with '_' and the length of the bytes.
+	 * The on disk cache, opened on first use when caching is turned on.
 	 */
-	private static Map<String, Boolean> cacheIndex = null;
+	private static RewriteCache cache = null;
 
 	/**
 	 * Rewrite regular operations on reloadable types and any reflective calls.
@@ -112,54 +93,36 @@ public class MethodInvokerRewriter {
 	}
 
 	public static byte[] rewriteUsingCache(String slashedClassName, TypeRegistry typeRegistry, byte[] bytes) {
-		ensureCacheIndexLoaded();
+		RewriteCache cache = ensureCacheLoaded();
 		if (DEBUG_CACHING) {
 			System.out.println("cache check for " + slashedClassName);
 		}
-		if (slashedClassName != null) {
-			// Construct cachekey, something like: java/lang/String_3343
-			String cachekey = new StringBuilder(slashedClassName).append("_").append(bytes.length).toString();
-			Boolean b = cacheIndex.get(cachekey);
-			if (DEBUG_CACHING) {
-				System.out.println("was in index? " + b);
-			}
-			if (b != null) {
-				if (b.booleanValue()) { // the type was modified on an earlier run, there should be cached code around
-					String cacheFileName = new StringBuilder(slashedClassName.replace('/', '_')).append("_").append(
-							bytes.length).append(".bytes").toString();
-					File cacheFile = new File(GlobalConfiguration.cacheDir,
-							".slcache" + File.separator + cacheFileName);
+		RewriteCache.Entry entry = cache.find(RewriteCache.digest(bytes));
+		if (DEBUG_CACHING) {
+			System.out.println("was in index? " + (entry == null ? null : entry.modified));
+		}
+		if (entry != null) {
+			if (entry.modified) { // the type was modified on an earlier run, the modified form is in the pack
+				byte[] cachedBytes = cache.read(entry);
+				if (cachedBytes != null) {
 					if (DEBUG_CACHING) {
-						System.out.println("Checking for cache file " + cacheFile);
-					}
-					if (cacheFile.exists()) {
-						// load the cached file
-						if (DEBUG_CACHING) {
-							System.out.println("loading and returning cached file contents");
-						}
-						try {
-							FileInputStream fis = new FileInputStream(cacheFile);
-							byte[] cachedBytes = Utils.loadBytesFromStream(fis);
-							return cachedBytes;
-						}
-						catch (IOException ioe) {
-							ioe.printStackTrace();
-						}
+						System.out.println("returning cached bytes");
 					}
+					return cachedBytes;
 				}
-				else {
-					if (DEBUG_CACHING) {
-						System.out.println("returning unmodified bytes, no need to change");
-					}
-					// wasn't modified before, assume it isn't modified now either!
-					return bytes;
+			}
+			else {
+				if (DEBUG_CACHING) {
+					System.out.println("returning unmodified bytes, no need to change");
 				}
+				// wasn't modified before and the bytes are identical, so it isn't modified now either
+				return bytes;
 			}
 		}
 		if (DEBUG_CACHING) {
 			System.out.println("modifying " + slashedClassName);
 		}
-		// the type has not been seen before or there was no cached file
+		// the type has not been seen before (or was only cached during this run)
 		return rewrite(true, typeRegistry, bytes, false);
 	}
 
@@ -193,97 +156,33 @@ public class MethodInvokerRewriter {
 		File cacheDir = new File(GlobalConfiguration.cacheDir, ".slcache");
 		if (cacheDir.exists()) {
 			recursiveDelete(cacheDir);
-			if (cacheIndex != null) {
-				cacheIndex.clear();
-			}
 		}
-		versionInIndex = false;
+		cache = null;
 	}
 
-	private static final int CACHE_VERSION_1_1_0 = 1;
-
-	private static final int CACHE_VERSION_1_1_1 = 2;
-
-	private static final int CURRENT_CACHE_VERSION = CACHE_VERSION_1_1_1;
-
-	private static boolean versionInIndex = false;
-
 	/**
-	 * Load the cache index from the file '&lt;cacheDir&gt;/.index'.
+	 * Open the cache in '&lt;cacheDir&gt;/.slcache'. Any files left behind by earlier cache formats (the .index file
+	 * and the per type .bytes files) are removed first.
 	 *
+	 * @return the cache
 	 */
-	private static void ensureCacheIndexLoaded() {
-		if (cacheIndex == null) {
-			cacheIndex = new HashMap<String, Boolean>();
-			if (GlobalConfiguration.cleanCache) {
+	private static synchronized RewriteCache ensureCacheLoaded() {
+		if (cache == null) {
+			if (!anyNecessaryCacheCleanupDone && GlobalConfiguration.cleanCache) {
 				deleteCacheFiles();
-				anyNecessaryCacheCleanupDone = true;
 			}
-			else {
-				File cacheDir = new File(GlobalConfiguration.cacheDir, ".slcache");
-				cacheDir.mkdir();
-				File cacheIndexFile = new File(cacheDir, ".index");
-				if (cacheIndexFile.exists()) {
-					try {
-						boolean clearCache = false;
-						int cacheVersion = CACHE_VERSION_1_1_0; // if no version tag, assume 1.1.0
-						try {
-							FileReader fr = new FileReader(cacheIndexFile);
-							BufferedReader br = new BufferedReader(fr);
-							String line;
-							boolean handledVersionString = false;
-							while ((line = br.readLine()) != null) {
-								if (!handledVersionString) {
-									if (line.startsWith("Version")) {
-										int colon = line.indexOf(":");
-										if (colon != -1) {
-											cacheVersion = Integer.parseInt(line.substring(colon + 1));
-										}
-
-										handledVersionString = true;
-										continue;
-									}
-								}
-								StringTokenizer st = new StringTokenizer(line, ":");
-								boolean changed = st.nextToken().equals("y");
-								String len = st.nextToken();
-								String classname = st.nextToken();
-								String key = new StringBuilder(classname).append("_").append(len).toString();
-								// System.out.println("Populating cache index:" + key + "=" + changed);
-								cacheIndex.put(key, changed);
-							}
-							fr.close();
-						}
-						catch (IOException ioe) {
-							ioe.printStackTrace();
-						}
-						if (cacheVersion != CURRENT_CACHE_VERSION) {
-							clearCache = true;
-							versionInIndex = false;
-						}
-						else {
-							versionInIndex = true;
-						}
-						if (clearCache) {
-							if (DEBUG_CACHING) {
-								System.out.println("SpringLoaded: cache looks old (version " + cacheVersion
-										+ ") - clearing it");
-							}
-							deleteCacheFiles();
-							anyNecessaryCacheCleanupDone = true;
-						}
-					}
-					catch (NoSuchElementException nsme) {
-						// rogue entry in the cache
-						if (DEBUG_CACHING) {
-							System.out.println("SpringLoaded: cache corrupt, clearing it");
-						}
-						deleteCacheFiles();
-						anyNecessaryCacheCleanupDone = true;
-					}
+			anyNecessaryCacheCleanupDone = true;
+			File cacheDir = new File(GlobalConfiguration.cacheDir, ".slcache");
+			if (new File(cacheDir, ".index").exists()) {
+				if (DEBUG_CACHING) {
+					System.out.println("SpringLoaded: cache looks old - clearing it");
 				}
+				deleteCacheFiles();
 			}
+			cacheDir.mkdirs();
+			cache = new RewriteCache(cacheDir, RewriteCache.getAgentVersion());
 		}
+		return cache;
 	}
 
 	private static byte[] rewrite(boolean canCache, TypeRegistry typeRegistry, byte[] bytes,
@@ -336,7 +235,9 @@ public class MethodInvokerRewriter {
 				}
 			}
 			if (!needsRewriting) {
-				addToCacheIndex(refs.slashedClassName, bytes, false);
+				if (canCache && GlobalConfiguration.isCaching) {
+					ensureCacheLoaded().put(RewriteCache.digest(bytes), refs.slashedClassName, null);
+				}
 				return bytes;
 			}
 		}
@@ -366,49 +267,14 @@ public class MethodInvokerRewriter {
 		return bs;
 	}
 
-	private static synchronized void cacheOnDisk(String slashedclassname, byte[] originalBytes, byte[] newbytes) {
+	private static void cacheOnDisk(String slashedclassname, byte[] originalBytes, byte[] newbytes) {
 		if (!GlobalConfiguration.isCaching) {
 			return;
 		}
-		File cacheDir = new File(GlobalConfiguration.cacheDir, ".slcache");
-		cacheDir.mkdir();
-		File cacheFile = new File(cacheDir, slashedclassname.replace('/', '_') + "_" + originalBytes.length + ".bytes");
 		if (DEBUG_CACHING) {
-			System.out.println("Caching " + slashedclassname + " in " + cacheFile);
-		}
-		try {
-			//			System.out.println("Creating cache file " + cacheFile);
-			FileOutputStream fos = new FileOutputStream(cacheFile);
-			fos.write(newbytes, 0, newbytes.length);
-			fos.close();
-		}
-		catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
-		addToCacheIndex(slashedclassname, originalBytes, true);
-	}
-
-	private static void addToCacheIndex(String slashedclassname, byte[] bytes, boolean changed) {
-		if (!GlobalConfiguration.isCaching) {
-			return;
-		}
-		File cacheDir = new File(GlobalConfiguration.cacheDir, ".slcache");
-		cacheDir.mkdir();
-		File cacheIndexFile = new File(cacheDir, ".index");
-		try {
-			FileWriter fw = new FileWriter(cacheIndexFile, true);
-			BufferedWriter bw = new BufferedWriter(fw);
-			if (!versionInIndex) {
-				versionInIndex = true;
-				bw.write("Version:" + CURRENT_CACHE_VERSION + "\n");
-			}
-			bw.write((changed ? "y" : "n") + ":" + bytes.length + ":" + slashedclassname + "\n");
-			bw.flush();
-			fw.close();
-		}
-		catch (IOException ioe) {
-			ioe.printStackTrace();
+			System.out.println("Caching " + slashedclassname);
 		}
+		ensureCacheLoaded().put(RewriteCache.digest(originalBytes), slashedclassname, newbytes);
 	}
 
 	// method useful when debugging
@@ -793,6 +659,21 @@ public class MethodInvokerRewriter {
 				super.visitVarInsn(opcode, var);
 			}
 
+			/**
+			 * Push the packed registry and type ids that are passed to the TypeRegistry guard methods.
+			 *
+			 * @param classId the type id of the target of the operation being rewritten
+			 * @return the descriptor for the pushed value, J when running with wide ids and I otherwise
+			 */
+			private String loadIds(int classId) {
+				if (GlobalConfiguration.wideIds) {
+					mv.visitLdcInsn(Utils.toCombinedWide(typeRegistry.getId(), classId));
+					return "J";
+				}
+				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				return "I";
+			}
+
 			@Override
 			public void visitFieldInsn(int opcode, String owner, String name, String desc) {
 				if (!GlobalConfiguration.fieldRewriting) {
@@ -855,10 +736,10 @@ public class MethodInvokerRewriter {
 			private void rewritePUTFIELD(int opcode, String owner, String name, String desc) {
 				int classId = typeRegistry.getTypeIdFor(owner, true);
 				// Make a call to check if this field operation must be intercepted:
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mInstanceFieldInterceptionRequired,
-						"(ILjava/lang/String;)Z", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 				Label l1 = new Label();
 				mv.visitJumpInsn(IFEQ, l1); // IF (false) GOTO l1
 				Utils.insertBoxInsns(mv, desc); // box the value if necessary
@@ -885,10 +766,10 @@ public class MethodInvokerRewriter {
 				int classId = typeRegistry.getTypeIdFor(owner, true);
 				// Make a call to check if this field operation must be
 				// intercepted
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mInstanceFieldInterceptionRequired,
-						"(ILjava/lang/String;)Z", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 				Label l1 = new Label();
 				mv.visitJumpInsn(IFEQ, l1); // IF (false) GOTO l1
 				mv.visitInsn(DUP);
@@ -913,11 +794,11 @@ public class MethodInvokerRewriter {
 			private void rewritePUTSTATIC(int opcode, String owner, String name, String desc) {
 				// TODO [perf] cache this information for 'us' so lookup not always necessary
 				int classId = typeRegistry.getTypeIdFor(owner, true);
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				// Make a call to check if this field operation must be intercepted:
 				mv.visitLdcInsn(name);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mStaticFieldInterceptionRequired,
-						"(ILjava/lang/String;)Z", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 				Label l1 = new Label();
 				mv.visitJumpInsn(IFEQ, l1); // IF (false) GOTO l1
 				// top of heap will be the new value
@@ -935,10 +816,10 @@ public class MethodInvokerRewriter {
 			private void rewriteGETSTATIC(int opcode, String owner, String name, String desc) {
 				int classId = typeRegistry.getTypeIdFor(owner, true);
 				// Make a call to check if this field operation must be intercepted:
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mStaticFieldInterceptionRequired,
-						"(ILjava/lang/String;)Z", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 				Label l1 = new Label();
 				mv.visitJumpInsn(IFEQ, l1); // IF (false) GOTO l1
 				// top of heap will be the new value
@@ -1070,8 +951,9 @@ public class MethodInvokerRewriter {
 					// do more hoop jumping.
 
 					// Check on reloading having happened
+					String idsDescriptor = loadIds(classId);
 					mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeDynamicName,
-							"()Ljava/lang/Object;", false);
+							"(" + idsDescriptor + ")Ljava/lang/Object;", false);
 
 					// mv.visitInsn(DUP);
 
@@ -1199,10 +1081,10 @@ public class MethodInvokerRewriter {
 				// can run as before. If it is not null
 				// then it is the instance of the extracted interface that
 				// should be called instead.
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name + desc);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeStaticName,
-						"(ILjava/lang/String;)Ljava/lang/Object;", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Ljava/lang/Object;", false);
 
 				// 2. preserve a copy of the return value (new target)
 				mv.visitInsn(DUP);
@@ -1283,10 +1165,10 @@ public class MethodInvokerRewriter {
 					final String desc,
 					boolean hasParams, ReturnType returnType, int classId, final boolean itf) {
 				// 1. call 'boolean iicheck(classId|methodId, methodName+methodDescriptor)' to see if this needs interception
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name + desc);
 				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeInterfaceName,
-						"(ILjava/lang/String;)Z", false);
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 
 				// 3. if false, do what was going to be done anyway
 				Label l1 = new Label();
@@ -1341,10 +1223,10 @@ public class MethodInvokerRewriter {
 					boolean hasParams, ReturnType returnType, int classId, final boolean itf) {
 				// 1. call icheck(classId|methodId, methodName+methodDescriptor)
 				// to see if this needs interception
-				mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+				String idsDescriptor = loadIds(classId);
 				mv.visitLdcInsn(name + desc);
-				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeVirtualName, "(ILjava/lang/String;)Z",
-						false);
+				mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeVirtualName,
+						"(" + idsDescriptor + "Ljava/lang/String;)Z", false);
 				// Return value is the extracted interface to call if there is a
 				// change and it can't be called directly
 
@@ -1428,10 +1310,10 @@ public class MethodInvokerRewriter {
 
 					// Ask for the relevant dispatcher to call:
 
-					mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+					String idsDescriptor = loadIds(classId);
 					mv.visitLdcInsn(desc);
 					mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForConstructorName,
-							"(ILjava/lang/String;)Ljava/lang/Object;", false);
+							"(" + idsDescriptor + "Ljava/lang/String;)Ljava/lang/Object;", false);
 					mv.visitInsn(DUP);
 
 					// 3. Was it null?
@@ -1555,10 +1437,10 @@ public class MethodInvokerRewriter {
 				else {
 
 					// 1. call ispcheck(classId|methodId, methodName+methodDescriptor) to see if this needs interception
-					mv.visitLdcInsn(Utils.toCombined(typeRegistry.getId(), classId));
+					String idsDescriptor = loadIds(classId);
 					mv.visitLdcInsn(name + desc);
 					mv.visitMethodInsn(INVOKESTATIC, tRegistryType, mChangedForInvokeSpecialName,
-							descriptorChangedForInvokeSpecialName, false);
+							"(" + idsDescriptor + "Ljava/lang/String;)" + lDynamicallyDispatchable, false);
 
 					// Return value is the dispatcher instance to call if there is a
 					// change such that it can't be called directly - the method we called
@@ -16,6 +16,8 @@
 
 package org.springsource.loaded;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Manages a mapping of names to numbers. The same number anywhere means the same name. This means that if some type
  * a/b/C has been loaded in two places (by different classloaders), it will have the same number in both. Only one of
@@ -28,11 +30,13 @@ package org.springsource.loaded;
  */
 public class NameRegistry {
 
-	private static int nextTypeId = 0;
+	private static final int INITIAL_SIZE = 128;
+
+	private static volatile int nextTypeId = 0;
 
-	private static int size = 10;
+	private static volatile String[] allocatedIds = new String[INITIAL_SIZE];
 
-	private static String[] allocatedIds = new String[size];
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
 
 	private NameRegistry() {
 	}
@@ -40,10 +44,10 @@ public class NameRegistry {
 	/**
 	 * Typically used by tests to ensure it looks like a fresh NameRegistry is being used.
 	 */
-	public static void reset() {
+	public static synchronized void reset() {
+		ids.clear();
+		allocatedIds = new String[INITIAL_SIZE];
 		nextTypeId = 0;
-		size = 10;
-		allocatedIds = new String[size];
 	}
 
 	/**
@@ -55,20 +59,15 @@ public class NameRegistry {
 	 */
 	public static int getIdFor(String slashedClassName) {
 		assert Asserts.assertNotDotted(slashedClassName);
-		for (int i = 0; i < nextTypeId; i++) {
-			if (allocatedIds[i].equals(slashedClassName)) {
-				return i;
-			}
-		}
-		return -1;
+		Integer id = ids.get(slashedClassName);
+		return id == null ? -1 : id;
 	}
 
 	/**
-	 * Return the id for a particular type. This method will not allocate a new id if the type is unknown, it will
-	 * return -1 instead.
+	 * Return the id for a particular type. This method will allocate a new id if the type is unknown.
 	 * 
 	 * @param slashedClassName a type name like java/lang/String
-	 * @return the allocated ID for that type or -1 if unknown
+	 * @return the allocated ID for that type
 	 */
 	public static int getIdOrAllocateFor(String slashedClassName) {
 		int id = getIdFor(slashedClassName);
@@ -83,21 +82,24 @@ public class NameRegistry {
 		int id = getIdFor(slashedClassName);
 		if (id == -1) {
 			id = nextTypeId;
-			if (nextTypeId >= allocatedIds.length) {
-				size = size + 10;
-				// need to make more room
-				String[] newAllocatedIds = new String[size];
-				System.arraycopy(allocatedIds, 0, newAllocatedIds, 0, allocatedIds.length);
-				allocatedIds = newAllocatedIds;
+			String[] currentIds = allocatedIds;
+			if (id >= currentIds.length) {
+				// need to make more room, grow geometrically so allocation is amortized constant time
+				String[] newAllocatedIds = new String[currentIds.length * 2];
+				System.arraycopy(currentIds, 0, newAllocatedIds, 0, currentIds.length);
+				currentIds = newAllocatedIds;
 			}
-			allocatedIds[id] = slashedClassName;
-			nextTypeId++; // increase at the end once the value has been set in the array
+			currentIds[id] = slashedClassName;
+			allocatedIds = currentIds;
+			nextTypeId = id + 1; // increase at the end once the value has been set in the array
+			ids.put(slashedClassName, id);
 		}
 		return id;
 	}
 
 	public static String getTypenameById(int typeId) {
-		if (typeId > size) {
+		// read nextTypeId first, any array seen after that will include the entry
+		if (typeId < 0 || typeId >= nextTypeId) {
 			return null;
 		}
 		return allocatedIds[typeId];
@@ -33,6 +33,13 @@ public class PrefixTypePattern extends TypePattern {
 		this.pattern = pattern.substring(0, pattern.length() - 2); // chop off the '.*'
 	}
 
+	/**
+	 * @return the prefix that matching names start with
+	 */
+	String getPrefix() {
+		return pattern;
+	}
+
 	protected boolean internalMatches(String input) {
 		boolean b = input.startsWith(pattern);
 		return b;
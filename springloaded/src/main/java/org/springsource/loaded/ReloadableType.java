@@ -16,6 +16,7 @@
 
 package org.springsource.loaded;
 
+import java.lang.instrument.ClassDefinition;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
@@ -35,12 +36,16 @@ import java.util.logging.Logger;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.springsource.loaded.MethodInvokerRewriter.DontRewriteException;
 import org.springsource.loaded.MethodInvokerRewriter.RewriteClassAdaptor;
+import org.springsource.loaded.TypeDiffComputer.MethodSummary;
 import org.springsource.loaded.agent.CglibPluginCapturing;
+import org.springsource.loaded.agent.SpringLoadedAgent;
 import org.springsource.loaded.infra.UsedByGeneratedCode;
 import org.springsource.loaded.ri.Invoker;
 import org.springsource.loaded.ri.JavaMethodCache;
+import org.springsource.loaded.ri.ReflectionSnapshot;
 
 /**
  * Represents a type that has been processed such that it can be reloaded at runtime.
@@ -68,15 +73,31 @@ public class ReloadableType {
 	/** The id number for this reloadable type, allocated by the registry */
 	private int id;
 
-	/** The bytes for the original implementation as first loaded, before rewriting */
+	/**
+	 * The bytes for the original implementation as first loaded (or as last redefined in place, see
+	 * {@link GlobalConfiguration#redefineBodyChanges}), before rewriting. Null if the bytes have been compacted (see
+	 * {@link GlobalConfiguration#compactBytes}), use {@link #getBytesInitial()}.
+	 */
 	public byte[] bytesInitial;
 
-	/** The bytes for the original implementation as first loaded, after rewriting */
+	/**
+	 * The bytes for the original implementation as first loaded, after rewriting. Null if the bytes have been
+	 * compacted, use {@link #getBytesLoaded()}.
+	 */
 	public byte[] bytesLoaded;
 
-	/** The bytes for the interface representing the first loaded implementation */
+	/**
+	 * The bytes for the interface representing the first loaded implementation. Null if the bytes are being compacted
+	 * (they are not kept, they can be extracted again from the original bytes), use {@link #getInterfaceBytes()}.
+	 */
 	public final byte[] interfaceBytes;
 
+	private CompactBytes compactBytesInitial;
+
+	private CompactBytes compactBytesLoaded;
+
+	private int interfaceBytesLength;
+
 	/** A type descriptor describing the shape of the type at first load */
 	public TypeDescriptor typedescriptor;
 
@@ -112,8 +133,32 @@ public class ReloadableType {
 	// Indicates that this type or one in its hierarchy (super/sub) has been reloaded
 	private final static int IMPACTED_BY_RELOAD = 0x0002;
 
+	// Indicates the type was loaded as it is, without rewriting (see GlobalConfiguration.deferInstrumentation)
+	private final static int IS_DEFERRED = 0x0004;
+
 	private int bits;
 
+	/** Decisions made by the invocation guards for calls to methods on this type, created on first use */
+	private volatile InvocationCache invocationCache;
+
+	/**
+	 * Incremented each time this type is affected by a reload (of itself or of a type in its hierarchy) and when the
+	 * ChildClassLoader of the registry is discarded
+	 */
+	private volatile int reloadGeneration;
+
+	/**
+	 * Bootstrapped call sites for the emulated invokedynamic instructions in this type, indexed by bsmId. Entries are
+	 * built and checked by {@link org.springsource.loaded.support.Java8}, the array is discarded on reload.
+	 */
+	private volatile Object[] invokedynamicCallSites;
+
+	// computed on the first reload
+	private Map<String, MethodSummary> initialMethodSummaries;
+
+	/** Slots for the values of this type's fields when they are held by a state manager, created on first use */
+	private FieldLayout fieldLayout;
+
 	/** Cache of the invokers used to answer getDeclaredMethods() call made on this type */
 	public List<Invoker> invokersCache_getDeclaredMethods = null;
 
@@ -156,6 +201,16 @@ public class ReloadableType {
 	 */
 	public ReloadableType(String dottedtypename, byte[] initialBytes, int id, TypeRegistry typeRegistry,
 			TypeDescriptor typeDescriptor) {
+		this(dottedtypename, new ClassReader(initialBytes), initialBytes, id, typeRegistry, typeDescriptor);
+	}
+
+	/**
+	 * Construct a new ReloadableType, reusing a reader already created for the initial bytecode (typically to extract
+	 * the type descriptor). The interface for the type is extracted during the same pass over the bytes that rewrites
+	 * them, rather than in a pass of its own.
+	 */
+	ReloadableType(String dottedtypename, ClassReader initialReader, byte[] initialBytes, int id,
+			TypeRegistry typeRegistry, TypeDescriptor typeDescriptor) {
 		if (GlobalConfiguration.assertsMode) {
 			Utils.assertDotted(dottedtypename);
 		}
@@ -168,10 +223,82 @@ public class ReloadableType {
 		this.slashedtypename = dottedtypename.replace('.', '/');
 		this.typedescriptor = (typeDescriptor != null ? typeDescriptor
 				: typeRegistry.getExtractor().extract(
-						initialBytes, true));
-		this.interfaceBytes = InterfaceExtractor.extract(initialBytes, typeRegistry, this.typedescriptor);
+						initialReader, true));
 		this.bytesInitial = initialBytes;
-		rewriteCallSitesAndDefine();
+		byte[] extractedInterfaceBytes = null;
+		if (GlobalConfiguration.deferInstrumentation) {
+			// Only recorded, the class is loaded as it is
+			bits |= IS_DEFERRED;
+			this.bytesLoaded = initialBytes;
+		}
+		else {
+			InterfaceExtractor.ExtractorVisitor interfaceExtractor = new InterfaceExtractor(typeRegistry).new ExtractorVisitor(
+					this.typedescriptor);
+			this.bytesLoaded = MergedRewrite.rewrite(this, initialReader, interfaceExtractor);
+			if (interfaceExtractor.isComplete()) {
+				extractedInterfaceBytes = interfaceExtractor.getBytes();
+			}
+			else {
+				// the rewrite was abandoned part way through, extract it separately
+				extractedInterfaceBytes = InterfaceExtractor.extract(initialBytes, typeRegistry, this.typedescriptor);
+			}
+		}
+		if (GlobalConfiguration.compactBytes) {
+			this.interfaceBytes = null;
+			this.interfaceBytesLength = (extractedInterfaceBytes == null ? 0 : extractedInterfaceBytes.length);
+		}
+		else {
+			this.interfaceBytes = extractedInterfaceBytes;
+		}
+		define(extractedInterfaceBytes);
+		if (GlobalConfiguration.compactBytes && typeRegistry.shouldDefineClasses()) {
+			// Otherwise the loaded bytes are still to be handed to the JVM, see getBytesToDefine()
+			compactBytes();
+		}
+	}
+
+	/**
+	 * Once the type is defined the bytes held for it are rarely needed, so keep the original and rewritten bytes
+	 * compressed (the interface bytes are not kept at all, they can be extracted again from the original bytes).
+	 */
+	private synchronized void compactBytes() {
+		if (bytesInitial == null) {
+			// already compacted
+			return;
+		}
+		compactBytesInitial = CompactBytes.of(bytesInitial);
+		compactBytesLoaded = (bytesLoaded == bytesInitial ? compactBytesInitial : CompactBytes.of(bytesLoaded));
+		bytesInitial = null;
+		bytesLoaded = null;
+	}
+
+	/**
+	 * Used by the agent to get the rewritten bytes to give to the JVM when the class is first loaded. If the bytes are
+	 * being compacted (see {@link GlobalConfiguration#compactBytes}) they are compacted now the class is about to be
+	 * defined, rather than when the type was created, so they are not compressed and then immediately expanded.
+	 *
+	 * @return the rewritten bytes for the original implementation
+	 */
+	public byte[] getBytesToDefine() {
+		byte[] bytes = getBytesLoaded();
+		if (GlobalConfiguration.compactBytes) {
+			compactBytes();
+		}
+		return bytes;
+	}
+
+	private synchronized void setBytes(byte[] initialBytes, byte[] loadedBytes) {
+		if (GlobalConfiguration.compactBytes) {
+			compactBytesInitial = CompactBytes.of(initialBytes);
+			compactBytesLoaded = (loadedBytes == initialBytes ? compactBytesInitial : CompactBytes.of(loadedBytes));
+			bytesInitial = null;
+			bytesLoaded = null;
+		}
+		else {
+			bytesInitial = initialBytes;
+			bytesLoaded = loadedBytes;
+		}
+		initialMethodSummaries = null;
 	}
 
 	private ReloadableType() {
@@ -289,7 +416,7 @@ public class ReloadableType {
 	}
 
 	public boolean simulateReload() {
-		return loadNewVersion("0", bytesInitial);
+		return loadNewVersion("0", getBytesInitial());
 	}
 
 	public boolean loadNewVersion(String versionsuffix, byte[] newbytedata, boolean shouldRerunStaticInitializer) {
@@ -308,7 +435,60 @@ public class ReloadableType {
 	 * @return true if the reload succeeded
 	 */
 	public boolean loadNewVersion(String versionsuffix, byte[] newbytedata) {
-		javaMethodCache = null;
+		NewVersion newVersion = prepareNewVersion(versionsuffix, newbytedata);
+		if (newVersion == null) {
+			return false;
+		}
+		if (redefineBodyChanges(newVersion)) {
+			return true;
+		}
+		if (isDeferred()) {
+			unableToReloadDeferred(newVersion);
+			return false;
+		}
+		generateNewVersion(newVersion);
+		typeRegistry.checkChildClassLoader(this);
+		newVersion.liveVersion.define();
+		publishNewVersion(newVersion);
+		completeNewVersion(newVersion);
+		// dump(newbytedata);
+		return true;
+	}
+
+	/**
+	 * A new version of this type on its way to becoming the live version. Reloading is split into steps so that
+	 * {@link TypeRegistry#loadNewVersions(ReloadableType[], String[], byte[][])} can check every type in a batch before
+	 * generating anything, generate them all in parallel, and only then make them live one after another.
+	 */
+	static class NewVersion {
+
+		final ReloadableType rtype;
+
+		final String versionsuffix;
+
+		final byte[] bytes;
+
+		final TypeDelta typeDelta;
+
+		CurrentLiveVersion liveVersion;
+
+		NewVersion(ReloadableType rtype, String versionsuffix, byte[] bytes, TypeDelta typeDelta) {
+			this.rtype = rtype;
+			this.versionsuffix = versionsuffix;
+			this.bytes = bytes;
+			this.typeDelta = typeDelta;
+		}
+	}
+
+	/**
+	 * First step of a reload: retransform the new bytes and, if verifying reloads, check the change is one that can be
+	 * reloaded.
+	 *
+	 * @param versionsuffix the String suffix to append to classnames being created for the reloaded class
+	 * @param newbytedata the class bytes for the new version of this class
+	 * @return the new version to generate, or null if it cannot be reloaded
+	 */
+	NewVersion prepareNewVersion(String versionsuffix, byte[] newbytedata) {
 		if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
 			log.info("Loading new version of " + slashedtypename + ", identifying suffix " + versionsuffix
 					+ ", new data length is " + newbytedata.length + "bytes");
@@ -321,7 +501,7 @@ public class ReloadableType {
 		boolean reload = true;
 		TypeDelta td = null;
 		if (GlobalConfiguration.verifyReloads) {
-			td = TypeDiffComputer.computeDifferences(bytesInitial, newbytedata);
+			td = TypeDiffComputer.computeDifferences(getBytesInitial(), newbytedata);
 			if (td.hasAnythingChanged()) {
 				// need to check it isn't anything we do not yet support
 				boolean cantReload = false;
@@ -408,56 +588,132 @@ public class ReloadableType {
 				}
 			}
 		}
-		if (reload) {
+		return reload ? new NewVersion(this, versionsuffix, newbytedata, td) : null;
+	}
 
-			TypeRegistry.nothingReloaded = false;
-			invokersCache_getDeclaredMethods = null; // will no longer use this cache
-			if (GlobalConfiguration.reloadMessages) {
-				// Only put out the message when running in limit mode (under tc Server)
-				System.out.println("Reloading: Loading new version of " + this.dottedtypename + " [" + versionsuffix
-						+ "]");
-			}
-			if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
-				log.info("Reloading: Loading new version of " + this.dottedtypename + " [" + versionsuffix + "]");
-			}
-			liveVersion = new CurrentLiveVersion(this, versionsuffix, newbytedata);
-			liveVersion.setTypeDelta(td);
-			typeRegistry.reloadableTypeDescriptorCache.put(this.slashedtypename, liveVersion.typeDescriptor);
-			if (typedescriptor.isGroovyType()) {
-				fixupGroovyType();
-			}
-			if (typedescriptor.isEnum()) {
-				resetEnumRelatedState();
-			}
-			if (typeRegistry.shouldRerunStaticInitializer(this, versionsuffix) || typedescriptor.isEnum()) {
-				liveVersion.staticInitializedNeedsRerunningOnDefine = true;
-				liveVersion.runStaticInitializer();
-			}
-			else {
-				liveVersion.staticInitializedNeedsRerunningOnDefine = false;
-			}
-			// For performance:
-			// - tag the relevant types that may have been affected by this being reloaded, i.e. this type and any reloadable types in the same hierachy
-			tagAsAffectedByReload();
-			tagSupertypesAsAffectedByReload();
-			tagSubtypesAsAffectedByReload();
-			//ReflectionUtils has a cache that needs cleared
-			try {
-				Class<?> reflecutionUtil = Class.forName("org.springframework.util.ReflectionUtils");
-				// java.lang.NoSuchMethodException: org.codehaus.groovy.reflection.ClassInfo$LazyCachedClassRef.clear()
-				Method clearMethod = reflecutionUtil.getMethod("clearCache");//DeclaredMethod("clear");
-				clearMethod.invoke(null);
-			} catch(Exception e3) {
-			    //this better not blow up in my face
+	/**
+	 * Reload a new version that only changes the code inside existing methods by redefining the class in place,
+	 * rather than building a dispatcher and executor for it (see {@link GlobalConfiguration#redefineBodyChanges}).
+	 * The new bytes become the original bytes for the type, so the guards in it keep running its own code and later
+	 * reloads are compared against them. Not used once the type has a live version, or when the static initializer is
+	 * to be rerun. This is the only way a type whose instrumentation was deferred can be reloaded.
+	 *
+	 * @return true if the class was redefined, false if the new version must be generated and published as usual
+	 */
+	boolean redefineBodyChanges(NewVersion newVersion) {
+		if (!(GlobalConfiguration.redefineBodyChanges || isDeferred()) || liveVersion != null || newVersion.typeDelta == null
+				|| !newVersion.typeDelta.haveOnlyMethodBodiesChanged() || typedescriptor.isGroovyType()
+				|| !SpringLoadedAgent.isInstrumentationAvailable()
+				|| typeRegistry.shouldRerunStaticInitializer(this, newVersion.versionsuffix)) {
+			return false;
+		}
+		String versionsuffix = newVersion.versionsuffix;
+		byte[] oldInitial = getBytesInitial();
+		byte[] oldLoaded = getBytesLoaded();
+		byte[] newLoaded = isDeferred() ? newVersion.bytes : MergedRewrite.rewrite(this, newVersion.bytes);
+		// The agent answers the redefinition with the loaded bytes, so they must be replaced first
+		setBytes(newVersion.bytes, newLoaded);
+		try {
+			SpringLoadedAgent.getInstrumentation().redefineClasses(new ClassDefinition(getClazz(), newLoaded));
+		}
+		catch (Throwable t) {
+			setBytes(oldInitial, oldLoaded);
+			if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+				log.info("Unable to redefine " + this.dottedtypename + " in place, loading new version instead: " + t);
 			}
+			return false;
+		}
+		if (GlobalConfiguration.reloadMessages) {
+			System.out.println("Reloading: Redefined " + this.dottedtypename + " [" + versionsuffix + "]");
+		}
+		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
+			log.info("Reloading: Redefined " + this.dottedtypename + " [" + versionsuffix + "]");
+		}
+		typeRegistry.fireReloadEvent(this, versionsuffix);
+		return true;
+	}
 
-			typeRegistry.fireReloadEvent(this, versionsuffix);
+	/**
+	 * A type whose instrumentation was deferred has none of the members a dispatcher relies on, and they cannot be
+	 * added to a loaded class, so a new version that could not be redefined in place cannot be reloaded at all.
+	 */
+	void unableToReloadDeferred(NewVersion newVersion) {
+		if (newVersion.typeDelta == null
+				|| !typeRegistry.fireUnableToReloadEvent(this, newVersion.typeDelta, newVersion.versionsuffix)) {
+			System.out.println("Spring Loaded: Cannot reload new version of " + this.dottedtypename + "\n"
+					+ " Reason: Instrumentation was deferred (deferInstrumentation=true), only changes to the code"
+					+ " inside existing methods can be reloaded\n");
+		}
+	}
+
+	/**
+	 * Second step of a reload: build the dispatcher and executor for the new version. Nothing is defined and this type
+	 * is not changed, so this may run alongside generation for other types and a failure here leaves the type as it
+	 * was.
+	 */
+	void generateNewVersion(NewVersion newVersion) {
+		newVersion.liveVersion = new CurrentLiveVersion(this, newVersion.versionsuffix, newVersion.bytes, false);
+		newVersion.liveVersion.setTypeDelta(newVersion.typeDelta);
+	}
 
-			reloadProxiesIfNecessary(versionsuffix);
+	/**
+	 * Third step of a reload: make the (defined) new version the live version and tag the types affected.
+	 */
+	void publishNewVersion(NewVersion newVersion) {
+		TypeRegistry.nothingReloaded = false;
+		javaMethodCache = null;
+		invokedynamicCallSites = null;
+		invokersCache_getDeclaredMethods = null; // will no longer use this cache
+		String versionsuffix = newVersion.versionsuffix;
+		if (GlobalConfiguration.reloadMessages) {
+			// Only put out the message when running in limit mode (under tc Server)
+			System.out.println("Reloading: Loading new version of " + this.dottedtypename + " [" + versionsuffix
+					+ "]");
+		}
+		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
+			log.info("Reloading: Loading new version of " + this.dottedtypename + " [" + versionsuffix + "]");
 		}
+		liveVersion = newVersion.liveVersion;
+		typeRegistry.reloadableTypeDescriptorCache.put(this.slashedtypename, liveVersion.typeDescriptor);
+		// For performance (this must happen before any new code runs, the guards only consider affected types):
+		// - tag the relevant types that may have been affected by this being reloaded, i.e. this type and any reloadable types in the same hierachy
+		tagAsAffectedByReload();
+		tagSupertypesAsAffectedByReload();
+		tagSubtypesAsAffectedByReload();
+	}
 
-		// dump(newbytedata);
-		return reload;
+	/**
+	 * Last step of a reload, once the new version is live: fix up related state, rerun the static initializer if
+	 * required and tell the listeners.
+	 */
+	void completeNewVersion(NewVersion newVersion) {
+		String versionsuffix = newVersion.versionsuffix;
+		if (typedescriptor.isGroovyType()) {
+			fixupGroovyType();
+		}
+		if (typedescriptor.isEnum()) {
+			resetEnumRelatedState();
+		}
+		if (typeRegistry.shouldRerunStaticInitializer(this, versionsuffix) || typedescriptor.isEnum()) {
+			liveVersion.staticInitializedNeedsRerunningOnDefine = true;
+			liveVersion.runStaticInitializer();
+		}
+		else {
+			liveVersion.staticInitializedNeedsRerunningOnDefine = false;
+		}
+		//ReflectionUtils has a cache that needs cleared
+		try {
+			Class<?> reflecutionUtil = Class.forName("org.springframework.util.ReflectionUtils");
+			// java.lang.NoSuchMethodException: org.codehaus.groovy.reflection.ClassInfo$LazyCachedClassRef.clear()
+			Method clearMethod = reflecutionUtil.getMethod("clearCache");//DeclaredMethod("clear");
+			clearMethod.invoke(null);
+		} catch(Exception e3) {
+		    //this better not blow up in my face
+		}
+
+		typeRegistry.fireReloadEvent(this, versionsuffix);
+
+		reloadProxiesIfNecessary(versionsuffix);
 	}
 
 	private void tagSupertypesAsAffectedByReload() {
@@ -495,12 +751,43 @@ public class ReloadableType {
 		bits |= IMPACTED_BY_RELOAD;
 		invokersCache_getMethods = null;
 		invokersCache_getDeclaredMethods = null;
+		synchronized (this) {
+			reloadGeneration++;
+		}
 	}
 
 	public boolean isAffectedByReload() {
 		return (bits & IMPACTED_BY_RELOAD) != 0;
 	}
 
+	/**
+	 * The reload generation changes each time something happens that may change how calls to this type must be
+	 * handled. Decisions cached in the {@link InvocationCache} are only valid for the generation in which they were
+	 * computed.
+	 *
+	 * @return the current reload generation for this type, 0 if it has never been affected by a reload or by the
+	 *         discarding of the registry's ChildClassLoader
+	 */
+	public int getReloadGeneration() {
+		return reloadGeneration;
+	}
+
+	/**
+	 * @return the cache of invocation guard decisions for this type, see {@link InvocationCache}
+	 */
+	public InvocationCache getInvocationCache() {
+		InvocationCache cache = invocationCache;
+		if (cache == null) {
+			synchronized (this) {
+				cache = invocationCache;
+				if (cache == null) {
+					cache = invocationCache = new InvocationCache();
+				}
+			}
+		}
+		return cache;
+	}
+
 
 	// TODO cache these field objects to avoid digging for them every time?
 	/**
@@ -534,11 +821,11 @@ public class ReloadableType {
 		String slashedName = getSlashedName();
 		if (slashedName.contains("BookController")) {
 			GlobalConfiguration.dumpFolder = "/Users/aclement/Downloads/grails8344";
-			Utils.dump(slashedName + "O", bytesInitial);
-			Utils.dump(slashedName + "L", bytesLoaded);
+			Utils.dump(slashedName + "O", getBytesInitial());
+			Utils.dump(slashedName + "L", getBytesLoaded());
 			Utils.dump(slashedName + "N", newbytedata);
-			Utils.dump(slashedName + "E", liveVersion.executor);
-			Utils.dump(slashedName + "D", liveVersion.dispatcher);
+			Utils.dump(slashedName + "E", liveVersion.getExecutorBytes());
+			Utils.dump(slashedName + "D", liveVersion.getDispatcherBytes());
 		}
 	}
 
@@ -822,32 +1109,37 @@ public class ReloadableType {
 	}
 
 	public byte[] getLatestDispatcherBytes() {
-		return (liveVersion == null ? null : liveVersion.dispatcher);
+		return (liveVersion == null ? null : liveVersion.getDispatcherBytes());
 	}
 
 	public Class<?> getLatestDispatcherClass() {
-		return (liveVersion == null ? null : liveVersion.dispatcherClass);
+		return (liveVersion == null ? null : liveVersion.getDispatcherClass());
 	}
 
 	public byte[] getInterfaceBytes() {
-		return interfaceBytes;
+		byte[] bytes = interfaceBytes;
+		if (bytes == null) {
+			// compacted, extract it again
+			bytes = InterfaceExtractor.extract(getBytesInitial(), typeRegistry, typedescriptor);
+		}
+		return bytes;
 	}
 
 	public Object getLatestDispatcherInstance() {
-		return (liveVersion == null ? null : liveVersion.dispatcherInstance);
+		return (liveVersion == null ? null : liveVersion.getDispatcherInstance());
 	}
 
 	public Object getLatestDispatcherInstance(boolean b) {
 		if (b) {
 			// TODO architect a real way to cause this to happen with a sensible name
 			if (liveVersion == null) {
-				loadNewVersion("0", bytesInitial);
+				loadNewVersion("0", getBytesInitial());
 			}
-			return liveVersion.dispatcherInstance;
+			return liveVersion.getDispatcherInstance();
 		}
 		else {
 			// Same as getLatestDispatcherInstance()
-			return (liveVersion == null ? null : liveVersion.dispatcherInstance);
+			return (liveVersion == null ? null : liveVersion.getDispatcherInstance());
 		}
 	}
 
@@ -856,15 +1148,50 @@ public class ReloadableType {
 	}
 
 	public byte[] getBytesInitial() {
-		return bytesInitial;
+		byte[] bytes = bytesInitial;
+		return (bytes != null ? bytes : compactBytesInitial.expand());
 	}
 
 	public byte[] getBytesLoaded() {
-		return bytesLoaded;
+		byte[] bytes = bytesLoaded;
+		return (bytes != null ? bytes : compactBytesLoaded.expand());
 	}
 
 	public byte[] getLatestExecutorBytes() {
-		return (liveVersion == null ? null : liveVersion.executor);
+		return (liveVersion == null ? null : liveVersion.getExecutorBytes());
+	}
+
+	/**
+	 * Add up the bytes held for this type and its live version, for {@link TypeRegistry#getFootprintReport()}.
+	 *
+	 * @param held for each kind of bytes (initial, loaded, interface, dispatcher, executor) the number of bytes held
+	 * @param full for each kind of bytes the size they would be if not compacted
+	 */
+	void addFootprint(long[] held, long[] full) {
+		addFootprint(held, full, 0, bytesInitial, compactBytesInitial);
+		addFootprint(held, full, 1, bytesLoaded, compactBytesLoaded);
+		if (interfaceBytes != null) {
+			held[2] += interfaceBytes.length;
+			full[2] += interfaceBytes.length;
+		}
+		else {
+			full[2] += interfaceBytesLength;
+		}
+		CurrentLiveVersion clv = liveVersion;
+		if (clv != null) {
+			clv.addFootprint(held, full);
+		}
+	}
+
+	static void addFootprint(long[] held, long[] full, int kind, byte[] bytes, CompactBytes compactBytes) {
+		if (bytes != null) {
+			held[kind] += bytes.length;
+			full[kind] += bytes.length;
+		}
+		else if (compactBytes != null) {
+			held[kind] += compactBytes.getCompressedLength();
+			full[kind] += compactBytes.getLength();
+		}
 	}
 
 	public Class<?> getLatestExecutorClass() {
@@ -951,12 +1278,15 @@ public class ReloadableType {
 		//		this.bytesLoaded = TypeRewriter.rewrite(this, rewrittenCallSites);
 
 		// This call replaces the two steps above (should do less bytecode unpacking/repacking)
-		this.bytesLoaded = MergedRewrite.rewrite(this, bytesInitial);
+		this.bytesLoaded = MergedRewrite.rewrite(this, new ClassReader(getBytesInitial()), null);
+		define(getInterfaceBytes());
+	}
 
+	private void define(byte[] interfaceBytes) {
 		// TODO needs configurable debug that dumps loaded byte data at this point
 		// Define the permanent piece
 		// DEFAULT METHODS - remove the if
-		if (!typedescriptor.isInterface()) {
+		if (!typedescriptor.isInterface() && !isDeferred()) {
 			typeRegistry.defineClass(Utils.getInterfaceName(dottedtypename), interfaceBytes, true);
 		}
 		if (typeRegistry.shouldDefineClasses()) {
@@ -971,28 +1301,73 @@ public class ReloadableType {
 	}
 
 	/**
-	 * This merges the two steps: method invocation rewriting and type rewriting
+	 * This merges the two steps: method invocation rewriting and type rewriting. Interface extraction can also be done
+	 * as part of the same pass.
 	 */
 	static class MergedRewrite {
 
 		public static byte[] rewrite(ReloadableType rtype, byte[] bytes) {
+			return rewrite(rtype, new ClassReader(bytes), null);
+		}
+
+		/**
+		 * @param rtype the type being rewritten
+		 * @param fileReader reader for the bytes of the type
+		 * @param interfaceExtractor if not null, also fed the class as it is visited (it will not be complete if the
+		 *            rewrite is abandoned)
+		 * @return the rewritten bytes, or the original bytes if they should not be rewritten
+		 */
+		static byte[] rewrite(ReloadableType rtype, ClassReader fileReader,
+				InterfaceExtractor.ExtractorVisitor interfaceExtractor) {
 			try {
-				ClassReader fileReader = new ClassReader(bytes);
-				ChainedAdapters classAdaptor = new ChainedAdapters(rtype);
+				ChainedAdapters classAdaptor = new ChainedAdapters(rtype, interfaceExtractor);
 				fileReader.accept(classAdaptor, 0);
 				return classAdaptor.getBytes();
 			}
 			catch (DontRewriteException drex) {
-				return bytes;
+				return fileReader.b;
 			}
 		}
 
 		static class ChainedAdapters extends ClassVisitor implements Constants {
 
+			private final ClassVisitor interfaceExtractor;
+
 			public ChainedAdapters(ReloadableType rtype) {
+				this(rtype, null);
+			}
+
+			public ChainedAdapters(ReloadableType rtype, ClassVisitor interfaceExtractor) {
 				super(ASM5, new RewriteClassAdaptor(rtype.typeRegistry, new TypeRewriter.RewriteClassAdaptor(rtype,
 						new ClassWriter(
 								ClassWriter.COMPUTE_MAXS))));
+				this.interfaceExtractor = interfaceExtractor;
+			}
+
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName,
+					String[] interfaces) {
+				if (interfaceExtractor != null) {
+					interfaceExtractor.visit(version, access, name, signature, superName, interfaces);
+				}
+				super.visit(version, access, name, signature, superName, interfaces);
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+					String[] exceptions) {
+				if (interfaceExtractor != null) {
+					interfaceExtractor.visitMethod(access, name, desc, signature, exceptions);
+				}
+				return super.visitMethod(access, name, desc, signature, exceptions);
+			}
+
+			@Override
+			public void visitEnd() {
+				if (interfaceExtractor != null) {
+					interfaceExtractor.visitEnd();
+				}
+				super.visitEnd();
 			}
 
 			public byte[] getBytes() {
@@ -1015,7 +1390,14 @@ public class ReloadableType {
 		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
 			log.log(Level.INFO, "fetchLatest called on " + this.getName());
 		}
-		return liveVersion.dispatcherInstance;
+		return liveVersion.getDispatcherInstance();
+	}
+
+	/**
+	 * @return true if this type was loaded without being rewritten, see {@link GlobalConfiguration#deferInstrumentation}
+	 */
+	public boolean isDeferred() {
+		return (bits & IS_DEFERRED) != 0;
 	}
 
 	public boolean hasBeenReloaded() {
@@ -1056,38 +1438,30 @@ public class ReloadableType {
 	 * Check if the specified method is different to the original form from the type as loaded.
 	 *
 	 * @param methodId the ID of the method currently executing
-	 * @return 0 if the method cannot have changed. 1 if the method has changed. 2 if the method has been deleted in a
-	 *         new version.
+	 * @return 0 if the method has not changed (so the original code can run). 1 if the method has changed. 2 if the
+	 *         method has been deleted in a new version.
 	 */
 	@UsedByGeneratedCode
 	public int changed(int methodId) {
-		if (liveVersion == null) {
+		CurrentLiveVersion clv = liveVersion;
+		if (clv == null) {
 			return 0;
 		}
-		else {
-			int retval = 0;
-			// First check if a new version of the type was loaded:
-			if (liveVersion != null) {
-				if (GlobalConfiguration.logging && log.isLoggable(Level.FINER)) {
-					log.info("MethodId=" + methodId + " method=" + typedescriptor.getMethod(methodId));
-				}
-				// TODO [perf] could be faster to return the executor here and if one isn't returned, do the original thing.
-				// the reason for 3 ret vals here is due to catching methods that have been deleted early - lets let the
-				// executor throw that exception, then this side we don't have to worry so much and instead of 2 check calls (changed then getexecutor) we can
-				// just have one.  Will increase speed and reduce generated code (speeding up loadtime!)
-				// was the method deleted?
-				boolean b = liveVersion.incrementalTypeDescriptor.hasBeenDeleted(methodId);
-				if (b) {
-					retval = 2;
-				}
-				else {
-					retval = liveVersion.incrementalTypeDescriptor.mustUseExecutorForThisMethod(methodId) ? 1 : 0;
-				}
-			}
-			// TODO could be extremely fine grained and consider individual method changes
-			//		return memberIntMap.get(methodId).hasChanged();
-			return retval;
+		if (GlobalConfiguration.logging && log.isLoggable(Level.FINER)) {
+			log.info("MethodId=" + methodId + " method=" + typedescriptor.getMethod(methodId));
 		}
+		// worked out when the version was loaded
+		return clv.methodStates[methodId];
+	}
+
+	/**
+	 * @return the summaries of the methods in the type as originally loaded, see TypeDiffComputer.summarizeMethods()
+	 */
+	synchronized Map<String, MethodSummary> getInitialMethodSummaries() {
+		if (initialMethodSummaries == null) {
+			initialMethodSummaries = TypeDiffComputer.summarizeMethods(getBytesInitial());
+		}
+		return initialMethodSummaries;
 	}
 
 	@UsedByGeneratedCode
@@ -1135,7 +1509,7 @@ public class ReloadableType {
 			// Problem we need to solve is that callers to getDispatcher() have an object and a name+descriptor and they
 			// want the dispatcher that can answer their question
 		}
-		dd = (__DynamicallyDispatchable) liveVersion.dispatcherInstance;
+		dd = (__DynamicallyDispatchable) liveVersion.getDispatcherInstance();
 		return dd;
 	}
 
@@ -1154,9 +1528,9 @@ public class ReloadableType {
 			// its a ctor, no dynamic lookup required
 			if (!hasBeenReloaded()) {
 				// TODO evaluate whether this is too naughty.  it forces creation of the dispatcher so we can return it
-				loadNewVersion("0", bytesInitial);
+				loadNewVersion("0", getBytesInitial());
 			}
-			return (__DynamicallyDispatchable) getLiveVersion().dispatcherInstance;
+			return (__DynamicallyDispatchable) getLiveVersion().getDispatcherInstance();
 		}
 		String dynamicTypeName = instance.getClass().getName();
 		// iterate up the hierarchy finding the first person that can satisfy that method from a virtual dispatch perspective
@@ -1214,9 +1588,9 @@ public class ReloadableType {
 
 		if (!rtype.hasBeenReloaded()) {
 			// TODO evaluate whether this is too naughty.  it forces creation of the dispatcher so we can return it
-			rtype.loadNewVersion("0", rtype.bytesInitial);
+			rtype.loadNewVersion("0", rtype.getBytesInitial());
 		}
-		return (__DynamicallyDispatchable) rtype.getLiveVersion().dispatcherInstance;
+		return (__DynamicallyDispatchable) rtype.getLiveVersion().getDispatcherInstance();
 	}
 
 	/**
@@ -1380,10 +1754,22 @@ public class ReloadableType {
 
 	private ReferenceQueue<Object> liveInstancesRQ = new ReferenceQueue<Object>();
 
-	// reflective state caching
-	public Reference<Method[]> jlClassGetDeclaredMethods_cache = new WeakReference<Method[]>(null);
+	// reflective state caching, replaced when the reload generation changes
+	private volatile ReflectionSnapshot reflectionSnapshot;
 
-	public Reference<Method[]> jlClassGetMethods_cache = new WeakReference<Method[]>(null);
+	/**
+	 * @return the reflective members computed for this type in the current reload generation, see
+	 *         {@link ReflectionSnapshot}
+	 */
+	public ReflectionSnapshot getReflectionSnapshot() {
+		int generation = reloadGeneration;
+		ReflectionSnapshot snapshot = reflectionSnapshot;
+		if (snapshot == null || snapshot.getGeneration() != generation) {
+			snapshot = new ReflectionSnapshot(generation);
+			reflectionSnapshot = snapshot;
+		}
+		return snapshot;
+	}
 
 	/**
 	 * Attempt to set the value of a field on an instance to the specified value. Simply locate the field, which returns
@@ -1594,10 +1980,75 @@ public class ReloadableType {
 
 	public void reloadMostRecentDispatcherAndExecutor() {
 		if (hasBeenReloaded()) {
+			// cached call sites refer to the executor being replaced
+			invokedynamicCallSites = null;
 			this.liveVersion.reloadMostRecentDispatcherAndExecutor();
 		}
 	}
 
+	/**
+	 * Arrange for the most recent version to be defined again, in the current ChildClassLoader of the registry, the next
+	 * time it is used.
+	 *
+	 * @return the number of classes that will be defined again
+	 */
+	int redefineOnNextUse() {
+		CurrentLiveVersion clv = liveVersion;
+		if (clv != null) {
+			clv.discardClasses();
+		}
+		// Nothing cached for this type may go on using, and so keeping alive, classes in the discarded loader. Bumping
+		// the generation drops the cached reflective invokers and members, any cached decisions are just recomputed.
+		invokedynamicCallSites = null;
+		synchronized (this) {
+			reloadGeneration++;
+		}
+		if (clv == null) {
+			return 0;
+		}
+		// interfaces only have an executor
+		return clv.typeDescriptor.isInterface() ? 1 : 2;
+	}
+
+	void clearInvokedynamicCallSites() {
+		invokedynamicCallSites = null;
+	}
+
+	synchronized FieldLayout getFieldLayout() {
+		if (fieldLayout == null) {
+			fieldLayout = new FieldLayout(slashedtypename);
+		}
+		return fieldLayout;
+	}
+
+	/**
+	 * @param bsmId the bootstrap method id of an invokedynamic site in this type
+	 * @return the call site cached for it by {@link #cacheInvokedynamicCallSite(int, Object)}, or null
+	 */
+	public Object getInvokedynamicCallSite(int bsmId) {
+		Object[] callSites = invokedynamicCallSites;
+		if (callSites == null || bsmId >= callSites.length) {
+			return null;
+		}
+		return callSites[bsmId];
+	}
+
+	/**
+	 * Remember the call site bootstrapped for an invokedynamic site in this type, until the type is next reloaded.
+	 *
+	 * @param bsmId the bootstrap method id of the invokedynamic site
+	 * @param callSite the call site
+	 */
+	public synchronized void cacheInvokedynamicCallSite(int bsmId, Object callSite) {
+		Object[] callSites = invokedynamicCallSites;
+		Object[] newCallSites = new Object[callSites == null ? bsmId + 1 : Math.max(callSites.length, bsmId + 1)];
+		if (callSites != null) {
+			System.arraycopy(callSites, 0, newCallSites, 0, callSites.length);
+		}
+		newCallSites[bsmId] = callSite;
+		invokedynamicCallSites = newCallSites;
+	}
+
 	@SuppressWarnings("unchecked")
 	public void trackLiveInstance(Object instance) {
 		while (true) {
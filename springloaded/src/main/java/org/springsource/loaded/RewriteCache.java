@@ -0,0 +1,494 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * The on disk cache of rewritten bytecode used by the {@link MethodInvokerRewriter}. Everything lives in a single
+ * pack file (&lt;cacheDir&gt;/.slcache/rewrites.pack) that starts with a header recording the pack format, the
+ * version of the agent that wrote it and a generation number, followed by one record per type seen:
+ *
+ * <pre>
+ * byte[20] SHA-1 of the original bytecode
+ * byte     1 if the type was modified, 0 if it was left alone
+ * UTF      slashed name of the type (informational)
+ * int      length of the modified bytecode (0 if unmodified)
+ * byte[]   the modified bytecode
+ * </pre>
+ *
+ * Entries are keyed on the digest of the original bytes, not the name and length, so a changed class never picks up
+ * the rewritten form of a previous version. On startup the pack is memory mapped and the record headers are walked to
+ * build an index of digest to offset, a cache hit is then a single bulk copy out of the mapping. If the header does not
+ * match the running agent the cache is rebuilt.
+ * <p>
+ * Several JVMs may share one cacheDir. The pack is only read under a shared lock and only appended to under an
+ * exclusive lock on &lt;cacheDir&gt;/.slcache/rewrites.lock. Records are self describing, so the pack is its own
+ * append-only index: before appending, a writer picks up any records other processes added since it last looked and
+ * cuts off a partial record left behind by a process that died mid-write. When the pack grows past the configured
+ * size ({@link GlobalConfiguration#cacheMaxSizeMB}) it is compacted into a new file, keeping the most recently used
+ * entries, which is then renamed over the old one and given a new generation number so other processes know to
+ * re-index.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class RewriteCache {
+
+	private static final int MAGIC = 0x534c504b; // SLPK
+
+	static final int FORMAT_VERSION = 4;
+
+	static final String PACK_FILE_NAME = "rewrites.pack";
+
+	static final String LOCK_FILE_NAME = "rewrites.lock";
+
+	private static final int DIGEST_LENGTH = 20;
+
+	private static final Random generations = new Random();
+
+	private final File packFile;
+
+	private final File lockFile;
+
+	private final String agentVersion;
+
+	private final long maxSize;
+
+	/**
+	 * Offsets into the pack, keyed by the digest of the original bytecode. Kept in access order so that when the pack
+	 * is compacted the least recently used entries are the ones dropped.
+	 */
+	private final LinkedHashMap<ByteBuffer, Entry> index = new LinkedHashMap<ByteBuffer, Entry>(1024, 0.75f, true);
+
+	/**
+	 * Read-only mapping of the pack as it was when last indexed, null if there was nothing to map.
+	 */
+	private MappedByteBuffer pack;
+
+	/**
+	 * Generation of the pack that has been indexed, 0 if none.
+	 */
+	private long generation;
+
+	/**
+	 * End of the last complete record that has been indexed, where the next record will be appended.
+	 */
+	private long packLength;
+
+	/**
+	 * Describes one record in the pack.
+	 */
+	public static class Entry {
+
+		public final boolean modified;
+
+		final int recordOffset;
+
+		final int offset;
+
+		final int length;
+
+		Entry(boolean modified, int recordOffset, int offset, int length) {
+			this.modified = modified;
+			this.recordOffset = recordOffset;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		int recordLength() {
+			return offset + length - recordOffset;
+		}
+	}
+
+	/**
+	 * @param cacheDir the .slcache directory
+	 * @param agentVersion version of the running agent, a pack written by a different version is discarded
+	 */
+	public RewriteCache(File cacheDir, String agentVersion) {
+		this(cacheDir, agentVersion, GlobalConfiguration.cacheMaxSizeMB * 1024L * 1024L);
+	}
+
+	/**
+	 * @param cacheDir the .slcache directory
+	 * @param agentVersion version of the running agent, a pack written by a different version is discarded
+	 * @param maxSize size in bytes beyond which the pack is compacted
+	 */
+	public RewriteCache(File cacheDir, String agentVersion, long maxSize) {
+		this.packFile = new File(cacheDir, PACK_FILE_NAME);
+		this.lockFile = new File(cacheDir, LOCK_FILE_NAME);
+		this.agentVersion = agentVersion;
+		this.maxSize = Math.min(maxSize, Integer.MAX_VALUE);
+		load();
+	}
+
+	/**
+	 * @return the version string of the running agent, taken from the jar manifest when there is one
+	 */
+	public static String getAgentVersion() {
+		Package p = RewriteCache.class.getPackage();
+		String version = (p == null ? null : p.getImplementationVersion());
+		return version == null ? "dev" : version;
+	}
+
+	/**
+	 * Compute the key under which the given bytecode is cached.
+	 *
+	 * @param bytes original bytecode for a type
+	 * @return the SHA-1 digest of the bytes
+	 */
+	public static byte[] digest(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(bytes);
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException("SHA-1 digest unavailable", nsae);
+		}
+	}
+
+	/**
+	 * @param digest digest of the original bytecode, see {@link #digest(byte[])}
+	 * @return the entry for that bytecode or null if it has not been seen before
+	 */
+	public synchronized Entry find(byte[] digest) {
+		return index.get(ByteBuffer.wrap(digest));
+	}
+
+	/**
+	 * Retrieve the modified bytecode for an entry.
+	 *
+	 * @param entry an entry returned by {@link #find(byte[])} for a modified type
+	 * @return the modified bytecode, or null if the entry was added during this run and is not in the mapping
+	 */
+	public synchronized byte[] read(Entry entry) {
+		if (pack == null || (entry.offset + entry.length) > pack.limit()) {
+			return null;
+		}
+		byte[] bytes = new byte[entry.length];
+		ByteBuffer slice = pack.duplicate();
+		slice.position(entry.offset);
+		slice.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Append a record to the pack. Nothing is done if an entry for the digest already exists, either in this process
+	 * or added by another process sharing the cache.
+	 *
+	 * @param digest digest of the original bytecode
+	 * @param slashedClassName the name of the type
+	 * @param modifiedBytes the modified bytecode or null if the type was not modified
+	 */
+	public synchronized void put(byte[] digest, String slashedClassName, byte[] modifiedBytes) {
+		ByteBuffer key = ByteBuffer.wrap(digest);
+		if (index.containsKey(key)) {
+			return;
+		}
+		boolean modified = modifiedBytes != null;
+		int length = modified ? modifiedBytes.length : 0;
+		byte[] record;
+		try {
+			// Build the whole record so it goes to disk in one write
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(DIGEST_LENGTH + 64 + length);
+			DataOutputStream dos = new DataOutputStream(baos);
+			dos.write(digest);
+			dos.writeBoolean(modified);
+			dos.writeUTF(slashedClassName == null ? "" : slashedClassName);
+			dos.writeInt(length);
+			if (modified) {
+				dos.write(modifiedBytes);
+			}
+			dos.flush();
+			record = baos.toByteArray();
+		}
+		catch (IOException ioe) {
+			ioe.printStackTrace();
+			return;
+		}
+		FileLock lock = null;
+		try {
+			lock = lock(false);
+			RandomAccessFile raf = new RandomAccessFile(packFile, "rw");
+			try {
+				refresh(raf, true);
+				if (index.containsKey(key)) {
+					// another process got there first
+					return;
+				}
+				raf.seek(packLength);
+				raf.write(record);
+				int recordOffset = (int) packLength;
+				packLength += record.length;
+				index.put(key, new Entry(modified, recordOffset, recordOffset + record.length - length, length));
+				if (packLength > maxSize) {
+					compact(raf);
+				}
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		finally {
+			release(lock);
+		}
+	}
+
+	/**
+	 * @return number of types known to the cache
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return the length of the pack file as last seen by this process
+	 */
+	public synchronized long getPackLength() {
+		return packLength;
+	}
+
+	private void load() {
+		if (!packFile.exists()) {
+			return;
+		}
+		FileLock lock = null;
+		try {
+			lock = lock(true);
+			RandomAccessFile raf = new RandomAccessFile(packFile, "r");
+			try {
+				refresh(raf, false);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException ioe) {
+			if (GlobalConfiguration.verboseMode) {
+				System.out.println("SpringLoaded: unable to read rewrite cache " + packFile + ": " + ioe);
+			}
+			index.clear();
+			pack = null;
+			packLength = 0;
+			generation = 0;
+		}
+		finally {
+			release(lock);
+		}
+	}
+
+	/**
+	 * Bring the index up to date with the pack on disk. Must be called holding the lock.
+	 *
+	 * @param raf the open pack file
+	 * @param writable if true this process holds the exclusive lock and may start a new pack (if the existing one is
+	 *            unusable) and cut off any partial record at the end
+	 */
+	private void refresh(RandomAccessFile raf, boolean writable) throws IOException {
+		long headerEnd = -1;
+		long fileGeneration = 0;
+		try {
+			raf.seek(0);
+			if (raf.readInt() == MAGIC && raf.readInt() == FORMAT_VERSION && agentVersion.equals(raf.readUTF())) {
+				fileGeneration = raf.readLong();
+				headerEnd = raf.getFilePointer();
+			}
+		}
+		catch (EOFException eofe) {
+			// empty or short pack
+		}
+		if (headerEnd == -1) {
+			// a new pack or one written by a different agent version
+			index.clear();
+			pack = null;
+			generation = 0;
+			packLength = 0;
+			if (writable) {
+				raf.setLength(0);
+				writeHeader(raf, generations.nextLong() | 1);
+			}
+			return;
+		}
+		if (fileGeneration != generation) {
+			// first look at this pack, or it has been compacted by another process
+			index.clear();
+			pack = null;
+			generation = fileGeneration;
+			packLength = headerEnd;
+		}
+		long fileLength = raf.length();
+		if (fileLength == packLength) {
+			return;
+		}
+		if (fileLength > Integer.MAX_VALUE) {
+			throw new IOException("rewrite cache is too large");
+		}
+		pack = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+		pack.position((int) packLength);
+		while (pack.hasRemaining() && readRecord()) {
+			packLength = pack.position();
+		}
+		if (packLength < fileLength && writable) {
+			// partial record from a process that died while writing it
+			raf.setLength(packLength);
+		}
+	}
+
+	private void writeHeader(RandomAccessFile raf, long newGeneration) throws IOException {
+		raf.writeInt(MAGIC);
+		raf.writeInt(FORMAT_VERSION);
+		raf.writeUTF(agentVersion);
+		raf.writeLong(newGeneration);
+		generation = newGeneration;
+		packLength = raf.getFilePointer();
+	}
+
+	private boolean readRecord() {
+		try {
+			int recordOffset = pack.position();
+			byte[] digest = new byte[DIGEST_LENGTH];
+			pack.get(digest);
+			boolean modified = pack.get() != 0;
+			int nameLength = pack.getShort() & 0xffff;
+			pack.position(pack.position() + nameLength);
+			int length = pack.getInt();
+			int offset = pack.position();
+			if (length < 0 || length > pack.remaining()) {
+				return false;
+			}
+			pack.position(offset + length);
+			index.put(ByteBuffer.wrap(digest), new Entry(modified, recordOffset, offset, length));
+			return true;
+		}
+		catch (RuntimeException re) {
+			// BufferUnderflowException or IllegalArgumentException from a partial record
+			return false;
+		}
+	}
+
+	/**
+	 * Write the most recently used entries that fit in three quarters of the maximum size to a new pack and rename it
+	 * over the current one. Must be called holding the exclusive lock with an up to date index.
+	 */
+	private void compact(RandomAccessFile raf) throws IOException {
+		long budget = maxSize - (maxSize >> 2);
+		List<Map.Entry<ByteBuffer, Entry>> keep = new ArrayList<Map.Entry<ByteBuffer, Entry>>();
+		List<Map.Entry<ByteBuffer, Entry>> all = new ArrayList<Map.Entry<ByteBuffer, Entry>>(index.entrySet());
+		// most recently used entries are at the end
+		for (int i = all.size() - 1; i >= 0; i--) {
+			int recordLength = all.get(i).getValue().recordLength();
+			if (recordLength > budget) {
+				break;
+			}
+			budget -= recordLength;
+			keep.add(all.get(i));
+		}
+		File compacted = new File(packFile.getParentFile(), PACK_FILE_NAME + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+		LinkedHashMap<ByteBuffer, Entry> newIndex = new LinkedHashMap<ByteBuffer, Entry>(1024, 0.75f, true);
+		long newGeneration = generations.nextLong() | 1;
+		try {
+			out.setLength(0);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(agentVersion);
+			out.writeLong(newGeneration);
+			// least recently used first, so the access order survives the compaction
+			for (int i = keep.size() - 1; i >= 0; i--) {
+				Entry entry = keep.get(i).getValue();
+				byte[] record = new byte[entry.recordLength()];
+				raf.seek(entry.recordOffset);
+				raf.readFully(record);
+				int recordOffset = (int) out.getFilePointer();
+				out.write(record);
+				newIndex.put(keep.get(i).getKey(), new Entry(entry.modified, recordOffset, recordOffset
+						+ (entry.offset - entry.recordOffset), entry.length));
+			}
+		}
+		finally {
+			out.close();
+		}
+		if (!compacted.renameTo(packFile)) {
+			// Windows will not rename over an existing file
+			packFile.delete();
+			if (!compacted.renameTo(packFile)) {
+				throw new IOException("unable to replace " + packFile);
+			}
+		}
+		if (GlobalConfiguration.verboseMode) {
+			System.out.println("SpringLoaded: compacted rewrite cache from " + index.size() + " to " + newIndex.size()
+					+ " entries");
+		}
+		index.clear();
+		index.putAll(newIndex);
+		generation = newGeneration;
+		RandomAccessFile in = new RandomAccessFile(packFile, "r");
+		try {
+			packLength = in.length();
+			pack = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, packLength);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private FileLock lock(boolean shared) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+		try {
+			return raf.getChannel().lock(0L, Long.MAX_VALUE, shared);
+		}
+		catch (IOException ioe) {
+			raf.close();
+			throw ioe;
+		}
+		catch (RuntimeException re) {
+			raf.close();
+			throw re;
+		}
+	}
+
+	private void release(FileLock lock) {
+		if (lock != null) {
+			try {
+				lock.release();
+				lock.channel().close();
+			}
+			catch (IOException ioe) {
+				// nothing to do, closing the channel drops the lock anyway
+			}
+		}
+	}
+}
@@ -17,26 +17,22 @@
 package org.springsource.loaded;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Static State Manager. The top most class in every hierarchy of reloadable types gets a static state manager instance.
  * The static state manager is used to find the value of a field for a particular object instance. The FieldAccessor is
- * added to the top most type in a reloadable hierarchy and is accessible to all the subtypes. It maintains a map from
- * type names to fields (name/value pairs).
+ * added to the top most type in a reloadable hierarchy and is accessible to all the subtypes. It holds field values for
+ * each type, in the slots given out by the {@link FieldLayout} of that type.
  * 
  * @author Andy Clement
  * @since 0.5.0
  */
-public class SSMgr {
+public class SSMgr extends FieldValues {
 
 	private static Logger log = Logger.getLogger(SSMgr.class.getName());
 
-	Map<String, Map<String, Object>> values = new HashMap<String, Map<String, Object>>();
-
 	public Object getValue(ReloadableType rtype, String name) throws IllegalAccessException {
 		//		System.out.println("SSMgr.getValue(rtype=" + rtype + ",name=" + name + ")");
 		Object result = null;
@@ -62,37 +58,26 @@ public class SSMgr {
 						+ fieldmember.getName());
 			}
 			String declaringTypeName = fieldmember.getDeclaringTypeName();
-			Map<String, Object> typeLevelValues = values.get(declaringTypeName);
-			boolean knownField = false;
-			if (typeLevelValues != null) {
-				knownField = typeLevelValues.containsKey(name);
-			}
-			if (knownField) {
-				result = typeLevelValues.get(name);
-			}
+			FieldLayout.Slot slot = FieldLayout.slotFor(rtype.getTypeRegistry(), fieldmember);
+			result = get(slot);
 			// If a field has been deleted it may 'reveal' a field in a supertype.  The revealed field may be in a type
-			// not yet dealt with.  In this case typeLevelValues may be null (type not seen before) or the typelevelValues
-			// may not have heard of our field name.  In these cases we need to go and find the field and 'relocate' it
-			// into our map, where it will be processed from now on.
+			// not yet dealt with.  In this case no value will be held for it yet.  We need to go and find the field and
+			// 'relocate' it into our values, where it will be processed from now on.
 
 			// These revealed fields are not necessarily in the original form of the type so cannot always be accessed via reflection
-			if (typeLevelValues == null || !knownField) {
+			if (result == NOT_HELD) {
 				// TODO lookup performance?
 				FieldMember fieldOnOriginalType = rtype.getTypeRegistry().getReloadableType(declaringTypeName).getTypeDescriptor()
 						.getField(name);
 
 				if (fieldOnOriginalType != null) {
-					// Copy that field into the map... where it is going to live from now on
+					// Copy that field into the values... where it is going to live from now on
 					ReloadableType rt = rtype.getTypeRegistry().getReloadableType(fieldmember.getDeclaringTypeName());
 					try {
 						Field f = rt.getClazz().getDeclaredField(name);
 						f.setAccessible(true);
 						result = f.get(null);
-						if (typeLevelValues == null) {
-							typeLevelValues = new HashMap<String, Object>();
-							values.put(declaringTypeName, typeLevelValues);
-						}
-						typeLevelValues.put(name, result);
+						set(slot, result);
 					}
 					catch (Exception e) {
 						throw new IllegalStateException("Unexpectedly unable to access field " + name + " on type "
@@ -102,11 +87,7 @@ public class SSMgr {
 				else {
 					// The field was not on the original type.  As not seen before, can default it
 					result = Utils.toResultCheckIfNull(null, fieldmember.getDescriptor());
-					if (typeLevelValues == null) {
-						typeLevelValues = new HashMap<String, Object>();
-						values.put(declaringTypeName, typeLevelValues);
-					}
-					typeLevelValues.put(name, result);
+					set(slot, result);
 					return result;
 				}
 			}
@@ -114,7 +95,7 @@ public class SSMgr {
 			if (result != null) {
 				result = Utils.checkCompatibility(rtype.getTypeRegistry(), result, fieldmember.getDescriptor());
 				if (result == null) {
-					typeLevelValues.remove(fieldmember.getName());
+					remove(slot);
 				}
 			}
 			result = Utils.toResultCheckIfNull(result, fieldmember.getDescriptor());
@@ -152,32 +133,11 @@ public class SSMgr {
 				throw new IncompatibleClassChangeError("Expected static field " + rtype.dottedtypename + "."
 						+ fieldmember.getName());
 			}
-			Map<String, Object> typeValues = values.get(fieldmember.getDeclaringTypeName());//rtype.getName());
-			if (typeValues == null) {
-				typeValues = new HashMap<String, Object>();
-				values.put(fieldmember.getDeclaringTypeName(), typeValues);
-			}
-			typeValues.put(name, newValue);
+			set(FieldLayout.slotFor(rtype.getTypeRegistry(), fieldmember), newValue);
 		}
 	}
 
-	private String valuesToString() {
-		StringBuilder s = new StringBuilder();
-		s.append("FieldAccessor:" + System.identityHashCode(this)).append("\n");
-		for (Map.Entry<String, Map<String, Object>> entry : values.entrySet()) {
-			s.append("Type " + entry.getKey()).append("\n");
-			for (Map.Entry<String, Object> entry2 : entry.getValue().entrySet()) {
-				s.append(" " + entry2.getKey() + "=" + entry2.getValue()).append("\n");
-			}
-		}
-		return s.toString();
-	}
-
 	public String toString() {
-		return valuesToString();
-	}
-
-	Map<String, Map<String, Object>> getMap() {
-		return values;
+		return valuesToString("FieldAccessor:");
 	}
 }
@@ -272,6 +272,21 @@ public class TypeDelta {
 		return (changed & CHANGED_LOSTMETHODS) != 0;
 	}
 
+	/**
+	 * @return true if the only changes are to the code of existing methods, other than the static initializer
+	 */
+	public boolean haveOnlyMethodBodiesChanged() {
+		if ((changed & CHANGES) != CHANGED_CHANGEDMETHODS) {
+			return false;
+		}
+		for (MethodDelta md : changedMethods.values()) {
+			if (!md.hasOnlyCodeChanged() || md.name.equals("<clinit>")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public Map<String, FieldNode> getNewFields() {
 		return brandNewFields;
 	}
@@ -46,7 +46,18 @@ public class TypeDescriptorExtractor {
 	}
 
 	public TypeDescriptor extract(byte[] bytes, boolean isReloadableType) {
-		ClassReader fileReader = new ClassReader(bytes);
+		return extract(new ClassReader(bytes), isReloadableType);
+	}
+
+	/**
+	 * Extract a descriptor using a reader that the caller will go on to use for other passes over the same bytes, so
+	 * the bytes are only parsed into a reader once.
+	 *
+	 * @param fileReader reader for the class bytes
+	 * @param isReloadableType whether the type is reloadable
+	 * @return the type descriptor
+	 */
+	public TypeDescriptor extract(ClassReader fileReader, boolean isReloadableType) {
 		ExtractionVisitor extractionVisitor = new ExtractionVisitor(isReloadableType);
 		fileReader.accept(extractionVisitor, 0);
 		return extractionVisitor.getTypeDescriptor();
@@ -16,13 +16,23 @@
 
 package org.springsource.loaded;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -44,6 +54,7 @@ import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.MultiANewArrayInsnNode;
 import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
@@ -57,20 +68,17 @@ import org.objectweb.asm.tree.VarInsnNode;
 public class TypeDiffComputer implements Opcodes {
 
 	public static TypeDelta computeDifferences(byte[] oldbytes, byte[] newbytes) {
-		ClassNode oldClassNode = new ClassNode();
-		new ClassReader(oldbytes).accept(oldClassNode, 0);
-		ClassNode newClassNode = new ClassNode();
-		new ClassReader(newbytes).accept(newClassNode, 0);
-		TypeDelta delta = computeDelta(oldClassNode, newClassNode);
-		return delta;
-	}
-
-	private static TypeDelta computeDelta(ClassNode oldClassNode, ClassNode newClassNode) {
+		ClassReader oldReader = new ClassReader(oldbytes);
+		SummaryClassNode oldClassNode = new SummaryClassNode();
+		oldReader.accept(oldClassNode, 0);
+		ClassReader newReader = new ClassReader(newbytes);
+		SummaryClassNode newClassNode = new SummaryClassNode();
+		newReader.accept(newClassNode, 0);
 		// The type itself: (int version, int access, String name, String signature, String superName, String[] interfaces) {
 		TypeDelta td = new TypeDelta();
 		computeTypeDelta(oldClassNode, newClassNode, td);
 		computeFieldDelta(oldClassNode, newClassNode, td);
-		computeMethodDelta(oldClassNode, newClassNode, td);
+		computeMethodDelta(oldReader, oldClassNode, newReader, newClassNode, td);
 		// TODO delta: implement the rest of computeDelta.  These methods from ClassVisitor should help in knowing what is left to do:
 		//		public void visitSource(String source, String debug) {
 		//		public void visitOuterClass(String owner, String name, String desc) {
@@ -83,65 +91,115 @@ public class TypeDiffComputer implements Opcodes {
 		return td;
 	}
 
+	/**
+	 * @param bytes the bytes for a class
+	 * @return a summary (declaration and encoded code) of each method in the class, keyed by name+descriptor
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, MethodSummary> summarizeMethods(byte[] bytes) {
+		SummaryClassNode classNode = new SummaryClassNode();
+		new ClassReader(bytes).accept(classNode, 0);
+		Map<String, MethodSummary> summaries = new HashMap<String, MethodSummary>();
+		for (MethodNode method : (List<MethodNode>) classNode.methods) {
+			summaries.put(method.name + method.desc, (MethodSummary) method);
+		}
+		return summaries;
+	}
+
+	/**
+	 * Methods are matched on name+descriptor. Only the methods whose encoded code differs have their bodies parsed for an
+	 * instruction level comparison, the rest only need their declarations comparing.
+	 */
 	@SuppressWarnings("unchecked")
-	private static void computeMethodDelta(ClassNode oldClassNode, ClassNode newClassNode, TypeDelta td) {
+	private static void computeMethodDelta(ClassReader oldReader, SummaryClassNode oldClassNode,
+			ClassReader newReader, SummaryClassNode newClassNode, TypeDelta td) {
 		List<MethodNode> nMethods = newClassNode.methods;
-		List<MethodNode> oMethods = new ArrayList<MethodNode>(oldClassNode.methods);
+		Map<String, MethodNode> oMethods = new LinkedHashMap<String, MethodNode>();
+		for (MethodNode oMethod : (List<MethodNode>) oldClassNode.methods) {
+			oMethods.put(oMethod.name + oMethod.desc, oMethod);
+		}
+		Set<String> codeChanged = null;
 
 		// Going through the new methods and comparing them to the old
 		if (nMethods != null) {
 			for (MethodNode nMethod : nMethods) {
-				MethodNode found = null;
-				for (MethodNode oMethod : oMethods) {
-					if (oMethod.name.equals(nMethod.name) && oMethod.desc.equals(nMethod.desc)) { // TODO modifiers compared?
-						found = oMethod;
-						computeAnyMethodDifferences(oMethod, nMethod, td);
-					}
-				}
-				if (found == null) {
+				String key = nMethod.name + nMethod.desc;
+				MethodSummary oMethod = (MethodSummary) oMethods.remove(key); // TODO modifiers compared?
+				if (oMethod == null) {
 					td.addNewMethod(nMethod);
 				}
+				else if (oMethod.sameCode((MethodSummary) nMethod)) {
+					// The instruction lists are empty so only the declarations are compared
+					computeAnyMethodDifferences(oMethod, nMethod, td);
+				}
 				else {
-					oMethods.remove(found);
+					if (codeChanged == null) {
+						codeChanged = new HashSet<String>();
+					}
+					codeChanged.add(key);
 				}
 			}
 		}
-		for (MethodNode lostMethod : oMethods) {
+		for (MethodNode lostMethod : oMethods.values()) {
 			td.addLostMethod(lostMethod);
 		}
+		if (codeChanged != null) {
+			Map<String, MethodNode> oBodies = parseMethods(oldReader, codeChanged);
+			Map<String, MethodNode> nBodies = parseMethods(newReader, codeChanged);
+			for (String key : codeChanged) {
+				computeAnyMethodDifferences(oBodies.get(key), nBodies.get(key), td);
+			}
+		}
+	}
+
+	/**
+	 * Parse the full bodies of some of the methods in a class. The reader skips the bodies of the others.
+	 */
+	private static Map<String, MethodNode> parseMethods(ClassReader reader, final Set<String> keys) {
+		final Map<String, MethodNode> methods = new HashMap<String, MethodNode>();
+		reader.accept(new ClassVisitor(ASM5) {
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+					String[] exceptions) {
+				String key = name + desc;
+				if (!keys.contains(key)) {
+					return null;
+				}
+				MethodNode method = new MethodNode(access, name, desc, signature, exceptions);
+				methods.put(key, method);
+				return method;
+			}
+		}, 0);
+		return methods;
 	}
 
 	@SuppressWarnings("unchecked")
 	private static void computeFieldDelta(ClassNode oldClassNode, ClassNode newClassNode, TypeDelta td) {
-		//		int oSize = oldClassNode.fields.size();
 		int nSize = newClassNode.fields.size();
 
-		// Take a copy as we are going to delete entries in the next loop
-		List<FieldNode> oFields = new ArrayList<FieldNode>(oldClassNode.fields);
+		// Index by name, entries are deleted as they are matched in the next loop
+		Map<String, FieldNode> oFields = new LinkedHashMap<String, FieldNode>();
+		for (FieldNode oField : (List<FieldNode>) oldClassNode.fields) {
+			oFields.put(oField.name, oField);
+		}
 
 		// Going through the new fields comparing them to the old
 		for (int n = 0; n < nSize; n++) {
 			FieldNode nField = (FieldNode) newClassNode.fields.get(n);
-			FieldNode found = null;
-			for (FieldNode oField : oFields) {
-				if (oField.name.equals(nField.name)) {
-					// found it!
-					found = oField;
-					// is it exactly the same?
-					computeAnyFieldDifferences(oField, nField, td);
-				}
-			}
+			FieldNode found = oFields.remove(nField.name);
 			if (found == null) {
 				// this is a new field
 				td.addNewField(nField);
 			}
 			else {
-				oFields.remove(found);
+				// is it exactly the same?
+				computeAnyFieldDifferences(found, nField, td);
 			}
 		}
 
 		// Those left in oFields were not in nFields so have been removed!
-		for (FieldNode lostField : oFields) {
+		for (FieldNode lostField : oFields.values()) {
 			td.addLostField(lostField);
 		}
 	}
@@ -193,7 +251,6 @@ public class TypeDiffComputer implements Opcodes {
 			md.setInstructionsChanged(oInstructions.toArray(), nInstructions.toArray());
 		}
 		else {
-			// TODO Just interested in constructors right now - should add others
 			if (oMethod.name.charAt(0) == '<') {
 				String oInvokeSpecialDescriptor = null;
 				String nInvokeSpecialDescriptor = null;
@@ -255,7 +312,20 @@ public class TypeDiffComputer implements Opcodes {
 						md.setInvokespecialChanged(oInvokeSpecialDescriptor, nInvokeSpecialDescriptor);
 					}
 				}
-				if (codeChange) {
+				if (codeChange || !sameTryCatchBlocks(oMethod, nMethod)) {
+					md.setCodeChanged(oInstructions.toArray(), nInstructions.toArray());
+				}
+			}
+			else {
+				// Only the constructors need the detail, for other methods it is enough to know the code changed
+				boolean codeChange = false;
+				for (int i = 0, max = oInstructions.size(); i < max; i++) {
+					if (!sameInstruction(oInstructions.get(i), nInstructions.get(i))) {
+						codeChange = true;
+						break;
+					}
+				}
+				if (codeChange || !sameTryCatchBlocks(oMethod, nMethod)) {
 					md.setCodeChanged(oInstructions.toArray(), nInstructions.toArray());
 				}
 			}
@@ -267,6 +337,31 @@ public class TypeDiffComputer implements Opcodes {
 
 	}
 
+	/**
+	 * Compare the exception tables of two methods whose instructions are the same, the labels are compared by position.
+	 */
+	@SuppressWarnings("unchecked")
+	private static boolean sameTryCatchBlocks(MethodNode oMethod, MethodNode nMethod) {
+		List<TryCatchBlockNode> oBlocks = oMethod.tryCatchBlocks;
+		List<TryCatchBlockNode> nBlocks = nMethod.tryCatchBlocks;
+		if (oBlocks.size() != nBlocks.size()) {
+			return false;
+		}
+		for (int i = 0, max = oBlocks.size(); i < max; i++) {
+			TryCatchBlockNode o = oBlocks.get(i);
+			TryCatchBlockNode n = nBlocks.get(i);
+			if (o.type == null ? n.type != null : !o.type.equals(n.type)) {
+				return false;
+			}
+			if (oMethod.instructions.indexOf(o.start) != nMethod.instructions.indexOf(n.start)
+					|| oMethod.instructions.indexOf(o.end) != nMethod.instructions.indexOf(n.end)
+					|| oMethod.instructions.indexOf(o.handler) != nMethod.instructions.indexOf(n.handler)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private static boolean sameInstruction(AbstractInsnNode o, AbstractInsnNode n) {
 		if (o.getType() != o.getType() || o.getOpcode() != n.getOpcode()) {
 			return false;
@@ -728,4 +823,289 @@ public class TypeDiffComputer implements Opcodes {
 			}
 		}
 	}
+
+	/**
+	 * Collects the declarations in a class but rather than keeping the code for each method as an instruction list it
+	 * keeps a compact encoding of it, so the bodies of methods that have not changed never need to be built as
+	 * instruction lists.
+	 */
+	static class SummaryClassNode extends ClassNode {
+
+		SummaryClassNode() {
+			super(ASM5);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+			MethodSummary method = new MethodSummary(access, name, desc, signature, exceptions);
+			methods.add(method);
+			return new CodeEncoder(method);
+		}
+	}
+
+	/**
+	 * A method declaration without its instructions, with an exact encoding of the instructions and try/catch blocks
+	 * and a count of the nodes an instruction list for them would contain.
+	 */
+	static class MethodSummary extends MethodNode {
+
+		byte[] code;
+
+		int codeHash;
+
+		int codeSize;
+
+		MethodSummary(int access, String name, String desc, String signature, String[] exceptions) {
+			super(ASM5, access, name, desc, signature, exceptions);
+		}
+
+		boolean sameCode(MethodSummary other) {
+			return codeSize == other.codeSize && codeHash == other.codeHash && Arrays.equals(code, other.code);
+		}
+	}
+
+	/**
+	 * Encodes everything about the code of a method that the instruction level comparison looks at, and more (jump
+	 * targets, frames and the try/catch blocks), so that equal encodings mean the code is the same. Each call that
+	 * would add a node to an instruction list is counted.
+	 */
+	static class CodeEncoder extends MethodVisitor {
+
+		private final MethodSummary method;
+
+		private final Map<Label, Integer> labels = new HashMap<Label, Integer>();
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		private int size = 0;
+
+		CodeEncoder(MethodSummary method) {
+			super(ASM5);
+			this.method = method;
+		}
+
+		private void node(int type, int opcode) {
+			size++;
+			add(type);
+			add(opcode);
+		}
+
+		private void add(int i) {
+			try {
+				out.writeInt(i);
+			}
+			catch (IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+		}
+
+		private void add(Object o) {
+			try {
+				// each value is preceded by its kind, so that, for example, an int and a long constant with the same value differ
+				if (o == null) {
+					out.writeByte(0);
+				}
+				else if (o instanceof String) {
+					out.writeByte(1);
+					out.writeUTF((String) o);
+				}
+				else if (o instanceof Integer) {
+					out.writeByte(2);
+					out.writeInt(((Integer) o).intValue());
+				}
+				else if (o instanceof Long) {
+					out.writeByte(3);
+					out.writeLong(((Long) o).longValue());
+				}
+				else if (o instanceof Float) {
+					out.writeByte(4);
+					out.writeInt(Float.floatToRawIntBits(((Float) o).floatValue()));
+				}
+				else if (o instanceof Double) {
+					out.writeByte(5);
+					out.writeLong(Double.doubleToRawLongBits(((Double) o).doubleValue()));
+				}
+				else if (o instanceof Type) {
+					out.writeByte(6);
+					out.writeUTF(((Type) o).getDescriptor());
+				}
+				else if (o instanceof Handle) {
+					Handle handle = (Handle) o;
+					out.writeByte(7);
+					out.writeInt(handle.getTag());
+					out.writeUTF(handle.getOwner());
+					out.writeUTF(handle.getName());
+					out.writeUTF(handle.getDesc());
+				}
+				else if (o instanceof Label) {
+					out.writeByte(8);
+					add((Label) o);
+				}
+				else {
+					throw new IllegalStateException("Unexpected operand " + o.getClass().getName());
+				}
+			}
+			catch (IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+		}
+
+		private void add(Label label) {
+			Integer index = labels.get(label);
+			if (index == null) {
+				index = labels.size();
+				labels.put(label, index);
+			}
+			add(index.intValue());
+		}
+
+		private void add(int n, Object[] values) {
+			add(n);
+			for (int i = 0; i < n; i++) {
+				add(values[i]);
+			}
+		}
+
+		@Override
+		public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+			// frames are not compared at the instruction level (see sameFrameInsn()) but are included here, a
+			// difference in only the frames just means the instructions get compared
+			node(AbstractInsnNode.FRAME, -1);
+			add(type);
+			add(nLocal, local);
+			add(nStack, stack);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			node(AbstractInsnNode.INSN, opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			node(AbstractInsnNode.INT_INSN, opcode);
+			add(operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			node(AbstractInsnNode.VAR_INSN, opcode);
+			add(var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			node(AbstractInsnNode.TYPE_INSN, opcode);
+			add(type);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			node(AbstractInsnNode.FIELD_INSN, opcode);
+			add(owner);
+			add(name);
+			add(desc);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			node(AbstractInsnNode.METHOD_INSN, opcode);
+			add(owner);
+			add(name);
+			add(desc);
+			add(itf ? 1 : 0);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			node(AbstractInsnNode.INVOKE_DYNAMIC_INSN, INVOKEDYNAMIC);
+			add(name);
+			add(desc);
+			add(bsm);
+			add(bsmArgs.length, bsmArgs);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			node(AbstractInsnNode.JUMP_INSN, opcode);
+			add(label);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			node(AbstractInsnNode.LABEL, -1);
+			add(label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			node(AbstractInsnNode.LDC_INSN, LDC);
+			add(cst);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			node(AbstractInsnNode.IINC_INSN, IINC);
+			add(var);
+			add(increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... targets) {
+			node(AbstractInsnNode.TABLESWITCH_INSN, TABLESWITCH);
+			add(min);
+			add(max);
+			add(dflt);
+			add(targets.length);
+			for (Label target : targets) {
+				add(target);
+			}
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] targets) {
+			node(AbstractInsnNode.LOOKUPSWITCH_INSN, LOOKUPSWITCH);
+			add(dflt);
+			add(keys.length);
+			for (int key : keys) {
+				add(key);
+			}
+			for (Label target : targets) {
+				add(target);
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			node(AbstractInsnNode.MULTIANEWARRAY_INSN, MULTIANEWARRAY);
+			add(desc);
+			add(dims);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			// not an instruction, so not counted
+			add(-1);
+			add(start);
+			add(end);
+			add(handler);
+			add(type);
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			node(AbstractInsnNode.LINE, -1);
+			add(line);
+		}
+
+		@Override
+		public void visitEnd() {
+			method.code = bytes.toByteArray();
+			method.codeHash = Arrays.hashCode(method.code);
+			method.codeSize = size;
+		}
+	}
 }
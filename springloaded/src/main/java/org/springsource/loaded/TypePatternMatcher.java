@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of type patterns compiled so that a name can be checked against all of them in one pass over its characters.
+ * Prefix and exact patterns are held in a trie, a slashed name is walked through it treating '/' as '.' so it does not
+ * need converting to its dotted form first. Any other kind of pattern is checked as usual.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+final class TypePatternMatcher {
+
+	private final boolean matchesAny;
+
+	private final Node root = new Node();
+
+	private final List<TypePattern> others = new ArrayList<TypePattern>();
+
+	private final boolean empty;
+
+	private static class Node {
+
+		char[] keys = new char[0];
+
+		Node[] children = new Node[0];
+
+		// a prefix pattern ends here, any name reaching this node matches
+		boolean prefixEnd;
+
+		// an exact pattern ends here, a name ending at this node matches
+		boolean exactEnd;
+
+		Node child(char ch) {
+			char[] keys = this.keys;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == ch) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild(char ch) {
+			Node child = child(ch);
+			if (child == null) {
+				child = new Node();
+				int n = keys.length;
+				char[] newKeys = new char[n + 1];
+				Node[] newChildren = new Node[n + 1];
+				System.arraycopy(keys, 0, newKeys, 0, n);
+				System.arraycopy(children, 0, newChildren, 0, n);
+				newKeys[n] = ch;
+				newChildren[n] = child;
+				keys = newKeys;
+				children = newChildren;
+			}
+			return child;
+		}
+	}
+
+	TypePatternMatcher(List<TypePattern> patterns) {
+		boolean any = false;
+		for (TypePattern pattern : patterns) {
+			if (pattern instanceof AnyTypePattern) {
+				any = true;
+			}
+			else if (pattern instanceof PrefixTypePattern) {
+				add(((PrefixTypePattern) pattern).getPrefix()).prefixEnd = true;
+			}
+			else if (pattern instanceof ExactTypePattern) {
+				add(((ExactTypePattern) pattern).getName()).exactEnd = true;
+			}
+			else {
+				others.add(pattern);
+			}
+		}
+		this.matchesAny = any;
+		this.empty = patterns.isEmpty();
+	}
+
+	private Node add(String text) {
+		Node node = root;
+		for (int i = 0; i < text.length(); i++) {
+			node = node.addChild(text.charAt(i));
+		}
+		return node;
+	}
+
+	boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @param slashedName a type name, e.g. com/foo/Bar
+	 * @return true if any of the patterns match the name
+	 */
+	boolean matches(String slashedName) {
+		if (matchesAny) {
+			return true;
+		}
+		Node node = root;
+		int len = slashedName.length();
+		for (int i = 0; node != null; i++) {
+			if (node.prefixEnd) {
+				return true;
+			}
+			if (i == len) {
+				if (node.exactEnd) {
+					return true;
+				}
+				break;
+			}
+			char ch = slashedName.charAt(i);
+			node = node.child(ch == '/' ? '.' : ch);
+		}
+		if (!others.isEmpty()) {
+			String dottedName = slashedName.replace('/', '.');
+			for (TypePattern pattern : others) {
+				if (pattern.matches(dottedName)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -41,14 +41,21 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.WeakHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Handle;
-import org.springsource.loaded.agent.FileSystemWatcher;
+import org.springsource.loaded.ReloadableType.NewVersion;
 import org.springsource.loaded.agent.ReloadDecision;
 import org.springsource.loaded.agent.ReloadableFileChangeListener;
+import org.springsource.loaded.agent.SharedFileSystemWatcher;
 import org.springsource.loaded.agent.SpringLoadedPreProcessor;
 import org.springsource.loaded.infra.UsedByGeneratedCode;
 import org.springsource.loaded.support.Java8;
@@ -185,11 +192,25 @@ public class TypeRegistry {
 
 	private List<TypePattern> exclusionPatterns = null;
 
+	// The patterns above, compiled
+	private TypePatternMatcher inclusionMatcher;
+
+	private TypePatternMatcher exclusionMatcher;
+
+	/**
+	 * Decisions made by isReloadableTypeName(), once the plugins have had their say, so they are not repeated for every
+	 * reference to a type from the types being loaded. Forgotten when the configuration changes.
+	 */
+	private final Map<String, ReloadableTypeNameDecision> nameDecisions =
+			new ConcurrentHashMap<String, ReloadableTypeNameDecision>();
+
+	private static final int MAX_NAME_DECISIONS = 20000;
+
 	// TODO have one map with some kinds of entry that can clean themselves up? (weakly ref'd)
-	Map<String, TypeDescriptor> reloadableTypeDescriptorCache = new HashMap<String, TypeDescriptor>();
+	Map<String, TypeDescriptor> reloadableTypeDescriptorCache = new ConcurrentHashMap<String, TypeDescriptor>();
 
 	// TODO make into a soft hashmap?
-	Map<String, TypeDescriptor> typeDescriptorCache = new HashMap<String, TypeDescriptor>();
+	Map<String, TypeDescriptor> typeDescriptorCache = new ConcurrentHashMap<String, TypeDescriptor>();
 
 	Map<String, ReloadableType> cglibProxies = new HashMap<String, ReloadableType>();
 
@@ -454,6 +475,8 @@ public class TypeRegistry {
 
 	public void resetConfiguration() {
 		inclusionPatterns = null;
+		inclusionMatcher = null;
+		nameDecisions.clear();
 		nothingReloaded = true;
 	}
 
@@ -478,6 +501,9 @@ public class TypeRegistry {
 			log.finest("processPropertiesConfiguration: inclusions are set to '" + inclusionPatterns + "'");
 		}
 		exclusionPatterns = getPatternsFrom(configuration.getProperty(Key_Exclusions));
+		inclusionMatcher = new TypePatternMatcher(inclusionPatterns);
+		exclusionMatcher = new TypePatternMatcher(exclusionPatterns);
+		nameDecisions.clear();
 		String value = configuration.getProperty(Key_ReloadableRebase);
 		if (value != null) {
 			parseRebasePaths(value);
@@ -604,12 +630,10 @@ public class TypeRegistry {
 	private static Method getResourceMethod = null;
 
 	/**
-	 * If a type is found to come from a jar, we put the package name in here, which should save us looking for types in
-	 * the same package. This does pre-req that there are no split packages.
+	 * Once a type has been looked for on disk (or in a jar) the outcome is recorded against its package name, which
+	 * saves us looking for other types in the same package. This does pre-req that there are no split packages.
 	 */
-	private List<String> packagesFound = new CopyOnWriteArrayList<String>();
-
-	private List<String> packagesNotFound = new CopyOnWriteArrayList<String>();
+	private final Map<String, Boolean> packageDecisions = new ConcurrentHashMap<String, Boolean>();
 
 
 	public static enum CouldBeReloadableDecision {
@@ -698,17 +722,10 @@ public class TypeRegistry {
 		String packageName = lastSlashPos == -1 ? null : slashedName.substring(0, lastSlashPos);
 		if (packageName != null && !GlobalConfiguration.allowSplitPackages && usePackageNameDecisionCache) {
 			// is it something we already know about?
-			for (String foundPackageName : packagesFound) {
-				if (packageName.equals(foundPackageName)) {
-					//					System.out.println("fast accept " + slashedName);
-					return CouldBeReloadableDecision.Yes_PackageCache;
-				}
-			}
-			for (String notfoundPackageName : packagesNotFound) {
-				if (packageName.equals(notfoundPackageName)) {
-					//					System.out.println("fast reject " + slashedName);
-					return CouldBeReloadableDecision.No_PackageCache;
-				}
+			Boolean packageDecision = packageDecisions.get(packageName);
+			if (packageDecision != null) {
+				return packageDecision.booleanValue() ? CouldBeReloadableDecision.Yes_PackageCache
+						: CouldBeReloadableDecision.No_PackageCache;
 			}
 		}
 		if (ch == '[') {
@@ -717,13 +734,14 @@ public class TypeRegistry {
 		try {
 			if (getResourceMethod == null) {
 				try {
-					getResourceMethod = ClassLoader.class.getDeclaredMethod("getResource", String.class);
+					Method m = ClassLoader.class.getDeclaredMethod("getResource", String.class);
+					m.setAccessible(true);
+					getResourceMethod = m;
 				}
 				catch (Exception e) {
 					throw new ReloadException("Unable to locate 'getResource' on the ClassLoader class", e);
 				}
 			}
-			getResourceMethod.setAccessible(true);
 			URL url = (URL) getResourceMethod.invoke(classLoader.get(), slashedName + ".class");
 			boolean reloadable = false;
 			boolean jarEntry = false;
@@ -758,12 +776,7 @@ public class TypeRegistry {
 				}
 			}
 			if (packageName != null && !GlobalConfiguration.allowSplitPackages && usePackageNameDecisionCache) {
-				if (reloadable) {
-					packagesFound.add(packageName);
-				}
-				else {
-					packagesNotFound.add(packageName);
-				}
+				packageDecisions.put(packageName, Boolean.valueOf(reloadable));
 				//			} else {
 				//				System.out.println("expensive, no package name and URL checked: " + slashedName + " : " + url + " loader="
 				//						+ classLoader);
@@ -886,9 +899,28 @@ public class TypeRegistry {
 			}
 		}
 
-		if (inclusionPatterns.isEmpty()) {
+		if (GlobalConfiguration.explainMode) {
+			// explanations are only logged when the decision is made
+			return decideReloadableTypeName(slashedName);
+		}
+		ReloadableTypeNameDecision decision = nameDecisions.get(slashedName);
+		if (decision == null) {
+			decision = decideReloadableTypeName(slashedName);
+			// Without the package cache the disk is checked every time, so don't remember those decisions either
+			if (decision.cbrd == null || !decision.cbrd.diskChecked || !GlobalConfiguration.allowSplitPackages) {
+				if (nameDecisions.size() >= MAX_NAME_DECISIONS) {
+					nameDecisions.clear();
+				}
+				nameDecisions.put(slashedName, decision);
+			}
+		}
+		return decision;
+	}
+
+	private ReloadableTypeNameDecision decideReloadableTypeName(String slashedName) {
+		if (inclusionMatcher.isEmpty()) {
 			// No inclusions, so unless it matches an exclusion, it will be included
-			if (exclusionPatterns.isEmpty()) {
+			if (exclusionMatcher.isEmpty()) {
 				CouldBeReloadableDecision cbrd = couldBeReloadable(slashedName, true);
 				if (cbrd.couldBeReloadable) {
 					if (GlobalConfiguration.explainMode && log.isLoggable(Level.FINER)) {
@@ -907,18 +939,8 @@ public class TypeRegistry {
 				}
 			}
 			else {
-				if (slashedName != null) {
-					boolean isExcluded = false;
-					String matchName = slashedName.replace('/', '.');
-					for (TypePattern typepattern : exclusionPatterns) {
-						if (typepattern.matches(matchName)) {
-							isExcluded = true;
-							break;
-						}
-					}
-					if (isExcluded) {
-						return new ReloadableTypeNameDecision(false, null, null, false, false);
-					}
+				if (exclusionMatcher.matches(slashedName)) {
+					return new ReloadableTypeNameDecision(false, null, null, false, false);
 				}
 				CouldBeReloadableDecision cbrd = couldBeReloadable(slashedName, true);
 				if (cbrd.couldBeReloadable) {
@@ -930,46 +952,27 @@ public class TypeRegistry {
 			}
 		}
 		else {
-			String matchName = null;
 			// There are inclusion patterns, we must match one and not be excluded
-			if (slashedName != null) {
-				boolean isIncluded = false;
-				matchName = slashedName.replace('/', '.');
-				for (TypePattern typepattern : inclusionPatterns) {
-					if (typepattern.matches(matchName)) {
-						isIncluded = true;
-						break;
-					}
-				}
-				if (!isIncluded) {
-					// Not on the inclusion list
-					// In test mode there are various hierarchies of test data classes all on disk
-					// but inclusions are used to specify exactly what we want to consider reloadable. By
-					// making this check we avoid making types we discover on disk (or in the package cache)
-					// being made reloadable. In a real setup this wouldn't be what we want (hence the check)
-					if (!GlobalConfiguration.InTestMode) {
-						CouldBeReloadableDecision cbrd = couldBeReloadable(slashedName, true);
-						if (cbrd.couldBeReloadable) {
-							return new ReloadableTypeNameDecision(true, cbrd, null, true, false);
-						}
+			if (!inclusionMatcher.matches(slashedName)) {
+				// Not on the inclusion list
+				// In test mode there are various hierarchies of test data classes all on disk
+				// but inclusions are used to specify exactly what we want to consider reloadable. By
+				// making this check we avoid making types we discover on disk (or in the package cache)
+				// being made reloadable. In a real setup this wouldn't be what we want (hence the check)
+				if (!GlobalConfiguration.InTestMode) {
+					CouldBeReloadableDecision cbrd = couldBeReloadable(slashedName, true);
+					if (cbrd.couldBeReloadable) {
+						return new ReloadableTypeNameDecision(true, cbrd, null, true, false);
 					}
-					return ReloadableTypeNameDecision.No;
 				}
+				return ReloadableTypeNameDecision.No;
 			}
 			// Ok it matched an inclusion, but it must not match any exclusions
-			if (exclusionPatterns.isEmpty()) {
+			if (exclusionMatcher.isEmpty()) {
 				return new ReloadableTypeNameDecision(true, null, null, true, true);
 			}
 			else {
-				boolean isExcluded = false;
-				if (slashedName != null) {
-					for (TypePattern typepattern : exclusionPatterns) {
-						if (typepattern.matches(matchName)) {
-							isExcluded = true;
-							break;
-						}
-					}
-				}
+				boolean isExcluded = exclusionMatcher.matches(slashedName);
 				return new ReloadableTypeNameDecision(!isExcluded, null, null, true, true);
 			}
 		}
@@ -1034,6 +1037,229 @@ public class TypeRegistry {
 		rtype.loadNewVersion(versionstamp, newBytes);
 	}
 
+	/**
+	 * Load new versions of several types together. Every new version is checked before anything is generated, the
+	 * executors and dispatchers are then generated in parallel (supertypes before their subtypes, since generating a
+	 * subtype consults the latest descriptor of its supertypes), all of them are defined and only then is each one made
+	 * the live version, supertypes first. The switch is not atomic: the guards in running code read the live version
+	 * without locking, so another thread may see some types of the batch at their new version and others still at their
+	 * old one. Types that fail the check are simply not reloaded, as with
+	 * {@link ReloadableType#loadNewVersion(String, byte[])}. A type for which generation fails is reported and not
+	 * reloaded, the rest of the batch still is (its subtypes are generated against its current version). Types that only
+	 * have changes to the code in their methods and can be redefined in place (see
+	 * {@link GlobalConfiguration#redefineBodyChanges}) are reloaded as they are checked.
+	 *
+	 * @param rtypes the types to reload, all from this registry
+	 * @param versionsuffixes the suffix for each new version
+	 * @param newbytedata the bytes for each new version
+	 * @return for each type, whether it was reloaded
+	 */
+	public boolean[] loadNewVersions(ReloadableType[] rtypes, String[] versionsuffixes, byte[][] newbytedata) {
+		boolean[] reloaded = new boolean[rtypes.length];
+		List<NewVersion> newVersions = new ArrayList<NewVersion>();
+		Map<NewVersion, Integer> positions = new HashMap<NewVersion, Integer>();
+		for (int i = 0; i < rtypes.length; i++) {
+			NewVersion newVersion = rtypes[i].prepareNewVersion(versionsuffixes[i], newbytedata[i]);
+			if (newVersion != null && rtypes[i].redefineBodyChanges(newVersion)) {
+				reloaded[i] = true;
+			}
+			else if (newVersion != null && rtypes[i].isDeferred()) {
+				rtypes[i].unableToReloadDeferred(newVersion);
+			}
+			else if (newVersion != null) {
+				newVersions.add(newVersion);
+				positions.put(newVersion, i);
+			}
+		}
+		if (newVersions.isEmpty()) {
+			return reloaded;
+		}
+		List<List<NewVersion>> levels = generateNewVersions(groupSupertypesFirst(newVersions));
+		checkChildClassLoader(null);
+		for (List<NewVersion> level : levels) {
+			for (NewVersion newVersion : level) {
+				newVersion.liveVersion.define();
+			}
+		}
+		synchronized (this) {
+			for (List<NewVersion> level : levels) {
+				for (NewVersion newVersion : level) {
+					newVersion.rtype.publishNewVersion(newVersion);
+				}
+			}
+		}
+		for (List<NewVersion> level : levels) {
+			for (NewVersion newVersion : level) {
+				newVersion.rtype.completeNewVersion(newVersion);
+				reloaded[positions.get(newVersion)] = true;
+			}
+		}
+		return reloaded;
+	}
+
+	/**
+	 * Group new versions by how many of the other types in the batch are above them in the hierarchy. Everything in a
+	 * group only depends on the groups before it.
+	 */
+	private static List<List<NewVersion>> groupSupertypesFirst(List<NewVersion> newVersions) {
+		Set<ReloadableType> inBatch = new HashSet<ReloadableType>();
+		for (NewVersion newVersion : newVersions) {
+			inBatch.add(newVersion.rtype);
+		}
+		Map<ReloadableType, Integer> depths = new HashMap<ReloadableType, Integer>();
+		List<List<NewVersion>> levels = new ArrayList<List<NewVersion>>();
+		for (NewVersion newVersion : newVersions) {
+			int depth = batchDepth(newVersion.rtype, inBatch, depths);
+			while (levels.size() <= depth) {
+				levels.add(new ArrayList<NewVersion>());
+			}
+			levels.get(depth).add(newVersion);
+		}
+		return levels;
+	}
+
+	private static int batchDepth(ReloadableType rtype, Set<ReloadableType> inBatch,
+			Map<ReloadableType, Integer> depths) {
+		Integer depth = depths.get(rtype);
+		if (depth == null) {
+			int d = 0;
+			ReloadableType superRtype = rtype.getSuperRtype();
+			if (superRtype != null) {
+				d = batchDepth(superRtype, inBatch, depths) + (inBatch.contains(superRtype) ? 1 : 0);
+			}
+			ReloadableType[] interfaceRtypes = rtype.getInterfacesRtypes();
+			if (interfaceRtypes != null) {
+				for (ReloadableType interfaceRtype : interfaceRtypes) {
+					d = Math.max(d, batchDepth(interfaceRtype, inBatch, depths)
+							+ (inBatch.contains(interfaceRtype) ? 1 : 0));
+				}
+			}
+			depth = d;
+			depths.put(rtype, depth);
+		}
+		return depth;
+	}
+
+	/**
+	 * Generate the new versions, a level at a time, with the types in a level generated in parallel. Each new version is
+	 * generated into its own {@link NewVersion}; what generation shares with the rest of the registry is either
+	 * concurrent (the descriptor caches, the type name decisions, the package decisions) or synchronized (allocating
+	 * type ids in the {@link NameRegistry}, recording bootstrap methods, summarizing the methods of the original
+	 * types). Nothing is defined and no plugin is called until the generated versions are back on the calling thread. A
+	 * failure only affects the type that failed: it is logged, as a failing reload of a single type would be, and the
+	 * type is left out.
+	 *
+	 * @return the levels containing just the new versions that were generated
+	 */
+	private List<List<NewVersion>> generateNewVersions(List<List<NewVersion>> levels) {
+		List<List<NewVersion>> generatedLevels = new ArrayList<List<NewVersion>>(levels.size());
+		for (List<NewVersion> level : levels) {
+			List<NewVersion> generated = new ArrayList<NewVersion>(level.size());
+			if (level.size() == 1) {
+				for (NewVersion newVersion : level) {
+					try {
+						newVersion.rtype.generateNewVersion(newVersion);
+						generated.add(newVersion);
+					}
+					catch (RuntimeException re) {
+						unableToGenerate(newVersion, re);
+					}
+					catch (LinkageError le) {
+						unableToGenerate(newVersion, le);
+					}
+				}
+			}
+			else {
+				List<Future<?>> futures = new ArrayList<Future<?>>(level.size());
+				for (final NewVersion newVersion : level) {
+					futures.add(getGeneratorService().submit(new Runnable() {
+
+						public void run() {
+							newVersion.rtype.generateNewVersion(newVersion);
+						}
+					}));
+				}
+				for (int i = 0; i < futures.size(); i++) {
+					if (waitFor(futures.get(i), level.get(i))) {
+						generated.add(level.get(i));
+					}
+				}
+			}
+			// subtypes in the following levels are generated against these new descriptors
+			for (NewVersion newVersion : generated) {
+				reloadableTypeDescriptorCache.put(newVersion.rtype.getSlashedName(),
+						newVersion.liveVersion.typeDescriptor);
+			}
+			generatedLevels.add(generated);
+		}
+		return generatedLevels;
+	}
+
+	/**
+	 * Wait for the generation of a new version to finish.
+	 *
+	 * @return true if it was generated, false if generation failed (the failure has been reported)
+	 */
+	private static boolean waitFor(Future<?> future, NewVersion newVersion) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					future.get();
+					return true;
+				}
+				catch (InterruptedException ie) {
+					// the rest of the batch is still to be defined and published, so finish generating it
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException || cause instanceof LinkageError) {
+				unableToGenerate(newVersion, cause);
+				return false;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Unable to generate new version of " + newVersion.rtype.getName(), cause);
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Threads for generating the new versions in a batch, shared by all registries and created on first use. The
+	 * threads are daemons so they never keep the VM alive.
+	 */
+	private static ExecutorService generatorService;
+
+	private static synchronized ExecutorService getGeneratorService() {
+		if (generatorService == null) {
+			generatorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "SpringLoaded: reload generator");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return generatorService;
+	}
+
+	private static void unableToGenerate(NewVersion newVersion, Throwable t) {
+		if (log.isLoggable(Level.SEVERE)) {
+			log.log(Level.SEVERE, "Unable to reload new version of " + newVersion.rtype.getName() + " ["
+					+ newVersion.versionsuffix + "], see cause", t);
+		}
+	}
+
 	/**
 	 * Map from a registry ID number to a registry instance. ID numbers are used in the rewritten code. WeakReferences
 	 * so that we aren't preventing collection of TypeRegistry objects when their classloaders are GC'd.
@@ -1100,7 +1326,9 @@ public class TypeRegistry {
 		//			Utils.assertTrue(isReloadableTypeName(slashedName), dottedname);
 		//		}
 
-		TypeDescriptor td = extractor.extract(initialbytes, true);
+		// One reader for the bytes, used for extracting the descriptor and then again for rewriting
+		ClassReader initialReader = new ClassReader(initialbytes);
+		TypeDescriptor td = extractor.extract(initialReader, true);
 
 		// TODO annotations are not reloadable, they have a null reloadable type - who does that impact in a development setup?
 		if (td.isAnnotation()) {
@@ -1114,7 +1342,7 @@ public class TypeRegistry {
 					+ "' does not match that passed in '" + slashname + "'");
 		}
 		int typeId = NameRegistry.getIdOrAllocateFor(slashname);
-		ReloadableType rtype = new ReloadableType(dottedname, initialbytes, typeId, this, td);
+		ReloadableType rtype = new ReloadableType(dottedname, initialReader, initialbytes, typeId, this, td);
 		if (GlobalConfiguration.classesToDump != null && GlobalConfiguration.classesToDump.contains(slashname)) {
 			if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
 				log.info("Dumping bytes for " + slashname);
@@ -1147,7 +1375,7 @@ public class TypeRegistry {
 		int jdkProxyIndex = slashname.indexOf("$Proxy");
 		if (jdkProxyIndex == 0 || (jdkProxyIndex > 0 && slashname.charAt(jdkProxyIndex - 1) == '/')) {
 			// Determine if the interfaces being implemented are reloadable
-			String[] interfacesImplemented = Utils.discoverInterfaces(initialbytes);
+			String[] interfacesImplemented = td.getSuperinterfacesName();
 			if (interfacesImplemented != null) {
 				// Want to record which interfaces (when they change) should cause which proxies to reload
 				for (int i = 0; i < interfacesImplemented.length; i++) {
@@ -1349,16 +1577,37 @@ public class TypeRegistry {
 	/**
 	 * Used to determine if the invokedynamic needs to be intercepted.
 	 *
-	 * @return null if nothing has been reloaded
+	 * @param ids packed representation of the registryId (top 16bits) and typeId (bottom 16bits) of the type containing
+	 *            the invokedynamic
+	 * @return null if nothing affecting the type containing the invokedynamic has been reloaded
+	 */
+	@UsedByGeneratedCode
+	public static Object idycheck(int ids) {
+		return idycheck(ids >>> 16, ids & 0xffff);
+	}
+
+	/**
+	 * Variant of {@link #idycheck(int)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @return see {@link #idycheck(int)}
 	 */
 	@UsedByGeneratedCode
-	public static Object idycheck() {
+	public static Object idycheck(long ids) {
+		return idycheck((int) (ids >>> 32), (int) ids);
+	}
+
+	private static Object idycheck(int registryId, int typeId) {
 		if (TypeRegistry.nothingReloaded) {
 			return null;
 		}
-		else {
-			return "reloading-happened";
+		TypeRegistry typeRegistry = registryInstances[registryId].get();
+		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
+		if (reloadableType != null && !reloadableType.isAffectedByReload()) {
+			return null;
 		}
+		return "reloading-happened";
 	}
 
 	/**
@@ -1372,11 +1621,26 @@ public class TypeRegistry {
 	 */
 	@UsedByGeneratedCode
 	public static Object istcheck(int ids, String nameAndDescriptor) {
+		return istcheck(ids >>> 16, ids & 0xffff, nameAndDescriptor);
+	}
+
+	/**
+	 * Variant of {@link #istcheck(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param nameAndDescriptor see {@link #istcheck(int, String)}
+	 * @return see {@link #istcheck(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static Object istcheck(long ids, String nameAndDescriptor) {
+		return istcheck((int) (ids >>> 32), (int) ids, nameAndDescriptor);
+	}
+
+	private static Object istcheck(int registryId, int typeId, String nameAndDescriptor) {
 		if (TypeRegistry.nothingReloaded) {
 			return null;
 		}
-		int registryId = ids >>> 16;
-		int typeId = ids & 0xffff;
 		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 
@@ -1390,6 +1654,12 @@ public class TypeRegistry {
 		}
 
 		if (reloadableType != null && reloadableType.hasBeenReloaded()) {
+			int generation = reloadableType.getReloadGeneration();
+			InvocationCache invocationCache = reloadableType.getInvocationCache();
+			Object decision = invocationCache.get(InvocationCache.ISTCHECK, nameAndDescriptor, generation);
+			if (decision != null) {
+				return decision == Boolean.TRUE ? reloadableType.getLatestDispatcherInstance() : null;
+			}
 			MethodMember method = reloadableType.getLiveVersion().incrementalTypeDescriptor.getFromLatestByDescriptor(
 					nameAndDescriptor);
 			boolean dispatchThroughDescriptor = false;
@@ -1442,6 +1712,7 @@ public class TypeRegistry {
 					}
 				}
 				if (found) {
+					invocationCache.put(InvocationCache.ISTCHECK, nameAndDescriptor, generation, Boolean.FALSE);
 					return dispatcherToUse;
 				}
 				throw new NoSuchMethodError(reloadableType.getBaseName() + "." + nameAndDescriptor);
@@ -1461,6 +1732,8 @@ public class TypeRegistry {
 				//					dispatchThroughDescriptor = true;
 				//				}
 			}
+			invocationCache.put(InvocationCache.ISTCHECK, nameAndDescriptor, generation,
+					Boolean.valueOf(dispatchThroughDescriptor));
 			if (dispatchThroughDescriptor) {
 				if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
 					log.info("istcheck(): reloadabletype=" + reloadableType + " versionstamp "
@@ -1475,6 +1748,15 @@ public class TypeRegistry {
 	// NOTE we don't throw NSME here (we could...) instead we let the body of the deleted method (that was rewritten) throw it
 	// TODO what about visibility changes?
 	public static Object invokespecialSearch(ReloadableType rt, String nameAndDescriptor) {
+		ReloadableType target = invokespecialSearchForType(rt, nameAndDescriptor);
+		return target == null ? null : target.getLatestDispatcherInstance();
+	}
+
+	/**
+	 * @return the reloaded type in the hierarchy whose dispatcher should be used, or null if the original invokespecial
+	 *         can proceed
+	 */
+	private static ReloadableType invokespecialSearchForType(ReloadableType rt, String nameAndDescriptor) {
 		// does this type define it?  If yes - work out if I need to call through the dispatcher or not.  If no - try my super
 		ReloadableType next = rt;
 		while (next != null) {
@@ -1495,7 +1777,7 @@ public class TypeRegistry {
 			}
 			if (m != null) {
 				if (next.hasBeenReloaded()) {
-					return next.getLatestDispatcherInstance();
+					return next;
 				}
 				else {
 					return null; // do what you were going to do anyway
@@ -1550,6 +1832,23 @@ public class TypeRegistry {
 
 	@UsedByGeneratedCode
 	public static __DynamicallyDispatchable ispcheck(int ids, String nameAndDescriptor) {
+		return ispcheck(ids >>> 16, ids & 0xffff, nameAndDescriptor);
+	}
+
+	/**
+	 * Variant of {@link #ispcheck(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param nameAndDescriptor see {@link #ispcheck(int, String)}
+	 * @return see {@link #ispcheck(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static __DynamicallyDispatchable ispcheck(long ids, String nameAndDescriptor) {
+		return ispcheck((int) (ids >>> 32), (int) ids, nameAndDescriptor);
+	}
+
+	private static __DynamicallyDispatchable ispcheck(int registryId, int typeId, String nameAndDescriptor) {
 
 		// TOD why no check about whether anything has been reloaded???
 		if (nothingReloaded) {
@@ -1557,10 +1856,9 @@ public class TypeRegistry {
 		}
 
 		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
-			log.entering("TypeRegistry", "spcheck", new Object[] { ids, nameAndDescriptor });
+			log.entering("TypeRegistry", "spcheck", new Object[] { registryId, typeId, nameAndDescriptor });
 		}
-		int typeId = ids & 0xffff;
-		TypeRegistry typeRegistry = registryInstances[ids >>> 16].get();
+		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 
 		if (reloadableType == null) {
@@ -1570,10 +1868,22 @@ public class TypeRegistry {
 		//		if (!reloadableType.isAffectedByReload()) {
 		//			return false;
 		//		}
-		// Search for the dispatcher we can call
-		__DynamicallyDispatchable o = (__DynamicallyDispatchable) invokespecialSearch(reloadableType,
-				nameAndDescriptor);
-		return o;
+		if (reloadableType == null || !reloadableType.isAffectedByReload()) {
+			return null;
+		}
+		int generation = reloadableType.getReloadGeneration();
+		InvocationCache invocationCache = reloadableType.getInvocationCache();
+		Object decision = invocationCache.get(InvocationCache.ISPCHECK, nameAndDescriptor, generation);
+		if (decision == null) {
+			// Search for the type whose dispatcher we can call
+			ReloadableType target = invokespecialSearchForType(reloadableType, nameAndDescriptor);
+			decision = (target == null ? InvocationCache.NONE : target);
+			invocationCache.put(InvocationCache.ISPCHECK, nameAndDescriptor, generation, decision);
+		}
+		if (decision == InvocationCache.NONE) {
+			return null;
+		}
+		return (__DynamicallyDispatchable) ((ReloadableType) decision).getLatestDispatcherInstance();
 	}
 
 	/**
@@ -1591,11 +1901,27 @@ public class TypeRegistry {
 
 	@UsedByGeneratedCode
 	public static Object ccheck(int ids, String descriptor) {
+		return ccheck(ids >>> 16, ids & 0xffff, descriptor);
+	}
+
+	/**
+	 * Variant of {@link #ccheck(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param descriptor see {@link #ccheck(int, String)}
+	 * @return see {@link #ccheck(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static Object ccheck(long ids, String descriptor) {
+		return ccheck((int) (ids >>> 32), (int) ids, descriptor);
+	}
+
+	private static Object ccheck(int registryId, int typeId, String descriptor) {
 		if (TypeRegistry.nothingReloaded) {
 			return null;
 		}
-		int typeId = ids & 0xffff;
-		TypeRegistry typeRegistry = registryInstances[ids >>> 16].get();
+		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 		// i think only testcases can cause situations where reloadableType is null
 		if (reloadableType != null && reloadableType.hasBeenReloaded()) {
@@ -1623,11 +1949,26 @@ public class TypeRegistry {
 	 */
 	@UsedByGeneratedCode
 	public static boolean iincheck(int ids, String nameAndDescriptor) {
+		return iincheck(ids >>> 16, ids & 0xffff, nameAndDescriptor);
+	}
+
+	/**
+	 * Variant of {@link #iincheck(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param nameAndDescriptor see {@link #iincheck(int, String)}
+	 * @return see {@link #iincheck(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static boolean iincheck(long ids, String nameAndDescriptor) {
+		return iincheck((int) (ids >>> 32), (int) ids, nameAndDescriptor);
+	}
+
+	private static boolean iincheck(int registryId, int typeId, String nameAndDescriptor) {
 		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
-			log.entering("TypeRegistry", "iincheck", new Object[] { ids, nameAndDescriptor });
+			log.entering("TypeRegistry", "iincheck", new Object[] { registryId, typeId, nameAndDescriptor });
 		}
-		int registryId = ids >>> 16;
-		int typeId = ids & 0xffff;
 		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 		if (reloadableType == null) {
@@ -1638,6 +1979,12 @@ public class TypeRegistry {
 			return false;
 		}
 		if (reloadableType != null && reloadableType.hasBeenReloaded()) {
+			int generation = reloadableType.getReloadGeneration();
+			InvocationCache invocationCache = reloadableType.getInvocationCache();
+			Object decision = invocationCache.get(InvocationCache.IINCHECK, nameAndDescriptor, generation);
+			if (decision != null) {
+				return decision == Boolean.TRUE;
+			}
 			MethodMember method = reloadableType.getLiveVersion().incrementalTypeDescriptor.getFromLatestByDescriptor(
 					nameAndDescriptor);
 			boolean dispatchThroughDescriptor = false;
@@ -1649,6 +1996,8 @@ public class TypeRegistry {
 				// definetly need to use the dispatcher
 				dispatchThroughDescriptor = true;
 			}
+			invocationCache.put(InvocationCache.IINCHECK, nameAndDescriptor, generation,
+					Boolean.valueOf(dispatchThroughDescriptor));
 			if (dispatchThroughDescriptor) {
 				if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
 					log.info("versionstamp " + reloadableType.getLiveVersion().versionstamp);
@@ -1752,15 +2101,30 @@ public class TypeRegistry {
 	 */
 	@UsedByGeneratedCode
 	public static boolean instanceFieldInterceptionRequired(int ids, String name) {
+		return instanceFieldInterceptionRequired(ids >>> 16, ids & 0xffff, name);
+	}
+
+	/**
+	 * Variant of {@link #instanceFieldInterceptionRequired(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param name see {@link #instanceFieldInterceptionRequired(int, String)}
+	 * @return see {@link #instanceFieldInterceptionRequired(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static boolean instanceFieldInterceptionRequired(long ids, String name) {
+		return instanceFieldInterceptionRequired((int) (ids >>> 32), (int) ids, name);
+	}
+
+	private static boolean instanceFieldInterceptionRequired(int registryId, int typeId, String name) {
 		if (nothingReloaded) {
 			return false;
 		}
-		int registryId = ids >>> 16;
-		int typeId = ids & 0xffff;
 		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 		// TODO covers all situations?
-		if (reloadableType != null) {
+		if (reloadableType != null && reloadableType.isAffectedByReload()) {
 			if (reloadableType.hasFieldChangedInHierarchy(name)) {
 				return true;
 			}
@@ -1777,15 +2141,30 @@ public class TypeRegistry {
 	 */
 	@UsedByGeneratedCode
 	public static boolean staticFieldInterceptionRequired(int ids, String name) {
+		return staticFieldInterceptionRequired(ids >>> 16, ids & 0xffff, name);
+	}
+
+	/**
+	 * Variant of {@link #staticFieldInterceptionRequired(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param name see {@link #staticFieldInterceptionRequired(int, String)}
+	 * @return see {@link #staticFieldInterceptionRequired(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static boolean staticFieldInterceptionRequired(long ids, String name) {
+		return staticFieldInterceptionRequired((int) (ids >>> 32), (int) ids, name);
+	}
+
+	private static boolean staticFieldInterceptionRequired(int registryId, int typeId, String name) {
 		if (TypeRegistry.nothingReloaded) {
 			return false;
 		}
-		int registryId = ids >>> 16;
-		int typeId = ids & 0xffff;
 		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 		// TODO all scenarios covered?
-		if (reloadableType != null) {
+		if (reloadableType != null && reloadableType.isAffectedByReload()) {
 			if (reloadableType.hasFieldChangedInHierarchy(name)) {
 				//				System.out.println("Checking if field changed in hierarchy for " + name + " = yes");
 				return true;
@@ -1803,8 +2182,8 @@ public class TypeRegistry {
 		// TODO Currently leaking entries in bsmmap with reloads (new ones get added, old ones not removed)
 		ReloadableType rtype = TypeRegistry.getReloadableType(typeRegistryId, classId);
 		BsmInfo bsmi = bsmmap.get(rtype.getSlashedName())[bsmId];
-		return Java8.emulateInvokeDynamic(rtype, rtype.getLatestExecutorClass(), bsmi.bsm, bsmi.bsmArgs, caller,
-				nameAndDescriptor, indyParams);
+		return Java8.emulateInvokeDynamic(rtype, bsmId, bsmi.bsm, bsmi.bsmArgs, caller, nameAndDescriptor,
+				indyParams);
 	}
 
 	/**
@@ -1820,19 +2199,34 @@ public class TypeRegistry {
 	 */
 	@UsedByGeneratedCode
 	public static boolean ivicheck(int ids, String nameAndDescriptor) {
+		return ivicheck(ids >>> 16, ids & 0xffff, nameAndDescriptor);
+	}
+
+	/**
+	 * Variant of {@link #ivicheck(int, String)} called from call sites rewritten with wide ids enabled (see
+	 * {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param ids packed representation of the registryId (top 32bits) and typeId (bottom 32bits)
+	 * @param nameAndDescriptor see {@link #ivicheck(int, String)}
+	 * @return see {@link #ivicheck(int, String)}
+	 */
+	@UsedByGeneratedCode
+	public static boolean ivicheck(long ids, String nameAndDescriptor) {
+		return ivicheck((int) (ids >>> 32), (int) ids, nameAndDescriptor);
+	}
+
+	private static boolean ivicheck(int registryId, int typeId, String nameAndDescriptor) {
 		// Check 1: FAST: Has anything at all been reloaded?
 		if (nothingReloaded) {
 			return false;
 		}
 		//		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
-		//			log.entering("TypeRegistry", "ivicheck", new Object[] { ids, nameAndDescriptor });
+		//			log.entering("TypeRegistry", "ivicheck", new Object[] { registryId, typeId, nameAndDescriptor });
 		//		}
 
 		// TODO [perf] global check (anything been reloaded?)
 		// TODO [perf] local check (type or anything in its hierarchy reloaded)
 
-		int registryId = ids >>> 16;
-		int typeId = ids & 0xffff;
 		TypeRegistry typeRegistry = registryInstances[registryId].get();
 		ReloadableType reloadableType = typeRegistry.getReloadableType(typeId);
 
@@ -1858,6 +2252,12 @@ public class TypeRegistry {
 		}
 
 		if (reloadableType != null && reloadableType.hasBeenReloaded()) {
+			int generation = reloadableType.getReloadGeneration();
+			InvocationCache invocationCache = reloadableType.getInvocationCache();
+			Object decision = invocationCache.get(InvocationCache.IVICHECK, nameAndDescriptor, generation);
+			if (decision != null) {
+				return decision == Boolean.TRUE;
+			}
 			MethodMember method = reloadableType.getLiveVersion().incrementalTypeDescriptor.getFromLatestByDescriptor(
 					nameAndDescriptor);
 			boolean dispatchThroughDescriptor = false;
@@ -1884,6 +2284,8 @@ public class TypeRegistry {
 					//					dispatchThroughDescriptor = true;
 				}
 			}
+			invocationCache.put(InvocationCache.IVICHECK, nameAndDescriptor, generation,
+					Boolean.valueOf(dispatchThroughDescriptor));
 			if (dispatchThroughDescriptor) {
 				if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.FINER)) {
 					log.info("versionstamp " + reloadableType.getLiveVersion().versionstamp);
@@ -1934,6 +2336,45 @@ public class TypeRegistry {
 		return reloadableType;
 	}
 
+	/**
+	 * Report how many bytes are held for the reloadable types in this registry (and their current dispatchers and
+	 * executors), and how many would be held if they were not compacted (see {@link GlobalConfiguration#compactBytes}).
+	 *
+	 * @return a multi-line report
+	 */
+	public String getFootprintReport() {
+		String[] kinds = new String[] { "initial", "loaded", "interface", "dispatcher", "executor" };
+		long[] held = new long[kinds.length];
+		long[] full = new long[kinds.length];
+		int count = 0;
+		ReloadableType[] rtypes;
+		int size;
+		synchronized (this) {
+			rtypes = reloadableTypes;
+			size = reloadableTypesSize;
+		}
+		for (int i = 0; i < size; i++) {
+			ReloadableType rtype = rtypes[i];
+			if (rtype != null) {
+				rtype.addFootprint(held, full);
+				count++;
+			}
+		}
+		StringBuilder s = new StringBuilder();
+		s.append(toString()).append(" reloadable types=#").append(count).append(" compactBytes=").append(
+				GlobalConfiguration.compactBytes).append("\n");
+		long totalHeld = 0;
+		long totalFull = 0;
+		for (int k = 0; k < kinds.length; k++) {
+			s.append(" ").append(kinds[k]).append(" bytes: held=").append(held[k]).append(" full=").append(
+					full[k]).append("\n");
+			totalHeld += held[k];
+			totalFull += full[k];
+		}
+		s.append(" total: held=").append(totalHeld).append(" full=").append(totalFull).append("\n");
+		return s.toString();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder s = new StringBuilder();
@@ -1946,8 +2387,6 @@ public class TypeRegistry {
 
 	private FileChangeListener fileChangeListener;
 
-	private FileSystemWatcher fsWatcher;
-
 	private Set<String> watching = new HashSet<String>();
 
 	public void monitorForUpdates(ReloadableType rtype, String externalForm) {
@@ -1983,27 +2422,14 @@ public class TypeRegistry {
 			if (fileChangeListener == null) {
 				fileChangeListener = new ReloadableFileChangeListener(this);
 			}
-			if (fsWatcher == null) {
-				fsWatcher = new FileSystemWatcher(fileChangeListener, id, getClassLoaderName());
-			}
 			fileChangeListener.register(rtype, f);
 			if (!watchingContainsIt) {
-				fsWatcher.register(f);
+				SharedFileSystemWatcher.getInstance().register(f, fileChangeListener);
 				watching.add(externalForm);
 			}
 		}
 	}
 
-	private String getClassLoaderName() {
-		ClassLoader cl = getClassLoader();
-		if (cl == null) {
-			return "NULL";
-		}
-		else {
-			return cl.toString();
-		}
-	}
-
 	public boolean shouldRerunStaticInitializer(ReloadableType reloadableType, String versionsuffix) {
 		// 'local' plugins
 		for (Plugin plugin : localPlugins) {
@@ -2161,8 +2587,9 @@ public class TypeRegistry {
 	private long lastTidyup = 0;
 
 	/**
-	 * To avoid leaking permgen we want to periodically discard the child classloader and recreate a new one. We will
-	 * need to then redefine types again over time as they are used (the most recent variants of them).
+	 * To avoid leaking permgen we want to periodically discard the child classloader and recreate a new one. The most
+	 * recent versions of the types are then redefined over time as they are used, so types that are never used again
+	 * cost nothing.
 	 *
 	 * @param currentlyDefining the reloadable type currently being defined reloaded
 	 */
@@ -2180,26 +2607,15 @@ public class TypeRegistry {
 			}
 			ccl = new ChildClassLoader(classLoader.get());
 			this.childClassLoader = new WeakReference<ChildClassLoader>(ccl);
-			// Need to tidy up all the links to this classloader!
+			// Types are defined again in the new classloader as they are used, rather than all of them now
+			int count = 3;
 			for (int i = 0; i < reloadableTypesSize; i++) {
 				ReloadableType rtype = reloadableTypes[i];
 				if (rtype != null && rtype != currentlyDefining) {
-					rtype.clearClassloaderLinks();
-					// TODO [performance] could avoid doing this now - that would mean we would have to do it
-					// 'on demand' and that would add an extra check to every operation
-					rtype.reloadMostRecentDispatcherAndExecutor();
-				}
-			}
-			for (int i = 0; i < reloadableTypesSize; i++) {
-				ReloadableType rtype = reloadableTypes[i];
-				if (rtype != null && rtype != currentlyDefining && rtype.hasBeenReloaded()) {
-					if (rtype.getLiveVersion().staticInitializedNeedsRerunningOnDefine) {
-						rtype.runStaticInitializer();
-					}
+					count += rtype.redefineOnNextUse();
 				}
 			}
 			// Up the limit if it is too low, or too much time will be spent constantly over the limit (and so reloading)
-			int count = ccl.getDefinedCount() + 3;
 			if (count > maxClassDefinitions) {
 				maxClassDefinitions = count;
 			}
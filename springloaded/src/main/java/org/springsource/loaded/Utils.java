@@ -32,11 +32,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.objectweb.asm.AnnotationVisitor;
-import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -840,16 +836,20 @@ public class Utils implements Opcodes, Constants {
 	 */
 	public static byte[] loadBytesFromStream(InputStream stream) {
 		try {
-			BufferedInputStream bis = new BufferedInputStream(stream);
-			byte[] theData = new byte[10000000];
+			// Called for every supertype whose descriptor is needed, so start small and grow rather than
+			// allocating room for the largest possible class each time
+			byte[] theData = new byte[Math.max(stream.available(), 4096)];
 			int dataReadSoFar = 0;
-			byte[] buffer = new byte[1024];
 			int read = 0;
-			while ((read = bis.read(buffer)) != -1) {
-				System.arraycopy(buffer, 0, theData, dataReadSoFar, read);
+			while ((read = stream.read(theData, dataReadSoFar, theData.length - dataReadSoFar)) != -1) {
 				dataReadSoFar += read;
+				if (dataReadSoFar == theData.length) {
+					byte[] newTheData = new byte[theData.length * 2];
+					System.arraycopy(theData, 0, newTheData, 0, dataReadSoFar);
+					theData = newTheData;
+				}
 			}
-			bis.close();
+			stream.close();
 			// Resize to actual data read
 			byte[] returnData = new byte[dataReadSoFar];
 			System.arraycopy(theData, 0, returnData, 0, dataReadSoFar);
@@ -1114,10 +1114,36 @@ public class Utils implements Opcodes, Constants {
 		return membername.charAt(0) == '<';
 	}
 
+	/**
+	 * Pack a type registry id and a type id into an int, 16 bits each. Rather than silently wrapping (and so having a
+	 * rewritten call site consult the wrong type) this fails if either id does not fit, in that case wide ids must be
+	 * used (see {@link GlobalConfiguration#wideIds}).
+	 *
+	 * @param typeRegistryId the id of the type registry
+	 * @param classId the type id
+	 * @return the packed ids
+	 * @throws IllegalStateException if either id exceeds 16 bits
+	 */
 	public static int toCombined(int typeRegistryId, int classId) {
+		if ((typeRegistryId & 0xffff0000) != 0 || (classId & 0xffff0000) != 0) {
+			throw new IllegalStateException("Unable to pack type registry id " + typeRegistryId + " and type id "
+					+ classId + " into 32 bits, run with -Dspringloaded=wideIds=true");
+		}
 		return (typeRegistryId << 16) + classId;
 	}
 
+	/**
+	 * Pack a type registry id and a type id into a long, 32 bits each. Used when running with
+	 * {@link GlobalConfiguration#wideIds}.
+	 *
+	 * @param typeRegistryId the id of the type registry
+	 * @param classId the type id
+	 * @return the packed ids
+	 */
+	public static long toCombinedWide(int typeRegistryId, int classId) {
+		return ((long) typeRegistryId << 32) | (classId & 0xffffffffL);
+	}
+
 	public static void logAndThrow(Logger log, String message) {
 		if (GlobalConfiguration.logging && log.isLoggable(Level.SEVERE)) {
 			log.log(Level.SEVERE, message);
@@ -1841,63 +1867,8 @@ public class Utils implements Opcodes, Constants {
 	 * @return array of interface names (slashed descriptors)
 	 */
 	public static String[] discoverInterfaces(byte[] classbytes) {
-		ClassReader cr = new ClassReader(classbytes);
-		InterfaceCollectingClassVisitor f = new InterfaceCollectingClassVisitor();
-		cr.accept(f, 0);
-		return f.interfaces;
-	}
-
-	// TODO [performance] speed up by throwing exception from first visit method? (but this isn't used in the mainline really)
-	// TODO or just write a quicker bytecode parser that just looks at the interfaces then returns
-	private static class InterfaceCollectingClassVisitor extends ClassVisitor {
-
-		public InterfaceCollectingClassVisitor() {
-			super(ASM5);
-		}
-
-		public String[] interfaces;
-
-		@Override
-		public void visit(int version, int access, String name, String signature, String superName,
-				String[] interfaces) {
-			this.interfaces = interfaces;
-		}
-
-		@Override
-		public void visitSource(String source, String debug) {
-		}
-
-		@Override
-		public void visitOuterClass(String owner, String name, String desc) {
-		}
-
-		@Override
-		public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-			return null;
-		}
-
-		@Override
-		public void visitAttribute(Attribute attr) {
-		}
-
-		@Override
-		public void visitInnerClass(String name, String outerName, String innerName, int access) {
-		}
-
-		@Override
-		public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-			return null;
-		}
-
-		@Override
-		public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-			return null;
-		}
-
-		@Override
-		public void visitEnd() {
-		}
-
+		// only the class header is read, there is no need to visit the whole class
+		return new ClassReader(classbytes).getInterfaces();
 	}
 
 	public static String getProtectedFieldGetterName(String fieldname) {
@@ -1908,22 +1879,6 @@ public class Utils implements Opcodes, Constants {
 		return "r$setProtField_" + fieldname;
 	}
 
-	private static class ClassnameDiscoveryVisitor extends ClassVisitor {
-
-		public String classname;
-
-		public ClassnameDiscoveryVisitor() {
-			super(ASM5);
-		}
-
-		@Override
-		public void visit(int version, int access, String name, String signature, String superName,
-				String[] interfaces) {
-			this.classname = name;
-		}
-
-	}
-
 	/**
 	 * Discover the classname specified in the supplied bytecode and return it.
 	 *
@@ -1931,10 +1886,7 @@ public class Utils implements Opcodes, Constants {
 	 * @return the classname recovered from the bytecode
 	 */
 	public static String discoverClassname(byte[] classbytes) {
-		ClassReader cr = new ClassReader(classbytes);
-		ClassnameDiscoveryVisitor v = new ClassnameDiscoveryVisitor();
-		cr.accept(v, 0);
-		return v.classname;
+		return new ClassReader(classbytes).getClassName();
 	}
 
 	private static boolean checkedForNewProxyGenerateMethod = false;
@@ -98,7 +98,8 @@ public class ClassPreProcessorAgentAdapter implements ClassFileTransformer {
 					if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
 						log.info("Tricking HCR for " + className);
 					}
-					return rtype.bytesLoaded; // returning original bytes
+					// returning original bytes (or new bytes if ReloadableType.redefineBodyChanges() is redefining it)
+					return rtype.getBytesLoaded();
 				}
 				return null;
 			}
@@ -36,7 +36,7 @@ import org.springsource.loaded.TypeRegistry;
  * @author Andy Clement
  * @since 0.5.0
  */
-public class FileSystemWatcher {
+public class FileSystemWatcher implements FileSystemWatcherInterface {
 
 	// the thread being managed
 	private Thread thread;
@@ -51,6 +51,33 @@ public class FileSystemWatcher {
 		watchThread = new Watcher(listener, typeRegistryId, classloadername);
 	}
 
+	/**
+	 * Create the watcher to use for a type registry. This is a {@link WatchServiceFileSystemWatcher} if the JVM and
+	 * platform offer a native WatchService (and {@link GlobalConfiguration#useWatchService} is set), otherwise it is a
+	 * polling FileSystemWatcher.
+	 *
+	 * @param listener the listener to call back with changes
+	 * @param typeRegistryId the id of the registry for which files are being watched
+	 * @param classloadername name of the classloader, for the thread name
+	 * @return a new watcher
+	 */
+	public static FileSystemWatcherInterface create(FileChangeListener listener, int typeRegistryId,
+			String classloadername) {
+		if (GlobalConfiguration.useWatchService) {
+			try {
+				FileSystemWatcherInterface watcher = WatchServiceFileSystemWatcher.createIfNative(listener,
+						typeRegistryId, classloadername);
+				if (watcher != null) {
+					return watcher;
+				}
+			}
+			catch (LinkageError le) {
+				// java.nio.file is not available on this JVM
+			}
+		}
+		return new FileSystemWatcher(listener, typeRegistryId, classloadername);
+	}
+
 	/**
 	 * Start the thread if it isn't already started.
 	 */
@@ -87,6 +114,17 @@ public class FileSystemWatcher {
 		}
 	}
 
+	/**
+	 * Stop monitoring a file that was previously registered. If the file is not being monitored nothing happens.
+	 *
+	 * @param fileToStopMonitoring the file to stop monitoring
+	 */
+	public void unregister(File fileToStopMonitoring) {
+		if (watchThread.removeFile(fileToStopMonitoring)) {
+			watchThread.updateName();
+		}
+	}
+
 	/**
 	 * Enables the filesystem watching to be paused/unpaused.
 	 * 
@@ -165,6 +203,27 @@ class Watcher implements Runnable {
 		}
 	}
 
+	/**
+	 * Stop watching a File.
+	 *
+	 * @param fileToStopWatching the file to stop watching
+	 * @return true if the file was being watched, false otherwise
+	 */
+	public boolean removeFile(File fileToStopWatching) {
+		synchronized (this) {
+			int pos = watchListFiles.indexOf(fileToStopWatching);
+			if (pos == -1) {
+				return false;
+			}
+			if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+				log.info("No longer watching " + fileToStopWatching);
+			}
+			watchListFiles.remove(pos);
+			watchListLMTs.remove(pos);
+			return true;
+		}
+	}
+
 	public void updateName() {
 		if (thread != null) {
 			thread.setName("FileSystemWatcher: files=#" + watchListFiles.size() + " cl=" + classloadername);
@@ -198,8 +257,8 @@ class Watcher implements Runnable {
 	public void run() {
 		while (!timeToStop) {
 			registryLivenessCount++;
-			if ((registryLivenessCount % registryLivenessCountInterval) == 0) {
-				// Time to check if the registry is still alive!
+			if (typeRegistryId >= 0 && (registryLivenessCount % registryLivenessCountInterval) == 0) {
+				// Time to check if the registry is still alive! (a negative id means not watching for one registry)
 				if (!TypeRegistry.typeRegistryExistsForId(typeRegistryId)) {
 					if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
 						log.info("TypeRegistry " + typeRegistryId + " gone, no point in thread continuing!");
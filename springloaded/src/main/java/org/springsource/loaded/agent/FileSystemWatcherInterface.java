@@ -15,4 +15,11 @@ public interface FileSystemWatcherInterface {
 	 * @param fileToMonitor the file to start monitor
 	 */
 	public void register(File fileToMonitor);
+
+	/**
+	 * Stop monitoring a file that was previously registered. If the file is not being monitored nothing happens.
+	 *
+	 * @param fileToStopMonitoring the file to stop monitoring
+	 */
+	public void unregister(File fileToStopMonitoring);
 }
@@ -16,14 +16,9 @@
 
 package org.springsource.loaded.agent;
 
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.LoadtimeInstrumentationPlugin;
@@ -42,9 +37,12 @@ public class GrailsPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 
 	private static final String DefaultClassPropertyFetcher = "org/codehaus/groovy/grails/commons/ClassPropertyFetcher";
 
-	private static List<WeakReference<Object>> classPropertyFetcherInstances = new ArrayList<WeakReference<Object>>();
+	// ClassPropertyFetcher instances, keyed by the class they fetch properties for
+	private static InstanceRegistry classPropertyFetcherInstances = new InstanceRegistry();
 
-	private static ReferenceQueue<Object> rq = new ReferenceQueue<Object>();
+	private static Field classPropertyFetcher_clazz;
+
+	private static Method classPropertyFetcher_init;
 
 	/**
 	 * @return true for types this plugin would like to change on startup
@@ -61,47 +59,36 @@ public class GrailsPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 
 	// called by the modified code
 	public static void recordInstance(Object obj) {
-		// obj will be a ClassPropertyFetcher instance
-		System.err.println("new instance queued " + System.identityHashCode(obj));
-		// TODO urgent - race condition here, can create Co-modification problem if adding whilst another thread is processing
-		classPropertyFetcherInstances.add(new WeakReference<Object>(obj, rq));
+		// obj will be a ClassPropertyFetcher instance, its constructor has completed
+		try {
+			if (classPropertyFetcher_clazz == null) {
+				Field f = obj.getClass().getDeclaredField("clazz");
+				f.setAccessible(true);
+				classPropertyFetcher_clazz = f;
+			}
+			Class<?> clazz = (Class<?>) classPropertyFetcher_clazz.get(obj);
+			if (clazz != null) {
+				classPropertyFetcherInstances.register(clazz, obj);
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
-	private Field classPropertyFetcher_clazz;
-
-	private Method classPropertyFetcher_init;
-
 	public void reloadEvent(String typename, Class<?> reloadedClazz, String versionsuffix) {
-		// Clear references to objects that have been GCd
-		// Do they ever get cleared out??
-		Reference<?> r = rq.poll();
-		while (r != null) {
-			classPropertyFetcherInstances.remove(r);
-			r = rq.poll();
-		}
 		try {
-			// Currently not needing to track classPropertyFetcherInstances
-			for (WeakReference<Object> ref : classPropertyFetcherInstances) {
-				Object instance = ref.get();
-				if (instance != null) {
-					if (classPropertyFetcher_clazz == null) {
-						classPropertyFetcher_clazz = instance.getClass().getDeclaredField("clazz");
-					}
-					classPropertyFetcher_clazz.setAccessible(true);
-					Class<?> clazz = (Class<?>) classPropertyFetcher_clazz.get(instance);
-					if (clazz == reloadedClazz) {
-						if (classPropertyFetcher_init == null) {
-							classPropertyFetcher_init = instance.getClass().getDeclaredMethod("init");
-						}
-						classPropertyFetcher_init.setAccessible(true);
-						classPropertyFetcher_init.invoke(instance);
-						if (GlobalConfiguration.debugplugins) {
-							System.err.println("GrailsPlugin: re-initing classPropertyFetcher instance for "
-									+ clazz.getName()
-									+ " " + System.identityHashCode(instance));
-						}
-						//						System.out.println("re-initing " + reloadedClazz.getName());
-					}
+			for (Object instance : classPropertyFetcherInstances.getInstances(reloadedClazz)) {
+				if (classPropertyFetcher_init == null) {
+					Method m = instance.getClass().getDeclaredMethod("init");
+					m.setAccessible(true);
+					classPropertyFetcher_init = m;
+				}
+				classPropertyFetcher_init.invoke(instance);
+				if (GlobalConfiguration.debugplugins) {
+					System.err.println("GrailsPlugin: re-initing classPropertyFetcher instance for "
+							+ reloadedClazz.getName()
+							+ " " + System.identityHashCode(instance));
 				}
 			}
 		}
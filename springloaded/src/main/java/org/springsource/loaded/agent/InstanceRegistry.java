@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.agent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instances tracked by a plugin (typically recorded from code added to their constructors), indexed by the class they
+ * relate to so that on a reload only the instances for the reloaded class need visiting. Neither the classes nor the
+ * instances are kept alive, entries are removed by a background thread as they are collected.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class InstanceRegistry {
+
+	private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	private static Thread cleaner;
+
+	// Keyed by ClassKey, unmodifiable lists replaced on each change so they can be handed out
+	private final Map<ClassKey, List<InstanceRef>> instances = new HashMap<ClassKey, List<InstanceRef>>();
+
+	private int size;
+
+	public InstanceRegistry() {
+		startCleaner();
+	}
+
+	/**
+	 * Track an instance, keyed by its own class.
+	 *
+	 * @param instance the instance to track
+	 */
+	public void register(Object instance) {
+		register(instance.getClass(), instance);
+	}
+
+	/**
+	 * Track an instance.
+	 *
+	 * @param clazz the class the instance relates to
+	 * @param instance the instance to track
+	 */
+	public synchronized void register(Class<?> clazz, Object instance) {
+		ClassKey key = new ClassKey(clazz, this);
+		List<InstanceRef> refs = instances.get(key);
+		if (refs == null) {
+			refs = Collections.emptyList();
+		}
+		else {
+			key = refs.get(0).key;
+		}
+		List<InstanceRef> newRefs = new ArrayList<InstanceRef>(refs.size() + 1);
+		newRefs.addAll(refs);
+		newRefs.add(new InstanceRef(instance, key));
+		instances.put(key, Collections.unmodifiableList(newRefs));
+		size++;
+	}
+
+	/**
+	 * @param clazz a class
+	 * @return the live instances registered against that class
+	 */
+	public List<Object> getInstances(Class<?> clazz) {
+		List<InstanceRef> refs;
+		synchronized (this) {
+			refs = instances.get(new ClassKey(clazz, null));
+		}
+		return refs == null ? Collections.emptyList() : live(refs, new ArrayList<Object>(refs.size()));
+	}
+
+	/**
+	 * @return all the live instances
+	 */
+	public List<Object> getInstances() {
+		List<List<InstanceRef>> all;
+		synchronized (this) {
+			all = new ArrayList<List<InstanceRef>>(instances.values());
+		}
+		List<Object> result = new ArrayList<Object>(size);
+		for (List<InstanceRef> refs : all) {
+			live(refs, result);
+		}
+		return result;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of instances tracked, including any collected but not yet cleaned up
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private static List<Object> live(List<InstanceRef> refs, List<Object> result) {
+		for (InstanceRef ref : refs) {
+			Object instance = ref.get();
+			if (instance != null) {
+				result.add(instance);
+			}
+		}
+		return result;
+	}
+
+	synchronized void removeInstance(InstanceRef ref) {
+		List<InstanceRef> refs = instances.get(ref.key);
+		if (refs != null && refs.contains(ref)) {
+			List<InstanceRef> newRefs = new ArrayList<InstanceRef>(refs);
+			newRefs.remove(ref);
+			if (newRefs.isEmpty()) {
+				instances.remove(ref.key);
+			}
+			else {
+				instances.put(ref.key, Collections.unmodifiableList(newRefs));
+			}
+			size--;
+		}
+	}
+
+	synchronized void removeClass(ClassKey key) {
+		List<InstanceRef> refs = instances.remove(key);
+		if (refs != null) {
+			size -= refs.size();
+		}
+	}
+
+	private static synchronized void startCleaner() {
+		if (cleaner == null) {
+			cleaner = new Thread("SpringLoaded: instance registry cleaner") {
+
+				@Override
+				public void run() {
+					while (true) {
+						try {
+							Reference<?> ref = queue.remove();
+							if (ref instanceof InstanceRef) {
+								InstanceRef instanceRef = (InstanceRef) ref;
+								instanceRef.key.registry.removeInstance(instanceRef);
+							}
+							else if (ref instanceof ClassKey) {
+								ClassKey key = (ClassKey) ref;
+								key.registry.removeClass(key);
+							}
+						}
+						catch (InterruptedException ie) {
+							// keep going
+						}
+					}
+				}
+			};
+			cleaner.setDaemon(true);
+			cleaner.start();
+		}
+	}
+
+	/**
+	 * Weak key for a class, equal to any other key for the same class (by identity) while that class is alive.
+	 */
+	static class ClassKey extends WeakReference<Class<?>> {
+
+		final InstanceRegistry registry;
+
+		private final int hash;
+
+		ClassKey(Class<?> clazz, InstanceRegistry registry) {
+			// keys only used for lookup are not queued
+			super(clazz, registry == null ? null : queue);
+			this.registry = registry;
+			this.hash = System.identityHashCode(clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}
+			if (!(other instanceof ClassKey)) {
+				return false;
+			}
+			Class<?> clazz = get();
+			return clazz != null && clazz == ((ClassKey) other).get();
+		}
+	}
+
+	static class InstanceRef extends WeakReference<Object> {
+
+		final ClassKey key;
+
+		InstanceRef(Object instance, ClassKey key) {
+			super(instance, queue);
+			this.key = key;
+		}
+	}
+}
@@ -17,10 +17,15 @@
 package org.springsource.loaded.agent;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -28,10 +33,11 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.springsource.loaded.FileChangeListener;
+import org.springsource.loaded.BatchFileChangeListener;
 import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.Utils;
 
 
 /**
@@ -39,7 +45,7 @@ import org.springsource.loaded.TypeRegistry;
  * @author Andy Clement
  * @since 0.5.0
  */
-public class ReloadableFileChangeListener implements FileChangeListener {
+public class ReloadableFileChangeListener implements BatchFileChangeListener {
 
 	private static Logger log = Logger.getLogger(ReloadableFileChangeListener.class.getName());
 
@@ -68,11 +74,59 @@ public class ReloadableFileChangeListener implements FileChangeListener {
 		this.typeRegistry = typeRegistry;
 	}
 
+	/**
+	 * A reload that has been read from disk and is waiting for the rest of its batch.
+	 */
+	static class PendingReload {
+
+		final ReloadableType rtype;
+
+		final long lastModTime;
+
+		final byte[] bytes;
+
+		PendingReload(ReloadableType rtype, long lastModTime, byte[] bytes) {
+			this.rtype = rtype;
+			this.lastModTime = lastModTime;
+			this.bytes = bytes;
+		}
+	}
+
 	public void fileChanged(File file) {
+		filesChanged(Collections.singletonList(file));
+	}
+
+	/**
+	 * Reload the types affected by a batch of changed files. The new bytes are all read before anything is reloaded and
+	 * the types are then reloaded together, see {@link TypeRegistry#loadNewVersions(ReloadableType[], String[], byte[][])}.
+	 */
+	public void filesChanged(List<File> files) {
+		List<PendingReload> reloads = new ArrayList<PendingReload>();
+		for (File file : files) {
+			collectReloads(file, reloads);
+		}
+		if (reloads.size() == 1) {
+			PendingReload reload = reloads.get(0);
+			reload.rtype.loadNewVersion(Utils.encode(reload.lastModTime), reload.bytes);
+		}
+		else if (reloads.size() > 1) {
+			ReloadableType[] rtypes = new ReloadableType[reloads.size()];
+			String[] versionsuffixes = new String[reloads.size()];
+			byte[][] bytes = new byte[reloads.size()][];
+			for (int i = 0; i < rtypes.length; i++) {
+				PendingReload reload = reloads.get(i);
+				rtypes[i] = reload.rtype;
+				versionsuffixes[i] = Utils.encode(reload.lastModTime);
+				bytes[i] = reload.bytes;
+			}
+			typeRegistry.loadNewVersions(rtypes, versionsuffixes, bytes);
+		}
+	}
+
+	private void collectReloads(File file, List<PendingReload> reloads) {
 		if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
 			log.info(" processing change for " + file);
 		}
-		ReloadableType rtype = correspondingReloadableTypes.get(file);
 		if (file.getName().endsWith(".jar")) {
 			if (GlobalConfiguration.isRuntimeLogging && log.isLoggable(Level.INFO)) {
 				log.info(" processing change for JAR " + file);
@@ -90,7 +144,8 @@ public class ReloadableFileChangeListener implements FileChangeListener {
 									+ entryBeingWatched.slashname + "  OLD LMT=" + new Date(entryBeingWatched.lmt)
 									+ " NEW LMT=" + new Date(lmt));
 						}
-						typeRegistry.loadNewVersion(entryBeingWatched.rtype, lmt, zf.getInputStream(ze));
+						reloads.add(new PendingReload(entryBeingWatched.rtype, lmt, Utils.loadFromStream(zf
+								.getInputStream(ze))));
 						entryBeingWatched.lmt = lmt;
 					}
 				}
@@ -101,7 +156,31 @@ public class ReloadableFileChangeListener implements FileChangeListener {
 			}
 		}
 		else {
-			typeRegistry.loadNewVersion(rtype, file);
+			ReloadableType rtype = correspondingReloadableTypes.get(file);
+			if (rtype == null) {
+				return;
+			}
+			FileInputStream fis = null;
+			try {
+				fis = new FileInputStream(file);
+				reloads.add(new PendingReload(rtype, file.lastModified(), Utils.loadFromStream(fis)));
+			}
+			catch (FileNotFoundException e) {
+				// deleted (or being rewritten) since the change was seen, the rest of the batch is still reloaded
+				if (log.isLoggable(Level.WARNING)) {
+					log.log(Level.WARNING, "Unable to read " + file + ", not reloading " + rtype.getName(), e);
+				}
+			}
+			finally {
+				if (fis != null) {
+					try {
+						fis.close();
+					}
+					catch (IOException e) {
+						// nothing to do
+					}
+				}
+			}
 		}
 	}
 
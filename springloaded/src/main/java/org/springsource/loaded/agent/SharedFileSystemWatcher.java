@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.agent;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springsource.loaded.BatchFileChangeListener;
+import org.springsource.loaded.FileChangeListener;
+import org.springsource.loaded.GlobalConfiguration;
+import org.springsource.loaded.ReloadableType;
+
+
+/**
+ * Watches files on behalf of every TypeRegistry, so there is one watcher thread for the process rather than one per
+ * classloader. Changes are not passed on as soon as they are seen: they are collected until nothing else has changed
+ * for the quiet period ({@link GlobalConfiguration#reloadQuietPeriod}) and then each interested listener is given the
+ * whole batch, through {@link BatchFileChangeListener#filesChanged(List)} if it supports it. A build that rewrites
+ * many class files therefore causes one batch of reloads rather than one reload per file as each is written.
+ * <p>
+ * Listeners are held weakly, the TypeRegistry that owns a listener keeps it alive, so watching files does not prevent
+ * a classloader from being collected. Once every listener for a file has been collected the file is no longer watched.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class SharedFileSystemWatcher implements FileChangeListener, Runnable {
+
+	private static Logger log = Logger.getLogger(SharedFileSystemWatcher.class.getName());
+
+	private static SharedFileSystemWatcher instance;
+
+	private final FileSystemWatcherInterface watcher;
+
+	private final long quietPeriod;
+
+	/**
+	 * The listeners interested in each watched file or directory.
+	 */
+	private final Map<File, List<ListenerReference>> listeners = new HashMap<File, List<ListenerReference>>();
+
+	/**
+	 * Where the references to listeners that have been collected are queued, see {@link #expungeStaleListeners()}.
+	 */
+	private final ReferenceQueue<FileChangeListener> collectedListeners = new ReferenceQueue<FileChangeListener>();
+
+	/**
+	 * Changes observed but not yet delivered, in the order they were observed.
+	 */
+	private final LinkedHashSet<File> pending = new LinkedHashSet<File>();
+
+	private long lastChangeTime;
+
+	private Thread deliveryThread;
+
+	/**
+	 * @return the watcher shared by all the type registries in this process
+	 */
+	public static synchronized SharedFileSystemWatcher getInstance() {
+		if (instance == null) {
+			instance = new SharedFileSystemWatcher(GlobalConfiguration.reloadQuietPeriod);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param quietPeriod how long (ms) there must be no further changes before a batch is delivered
+	 */
+	public SharedFileSystemWatcher(long quietPeriod) {
+		this.quietPeriod = quietPeriod;
+		this.watcher = FileSystemWatcher.create(this, -1, "shared");
+	}
+
+	/**
+	 * Start watching a file (or directory) on behalf of a listener.
+	 *
+	 * @param file the file to watch
+	 * @param listener the listener to tell when the file changes
+	 */
+	public void register(File file, FileChangeListener listener) {
+		expungeStaleListeners();
+		boolean newFile;
+		synchronized (this) {
+			List<ListenerReference> fileListeners = listeners.get(file);
+			newFile = fileListeners == null;
+			if (newFile) {
+				fileListeners = new ArrayList<ListenerReference>(1);
+				listeners.put(file, fileListeners);
+			}
+			for (ListenerReference existing : fileListeners) {
+				if (existing.get() == listener) {
+					return;
+				}
+			}
+			fileListeners.add(new ListenerReference(file, listener, collectedListeners));
+		}
+		if (newFile) {
+			watcher.register(file);
+		}
+	}
+
+	/**
+	 * @param file a file (or directory)
+	 * @return true if the file is being watched on behalf of at least one listener
+	 */
+	public synchronized boolean isWatching(File file) {
+		return listeners.containsKey(file);
+	}
+
+	/**
+	 * Forget the listeners that have been garbage collected. A file that no longer has any listeners is no longer
+	 * watched. This is done whenever a file is registered or a batch of changes is delivered.
+	 */
+	public void expungeStaleListeners() {
+		List<File> unwatched = null;
+		synchronized (this) {
+			ListenerReference ref;
+			while ((ref = (ListenerReference) collectedListeners.poll()) != null) {
+				List<ListenerReference> fileListeners = listeners.get(ref.file);
+				if (fileListeners != null && fileListeners.remove(ref) && fileListeners.isEmpty()) {
+					listeners.remove(ref.file);
+					if (unwatched == null) {
+						unwatched = new ArrayList<File>();
+					}
+					unwatched.add(ref.file);
+				}
+			}
+		}
+		if (unwatched != null) {
+			for (File file : unwatched) {
+				if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+					log.info("No listeners left for " + file + ", no longer watching it");
+				}
+				watcher.unregister(file);
+			}
+		}
+	}
+
+	/**
+	 * Called by the underlying watcher, the change is held until the quiet period has passed.
+	 */
+	public void fileChanged(File file) {
+		synchronized (this) {
+			pending.add(file);
+			lastChangeTime = System.currentTimeMillis();
+			if (deliveryThread == null) {
+				deliveryThread = new Thread(this, "SpringLoaded: reload batcher");
+				deliveryThread.setDaemon(true);
+				deliveryThread.start();
+			}
+			notifyAll();
+		}
+	}
+
+	public void register(ReloadableType rtype, File file) {
+		// listeners are registered through register(File, FileChangeListener)
+	}
+
+	public void run() {
+		while (true) {
+			List<File> batch;
+			try {
+				synchronized (this) {
+					while (pending.isEmpty()) {
+						wait();
+					}
+					long quietFor = System.currentTimeMillis() - lastChangeTime;
+					while (quietFor < quietPeriod) {
+						wait(quietPeriod - quietFor);
+						quietFor = System.currentTimeMillis() - lastChangeTime;
+					}
+					batch = new ArrayList<File>(pending);
+					pending.clear();
+				}
+			}
+			catch (InterruptedException ie) {
+				continue;
+			}
+			deliver(batch);
+		}
+	}
+
+	private void deliver(List<File> batch) {
+		expungeStaleListeners();
+		Map<FileChangeListener, List<File>> batches = new IdentityHashMap<FileChangeListener, List<File>>();
+		List<FileChangeListener> order = new ArrayList<FileChangeListener>();
+		synchronized (this) {
+			for (File file : batch) {
+				List<ListenerReference> fileListeners = listeners.get(file);
+				if (fileListeners == null && file.getParentFile() != null) {
+					// a change inside a watched directory
+					fileListeners = listeners.get(file.getParentFile());
+				}
+				if (fileListeners == null) {
+					continue;
+				}
+				for (ListenerReference ref : fileListeners) {
+					FileChangeListener listener = ref.get();
+					if (listener == null) {
+						// collected, removed when its reference is taken off the queue
+						continue;
+					}
+					List<File> files = batches.get(listener);
+					if (files == null) {
+						files = new ArrayList<File>();
+						batches.put(listener, files);
+						order.add(listener);
+					}
+					files.add(file);
+				}
+			}
+		}
+		for (FileChangeListener listener : order) {
+			List<File> files = batches.get(listener);
+			if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+				log.info("Delivering batch of " + files.size() + " changes: " + files);
+			}
+			try {
+				if (listener instanceof BatchFileChangeListener) {
+					((BatchFileChangeListener) listener).filesChanged(files);
+				}
+				else {
+					for (File file : files) {
+						listener.fileChanged(file);
+					}
+				}
+			}
+			catch (Throwable t) {
+				if (log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, "FileWatcher caught serious error, see cause", t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop watching. Only used when a watcher has been created for testing, the shared instance lives for the life of
+	 * the process.
+	 */
+	public void shutdown() {
+		watcher.shutdown();
+	}
+
+	/**
+	 * A weak reference to a listener that remembers the file it was registered for, so the file can be found when the
+	 * reference is queued.
+	 */
+	private static class ListenerReference extends WeakReference<FileChangeListener> {
+
+		final File file;
+
+		ListenerReference(File file, FileChangeListener listener, ReferenceQueue<FileChangeListener> queue) {
+			super(listener, queue);
+			this.file = file;
+		}
+	}
+
+}
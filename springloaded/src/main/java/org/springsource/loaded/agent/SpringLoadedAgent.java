@@ -28,7 +28,8 @@ import java.lang.instrument.Instrumentation;
  */
 public class SpringLoadedAgent {
 
-	private static ClassFileTransformer transformer = new ClassPreProcessorAgentAdapter();
+	// created when the agent starts, so that asking whether it is running does not set anything up
+	private static ClassFileTransformer transformer;
 
 	private static Instrumentation instrumentation;
 
@@ -38,6 +39,7 @@ public class SpringLoadedAgent {
 			return;
 		}
 		instrumentation = inst;
+		transformer = new ClassPreProcessorAgentAdapter();
 		instrumentation.addTransformer(transformer);
 	}
 
@@ -46,6 +48,7 @@ public class SpringLoadedAgent {
 			return;
 		}
 		instrumentation = inst;
+		transformer = new ClassPreProcessorAgentAdapter();
 		instrumentation.addTransformer(transformer);
 	}
 
@@ -59,4 +62,11 @@ public class SpringLoadedAgent {
 		return instrumentation;
 	}
 
+	/**
+	 * @return true if running as an agent, so {@link #getInstrumentation()} can be called
+	 */
+	public static boolean isInstrumentationAvailable() {
+		return instrumentation != null;
+	}
+
 }
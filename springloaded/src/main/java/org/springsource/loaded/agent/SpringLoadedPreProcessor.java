@@ -141,7 +141,9 @@ public class SpringLoadedPreProcessor implements Constants {
 		}
 
 		if (typeRegistry == null) { // A null type registry indicates nothing is being made reloadable for the classloader
-			if (classLoader == null && slashedClassName != null) { // Indicates loading of a system class
+			// When instrumentation is deferred nothing is rewritten, so system classes need not intercept reflection
+			if (classLoader == null && slashedClassName != null
+					&& !GlobalConfiguration.deferInstrumentation) { // Indicates loading of a system class
 				if (systemClassesContainingReflection.contains(slashedClassName)) {
 					try {
 						// TODO [perf] why are we not using the cache here, is it because the list is so short?
@@ -333,7 +335,8 @@ public class SpringLoadedPreProcessor implements Constants {
 					}
 				}
 				ReloadableType rtype = typeRegistry.addType(dottedClassName, bytes);
-				if (rtype == null && GlobalConfiguration.callsideRewritingOn) {
+				if (rtype == null && GlobalConfiguration.callsideRewritingOn
+						&& !GlobalConfiguration.deferInstrumentation) {
 					// it is not a candidate for being made reloadable (maybe it is an annotation type)
 					// but we still need to rewrite call sites.
 					bytes = typeRegistry.methodCallRewrite(bytes);
@@ -342,7 +345,7 @@ public class SpringLoadedPreProcessor implements Constants {
 					if (GlobalConfiguration.fileSystemMonitoring && watchPath != null) {
 						typeRegistry.monitorForUpdates(rtype, watchPath);
 					}
-					return rtype.bytesLoaded;
+					return rtype.getBytesToDefine();
 				}
 			}
 			catch (RuntimeException re) {
@@ -579,6 +582,10 @@ public class SpringLoadedPreProcessor implements Constants {
 	}
 
 	private static boolean needsClientSideRewriting(String slashedClassName) {
+		if (GlobalConfiguration.deferInstrumentation) {
+			// the types being called are not rewritten either
+			return false;
+		}
 		if (slashedClassName != null && slashedClassName.charAt(0) == 'o'
 				&& slashedClassName.startsWith("org/springsource/loaded")) {
 			return false;
@@ -16,12 +16,17 @@
 
 package org.springsource.loaded.agent;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +34,7 @@ import org.objectweb.asm.ClassReader;
 import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.LoadtimeInstrumentationPlugin;
 import org.springsource.loaded.ReloadEventProcessorPlugin;
+import org.springsource.loaded.ri.ReflectiveInterceptor;
 
 
 /**
@@ -51,16 +57,20 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 
 	private static Logger log = Logger.getLogger(SpringPlugin.class.getName());
 
+	private static final String CONTROLLER = "org.springframework.stereotype.Controller";
+
+	private static final String REQUEST_MAPPING = "org.springframework.web.bind.annotation.RequestMapping";
+
 	private static boolean debug = true;
 
-	// TODO [gc] what about GC here - how do we know when they are finished with?
-	public static List<Object> annotationMethodHandlerAdapterInstances = new ArrayList<Object>();
+	// Held weakly, dropped once they are collected
+	public static InstanceRegistry annotationMethodHandlerAdapterInstances = new InstanceRegistry();
 
-	public static List<Object> defaultAnnotationHandlerMappingInstances = new ArrayList<Object>();
+	public static InstanceRegistry defaultAnnotationHandlerMappingInstances = new InstanceRegistry();
 
-	public static List<Object> requestMappingHandlerMappingInstances = new ArrayList<Object>();
+	public static InstanceRegistry requestMappingHandlerMappingInstances = new InstanceRegistry();
 
-	public static List<Object> localVariableTableParameterNameDiscovererInstances = null;
+	public static InstanceRegistry localVariableTableParameterNameDiscovererInstances = new InstanceRegistry();
 
 	public static boolean support305 = true;
 
@@ -136,21 +146,18 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 
 	// called by the modified code
 	public static void recordAnnotationMethodHandlerAdapterInstance(Object obj) {
-		annotationMethodHandlerAdapterInstances.add(obj);
+		annotationMethodHandlerAdapterInstances.register(obj);
 	}
 
 	public static void recordRequestMappingHandlerMappingInstance(Object obj) {
 		if (debug) {
 			System.out.println("SPRING_PLUGIN: Recording request mapping handler mapping instance..." + obj);
 		}
-		requestMappingHandlerMappingInstances.add(obj);
+		requestMappingHandlerMappingInstances.register(obj);
 	}
 
 	public static void recordLocalVariableTableParameterNameDiscoverer(Object obj) {
-		if (localVariableTableParameterNameDiscovererInstances == null) {
-			localVariableTableParameterNameDiscovererInstances = new ArrayList<Object>();
-		}
-		localVariableTableParameterNameDiscovererInstances.add(obj);
+		localVariableTableParameterNameDiscovererInstances.register(obj);
 	}
 
 	static {
@@ -168,18 +175,66 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 		if (debug) {
 			System.out.println("SPRING_PLUGIN: Recording new instance of DefaultAnnotationHandlerMappingInstance");
 		}
-		defaultAnnotationHandlerMappingInstances.add(obj);
+		defaultAnnotationHandlerMappingInstances.register(obj);
 	}
 
 	public void reloadEvent(String typename, Class<?> clazz, String versionsuffix) {
 		removeClazzFromMethodResolverCache(clazz);
 		removeClazzFromDeclaredMethodsCache(clazz);
 		clearCachedIntrospectionResults(clazz);
-		reinvokeDetectHandlers(); // Spring 3.0
-		reinvokeInitHandlerMethods(); // Spring 3.1
+		boolean hasRequestMappings = hasRequestMappings(clazz);
+		if (hasRequestMappings) {
+			reinvokeDetectHandlers(); // Spring 3.0
+		}
+		reregisterHandlerMethods(clazz, hasRequestMappings); // Spring 3.1
 		clearLocalVariableTableParameterNameDiscovererCache(clazz);
 	}
 
+	/**
+	 * Determine whether a type may contribute handler methods: it (or one of its methods) is annotated with Controller
+	 * or RequestMapping, either directly or through an annotation that is itself annotated with them (for example
+	 * RestController or GetMapping). The annotation types are compared by name as they are not visible from here.
+	 *
+	 * @param clazz the type being reloaded
+	 * @return true if the type carries any of the annotations
+	 */
+	static boolean hasRequestMappings(Class<?> clazz) {
+		Set<String> seen = new HashSet<String>();
+		try {
+			if (hasRequestMappings(ReflectiveInterceptor.jlClassGetAnnotations(clazz), seen)) {
+				return true;
+			}
+			for (Method method : ReflectiveInterceptor.jlClassGetDeclaredMethods(clazz)) {
+				if (hasRequestMappings(ReflectiveInterceptor.jlrMethodGetAnnotations(method), seen)) {
+					return true;
+				}
+			}
+		}
+		catch (Throwable t) {
+			if (GlobalConfiguration.debugplugins) {
+				t.printStackTrace();
+			}
+			// can't tell, assume it does
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean hasRequestMappings(Annotation[] annotations, Set<String> seen) {
+		for (Annotation annotation : annotations) {
+			Class<? extends Annotation> annotationType = annotation.annotationType();
+			String name = annotationType.getName();
+			if (name.equals(CONTROLLER) || name.equals(REQUEST_MAPPING)) {
+				return true;
+			}
+			if (!name.startsWith("java.lang.annotation.") && seen.add(name)
+					&& hasRequestMappings(annotationType.getAnnotations(), seen)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * The Spring class LocalVariableTableParameterNameDiscoverer holds a cache of parameter names discovered for
 	 * members within classes and needs clearing if the class changes.
@@ -187,7 +242,8 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 	 * @param clazz the class being reloaded, which may exist in a parameter name discoverer cache
 	 */
 	private void clearLocalVariableTableParameterNameDiscovererCache(Class<?> clazz) {
-		if (localVariableTableParameterNameDiscovererInstances == null) {
+		List<Object> instances = localVariableTableParameterNameDiscovererInstances.getInstances();
+		if (instances.isEmpty()) {
 			return;
 		}
 		if (debug) {
@@ -195,15 +251,14 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 		}
 		if (parameterNamesCacheField == null) {
 			try {
-				parameterNamesCacheField = localVariableTableParameterNameDiscovererInstances.get(
-						0).getClass().getDeclaredField("parameterNamesCache");
+				parameterNamesCacheField = instances.get(0).getClass().getDeclaredField("parameterNamesCache");
 			}
 			catch (NoSuchFieldException nsfe) {
 				log.log(Level.SEVERE,
 						"Unexpectedly cannot find parameterNamesCache field on LocalVariableTableParameterNameDiscoverer class");
 			}
 		}
-		for (Object instance : localVariableTableParameterNameDiscovererInstances) {
+		for (Object instance : instances) {
 			try {
 				parameterNamesCacheField.setAccessible(true);
 				Map<?, ?> parameterNamesCache = (Map<?, ?>) parameterNamesCacheField.get(instance);
@@ -226,7 +281,7 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 	}
 
 	private void removeClazzFromMethodResolverCache(Class<?> clazz) {
-		for (Object o : annotationMethodHandlerAdapterInstances) {
+		for (Object o : annotationMethodHandlerAdapterInstances.getInstances()) {
 			try {
 				Field f = o.getClass().getDeclaredField("methodResolverCache");
 				f.setAccessible(true);
@@ -344,7 +399,7 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 	private void reinvokeDetectHandlers() {
 		// want to call detectHandlers on the DefaultAnnotationHandlerMapping type
 		// protected void detectHandlers() throws BeansException {  is defined on  AbstractDetectingUrlHandlerMapping
-		for (Object o : defaultAnnotationHandlerMappingInstances) {
+		for (Object o : defaultAnnotationHandlerMappingInstances.getInstances()) {
 			if (debug) {
 				System.out.println(
 						"SPRING_PLUGIN: Invoking detectHandlers on instance of DefaultAnnotationHandlerMappingInstance");
@@ -365,13 +420,9 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 		}
 	}
 
-	private void reinvokeInitHandlerMethods() {
-		//		org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping (super AbstractHandlerMethodMapping) - call protected void initHandlerMethods() on it.
-		for (Object o : requestMappingHandlerMappingInstances) {
-			if (debug) {
-				System.out.println(
-						"SPRING_PLUGIN: Invoking initHandlerMethods on instance of RequestMappingHandlerMapping");
-			}
+	private void reregisterHandlerMethods(Class<?> clazz, boolean hasRequestMappings) {
+		//		org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping (super AbstractHandlerMethodMapping)
+		for (Object o : requestMappingHandlerMappingInstances.getInstances()) {
 			Class<?> clazz_AbstractHandlerMethodMapping = null;
 			try {
 				clazz_AbstractHandlerMethodMapping = o.getClass().getSuperclass().getSuperclass();
@@ -384,61 +435,146 @@ public class SpringPlugin implements LoadtimeInstrumentationPlugin, ReloadEventP
 					e.printStackTrace();
 				}
 			}
+			if (clazz_AbstractHandlerMethodMapping != null
+					&& !reregisterHandlerMethods(o, clazz_AbstractHandlerMethodMapping, clazz, hasRequestMappings)) {
+				reinvokeInitHandlerMethods(o, clazz_AbstractHandlerMethodMapping);
+			}
+		}
+	}
 
-			if (clazz_AbstractHandlerMethodMapping != null) {
-				try {
-					// private final Map<T, HandlerMethod> handlerMethods = new LinkedHashMap<T, HandlerMethod>();
-					Field field_handlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredField("handlerMethods");
-					field_handlerMethods.setAccessible(true);
-					Map m = (Map) field_handlerMethods.get(o);
-					m.clear();
-				}
-				catch (NoSuchFieldException e) {
-					if (debug) {
-						System.out.println("SPRING_PLUGIN: Unable to find handlerMethods field to clear");
-					}
-				}
-				catch (Exception e) {
-					if (GlobalConfiguration.debugplugins) {
-						e.printStackTrace();
-					}
-				}
-
-				try {
-					Field field_urlMap = clazz_AbstractHandlerMethodMapping.getDeclaredField("urlMap");
-					field_urlMap.setAccessible(true);
-					Map m = (Map) field_urlMap.get(o);
-					m.clear();
-				}
-				catch (NoSuchFieldException e) {
-					if (debug) {
-						System.out.println("SPRING_PLUGIN: Unable to find urlMap field to clear");
-					}
-				}
-				catch (Exception e) {
-					if (GlobalConfiguration.debugplugins) {
-						e.printStackTrace();
-					}
+	/**
+	 * Replace just the handler methods contributed by the reloaded type (or its subtypes): unregister the mappings it
+	 * had and detect them again on the beans of that type. The beans are always detected again, even if the reloaded
+	 * type has no mappings of its own, as they may be subtypes that do. Needs unregisterMapping(), added in Spring 4.2.
+	 *
+	 * @return true if the handler methods are up to date, false if they must all be initialized again
+	 */
+	private boolean reregisterHandlerMethods(Object o, Class<?> clazz_AbstractHandlerMethodMapping, Class<?> clazz,
+			boolean hasRequestMappings) {
+		List<Object> mappings = new ArrayList<Object>();
+		Set<Object> handlers = new LinkedHashSet<Object>();
+		try {
+			// public Map<T, HandlerMethod> getHandlerMethods()
+			Method method_getHandlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredMethod(
+					"getHandlerMethods");
+			method_getHandlerMethods.setAccessible(true);
+			Map<?, ?> handlerMethods = (Map<?, ?>) method_getHandlerMethods.invoke(o);
+			for (Map.Entry<?, ?> entry : handlerMethods.entrySet()) {
+				Object handlerMethod = entry.getValue();
+				Class<?> beanType = (Class<?>) handlerMethod.getClass().getMethod("getBeanType").invoke(
+						handlerMethod);
+				if (beanType != null && clazz.isAssignableFrom(beanType)) {
+					mappings.add(entry.getKey());
+					handlers.add(handlerMethod.getClass().getMethod("getBean").invoke(handlerMethod));
 				}
-				clearMappingRegistry(o, clazz_AbstractHandlerMethodMapping);
-
-
-				try {
+			}
+		}
+		catch (Exception e) {
+			if (GlobalConfiguration.debugplugins) {
+				e.printStackTrace();
+			}
+			// Not known whether the type was contributing handler methods
+			return !hasRequestMappings;
+		}
+		if (mappings.isEmpty() && !hasRequestMappings) {
+			// not a controller before or after the reload
+			return true;
+		}
+		Method method_unregisterMapping = null;
+		Method method_detectHandlerMethods = null;
+		try {
+			method_unregisterMapping = clazz_AbstractHandlerMethodMapping.getDeclaredMethod("unregisterMapping",
+					Object.class);
+			method_unregisterMapping.setAccessible(true);
+			method_detectHandlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredMethod(
+					"detectHandlerMethods", Object.class);
+			method_detectHandlerMethods.setAccessible(true);
+		}
+		catch (NoSuchMethodException nsme) {
+			// Spring < 4.2
+			return false;
+		}
+		if (debug) {
+			System.out.println("SPRING_PLUGIN: Reregistering handler methods for " + clazz.getName()
+					+ " on instance of RequestMappingHandlerMapping");
+		}
+		try {
+			for (Object mapping : mappings) {
+				method_unregisterMapping.invoke(o, mapping);
+			}
+			if (handlers.isEmpty() && hasRequestMappings) {
+				// Not previously a controller, find the beans of this type
+				Object applicationContext = o.getClass().getMethod("getApplicationContext").invoke(o);
+				String[] beanNames = (String[]) applicationContext.getClass().getMethod("getBeanNamesForType",
+						Class.class).invoke(applicationContext, clazz);
+				handlers.addAll(Arrays.asList(beanNames));
+			}
+			for (Object handler : handlers) {
+				method_detectHandlerMethods.invoke(o, handler);
+			}
+			return true;
+		}
+		catch (Exception e) {
+			if (GlobalConfiguration.debugplugins || debug) {
+				e.printStackTrace();
+			}
+			return false;
+		}
+	}
 
-					Method method_initHandlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredMethod(
-							"initHandlerMethods");
-					method_initHandlerMethods.setAccessible(true);
-					method_initHandlerMethods.invoke(o);
-				}
-				catch (Exception e) {
-					if (GlobalConfiguration.debugplugins || debug) {
-						e.printStackTrace();
-					}
-				}
+	private void reinvokeInitHandlerMethods(Object o, Class<?> clazz_AbstractHandlerMethodMapping) {
+		//		call protected void initHandlerMethods() on the RequestMappingHandlerMapping
+		if (debug) {
+			System.out.println(
+					"SPRING_PLUGIN: Invoking initHandlerMethods on instance of RequestMappingHandlerMapping");
+		}
+		try {
+			// private final Map<T, HandlerMethod> handlerMethods = new LinkedHashMap<T, HandlerMethod>();
+			Field field_handlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredField("handlerMethods");
+			field_handlerMethods.setAccessible(true);
+			Map m = (Map) field_handlerMethods.get(o);
+			m.clear();
+		}
+		catch (NoSuchFieldException e) {
+			if (debug) {
+				System.out.println("SPRING_PLUGIN: Unable to find handlerMethods field to clear");
 			}
+		}
+		catch (Exception e) {
+			if (GlobalConfiguration.debugplugins) {
+				e.printStackTrace();
+			}
+		}
 
+		try {
+			Field field_urlMap = clazz_AbstractHandlerMethodMapping.getDeclaredField("urlMap");
+			field_urlMap.setAccessible(true);
+			Map m = (Map) field_urlMap.get(o);
+			m.clear();
+		}
+		catch (NoSuchFieldException e) {
+			if (debug) {
+				System.out.println("SPRING_PLUGIN: Unable to find urlMap field to clear");
+			}
 		}
+		catch (Exception e) {
+			if (GlobalConfiguration.debugplugins) {
+				e.printStackTrace();
+			}
+		}
+		clearMappingRegistry(o, clazz_AbstractHandlerMethodMapping);
 
+		try {
+			Method method_initHandlerMethods = clazz_AbstractHandlerMethodMapping.getDeclaredMethod(
+					"initHandlerMethods");
+			method_initHandlerMethods.setAccessible(true);
+			method_initHandlerMethods.invoke(o);
+		}
+		catch (Exception e) {
+			if (GlobalConfiguration.debugplugins || debug) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 
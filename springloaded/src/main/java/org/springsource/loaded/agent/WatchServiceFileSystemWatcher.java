@@ -0,0 +1,358 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springsource.loaded.FileChangeListener;
+import org.springsource.loaded.GlobalConfiguration;
+import org.springsource.loaded.TypeRegistry;
+
+
+/**
+ * A watcher for the file system built on java.nio.file.WatchService, so the operating system reports changes (inotify
+ * on Linux) rather than the last modification time of every file being checked every second. Directories are
+ * registered rather than individual files: registering a file watches its parent directory and events for files in
+ * that directory that are not being watched are ignored. Registering a directory reports changes to anything directly
+ * inside it.
+ * <p>
+ * Only used when the platform WatchService is native, see {@link FileSystemWatcher#create(FileChangeListener, int,
+ * String)}; otherwise the polling {@link FileSystemWatcher} is used.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class WatchServiceFileSystemWatcher implements FileSystemWatcherInterface, Runnable {
+
+	private static Logger log = Logger.getLogger(WatchServiceFileSystemWatcher.class.getName());
+
+	// how long to wait for further events once one arrives, so a burst of writes is reported once
+	private static long settleInterval = 50;// ms
+
+	private static int registryLivenessCountInterval = 300;
+
+	private final WatchService watchService;
+
+	private final FileChangeListener listener;
+
+	private final int typeRegistryId;
+
+	private final String classloadername;
+
+	/**
+	 * The directories being watched, each with the files of interest in it (by name) and the last modification time
+	 * reported for them.
+	 */
+	private final Map<WatchKey, WatchedDirectory> watchedDirectories = new HashMap<WatchKey, WatchedDirectory>();
+
+	private int fileCount = 0;
+
+	private Thread thread;
+
+	private volatile boolean timeToStop = false;
+
+	private volatile boolean paused = false;
+
+	private static class WatchedDirectory {
+
+		final File dir;
+
+		// set if the directory itself was registered, in which case everything in it is of interest
+		boolean wholeDirectory = false;
+
+		final Map<String, Long> files = new HashMap<String, Long>();
+
+		WatchedDirectory(File dir) {
+			this.dir = dir;
+		}
+	}
+
+	private WatchServiceFileSystemWatcher(WatchService watchService, FileChangeListener listener,
+			int typeRegistryId, String classloadername) {
+		this.watchService = watchService;
+		this.listener = listener;
+		this.typeRegistryId = typeRegistryId;
+		this.classloadername = classloadername;
+	}
+
+	/**
+	 * Create a watcher if the platform has a native WatchService. Some platforms (Mac OS X for example) only provide a
+	 * WatchService that polls, every 10 seconds, and in that case null is returned so the caller can use the polling
+	 * FileSystemWatcher instead.
+	 *
+	 * @param listener the listener to call back with changes
+	 * @param typeRegistryId the id of the registry for which files are being watched
+	 * @param classloadername name of the classloader, for the thread name
+	 * @return a new watcher, or null if there is no native WatchService
+	 */
+	public static WatchServiceFileSystemWatcher createIfNative(FileChangeListener listener, int typeRegistryId,
+			String classloadername) {
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		}
+		catch (IOException ioe) {
+			return null;
+		}
+		catch (UnsupportedOperationException uoe) {
+			return null;
+		}
+		if (watchService.getClass().getName().indexOf("Polling") != -1) {
+			try {
+				watchService.close();
+			}
+			catch (IOException ioe) {
+				// nothing to do
+			}
+			return null;
+		}
+		return new WatchServiceFileSystemWatcher(watchService, listener, typeRegistryId, classloadername);
+	}
+
+	public void register(File fileToMonitor) {
+		if (!fileToMonitor.exists()) {
+			return;
+		}
+		File dir = fileToMonitor.isDirectory() ? fileToMonitor : fileToMonitor.getAbsoluteFile().getParentFile();
+		if (dir == null) {
+			return;
+		}
+		synchronized (this) {
+			WatchKey key;
+			try {
+				key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+			catch (IOException ioe) {
+				if (log.isLoggable(Level.WARNING)) {
+					log.log(Level.WARNING, "Unable to watch " + dir + ", changes to " + fileToMonitor
+							+ " will not be seen", ioe);
+				}
+				return;
+			}
+			WatchedDirectory watchedDirectory = watchedDirectories.get(key);
+			if (watchedDirectory == null) {
+				watchedDirectory = new WatchedDirectory(dir);
+				watchedDirectories.put(key, watchedDirectory);
+			}
+			if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+				log.info("Now watching " + fileToMonitor);
+			}
+			if (fileToMonitor.isDirectory()) {
+				watchedDirectory.wholeDirectory = true;
+			}
+			else if (!watchedDirectory.files.containsKey(fileToMonitor.getName())) {
+				watchedDirectory.files.put(fileToMonitor.getName(), fileToMonitor.lastModified());
+			}
+			fileCount++;
+		}
+		ensureWatchThreadRunning();
+	}
+
+	public void unregister(File fileToStopMonitoring) {
+		File file = fileToStopMonitoring.getAbsoluteFile();
+		synchronized (this) {
+			for (Iterator<Map.Entry<WatchKey, WatchedDirectory>> iter = watchedDirectories.entrySet().iterator(); iter
+					.hasNext();) {
+				Map.Entry<WatchKey, WatchedDirectory> entry = iter.next();
+				WatchedDirectory watchedDirectory = entry.getValue();
+				File dir = watchedDirectory.dir.getAbsoluteFile();
+				if (dir.equals(file)) {
+					watchedDirectory.wholeDirectory = false;
+				}
+				else if (dir.equals(file.getParentFile())) {
+					if (watchedDirectory.files.remove(file.getName()) == null) {
+						continue;
+					}
+				}
+				else {
+					continue;
+				}
+				if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+					log.info("No longer watching " + fileToStopMonitoring);
+				}
+				fileCount--;
+				if (!watchedDirectory.wholeDirectory && watchedDirectory.files.isEmpty()) {
+					// nothing left of interest in this directory
+					entry.getKey().cancel();
+					iter.remove();
+				}
+				return;
+			}
+		}
+	}
+
+	public void shutdown() {
+		timeToStop = true;
+		try {
+			watchService.close();
+		}
+		catch (IOException ioe) {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Enables the filesystem watching to be paused/unpaused. Changes made whilst paused are reported once unpaused.
+	 *
+	 * @param shouldBePaused watching should be paused?
+	 */
+	public void setPaused(boolean shouldBePaused) {
+		paused = shouldBePaused;
+	}
+
+	private synchronized void ensureWatchThreadRunning() {
+		if (thread == null) {
+			thread = new Thread(this);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		thread.setName("FileSystemWatcher: files=#" + fileCount + " cl=" + classloadername);
+	}
+
+	public void run() {
+		int registryLivenessCount = 0;
+		while (!timeToStop) {
+			registryLivenessCount++;
+			if (typeRegistryId >= 0 && (registryLivenessCount % registryLivenessCountInterval) == 0) {
+				if (!TypeRegistry.typeRegistryExistsForId(typeRegistryId)) {
+					if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+						log.info("TypeRegistry " + typeRegistryId + " gone, no point in thread continuing!");
+					}
+					shutdown();
+					return;
+				}
+				registryLivenessCount = 0;
+			}
+			try {
+				if (paused) {
+					// events queue up in the watch service until we are unpaused
+					Thread.sleep(settleInterval);
+					continue;
+				}
+				WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+				if (key == null) {
+					continue;
+				}
+				Thread.sleep(settleInterval);
+				List<File> changedFiles = new ArrayList<File>();
+				while (key != null) {
+					collectChanges(key, changedFiles);
+					key = watchService.poll();
+				}
+				// Report in name order, so inner types (Foo$1.class) come before their outer type (Foo.class)
+				Collections.sort(changedFiles, new Comparator<File>() {
+
+					public int compare(File f1, File f2) {
+						return f1.getName().compareTo(f2.getName());
+					}
+				});
+				while (paused && !timeToStop) {
+					// paused whilst these were being collected, hold on to them until unpaused
+					Thread.sleep(settleInterval);
+				}
+				for (File changedFile : changedFiles) {
+					fireChange(changedFile);
+				}
+			}
+			catch (InterruptedException ie) {
+				// check if time to stop
+			}
+			catch (RuntimeException re) {
+				// ClosedWatchServiceException once shutdown
+				if (!timeToStop && log.isLoggable(Level.SEVERE)) {
+					log.log(Level.SEVERE, "FileWatcher caught serious error, see cause", re);
+				}
+				return;
+			}
+		}
+	}
+
+	private void collectChanges(WatchKey key, List<File> changedFiles) {
+		synchronized (this) {
+			WatchedDirectory watchedDirectory = watchedDirectories.get(key);
+			List<WatchEvent<?>> events = key.pollEvents();
+			if (watchedDirectory != null) {
+				for (WatchEvent<?> event : events) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// lost events, check everything in this directory
+						for (String name : watchedDirectory.files.keySet()) {
+							checkFile(watchedDirectory, name, changedFiles);
+						}
+					}
+					else {
+						String name = ((Path) event.context()).toString();
+						if (watchedDirectory.files.containsKey(name) || watchedDirectory.wholeDirectory) {
+							checkFile(watchedDirectory, name, changedFiles);
+						}
+					}
+				}
+			}
+			if (!key.reset()) {
+				// directory has gone
+				watchedDirectories.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Several events are usually delivered for one write, so only report a file if its modification time has moved on
+	 * since it was last reported.
+	 */
+	private void checkFile(WatchedDirectory watchedDirectory, String name, List<File> changedFiles) {
+		File file = new File(watchedDirectory.dir, name);
+		long lastModTime = file.lastModified();
+		Long previous = watchedDirectory.files.get(name);
+		if (lastModTime != 0 && (previous == null || lastModTime != previous.longValue())) {
+			watchedDirectory.files.put(name, lastModTime);
+			if (!changedFiles.contains(file)) {
+				changedFiles.add(file);
+			}
+		}
+	}
+
+	private void fireChange(File file) {
+		try {
+			if (GlobalConfiguration.verboseMode && log.isLoggable(Level.INFO)) {
+				log.info("Firing file changed event " + file);
+			}
+			listener.fileChanged(file);
+		}
+		catch (Throwable t) {
+			if (log.isLoggable(Level.SEVERE)) {
+				log.log(Level.SEVERE, "FileWatcher caught serious error, see cause", t);
+			}
+		}
+	}
+}
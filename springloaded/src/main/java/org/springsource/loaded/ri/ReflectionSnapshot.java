@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.ri;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.springsource.loaded.jvm.JVM;
+
+
+/**
+ * The Method/Field/Constructor objects computed by the ReflectiveInterceptor for a reloadable type, valid for a single
+ * reload generation of that type (see ReloadableType.getReflectionSnapshot()). The arrays held here are never handed
+ * out, callers get copies of the members (as Class.getDeclaredMethods() does) so that changes made to them, like
+ * setAccessible(), are not seen by other callers.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class ReflectionSnapshot {
+
+	private final int generation;
+
+	volatile Method[] declaredMethods;
+
+	volatile Method[] methods;
+
+	volatile Field[] declaredFields;
+
+	volatile Field[] fields;
+
+	volatile Constructor<?>[] declaredConstructors;
+
+	public ReflectionSnapshot(int generation) {
+		this.generation = generation;
+	}
+
+	/**
+	 * @return the reload generation of the type when this snapshot was created
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	static Method[] copy(Method[] methods) {
+		Method[] copy = new Method[methods.length];
+		for (int i = 0; i < methods.length; i++) {
+			copy[i] = JVM.copyMethod(methods[i]);
+		}
+		return copy;
+	}
+
+	static Field[] copy(Field[] fields) {
+		Field[] copy = new Field[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			copy[i] = JVM.copyField(fields[i]);
+		}
+		return copy;
+	}
+
+	static Constructor<?>[] copy(Constructor<?>[] constructors) {
+		Constructor<?>[] copy = new Constructor<?>[constructors.length];
+		for (int i = 0; i < constructors.length; i++) {
+			copy[i] = JVM.copyConstructor(constructors[i]);
+		}
+		return copy;
+	}
+}
@@ -45,6 +45,7 @@ import org.springsource.loaded.Constants;
 import org.springsource.loaded.CurrentLiveVersion;
 import org.springsource.loaded.FieldMember;
 import org.springsource.loaded.GlobalConfiguration;
+import org.springsource.loaded.InvocationCache.MethodInvocation;
 import org.springsource.loaded.MethodMember;
 import org.springsource.loaded.ReloadException;
 import org.springsource.loaded.ReloadableType;
@@ -154,13 +155,18 @@ public class ReflectiveInterceptor {
 			return clazz.getDeclaredMethods();
 		}
 		else {
-			MethodProvider methods = MethodProvider.create(rtype);
-			List<Invoker> invokers = methods.getDeclaredMethods();
-			Method[] javaMethods = new Method[invokers.size()];
-			for (int i = 0; i < javaMethods.length; i++) {
-				javaMethods[i] = invokers.get(i).createJavaMethod();
+			ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+			Method[] javaMethods = snapshot.declaredMethods;
+			if (javaMethods == null) {
+				MethodProvider methods = MethodProvider.create(rtype);
+				List<Invoker> invokers = methods.getDeclaredMethods();
+				javaMethods = new Method[invokers.size()];
+				for (int i = 0; i < javaMethods.length; i++) {
+					javaMethods[i] = invokers.get(i).createJavaMethod();
+				}
+				snapshot.declaredMethods = javaMethods;
 			}
-			return javaMethods;
+			return ReflectionSnapshot.copy(javaMethods);
 		}
 	}
 
@@ -171,14 +177,19 @@ public class ReflectiveInterceptor {
 			return clazz.getMethods();
 		}
 		else {
-			MethodProvider methods = MethodProvider.create(rtype);
-			Collection<Invoker> invokers = methods.getMethods();
-			Method[] javaMethods = new Method[invokers.size()];
-			int i = 0;
-			for (Invoker invoker : invokers) {
-				javaMethods[i++] = invoker.createJavaMethod();
+			ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+			Method[] javaMethods = snapshot.methods;
+			if (javaMethods == null) {
+				MethodProvider methods = MethodProvider.create(rtype);
+				Collection<Invoker> invokers = methods.getMethods();
+				javaMethods = new Method[invokers.size()];
+				int i = 0;
+				for (Invoker invoker : invokers) {
+					javaMethods[i++] = invoker.createJavaMethod();
+				}
+				snapshot.methods = javaMethods;
 			}
-			return javaMethods;
+			return ReflectionSnapshot.copy(javaMethods);
 		}
 	}
 
@@ -278,7 +289,7 @@ public class ReflectiveInterceptor {
 		ReloadableType rtype = getRType(clazz);
 		//Note: even if class has not been reloaded, it's superclass may have been and this may affect
 		//  the inherited annotations, so we must *not* use 'getReloadableTypeIfHasBeenReloaded' above!
-		if (rtype == null) {
+		if (rtype == null || !rtype.isAffectedByReload()) {
 			return clazz.getAnnotations();
 		}
 
@@ -349,7 +360,17 @@ public class ReflectiveInterceptor {
 			Constructor<?>[] cs = clazz.getDeclaredConstructors();
 			return cs;
 		}
-		else if (!rtype.hasBeenReloaded()) {
+		ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+		Constructor<?>[] cs = snapshot.declaredConstructors;
+		if (cs == null) {
+			cs = getDeclaredConstructors(rtype, clazz);
+			snapshot.declaredConstructors = cs;
+		}
+		return ReflectionSnapshot.copy(cs);
+	}
+
+	private static Constructor<?>[] getDeclaredConstructors(ReloadableType rtype, Class<?> clazz) {
+		if (!rtype.hasBeenReloaded()) {
 			// Reloadable but not yet reloaded
 			Constructor<?>[] cs = clazz.getDeclaredConstructors();
 			int i = 0;
@@ -560,19 +581,7 @@ public class ReflectiveInterceptor {
 		else {
 			Class<?> clazz = method.getDeclaringClass();
 			int mods = method.getModifiers();
-			int classmods;
-
-			//		ReloadableType rtype = getReloadableTypeIfHasBeenReloaded(clazz);
-			if (methodDeclaringTypeReloadableType == null || !methodDeclaringTypeReloadableType.hasBeenReloaded()) {
-				classmods = clazz.getModifiers();
-			}
-			else {
-				//Note: the "super bit" may be set in class modifiers but we should block it out, it
-				//shouldn't be shown to users of the reflection API.
-				classmods = methodDeclaringTypeReloadableType.getLatestTypeDescriptor().getModifiers()
-						& ~Opcodes.ACC_SUPER;
-			}
-			if (Modifier.isPublic(mods & classmods/*jlClassGetModifiers(clazz)*/)) {
+			if (isPublicMember(methodDeclaringTypeReloadableType, method)) {
 				//More expensive check not required / copy not required
 			}
 			else {
@@ -588,6 +597,24 @@ public class ReflectiveInterceptor {
 		return makeAccessibleCopy ? method : null;
 	}
 
+	/**
+	 * @return true if the method and the class declaring it are both public, so no caller can be denied access to it
+	 */
+	private static boolean isPublicMember(ReloadableType methodDeclaringTypeReloadableType, Method method) {
+		int classmods;
+		//		ReloadableType rtype = getReloadableTypeIfHasBeenReloaded(clazz);
+		if (methodDeclaringTypeReloadableType == null || !methodDeclaringTypeReloadableType.hasBeenReloaded()) {
+			classmods = method.getDeclaringClass().getModifiers();
+		}
+		else {
+			//Note: the "super bit" may be set in class modifiers but we should block it out, it
+			//shouldn't be shown to users of the reflection API.
+			classmods = methodDeclaringTypeReloadableType.getLatestTypeDescriptor().getModifiers()
+					& ~Opcodes.ACC_SUPER;
+		}
+		return Modifier.isPublic(method.getModifiers() & classmods/*jlClassGetModifiers(clazz)*/);
+	}
+
 	private static Constructor<?> asAccessibleConstructor(Constructor<?> c, boolean makeAccessibleCopy)
 			throws NoSuchMethodException, IllegalAccessException {
 		if (isDeleted(c)) {
@@ -1427,6 +1454,11 @@ public class ReflectiveInterceptor {
 			return method.invoke(target, params);
 		}
 		ReloadableType declaringType = getRType(declaringClass);
+		if (declaringType != null && !declaringType.isAffectedByReload()) {
+			// Nothing in the hierarchy of the declaring type has been reloaded, behave as if nothing was
+			method = asAccessibleMethod(null, method, target, true);
+			return method.invoke(target, params);
+		}
 		if (declaringType == null) {
 			//Not reloadable...
 			method = asAccessibleMethod(declaringType, method, target, true);
@@ -1434,17 +1466,34 @@ public class ReflectiveInterceptor {
 		}
 		else {
 			//Reloadable...
-			asAccessibleMethod(declaringType, method, target, false);
 			int mods = method.getModifiers();
+			boolean isStatic = (mods & (Modifier.STATIC | Modifier.PRIVATE)) != 0;
+			// The invoker found for a method is kept by the type it was looked up on, until a reload affects either
+			// that type or the declaring type. Only callers of non-public methods need checking on each call.
+			ReloadableType lookupType = isStatic ? declaringType : (target == null ? null : getRType(target.getClass()));
+			int generation = 0;
+			int declaringGeneration = declaringType.getReloadGeneration();
+			if (lookupType != null) {
+				generation = lookupType.getReloadGeneration();
+				MethodInvocation invocation = lookupType.getInvocationCache().getMethodInvocation(method, generation,
+						declaringGeneration);
+				if (invocation != null) {
+					if (invocation.checkAccess && !method.isAccessible()) {
+						asAccessibleMethod(declaringType, method, target, false);
+					}
+					return invocation.invoker.invoke(target, params);
+				}
+			}
+			asAccessibleMethod(declaringType, method, target, false);
 			Invoker invoker;
-			if ((mods & (Modifier.STATIC | Modifier.PRIVATE)) != 0) {
+			if (isStatic) {
 				//These methods are dispatched statically
 				MethodProvider methods = MethodProvider.create(declaringType);
 				invoker = methods.staticLookup(mods, method.getName(), Type.getMethodDescriptor(method));
 			}
 			else {
 				//These methods are dispatched dynamically
-				ReloadableType targetType = getRType(target.getClass()); //NPE possible but is what should happen here!
+				ReloadableType targetType = lookupType != null ? lookupType : getRType(target.getClass()); //NPE possible but is what should happen here!
 				if (targetType == null) {
 					if (GlobalConfiguration.verboseMode) {
 						System.out.println("UNEXPECTED: Subtype '"
@@ -1459,6 +1508,9 @@ public class ReflectiveInterceptor {
 				MethodProvider methods = MethodProvider.create(targetType); //use target not declaring type for Dynamic lookkup
 				invoker = methods.dynamicLookup(mods, method.getName(), Type.getMethodDescriptor(method));
 			}
+			lookupType.getInvocationCache().putMethodInvocation(method,
+					new MethodInvocation(invoker, !isPublicMember(declaringType, method), generation,
+							declaringGeneration));
 			return invoker.invoke(target, params);
 		}
 	}
@@ -1794,40 +1846,47 @@ public class ReflectiveInterceptor {
 	}
 
 	public static Field[] jlClassGetDeclaredFields(Class<?> clazz) {
-		Field[] fields = clazz.getDeclaredFields();
 		ReloadableType rtype = getRType(clazz);
 		if (rtype == null) {
+			return clazz.getDeclaredFields();
+		}
+		ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+		Field[] fields = snapshot.declaredFields;
+		if (fields == null) {
+			fields = getDeclaredFields(rtype, clazz);
+			snapshot.declaredFields = fields;
+		}
+		return ReflectionSnapshot.copy(fields);
+	}
+
+	private static Field[] getDeclaredFields(ReloadableType rtype, Class<?> clazz) {
+		if (!rtype.hasBeenReloaded()) {
+			//Not reloaded yet...
+			Field[] fields = removeMetaFields(clazz.getDeclaredFields());
+			fixModifiers(rtype, fields);
 			return fields;
 		}
 		else {
-			if (!rtype.hasBeenReloaded()) {
-				//Not reloaded yet...
-				fields = removeMetaFields(fields);
-				fixModifiers(rtype, fields);
-				return fields;
-			}
-			else {
-				// Was reloaded, it's up to us to create the field objects
-				TypeDescriptor typeDesc = rtype.getLatestTypeDescriptor();
-				FieldMember[] members = typeDesc.getFields();
-				fields = new Field[members.length];
-				int i = 0;
-				for (FieldMember f : members) {
-					String fieldTypeDescriptor = f.getDescriptor();
-					Class<?> type;
-					try {
-						type = Utils.toClass(Type.getType(fieldTypeDescriptor), rtype.typeRegistry.getClassLoader());
-					}
-					catch (ClassNotFoundException e) {
-						throw new IllegalStateException(e);
-					}
-					fields[i++] = JVM.newField(clazz, type, f.getModifiers(), f.getName(), f.getGenericSignature());
+			// Was reloaded, it's up to us to create the field objects
+			TypeDescriptor typeDesc = rtype.getLatestTypeDescriptor();
+			FieldMember[] members = typeDesc.getFields();
+			Field[] fields = new Field[members.length];
+			int i = 0;
+			for (FieldMember f : members) {
+				String fieldTypeDescriptor = f.getDescriptor();
+				Class<?> type;
+				try {
+					type = Utils.toClass(Type.getType(fieldTypeDescriptor), rtype.typeRegistry.getClassLoader());
 				}
-				if (GlobalConfiguration.assertsMode) {
-					Utils.assertTrue(i == fields.length, "Bug: unexpected number of fields");
+				catch (ClassNotFoundException e) {
+					throw new IllegalStateException(e);
 				}
-				return fields;
+				fields[i++] = JVM.newField(clazz, type, f.getModifiers(), f.getName(), f.getGenericSignature());
+			}
+			if (GlobalConfiguration.assertsMode) {
+				Utils.assertTrue(i == fields.length, "Bug: unexpected number of fields");
 			}
+			return fields;
 		}
 	}
 
@@ -1866,9 +1925,15 @@ public class ReflectiveInterceptor {
 			return clazz.getFields();
 		}
 		else {
-			List<Field> allFields = new ArrayList<Field>();
-			gatherFields(clazz, allFields, new HashSet<Class<?>>());
-			return allFields.toArray(new Field[allFields.size()]);
+			ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+			Field[] fields = snapshot.fields;
+			if (fields == null) {
+				List<Field> allFields = new ArrayList<Field>();
+				gatherFields(clazz, allFields, new HashSet<Class<?>>());
+				fields = allFields.toArray(new Field[allFields.size()]);
+				snapshot.fields = fields;
+			}
+			return ReflectionSnapshot.copy(fields);
 		}
 	}
 
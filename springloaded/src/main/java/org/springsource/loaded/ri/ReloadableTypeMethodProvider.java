@@ -97,7 +97,7 @@ public class ReloadableTypeMethodProvider extends TypeDescriptorMethodProvider {
 	@Override
 	public Invoker getMethod(String name, Class<?>[] params) {
 		String paramsDescriptor = Utils.toParamDescriptor(params);
-		if (TypeRegistry.nothingReloaded) {
+		if (!rtype.isAffectedByReload()) {
 			// use the cache
 			// TODO manage memory for this cache
 			Map<String, Map<String, Invoker>> m = rtype.invokerCache_getMethod;
@@ -109,7 +109,7 @@ public class ReloadableTypeMethodProvider extends TypeDescriptorMethodProvider {
 			}
 		}
 		Invoker invoker = super.getMethod(name, params);
-		if (TypeRegistry.nothingReloaded) {
+		if (!rtype.isAffectedByReload()) {
 			Map<String, Map<String, Invoker>> m = rtype.invokerCache_getMethod;
 			Map<String, Invoker> psToInvoker = m.get(name);
 			if (psToInvoker == null) {
@@ -123,7 +123,7 @@ public class ReloadableTypeMethodProvider extends TypeDescriptorMethodProvider {
 
 	@Override
 	public Invoker getDeclaredMethod(String name, String paramsDescriptor) {
-		if (TypeRegistry.nothingReloaded) {
+		if (!rtype.isAffectedByReload()) {
 			// use the cache
 			// TODO manage memory for this cache
 			Map<String, Map<String, Invoker>> m = rtype.invokerCache_getDeclaredMethod;
@@ -135,7 +135,7 @@ public class ReloadableTypeMethodProvider extends TypeDescriptorMethodProvider {
 			}
 		}
 		Invoker invoker = super.getDeclaredMethod(name, paramsDescriptor);
-		if (TypeRegistry.nothingReloaded) {
+		if (!rtype.isAffectedByReload()) {
 			Map<String, Map<String, Invoker>> m = rtype.invokerCache_getDeclaredMethod;
 			Map<String, Invoker> psToInvoker = m.get(name);
 			if (psToInvoker == null) {
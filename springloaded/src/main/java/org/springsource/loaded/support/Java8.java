@@ -93,7 +93,70 @@ public class Java8 {
 		}
 	}
 
-	// TODO [perf] How about a table of CallSites indexed by invokedynamic number through the class file. Computed on first reference but cleared on reload. Possibly extend this to all invoke types!
+	/**
+	 * As {@link #emulateInvokeDynamic(ReloadableType, Class, Handle, Object[], Object, String, Object[])} but the call
+	 * site is bootstrapped only on the first call from a site, it is then cached on the reloadable type until the
+	 * type is reloaded. Without this every execution of a lambda expression would go through the metafactory and
+	 * define a new class.
+	 *
+	 * @param bsmId the bootstrap method id of the invokedynamic site, identifying it within the type
+	 */
+	public static Object emulateInvokeDynamic(ReloadableType rtype, int bsmId, Handle handle, Object[] bsmArgs,
+			Object lookup, String indyNameAndDescriptor, Object[] indyParams) {
+		try {
+			CurrentLiveVersion liveVersion = rtype.getLiveVersion();
+			// Also defines the version again if its classloader has been discarded, so a call site bootstrapped
+			// against the discarded executor is not used
+			Class<?> executorClass = liveVersion == null ? null : liveVersion.getExecutorClass();
+			Class<?> lookupClass = ((MethodHandles.Lookup) lookup).lookupClass();
+			CachedCallSite cached = (CachedCallSite) rtype.getInvokedynamicCallSite(bsmId);
+			if (cached == null || !cached.isFor(liveVersion, executorClass, lookupClass, indyNameAndDescriptor)) {
+				CallSite callsite = callLambdaMetaFactory(rtype, bsmArgs, lookup, indyNameAndDescriptor,
+						executorClass);
+				cached = new CachedCallSite(liveVersion, executorClass, lookupClass, indyNameAndDescriptor,
+						callsite.dynamicInvoker());
+				rtype.cacheInvokedynamicCallSite(bsmId, cached);
+			}
+			return cached.invoker.invokeWithArguments(indyParams);
+		}
+		catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * A bootstrapped invokedynamic site, along with what it was bootstrapped for. The live version and its executor
+	 * are included because the implementation method may be in that executor, which is defined again if the
+	 * classloader it was in is discarded.
+	 */
+	static class CachedCallSite {
+
+		final CurrentLiveVersion liveVersion;
+
+		final Class<?> executorClass;
+
+		final Class<?> lookupClass;
+
+		final String nameAndDescriptor;
+
+		final MethodHandle invoker;
+
+		CachedCallSite(CurrentLiveVersion liveVersion, Class<?> executorClass, Class<?> lookupClass,
+				String nameAndDescriptor, MethodHandle invoker) {
+			this.liveVersion = liveVersion;
+			this.executorClass = executorClass;
+			this.lookupClass = lookupClass;
+			this.nameAndDescriptor = nameAndDescriptor;
+			this.invoker = invoker;
+		}
+
+		boolean isFor(CurrentLiveVersion liveVersion, Class<?> executorClass, Class<?> lookupClass,
+				String nameAndDescriptor) {
+			return this.liveVersion == liveVersion && this.executorClass == executorClass
+					&& this.lookupClass == lookupClass
+					&& this.nameAndDescriptor.equals(nameAndDescriptor);
+		}
+	}
 
 	// TODO [lambda] Need to handle altMetaFactory which is used when the lambdas are more 'complex' (e.g. Serializable)
 	public static CallSite callLambdaMetaFactory(ReloadableType rtype, Object[] bsmArgs, Object lookup,
@@ -46,7 +46,7 @@ public class PerformanceTests extends SpringLoadedTests {
 	//		ReloadableType rtype = r.addType(caller, loadBytesForClass(caller));
 	//		ReloadableType rtypeTarget = r.addType(target, loadBytesForClass(target));
 	//
-	//		//		ClassPrinter.print(rtype.bytesLoaded);
+	//		//		ClassPrinter.print(rtype.getBytesLoaded());
 	//		Object callerInstance = rtype.getClazz().newInstance();
 	//
 	//		// when run directly as a Java app (no reloading involved)
@@ -95,7 +95,7 @@ public class PerformanceTests extends SpringLoadedTests {
 	//		//113.751ms
 	//		//112.599ms
 	//
-	//		ClassPrinter.print(rtypeTarget.bytesLoaded);
+	//		ClassPrinter.print(rtypeTarget.getBytesLoaded());
 	//		// warmup
 	//		runOnInstance(rtype.getClazz(), callerInstance, "warmup");
 	//		System.out.println("warmup complete");
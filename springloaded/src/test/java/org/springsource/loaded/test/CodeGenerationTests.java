@@ -138,7 +138,7 @@ public class CodeGenerationTests extends SpringLoadedTests {
 		configureForTesting(typeRegistry, theInterface + "," + theImpl);
 		//		ReloadableType rInterface = 
 		typeRegistry.addType(theInterface, loadBytesForClass(theInterface));
-		//		ClassPrinter.print(rInterface.bytesLoaded);
+		//		ClassPrinter.print(rInterface.getBytesLoaded());
 		//		ReloadableType rImpl =
 		typeRegistry.addType(theImpl, loadBytesForClass(theImpl));
 	}
@@ -250,7 +250,7 @@ public class CrossLoaderTests extends SpringLoadedTests {
 
 		// now new: load new version of target that is missing the method
 
-		targetR.loadNewVersion("3", targetR.bytesInitial);
+		targetR.loadNewVersion("3", targetR.getBytesInitial());
 		try {
 			result = runUnguarded(invokerR.getClazz(), "run");
 			fail("");
@@ -359,7 +359,7 @@ public class CrossLoaderTests extends SpringLoadedTests {
 
 		// now new: load new version of target that is missing the method
 
-		targetR.loadNewVersion("3", targetR.bytesInitial);
+		targetR.loadNewVersion("3", targetR.getBytesInitial());
 		try {
 			result = runUnguarded(invokerR.getClazz(), "run");
 			fail("");
@@ -397,7 +397,7 @@ public class CrossLoaderTests extends SpringLoadedTests {
 
 		// now new: load new version of target that is missing the method
 
-		targetR.loadNewVersion("3", targetR.bytesInitial);
+		targetR.loadNewVersion("3", targetR.getBytesInitial());
 		try {
 			result = runUnguarded(invokerR.getClazz(), "run");
 			fail("");
@@ -431,7 +431,7 @@ public class CrossLoaderTests extends SpringLoadedTests {
 		assertFalse(bm.isAffectedByReload());
 
 		// Load CM again, should tag CM and IM
-		cm.loadNewVersion("2", cm.bytesInitial);
+		cm.loadNewVersion("2", cm.getBytesInitial());
 
 		assertTrue(cm.isAffectedByReload());
 		assertTrue(im1.isAffectedByReload());
@@ -35,14 +35,14 @@ public class DebuggingTests extends SpringLoadedTests {
 		runUnguarded(rtype.getClazz(), "greet");
 
 		// Just transform the existing version into a dispatcher/executor
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		Assert.assertEquals("Greet from HelloWorld", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Load a real new version
 		rtype.loadNewVersion("002", retrieveRename("data.HelloWorld", "data.HelloWorld002"));
 		Assert.assertEquals("Greet from HelloWorld 2", runUnguarded(rtype.getClazz(), "greet").stdout);
 		//		ClassPrinter.print(rtype.getLatestExecutorBytes());
-		//		ClassPrinter.print(rtype.bytesInitial);
+		//		ClassPrinter.print(rtype.getBytesInitial());
 
 	}
 }
@@ -19,9 +19,13 @@ package org.springsource.loaded.test;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import org.springsource.loaded.Constants;
 import org.springsource.loaded.MethodInvokerRewriter;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.__DynamicallyDispatchable;
 import org.springsource.loaded.test.infra.Result;
 
 
@@ -40,7 +44,7 @@ public class DispatcherBuilderTests extends SpringLoadedTests {
 		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
 
 		// Simply reloads itself to trigger new version handling code paths in both infrastructure and generated code
-		rtype.loadNewVersion("2", rtype.bytesInitial);
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
 
 		// if we made it here, hurrah, we didn't crash - let's call that success!
 	}
@@ -53,8 +57,8 @@ public class DispatcherBuilderTests extends SpringLoadedTests {
 		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
 
 		// Simply reloads itself to trigger new version handling code paths in both infrastructure and generated code
-		rtype.loadNewVersion("2", rtype.bytesInitial);
-		//		ClassPrinter.print(rtype.interfaceBytes);
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
+		//		ClassPrinter.print(rtype.getInterfaceBytes());
 		//		ClassPrinter.print(rtype.getLatestExecutorBytes());
 
 		byte[] callerbytes = loadBytesForClass("dispatcher.StaticmethodCaller");
@@ -94,7 +98,7 @@ public class DispatcherBuilderTests extends SpringLoadedTests {
 
 		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
 
-		rtype.loadNewVersion("2", rtype.bytesInitial);
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
 		byte[] callerbytes = loadBytesForClass("dispatcher.CallC");
 		byte[] rewrittenBytes = MethodInvokerRewriter.rewrite(typeRegistry, callerbytes);
 		Class<?> callerClazz = loadit("dispatcher.CallC", rewrittenBytes);
@@ -110,6 +114,37 @@ public class DispatcherBuilderTests extends SpringLoadedTests {
 		}
 	}
 
+	/**
+	 * The dynamic dispatcher switches on the hashcode of the name+descriptor, check methods with colliding hashcodes are
+	 * still distinguished.
+	 */
+	@Test
+	public void dynamicDispatchWithHashCollision() throws Exception {
+		String tclass = "builder.DispatcherTestOne";
+		TypeRegistry typeRegistry = getTypeRegistry(tclass);
+
+		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
+		rtype.loadNewVersion("2", retrieveRename(tclass, "builder.DispatcherTestOne004"));
+		Assert.assertEquals("Aa()Ljava/lang/String;".hashCode(), "BB()Ljava/lang/String;".hashCode());
+
+		boolean foundSwitch = false;
+		for (MethodNode mn : getMethods(rtype.getLatestDispatcherBytes())) {
+			if (mn.name.equals(Constants.mDynamicDispatchName)) {
+				for (int i = 0; i < mn.instructions.size(); i++) {
+					if (mn.instructions.get(i).getOpcode() == Opcodes.LOOKUPSWITCH) {
+						foundSwitch = true;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(foundSwitch);
+
+		Object instance = rtype.getClazz().newInstance();
+		__DynamicallyDispatchable dispatcher = rtype.getDispatcher();
+		Assert.assertEquals("Aa", dispatcher.__execute(new Object[0], instance, "Aa()Ljava/lang/String;"));
+		Assert.assertEquals("BB", dispatcher.__execute(new Object[0], instance, "BB()Ljava/lang/String;"));
+	}
+
 	//	@Test
 	//	public void checkDynamicDispatcher() throws Exception {
 	//		String tclass = "builder.DispatcherTestOne";
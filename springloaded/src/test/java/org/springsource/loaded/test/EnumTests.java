@@ -276,13 +276,13 @@ public class EnumTests extends SpringLoadedTests {
 
 		// Check we loaded it as reloadable
 		ReloadableType rtype = TypeRegistry.getTypeRegistryFor(binLoader).getReloadableType(toSlash(t), false);
-		// Utils.dump(rtype.getSlashedName(), rtype.bytesLoaded);
+		// Utils.dump(rtype.getSlashedName(), rtype.getBytesLoaded());
 		assertNotNull(rtype);
 		ReloadableType rtypeRunner = TypeRegistry.getTypeRegistryFor(binLoader).getReloadableType(toSlash(runner),
 				false);
 		assertNotNull(rtypeRunner);
 
-		assertTrue(rtype.loadNewVersion("1", rtype.bytesInitial));
+		assertTrue(rtype.loadNewVersion("1", rtype.getBytesInitial()));
 
 		output = runMethodAndCollectOutput(runnerClazz, "run1");
 		assertContains("[Red 1111 0 Green 2222 1 Blue 3333 2]", output);
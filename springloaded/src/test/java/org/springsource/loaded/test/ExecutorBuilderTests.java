@@ -77,7 +77,7 @@ public class ExecutorBuilderTests extends SpringLoadedTests {
 		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
 
 		// Reload it (triggers creation of dispatcher/executor)
-		rtype.loadNewVersion("2", rtype.bytesInitial);
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
 
 		// @formatter:off
 		checkType(
@@ -336,8 +336,8 @@ public class ExecutorBuilderTests extends SpringLoadedTests {
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
 		reload(rtype, "37");
-		checkAnnotations(rtype.bytesLoaded, "m()V", "@common.Marker()");
-		checkAnnotations(rtype.bytesLoaded, "m2()V");
+		checkAnnotations(rtype.getBytesLoaded(), "m()V", "@common.Marker()");
+		checkAnnotations(rtype.getBytesLoaded(), "m2()V");
 		checkAnnotations(rtype.getLatestExecutorBytes(), "m(Lexecutor/B;)V", "@common.Marker()");
 		checkAnnotations(rtype.getLatestExecutorBytes(), "m2(Lexecutor/B;)V");
 		rtype.loadNewVersion("39", retrieveRename("executor.B", "executor.B2"));
@@ -352,8 +352,8 @@ public class ExecutorBuilderTests extends SpringLoadedTests {
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
 		reload(rtype, "37");
-		checkAnnotations(rtype.bytesLoaded, "m()V", "@common.Marker()");
-		checkAnnotations(rtype.bytesLoaded, "m2()V");
+		checkAnnotations(rtype.getBytesLoaded(), "m()V", "@common.Marker()");
+		checkAnnotations(rtype.getBytesLoaded(), "m2()V");
 		checkAnnotations(rtype.getLatestExecutorBytes(), "m(Lexecutor/I;)V", "@common.Marker()");
 		checkAnnotations(rtype.getLatestExecutorBytes(), "m2(Lexecutor/I;)V");
 		rtype.loadNewVersion("39", retrieveRename("executor.I", "executor.I2"));
@@ -401,7 +401,7 @@ public class ExecutorBuilderTests extends SpringLoadedTests {
 		String t = "reflection.methodannotations.InterfaceTarget";
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
-		checkAnnotations(rtype.bytesLoaded, "privMethod()V", "@reflection.AnnoT3(value=Foo)");
+		checkAnnotations(rtype.getBytesLoaded(), "privMethod()V", "@reflection.AnnoT3(value=Foo)");
 		reload(rtype, "37");
 		checkAnnotations(rtype.getLatestExecutorBytes(), "privMethod(Lreflection/methodannotations/InterfaceTarget;)V",
 				"@reflection.AnnoT3(value=Foo)");
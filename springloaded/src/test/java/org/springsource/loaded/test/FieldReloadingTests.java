@@ -55,7 +55,7 @@ public class FieldReloadingTests extends SpringLoadedTests {
 		Class<?> addClazz = add.getClazz();
 		Object addInstance = addClazz.newInstance();
 		assertEquals(0, runOnInstance(addClazz, addInstance, "getValue").returnValue);
-		//		ClassPrinter.print(add.bytesLoaded, true);
+		//		ClassPrinter.print(add.getBytesLoaded(), true);
 
 		add.loadNewVersion("2", retrieveRename("fields.Add", "fields.Add002"));
 		assertEquals(0, runOnInstance(addClazz, addInstance, "getValue").returnValue);
@@ -74,7 +74,7 @@ public class FieldReloadingTests extends SpringLoadedTests {
 		Class<?> addClazz = add.getClazz();
 		Object addInstance = addClazz.newInstance();
 		assertEquals(0, runOnInstance(addClazz, addInstance, "getValue").returnValue);
-		ClassPrinter.print(add.bytesLoaded, true);
+		ClassPrinter.print(add.getBytesLoaded(), true);
 
 		add.loadNewVersion("2", retrieveRename("fields.Add", "fields.Add002"));
 		addInstance = addClazz.newInstance();
@@ -249,6 +249,36 @@ public class FieldReloadingTests extends SpringLoadedTests {
 		assertEquals(12f, runOnInstance(addClazz, addInstance, "getFloat").returnValue);
 	}
 
+	// Primitive values added on reload are held unboxed, check the extremes come back exactly, per instance
+	@Test
+	public void newFieldAddedExtremeValues() throws Exception {
+		TypeRegistry r = getTypeRegistry("fields.AddB");
+		ReloadableType add = loadType(r, "fields.AddB");
+		Class<?> addClazz = add.getClazz();
+		Object addInstance = addClazz.newInstance();
+		Object addInstance2 = addClazz.newInstance();
+
+		add.loadNewVersion("2", retrieveRename("fields.AddB", "fields.AddB002"));
+
+		runOnInstance(addClazz, addInstance, "setShort", Short.MIN_VALUE);
+		runOnInstance(addClazz, addInstance, "setLong", Long.MIN_VALUE);
+		runOnInstance(addClazz, addInstance, "setChar", Character.MAX_VALUE);
+		runOnInstance(addClazz, addInstance, "setDouble", Double.NaN);
+		runOnInstance(addClazz, addInstance, "setFloat", -0f);
+		runOnInstance(addClazz, addInstance2, "setLong", Long.MAX_VALUE);
+		runOnInstance(addClazz, addInstance2, "setDouble", Double.MIN_VALUE);
+
+		assertEquals(Short.MIN_VALUE, runOnInstance(addClazz, addInstance, "getShort").returnValue);
+		assertEquals(Long.MIN_VALUE, runOnInstance(addClazz, addInstance, "getLong").returnValue);
+		assertEquals(Character.MAX_VALUE, runOnInstance(addClazz, addInstance, "getChar").returnValue);
+		assertEquals(Double.NaN, runOnInstance(addClazz, addInstance, "getDouble").returnValue);
+		assertEquals(-0f, runOnInstance(addClazz, addInstance, "getFloat").returnValue);
+		assertEquals((short) 0, runOnInstance(addClazz, addInstance2, "getShort").returnValue);
+		assertEquals(Long.MAX_VALUE, runOnInstance(addClazz, addInstance2, "getLong").returnValue);
+		assertEquals(Double.MIN_VALUE, runOnInstance(addClazz, addInstance2, "getDouble").returnValue);
+		assertEquals(0f, runOnInstance(addClazz, addInstance2, "getFloat").returnValue);
+	}
+
 	//	public void fieldRemoved() throws Exception {
 	//		TypeRegistry r = getTypeRegistry("fields.Removed");
 	//		ReloadableType add = loadType(r, "fields.Removed");
@@ -394,7 +424,7 @@ public class FieldReloadingTests extends SpringLoadedTests {
 		ReloadableType bottom = tr.addType("accessors.DefaultFieldsSub",
 				loadBytesForClass("accessors.DefaultFieldsSub"));
 
-		ClassPrinter.print(top.bytesLoaded);
+		ClassPrinter.print(top.getBytesLoaded());
 		Object topInstance = top.getClazz().newInstance();
 		Result result = runOnInstance(top.getClazz(), topInstance, "a");
 		assertEquals(1, result.returnValue);
@@ -330,7 +330,7 @@ public class GroovyTests extends SpringLoadedTests {
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("123", result.returnValue);
 
-		// rtype.loadNewVersion("2", rtype.bytesInitial); //reload yourself
+		// rtype.loadNewVersion("2", rtype.getBytesInitial()); //reload yourself
 
 		// Load a new version that now returns an int
 		rtypeTarget.loadNewVersion("4", retrieveRename(target, target + "4"));
@@ -369,7 +369,7 @@ public class GroovyTests extends SpringLoadedTests {
 		assertEquals("hw", result.returnValue);
 
 		// Now load the original version so the method is gone again
-		rtypeTarget.loadNewVersion("3", rtypeTarget.bytesInitial);// retrieveRename(target,
+		rtypeTarget.loadNewVersion("3", rtypeTarget.getBytesInitial());// retrieveRename(target,
 																	// target +
 																	// "2"));
 		try {
@@ -489,7 +489,7 @@ public class GroovyTests extends SpringLoadedTests {
 		// result = runUnguarded(rtype.getClazz(), "run");
 		// assertEquals("123", result.returnValue);
 		//
-		// // rtype.loadNewVersion("2", rtype.bytesInitial); //reload yourself
+		// // rtype.loadNewVersion("2", rtype.getBytesInitial()); //reload yourself
 		//
 		// // Load a new version that now returns an int
 		// rtypeTarget.loadNewVersion("4", retrieveRename(target, target +
@@ -813,7 +813,7 @@ public class GroovyTests extends SpringLoadedTests {
 		ReloadableType rtypeEnum = typeRegistry.addType(enumtype, loadBytesForClass(enumtype));
 		ReloadableType rtypeRunner = typeRegistry.addType(runner, loadBytesForClass(runner));
 		result = runUnguarded(rtypeRunner.getClazz(), "run");
-		// ClassPrinter.print(rtypeEnum.bytesInitial);
+		// ClassPrinter.print(rtypeEnum.getBytesInitial());
 		assertContains("[RED GREEN BLUE]", result.stdout);
 		System.out.println(result);
 		byte[] bs = retrieveRename(enumtype, enumtype + "2",
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springsource.loaded.agent.InstanceRegistry;
+
+
+/**
+ * Tests for the registry plugins use to track instances.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class InstanceRegistryTests {
+
+	/**
+	 * Instances are found by the class they were registered against.
+	 */
+	@Test
+	public void keyedByClass() {
+		InstanceRegistry registry = new InstanceRegistry();
+		Object a = new Object();
+		Object b = new Object();
+		Object c = new Object();
+		registry.register(String.class, a);
+		registry.register(Integer.class, b);
+		registry.register(String.class, c);
+		assertEquals(3, registry.size());
+		List<Object> instances = registry.getInstances(String.class);
+		assertEquals(2, instances.size());
+		assertSame(a, instances.get(0));
+		assertSame(c, instances.get(1));
+		assertEquals(1, registry.getInstances(Integer.class).size());
+		assertEquals(0, registry.getInstances(Long.class).size());
+		assertEquals(3, registry.getInstances().size());
+		registry.register(b);
+		assertSame(b, registry.getInstances(Object.class).get(0));
+	}
+
+	/**
+	 * Instances that have been collected are no longer returned and are removed in the background.
+	 */
+	@Test
+	public void collected() throws Exception {
+		InstanceRegistry registry = new InstanceRegistry();
+		Object kept = new Object();
+		registry.register(String.class, kept);
+		registry.register(String.class, new Object());
+		long stime = System.currentTimeMillis();
+		while (registry.size() > 1 && (System.currentTimeMillis() - stime) < 5000) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(1, registry.size());
+		List<Object> instances = registry.getInstances(String.class);
+		assertEquals(1, instances.size());
+		assertSame(kept, instances.get(0));
+		assertTrue(registry.getInstances().contains(kept));
+	}
+}
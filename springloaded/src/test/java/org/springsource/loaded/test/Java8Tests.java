@@ -18,9 +18,13 @@ package org.springsource.loaded.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeRegistry;
 import org.springsource.loaded.test.infra.Result;
@@ -61,7 +65,7 @@ public class Java8Tests extends SpringLoadedTests {
 
 		r = runUnguarded(clazz, "run");
 
-		rtype.loadNewVersion("002", rtype.bytesInitial);
+		rtype.loadNewVersion("002", rtype.getBytesInitial());
 
 		r = runUnguarded(clazz, "run");
 
@@ -81,7 +85,7 @@ public class Java8Tests extends SpringLoadedTests {
 
 		r = runUnguarded(clazz, "run");
 
-		rtype.loadNewVersion("002", rtype.bytesInitial);
+		rtype.loadNewVersion("002", rtype.getBytesInitial());
 
 		r = runUnguarded(clazz, "run");
 
@@ -101,7 +105,7 @@ public class Java8Tests extends SpringLoadedTests {
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(8, r.returnValue);
 
-		rtype.loadNewVersion("002", rtype.bytesInitial);
+		rtype.loadNewVersion("002", rtype.getBytesInitial());
 
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(8, r.returnValue);
@@ -120,7 +124,7 @@ public class Java8Tests extends SpringLoadedTests {
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(77, r.returnValue);
 
-		rtype.loadNewVersion("002", rtype.bytesInitial);
+		rtype.loadNewVersion("002", rtype.getBytesInitial());
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(77, r.returnValue);
 	}
@@ -144,6 +148,82 @@ public class Java8Tests extends SpringLoadedTests {
 		assertEquals(88, r.returnValue);
 	}
 
+	/**
+	 * The call site for a lambda in a reloaded method is bootstrapped once and then reused, until the next reload.
+	 */
+	@Test
+	public void lambdaCallSiteCached() throws Exception {
+		String t = "basic.LambdaB";
+		TypeRegistry typeRegistry = getTypeRegistry(t);
+		byte[] sc = loadBytesForClass(t);
+		ReloadableType rtype = typeRegistry.addType(t, sc);
+
+		Class<?> simpleClass = rtype.getClazz();
+		rtype.loadNewVersion("002", retrieveRename(t, t + "2", t + "2$Foo:" + t + "$Foo"));
+		Result r = runUnguarded(simpleClass, "run");
+		assertEquals(176L, r.returnValue);
+		Object callSite = findCachedCallSite(rtype);
+		assertNotNull(callSite);
+
+		r = runUnguarded(simpleClass, "run");
+		assertEquals(176L, r.returnValue);
+		assertSame(callSite, findCachedCallSite(rtype));
+
+		rtype.loadNewVersion("003", retrieveRename(t, t + "2", t + "2$Foo:" + t + "$Foo"));
+		assertNull(findCachedCallSite(rtype));
+		r = runUnguarded(simpleClass, "run");
+		assertEquals(176L, r.returnValue);
+		assertNotNull(findCachedCallSite(rtype));
+		assertNotSame(callSite, findCachedCallSite(rtype));
+
+		// Back to the original code, which bootstraps its own call site
+		rtype.loadNewVersion("004", rtype.getBytesInitial());
+		r = runUnguarded(simpleClass, "run");
+		assertEquals(99L, r.returnValue);
+		assertNull(findCachedCallSite(rtype));
+	}
+
+	/**
+	 * A call site bootstrapped against the executor in a discarded child classloader is not used once the executor has
+	 * been defined again.
+	 */
+	@Test
+	public void lambdaCallSiteAfterClassloaderRecycled() throws Exception {
+		int maxClassDefinitions = GlobalConfiguration.maxClassDefinitions;
+		GlobalConfiguration.maxClassDefinitions = 1;
+		try {
+			String t = "basic.LambdaB";
+			TypeRegistry typeRegistry = getTypeRegistry(t);
+			ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
+
+			Class<?> simpleClass = rtype.getClazz();
+			rtype.loadNewVersion("002", retrieveRename(t, t + "2", t + "2$Foo:" + t + "$Foo"));
+			assertEquals(176L, runUnguarded(simpleClass, "run").returnValue);
+			Object callSite = findCachedCallSite(rtype);
+			assertNotNull(callSite);
+			ClassLoader discarded = typeRegistry.getChildClassLoader();
+
+			typeRegistry.checkChildClassLoader(null);
+			assertNotSame(discarded, typeRegistry.getChildClassLoader());
+			assertEquals(176L, runUnguarded(simpleClass, "run").returnValue);
+			assertNotSame(callSite, findCachedCallSite(rtype));
+			assertSame(typeRegistry.getChildClassLoader(), rtype.getLatestExecutorClass().getClassLoader());
+		}
+		finally {
+			GlobalConfiguration.maxClassDefinitions = maxClassDefinitions;
+		}
+	}
+
+	private Object findCachedCallSite(ReloadableType rtype) {
+		for (int bsmId = 0; bsmId < 10; bsmId++) {
+			Object callSite = rtype.getInvokedynamicCallSite(bsmId);
+			if (callSite != null) {
+				return callSite;
+			}
+		}
+		return null;
+	}
+
 	@Test
 	public void lambdaWithParameter() throws Exception {
 		String t = "basic.LambdaB";
@@ -353,7 +433,7 @@ public class Java8Tests extends SpringLoadedTests {
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(56, r.returnValue);
 
-		rtype.loadNewVersion("002", rtype.bytesInitial);
+		rtype.loadNewVersion("002", rtype.getBytesInitial());
 		r = runUnguarded(simpleClass, "run");
 		assertEquals(56, r.returnValue);
 	}
@@ -16,9 +16,16 @@
 
 package org.springsource.loaded.test;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
+import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.Utils;
 
 
 /**
@@ -54,6 +61,111 @@ public class JavaMicroBenchmarkTests extends SpringLoadedTests {
 		average(rtype, 5);
 	}
 
+	/**
+	 * Measure the guards at rewritten call sites after a reload, so they cannot take the nothing-reloaded fast path.
+	 * Compare with javaMethodInvocationReloadedWideIds() to see the cost of packing the ids into a long.
+	 */
+	@Test
+	public void javaMethodInvocationReloaded() throws Exception {
+		methodInvocationAfterReload();
+	}
+
+	@Test
+	public void javaMethodInvocationReloadedWideIds() throws Exception {
+		GlobalConfiguration.wideIds = true;
+		try {
+			methodInvocationAfterReload();
+		}
+		finally {
+			GlobalConfiguration.wideIds = false;
+		}
+	}
+
+	private void methodInvocationAfterReload() throws Exception {
+		String t = "benchmarks.MethodInvoking";
+		TypeRegistry typeRegistry = getTypeRegistry(t);
+		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
+
+		warmup(rtype, 3);
+		average(rtype, 3);
+	}
+
+	/**
+	 * Measure the time taken to make every type in the testdata project reloadable, which is the work done by the agent
+	 * as each type is loaded. Each round uses a new loader so the interfaces can be defined again.
+	 */
+	@Test
+	public void reloadableTypeStartup() throws Exception {
+		List<String> names = new ArrayList<String>();
+		List<byte[]> bytes = new ArrayList<byte[]>();
+		collectTypes(new File(TestDataPath), "", names, bytes);
+		for (int round = 0; round < 5; round++) {
+			setup();
+			TypeRegistry typeRegistry = getTypeRegistry(null);
+			typeRegistry.setShouldDefineClasses(false);
+			int count = 0;
+			long stime = System.nanoTime();
+			for (int i = 0; i < names.size(); i++) {
+				try {
+					if (typeRegistry.addType(names.get(i), bytes.get(i)) != null) {
+						count++;
+					}
+				}
+				catch (Throwable t) {
+					// some of the testdata types cannot be processed in isolation
+				}
+			}
+			long etime = System.nanoTime();
+			System.out.println("Made " + count + " types reloadable in " + ((etime - stime) / 1000000) + "ms");
+		}
+	}
+
+	/**
+	 * Measure the time taken to decide whether types are reloadable, when they are spread over thousands of packages.
+	 * The first round looks for each package on disk, the others should be answered by the package decision cache.
+	 */
+	@Test
+	public void reloadableTypeNameDecisions() throws Exception {
+		TypeRegistry typeRegistry = getTypeRegistry(null);
+		GlobalConfiguration.allowSplitPackages = false;
+		try {
+			String[] names = new String[5000 * 10];
+			for (int p = 0; p < 5000; p++) {
+				for (int t = 0; t < 10; t++) {
+					names[p * 10 + t] = "org/acme/module" + (p % 50) + "/pkg" + p + "/Type" + t;
+				}
+			}
+			for (int round = 0; round < 5; round++) {
+				int count = 0;
+				long stime = System.nanoTime();
+				for (String name : names) {
+					if (typeRegistry.isReloadableTypeName(name)) {
+						count++;
+					}
+				}
+				long etime = System.nanoTime();
+				System.out.println("Decided on " + names.length + " names (" + count + " reloadable) in "
+						+ ((etime - stime) / 1000000) + "ms");
+			}
+		}
+		finally {
+			GlobalConfiguration.allowSplitPackages = true;
+		}
+	}
+
+	private void collectTypes(File dir, String pkg, List<String> names, List<byte[]> bytes) throws Exception {
+		for (File f : dir.listFiles()) {
+			if (f.isDirectory()) {
+				collectTypes(f, pkg + f.getName() + ".", names, bytes);
+			}
+			else if (f.getName().endsWith(".class")) {
+				names.add(pkg + f.getName().substring(0, f.getName().length() - 6));
+				bytes.add(Utils.loadFromStream(new FileInputStream(f)));
+			}
+		}
+	}
+
 	// TODO fibonacci
 
 	private void average(ReloadableType rtype, int count) throws Exception {
@@ -26,6 +26,7 @@ import java.lang.reflect.Method;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springsource.loaded.ClassRenamer;
+import org.springsource.loaded.GlobalConfiguration;
 import org.springsource.loaded.MethodInvokerRewriter;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeRegistry;
@@ -51,10 +52,10 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 	//		//		Class<?> callerClazz = loadit(t, loadBytesForClass(t));
 	//		// Run the initial version which does not define toString()
 	//		Result result = runUnguarded(target.getClazz(), "run");
-	//		target.loadNewVersion("2", target.bytesInitial);
+	//		target.loadNewVersion("2", target.getBytesInitial());
 	//		result = runUnguarded(target.getClazz(), "run");
 	//		System.out.println(result);
-	//		//		ClassPrinter.print(target.bytesLoaded);
+	//		//		ClassPrinter.print(target.getBytesLoaded());
 	//	}
 
 	@Test
@@ -120,6 +121,34 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 		assertTrue(((String) result.returnValue).startsWith("virtual.CalleeOne@"));
 	}
 
+	/**
+	 * Rewritten call sites pass the ids packed into a long when running with wide ids.
+	 */
+	@Test
+	public void wideIds() throws Exception {
+		GlobalConfiguration.wideIds = true;
+		try {
+			String t = "dispatcher.Staticmethod";
+			TypeRegistry typeRegistry = getTypeRegistry(t);
+			ReloadableType target = typeRegistry.addType(t, loadBytesForClass(t));
+
+			byte[] callerbytes = MethodInvokerRewriter.rewrite(typeRegistry,
+					loadBytesForClass("dispatcher.StaticmethodCaller"));
+			assertTrue(toStringMethod(callerbytes, "run", false).indexOf("istcheck(JLjava/lang/String;)") != -1);
+			Class<?> callerClazz = loadit("dispatcher.StaticmethodCaller", callerbytes);
+
+			Result result = runUnguarded(callerClazz, "run");
+			assertEquals("abc", result.stdout.trim());
+
+			target.loadNewVersion("2", target.getBytesInitial());
+			result = runUnguarded(callerClazz, "run");
+			assertEquals("abc", result.stdout.trim());
+		}
+		finally {
+			GlobalConfiguration.wideIds = false;
+		}
+	}
+
 	/**
 	 * Testing what happens when reloading introduces a new method in the supertype that is called from the subtype.
 	 */
@@ -563,7 +592,7 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 						" L3\n");
 		// @formatter:on
 		Class<?> callerClazz = loadit("tgt.StaticCaller", rewrittenBytes);
-		//		ClassPrinter.print(r.bytesLoaded);
+		//		ClassPrinter.print(r.getBytesLoaded());
 		Result result = runUnguarded(callerClazz, "run");
 		assertEquals(123, result.returnValue);
 	}
@@ -767,7 +796,7 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 		byte[] callerbytes = loadBytesForClass("tgt.StaticCaller");
 		byte[] rewrittenBytes = MethodInvokerRewriter.rewrite(typeRegistry, callerbytes);
 		Class<?> callerClazz = loadit("tgt.StaticCaller", rewrittenBytes);
-		//		ClassPrinter.print(callee.bytesLoaded);
+		//		ClassPrinter.print(callee.getBytesLoaded());
 		// run the original
 		Result result = runUnguarded(callerClazz, "run");
 		assertEquals(123, result.returnValue);
@@ -1336,7 +1365,7 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 		Method method = null;
 		String string = null;
 
-		//		ClassPrinter.print(rt.bytesLoaded);
+		//		ClassPrinter.print(rt.getBytesLoaded());
 		method = st.getClazz().getMethod("withParamSuperCaller");
 		string = (String) method.invoke(object);
 		assertEquals("2323", string);
@@ -1511,7 +1540,7 @@ public class MethodInvokerRewriterTests extends SpringLoadedTests {
 
 		// reload p and remove the method
 		p.loadNewVersion("002", retrieveRename("invokespecial.P", "invokespecial.P002"));
-		//		ClassPrinter.print(p.bytesLoaded);
+		//		ClassPrinter.print(p.getBytesLoaded());
 		try {
 			string = method.invoke(object).toString();
 			fail();
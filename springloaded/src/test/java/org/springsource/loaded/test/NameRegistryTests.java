@@ -46,4 +46,24 @@ public class NameRegistryTests extends SpringLoadedTests {
 		assertNull(NameRegistry.getTypenameById(1000));
 	}
 
+	/**
+	 * Allocating ids for a large number of types (as happens during startup of a big application) must not degrade
+	 * quadratically.
+	 */
+	@Test
+	public void allocatingManyNames() {
+		int count = 100000;
+		long stime = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, NameRegistry.getIdOrAllocateFor("a/b/C" + i));
+		}
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, NameRegistry.getIdFor("a/b/C" + i));
+		}
+		long etime = System.currentTimeMillis();
+		System.out.println("Allocating and looking up " + count + " names took " + (etime - stime) + "ms");
+		assertEquals("a/b/C" + (count - 1), NameRegistry.getTypenameById(count - 1));
+		assertNull(NameRegistry.getTypenameById(count));
+	}
+
 }
@@ -301,7 +301,7 @@ public class ReflectiveReflectionTests extends SpringLoadedTests {
 		result = runUnguarded(rtype.getClazz(), "run");
 		System.out.println(result);
 		assertEquals("true 123 a 3.14 6.5 32767 555 333", result.returnValue);
-		rtype.loadNewVersion(rtype.bytesInitial);//retrieveRenameRetarget(t));
+		rtype.loadNewVersion(rtype.getBytesInitial());//retrieveRenameRetarget(t));
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("true 123 a 3.14 6.5 32767 555 333", result.returnValue);
 	}
@@ -489,7 +489,7 @@ public class ReflectiveReflectionTests extends SpringLoadedTests {
 		ReloadableType rtypeh = r.addType("iri.Helper", loadBytesForClass("iri.Helper"));
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("0", result.returnValue);
-		rtypeh.loadNewVersion(rtypeh.bytesInitial);
+		rtypeh.loadNewVersion(rtypeh.getBytesInitial());
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("0", result.returnValue);
 	}
@@ -513,7 +513,7 @@ public class ReflectiveReflectionTests extends SpringLoadedTests {
 		ReloadableType rtype = r.addType(t, loadBytesForClass(t));
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("I am an instance", result.returnValue);
-		rtype.loadNewVersion(rtype.bytesInitial);
+		rtype.loadNewVersion(rtype.getBytesInitial());
 		result = runUnguarded(rtype.getClazz(), "run");
 		assertEquals("I am an instance", result.returnValue);
 	}
@@ -585,7 +585,7 @@ public class ReflectiveReflectionTests extends SpringLoadedTests {
 		String t = "iri.Ctor";
 		TypeRegistry r = getTypeRegistry(t);
 		ReloadableType rtype = r.addType(t, loadBytesForClass(t));
-		//		rtype.loadNewVersion(rtype.bytesInitial);
+		//		rtype.loadNewVersion(rtype.getBytesInitial());
 		result = runStaticUnguarded(rtype.getClazz(), "run");
 		assertEquals("instance", result.returnValue);
 	}
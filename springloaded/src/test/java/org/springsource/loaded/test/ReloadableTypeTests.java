@@ -23,15 +23,32 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
 import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 import org.springsource.loaded.GlobalConfiguration;
+import org.springsource.loaded.InterfaceExtractor;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.SpringLoaded;
 import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.agent.ReloadableFileChangeListener;
+import org.springsource.loaded.agent.SpringLoadedAgent;
 import org.springsource.loaded.Utils.ReturnType;
 import org.springsource.loaded.test.infra.Result;
 
@@ -81,6 +98,270 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		assertEquals(7, r.returnValue);
 	}
 
+	/**
+	 * Methods whose code has not changed keep running the original code after a reload.
+	 */
+	@Test
+	public void changedMethods() throws Exception {
+		TypeRegistry typeRegistry = getTypeRegistry("basic.Basic");
+		byte[] sc = loadBytesForClass("basic.Basic");
+		ReloadableType rtype = typeRegistry.addType("basic.Basic", sc);
+		int foo = rtype.getTypeDescriptor().getByDescriptor("foo", "()V").getId();
+		int getValue = rtype.getTypeDescriptor().getByDescriptor("getValue", "()I").getId();
+		assertEquals(0, rtype.changed(getValue));
+
+		rtype.loadNewVersion("002", sc);
+		assertEquals(0, rtype.changed(foo));
+		assertEquals(0, rtype.changed(getValue));
+		assertEquals(5, runUnguarded(rtype.getClazz(), "getValue").returnValue);
+
+		rtype.loadNewVersion("003", retrieveRename("basic.Basic", "basic.Basic002"));
+		assertEquals(2, rtype.changed(foo));
+		assertEquals(1, rtype.changed(getValue));
+		assertEquals(7, runUnguarded(rtype.getClazz(), "getValue").returnValue);
+	}
+
+	/**
+	 * A change to a string constant alone must be reloaded, even when the old and new constants have the same
+	 * String.hashCode() ("Aa" and "BB").
+	 */
+	@Test
+	public void changedStringConstant() throws Exception {
+		TypeRegistry typeRegistry = getTypeRegistry("differs.DiffBodies");
+		ReloadableType rtype = typeRegistry.addType("differs.DiffBodies", loadBytesForClass("differs.DiffBodies"));
+		int constant = rtype.getTypeDescriptor().getByDescriptor("constant", "()Ljava/lang/String;").getId();
+		int catcher = rtype.getTypeDescriptor().getByDescriptor("catcher", "()Ljava/lang/String;").getId();
+		assertEquals("Aa", runUnguarded(rtype.getClazz(), "constant").returnValue);
+
+		rtype.loadNewVersion("002", retrieveRename("differs.DiffBodies", "differs.DiffBodies2"));
+		assertEquals(1, rtype.changed(constant));
+		assertEquals(0, rtype.changed(catcher));
+		assertEquals("BB", runUnguarded(rtype.getClazz(), "constant").returnValue);
+	}
+
+	/**
+	 * A change to the type caught alone, which only alters the exception table, must be reloaded.
+	 */
+	@Test
+	public void changedCatchType() throws Exception {
+		TypeRegistry typeRegistry = getTypeRegistry("differs.DiffBodies");
+		ReloadableType rtype = typeRegistry.addType("differs.DiffBodies", loadBytesForClass("differs.DiffBodies"));
+		int catcher = rtype.getTypeDescriptor().getByDescriptor("catcher", "()Ljava/lang/String;").getId();
+		try {
+			runUnguarded(rtype.getClazz(), "catcher");
+			fail("the NullPointerException should not have been caught");
+		}
+		catch (InvocationTargetException ite) {
+			assertTrue(ite.getCause() instanceof NullPointerException);
+		}
+
+		rtype.loadNewVersion("002", retrieveRename("differs.DiffBodies", "differs.DiffBodies3"));
+		assertEquals(1, rtype.changed(catcher));
+		assertEquals("caught", runUnguarded(rtype.getClazz(), "catcher").returnValue);
+	}
+
+	/**
+	 * With the agent a change to method bodies is redefined in place: the class is handed to the instrumentation with
+	 * its new code, which the agent's transformer answers with, and no dispatcher or executor is generated. The
+	 * instrumentation here is a double that defines the bytes it would have redefined the class with in a new loader,
+	 * so that the new code can be run.
+	 */
+	@Test
+	public void redefineBodyChangesWithAgent() throws Exception {
+		String d = "differs.DiffBodies";
+		TypeRegistry typeRegistry = getTypeRegistry(d);
+		ReloadableType rtype = typeRegistry.addType(d, loadBytesForClass(d));
+		Class<?> clazz = rtype.getClazz();
+		assertEquals("Aa", runUnguarded(clazz, "constant").returnValue);
+
+		RedefiningInstrumentation instrumentation = new RedefiningInstrumentation();
+		// starting the agent configures things for running as an agent
+		boolean directlyDefineTypes = GlobalConfiguration.directlyDefineTypes;
+		boolean fileSystemMonitoring = GlobalConfiguration.fileSystemMonitoring;
+		GlobalConfiguration.redefineBodyChanges = true;
+		SpringLoadedAgent.agentmain(null, instrumentation.getInstrumentation());
+		try {
+			byte[] newBytes = retrieveRename(d, d + "2");
+			assertTrue(rtype.loadNewVersion("002", newBytes));
+			assertEquals(1, instrumentation.redefined.size());
+			assertEquals(clazz, instrumentation.redefined.get(0));
+		}
+		finally {
+			GlobalConfiguration.redefineBodyChanges = false;
+			GlobalConfiguration.directlyDefineTypes = directlyDefineTypes;
+			GlobalConfiguration.fileSystemMonitoring = fileSystemMonitoring;
+			setAgentField("instrumentation", null);
+			setAgentField("transformer", null);
+		}
+		// the dispatcher and executor were bypassed
+		assertNull(rtype.getLiveVersion());
+		assertNull(rtype.getLatestExecutorBytes());
+		assertFalse(rtype.hasBeenReloaded());
+		// the original class still runs its own code, the double did not really redefine it
+		assertEquals("Aa", runUnguarded(clazz, "constant").returnValue);
+		// the class the JVM would have been given runs the new code
+		Class<?> redefined = instrumentation.redefinedClasses.get(0);
+		assertEquals("BB", runUnguarded(redefined, "constant").returnValue);
+	}
+
+	/**
+	 * A type whose instrumentation was deferred can still have the code in its methods changed when the agent is there
+	 * to redefine it, with the new code as it is. Later reloads are then compared with that new code, not with the code
+	 * the type was first loaded with.
+	 */
+	@Test
+	public void deferredInstrumentationWithAgent() throws Exception {
+		String d = "differs.DiffBodies";
+		RedefiningInstrumentation instrumentation = new RedefiningInstrumentation();
+		boolean directlyDefineTypes = GlobalConfiguration.directlyDefineTypes;
+		boolean fileSystemMonitoring = GlobalConfiguration.fileSystemMonitoring;
+		GlobalConfiguration.deferInstrumentation = true;
+		SpringLoadedAgent.agentmain(null, instrumentation.getInstrumentation());
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry(d);
+			byte[] originalBytes = loadBytesForClass(d);
+			ReloadableType rtype = typeRegistry.addType(d, originalBytes);
+			assertTrue(rtype.isDeferred());
+			Class<?> clazz = rtype.getClazz();
+			assertEquals("Aa", runUnguarded(clazz, "constant").returnValue);
+
+			byte[] newBytes = retrieveRename(d, d + "2");
+			assertTrue(rtype.loadNewVersion("002", newBytes));
+			assertEquals(1, instrumentation.redefined.size());
+			assertEquals(clazz, instrumentation.redefined.get(0));
+			assertEquals("BB", runUnguarded(instrumentation.redefinedClasses.get(0), "constant").returnValue);
+			assertTrue(Arrays.equals(newBytes, rtype.getBytesInitial()));
+			assertTrue(Arrays.equals(newBytes, rtype.getBytesLoaded()));
+			assertNull(rtype.getLiveVersion());
+
+			// only a change from the new code (going back to the original) so it is redefined again
+			assertTrue(rtype.loadNewVersion("003", originalBytes));
+			assertEquals(2, instrumentation.redefined.size());
+			assertEquals("Aa", runUnguarded(instrumentation.redefinedClasses.get(1), "constant").returnValue);
+			assertTrue(Arrays.equals(originalBytes, rtype.getBytesInitial()));
+			assertNull(rtype.getLiveVersion());
+		}
+		finally {
+			GlobalConfiguration.deferInstrumentation = false;
+			GlobalConfiguration.directlyDefineTypes = directlyDefineTypes;
+			GlobalConfiguration.fileSystemMonitoring = fileSystemMonitoring;
+			setAgentField("instrumentation", null);
+			setAgentField("transformer", null);
+		}
+	}
+
+	private static void setAgentField(String name, Object value) throws Exception {
+		Field field = SpringLoadedAgent.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(null, value);
+	}
+
+	/**
+	 * Stands in for the JVM instrumentation. A redefinition is passed through the registered transformers, as the JVM
+	 * would, and the resulting bytes are defined in a new loader rather than replacing the class.
+	 */
+	static class RedefiningInstrumentation implements InvocationHandler {
+
+		final List<ClassFileTransformer> transformers = new ArrayList<ClassFileTransformer>();
+
+		final List<Class<?>> redefined = new ArrayList<Class<?>>();
+
+		final List<Class<?>> redefinedClasses = new ArrayList<Class<?>>();
+
+		Instrumentation getInstrumentation() {
+			return (Instrumentation) Proxy.newProxyInstance(Instrumentation.class.getClassLoader(),
+					new Class<?>[] { Instrumentation.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("addTransformer")) {
+				transformers.add((ClassFileTransformer) args[0]);
+				return null;
+			}
+			if (method.getName().equals("redefineClasses")) {
+				for (ClassDefinition definition : (ClassDefinition[]) args[0]) {
+					Class<?> clazz = definition.getDefinitionClass();
+					byte[] bytes = definition.getDefinitionClassFile();
+					for (ClassFileTransformer transformer : transformers) {
+						byte[] transformed = transformer.transform(clazz.getClassLoader(),
+								clazz.getName().replace('.', '/'), clazz, clazz.getProtectionDomain(), bytes);
+						if (transformed != null) {
+							bytes = transformed;
+						}
+					}
+					redefined.add(clazz);
+					redefinedClasses.add(new DefiningLoader(clazz.getClassLoader()).define(clazz.getName(), bytes));
+				}
+				return null;
+			}
+			if (method.getName().equals("isRedefineClassesSupported")) {
+				return true;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	static class DefiningLoader extends ClassLoader {
+
+		DefiningLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Without the agent a change to method bodies cannot be redefined in place, it is loaded as a new version as usual.
+	 */
+	@Test
+	public void redefineBodyChangesWithoutAgent() throws Exception {
+		GlobalConfiguration.redefineBodyChanges = true;
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry("ctors.Caller");
+			ReloadableType rtype = typeRegistry.addType("ctors.Caller", loadBytesForClass("ctors.Caller"));
+			assertNull(runUnguarded(rtype.getClazz(), "runB").returnValue);
+			assertTrue(rtype.loadNewVersion("002", retrieveRename("ctors.Caller", "ctors.Caller2")));
+			assertTrue(rtype.hasBeenReloaded());
+			assertNotNull(rtype.getLatestExecutorBytes());
+		}
+		finally {
+			GlobalConfiguration.redefineBodyChanges = false;
+		}
+	}
+
+	/**
+	 * With instrumentation deferred the type is loaded as it is, and without the agent to redefine it nothing can be
+	 * reloaded.
+	 */
+	@Test
+	public void deferredInstrumentation() throws Exception {
+		GlobalConfiguration.deferInstrumentation = true;
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry("basic.Basic");
+			byte[] sc = loadBytesForClass("basic.Basic");
+			ReloadableType rtype = typeRegistry.addType("basic.Basic", sc);
+			assertTrue(rtype.isDeferred());
+			assertTrue(Arrays.equals(sc, rtype.getBytesLoaded()));
+			Class<?> clazz = rtype.getClazz();
+			try {
+				clazz.getDeclaredField("r$type");
+				fail("deferred type should not have been rewritten");
+			}
+			catch (NoSuchFieldException nsfe) {
+				// expected
+			}
+			assertEquals(5, runUnguarded(clazz, "getValue").returnValue);
+			assertFalse(rtype.loadNewVersion("002", retrieveRename("basic.Basic", "basic.Basic002")));
+			assertFalse(rtype.hasBeenReloaded());
+			assertEquals(5, runUnguarded(clazz, "getValue").returnValue);
+		}
+		finally {
+			GlobalConfiguration.deferInstrumentation = false;
+		}
+	}
+
 	@Test
 	public void removingStaticMethod() throws Exception {
 		String t = "remote.Perf1";
@@ -148,7 +429,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		runOnInstance(rtype.getClazz(), instance, "setProtectedStaticField", 3);
 		assertEquals(3, runOnInstance(rtype.getClazz(), instance, "getProtectedStaticField").returnValue);
 
-		rtype.loadNewVersion(rtype.bytesInitial);
+		rtype.loadNewVersion(rtype.getBytesInitial());
 
 		runOnInstance(rtype.getClazz(), instance, "setPublicField", 4);
 		assertEquals(4, runOnInstance(rtype.getClazz(), instance, "getPublicField").returnValue);
@@ -209,7 +490,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		assertEquals("String1", r.returnValue);
 
 
-		B.loadNewVersion(B.bytesInitial);
+		B.loadNewVersion(B.getBytesInitial());
 
 		r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
@@ -224,7 +505,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		Result r = runUnguarded(BB.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
 
-		BB.loadNewVersion(BB.bytesInitial);
+		BB.loadNewVersion(BB.getBytesInitial());
 
 		r = runUnguarded(BB.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
@@ -239,7 +520,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		Result r = runUnguarded(BBB.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
 
-		AAA.loadNewVersion(AAA.bytesInitial);
+		AAA.loadNewVersion(AAA.getBytesInitial());
 
 		r = runUnguarded(BBB.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
@@ -254,8 +535,8 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		Result r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
 
-		A.loadNewVersion(A.bytesInitial);
-		B.loadNewVersion(B.bytesInitial);
+		A.loadNewVersion(A.getBytesInitial());
+		B.loadNewVersion(B.getBytesInitial());
 
 		r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("String1", r.returnValue);
@@ -275,7 +556,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		thesuper = tr.getReloadableType("invokestatic/issue4/subpkg/AAAA");
 		assertNull(thesuper);
 
-		B.loadNewVersion(B.bytesInitial);
+		B.loadNewVersion(B.getBytesInitial());
 
 		r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("Hello", r.returnValue);
@@ -392,7 +673,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		thesuper = tr.getReloadableType("invokestatic/issue4/subpkg/AAAA");
 		assertNull(thesuper);
 
-		B.loadNewVersion(B.bytesInitial);
+		B.loadNewVersion(B.getBytesInitial());
 
 		r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("Hello", r.returnValue);
@@ -411,7 +692,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		thesuper = tr.getReloadableType("invokestatic/issue4/subpkg/AAAA");
 		assertNull(thesuper);
 
-		B.loadNewVersion(B.bytesInitial);
+		B.loadNewVersion(B.getBytesInitial());
 
 		r = runUnguarded(B.getClazz(), "getMessage");
 		assertEquals("Hello", r.returnValue);
@@ -476,7 +757,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		runOnInstance(rtype.getClazz(), instance, "setSomeField", 3);
 		assertEquals(3, runOnInstance(rtype.getClazz(), instance, "getSomeField").returnValue);
 
-		rtype.loadNewVersion(rtype.bytesInitial);
+		rtype.loadNewVersion(rtype.getBytesInitial());
 
 		runOnInstance(rtype.getClazz(), instance, "setSomeField", 3);
 		assertEquals(3, runOnInstance(rtype.getClazz(), instance, "getSomeField").returnValue);
@@ -505,7 +786,7 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		// if this returns 5, the wrong field got set in setPeerField!
 		assertEquals(3, runOnInstance(rtype.getClazz(), instance, "getField").returnValue);
 
-		rtype.loadNewVersion(rtype.bytesInitial);
+		rtype.loadNewVersion(rtype.getBytesInitial());
 		runOnInstance(rtype.getClazz(), instance, "setField", 3);
 		assertEquals(3, runOnInstance(rtype.getClazz(), instance, "getField").returnValue);
 
@@ -661,4 +942,172 @@ public class ReloadableTypeTests extends SpringLoadedTests {
 		assertTrue(Modifier.isStatic((Integer) runUnguarded(simpleClass, "getModifiers").returnValue));
 	}
 
+	/**
+	 * Reload a supertype and its subtype as one batch. They are passed subtype first but the subtype must still be
+	 * generated against the new version of the supertype (in which method() is no longer final).
+	 */
+	@Test
+	public void batchReload() throws Exception {
+		String t = "basic.Top";
+		String b = "basic.Bottom";
+		TypeRegistry typeRegistry = getTypeRegistry(t + "," + b);
+		ReloadableType ttype = typeRegistry.addType(t, loadBytesForClass(t));
+		ReloadableType btype = typeRegistry.addType(b, loadBytesForClass(b));
+
+		runUnguarded(btype.getClazz(), "run");
+
+		boolean[] reloaded = typeRegistry.loadNewVersions(new ReloadableType[] { btype, ttype },
+				new String[] { "2", "2" },
+				new byte[][] { retrieveRename(b, b + "2", "basic.Top2:basic.Top"), retrieveRename(t, t + "2") });
+		assertTrue(reloaded[0]);
+		assertTrue(reloaded[1]);
+		assertEquals("2", ttype.getLiveVersion().getVersionStamp());
+		assertEquals("2", btype.getLiveVersion().getVersionStamp());
+		Result r = runUnguarded(btype.getClazz(), "run");
+		assertEquals("abc", r.stdout);
+	}
+
+	/**
+	 * A type in a batch for which the new version cannot be generated is not reloaded, the rest of the batch (generated
+	 * alongside it) still is.
+	 */
+	@Test
+	public void batchReloadWithFailingType() throws Exception {
+		String t = "basic.Top";
+		String b = "basic.Basic";
+		String d = "differs.DiffBodies";
+		TypeRegistry typeRegistry = getTypeRegistry(t + "," + b + "," + d);
+		ReloadableType ttype = typeRegistry.addType(t, loadBytesForClass(t));
+		ReloadableType btype = typeRegistry.addType(b, loadBytesForClass(b));
+		ReloadableType dtype = typeRegistry.addType(d, loadBytesForClass(d));
+		assertEquals(5, runUnguarded(btype.getClazz(), "getValue").returnValue);
+
+		boolean verifyReloads = GlobalConfiguration.verifyReloads;
+		boolean assertsMode = GlobalConfiguration.assertsMode;
+		GlobalConfiguration.verifyReloads = false;
+		GlobalConfiguration.assertsMode = true;
+		try {
+			// the 'new version' of Top has the wrong name, so generating it fails
+			boolean[] reloaded = typeRegistry.loadNewVersions(new ReloadableType[] { btype, ttype, dtype },
+					new String[] { "2", "2", "2" },
+					new byte[][] { retrieveRename(b, b + "002"), loadBytesForClass(b), retrieveRename(d, d + "2") });
+			assertTrue(reloaded[0]);
+			assertFalse(reloaded[1]);
+			assertTrue(reloaded[2]);
+		}
+		finally {
+			GlobalConfiguration.verifyReloads = verifyReloads;
+			GlobalConfiguration.assertsMode = assertsMode;
+		}
+		assertNull(ttype.getLiveVersion());
+		assertEquals("basic/Top", typeRegistry.getDescriptorForReloadableType("basic/Top").getName());
+		assertEquals("2", btype.getLiveVersion().getVersionStamp());
+		assertEquals("2", dtype.getLiveVersion().getVersionStamp());
+	}
+
+	/**
+	 * A file in a batch of changes that can no longer be read (deleted since the change was seen) is skipped, the rest
+	 * of the batch is still reloaded.
+	 */
+	@Test
+	public void batchReloadWithMissingFile() throws Exception {
+		String t = "basic.Top";
+		String b = "basic.Basic";
+		TypeRegistry typeRegistry = getTypeRegistry(t + "," + b);
+		ReloadableType ttype = typeRegistry.addType(t, loadBytesForClass(t));
+		ReloadableType btype = typeRegistry.addType(b, loadBytesForClass(b));
+		assertEquals(5, runUnguarded(btype.getClazz(), "getValue").returnValue);
+
+		File changed = File.createTempFile("Basic", ".class");
+		File missing = File.createTempFile("Top", ".class");
+		try {
+			FileOutputStream fos = new FileOutputStream(changed);
+			fos.write(retrieveRename(b, b + "002"));
+			fos.close();
+			assertTrue(missing.delete());
+			ReloadableFileChangeListener listener = new ReloadableFileChangeListener(typeRegistry);
+			listener.register(ttype, missing);
+			listener.register(btype, changed);
+			listener.filesChanged(Arrays.asList(missing, changed));
+			assertEquals(7, runUnguarded(btype.getClazz(), "getValue").returnValue);
+			assertNull(ttype.getLiveVersion());
+		}
+		finally {
+			changed.delete();
+		}
+	}
+
+	/**
+	 * With compactBytes the bytes are only held compressed (or not at all) once defined, but can still be retrieved
+	 * and the type can still be reloaded.
+	 */
+	@Test
+	public void compactBytes() throws Exception {
+		boolean compactBytes = GlobalConfiguration.compactBytes;
+		GlobalConfiguration.compactBytes = true;
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry("basic.Basic");
+			byte[] sc = loadBytesForClass("basic.Basic");
+			ReloadableType rtype = typeRegistry.addType("basic.Basic", sc);
+			assertNull(rtype.bytesInitial);
+			assertNull(rtype.bytesLoaded);
+			assertNull(rtype.interfaceBytes);
+			assertTrue(Arrays.equals(sc, rtype.getBytesInitial()));
+			assertNotNull(rtype.getBytesLoaded());
+			assertTrue(Arrays.equals(InterfaceExtractor.extract(sc, typeRegistry, rtype.getTypeDescriptor()),
+					rtype.getInterfaceBytes()));
+
+			Class<?> simpleClass = rtype.getClazz();
+			assertEquals(5, runUnguarded(simpleClass, "getValue").returnValue);
+			rtype.loadNewVersion("002", retrieveRename("basic.Basic", "basic.Basic002"));
+			assertEquals(7, runUnguarded(simpleClass, "getValue").returnValue);
+			assertNotNull(rtype.getLatestExecutorBytes());
+			assertNotNull(rtype.getLatestDispatcherBytes());
+
+			String report = typeRegistry.getFootprintReport();
+			assertTrue(report, report.contains("reloadable types=#1 compactBytes=true"));
+			assertTrue(report, report.contains(" initial bytes: held="));
+			assertTrue(report, report.contains(" executor bytes: held="));
+			Matcher m = Pattern.compile(" total: held=(\\d+) full=(\\d+)").matcher(report);
+			assertTrue(report, m.find());
+			long held = Long.parseLong(m.group(1));
+			long full = Long.parseLong(m.group(2));
+			assertTrue(report, held > 0 && held < full);
+		}
+		finally {
+			GlobalConfiguration.compactBytes = compactBytes;
+		}
+	}
+
+	/**
+	 * When the class is defined by the caller (the agent) the rewritten bytes are kept as they are until they have
+	 * been handed over, and only then compacted.
+	 */
+	@Test
+	public void compactBytesOnceHandedOver() throws Exception {
+		boolean compactBytes = GlobalConfiguration.compactBytes;
+		GlobalConfiguration.compactBytes = true;
+		boolean directlyDefineTypes = GlobalConfiguration.directlyDefineTypes;
+		GlobalConfiguration.directlyDefineTypes = false;
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry("basic.Basic");
+			byte[] sc = loadBytesForClass("basic.Basic");
+			ReloadableType rtype = typeRegistry.addType("basic.Basic", sc);
+			assertNotNull(rtype.bytesInitial);
+			byte[] loaded = rtype.bytesLoaded;
+			assertNotNull(loaded);
+			assertNull(rtype.interfaceBytes);
+
+			assertTrue(loaded == rtype.getBytesToDefine());
+			assertNull(rtype.bytesInitial);
+			assertNull(rtype.bytesLoaded);
+			assertTrue(Arrays.equals(sc, rtype.getBytesInitial()));
+			assertTrue(Arrays.equals(loaded, rtype.getBytesLoaded()));
+		}
+		finally {
+			GlobalConfiguration.compactBytes = compactBytes;
+			GlobalConfiguration.directlyDefineTypes = directlyDefineTypes;
+		}
+	}
+
 }
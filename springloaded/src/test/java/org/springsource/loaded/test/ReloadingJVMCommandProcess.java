@@ -214,7 +214,7 @@ public class ReloadingJVMCommandProcess {
 			Class<?> clazz = Class.forName(classname);
 			TypeRegistry tr = TypeRegistry.getTypeRegistryFor(clazz.getClassLoader());
 			ReloadableType rt = tr.getReloadableType(clazz);
-			byte[] newdata = data != null ? fromHexString(data) : rt.bytesInitial;
+			byte[] newdata = data != null ? fromHexString(data) : rt.getBytesInitial();
 			boolean b = rt.loadNewVersion("2", newdata);
 			if (!b) {
 				throw new IllegalStateException("Failed to reload new verion of " + classname);
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springsource.loaded.RewriteCache;
+
+
+/**
+ * Test the pack file based cache of rewritten bytecode.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class RewriteCacheTests extends SpringLoadedTests {
+
+	private File cacheDir;
+
+	@Before
+	public void createCacheDir() throws Exception {
+		cacheDir = File.createTempFile("slcache", "");
+		cacheDir.delete();
+		cacheDir.mkdirs();
+	}
+
+	@After
+	public void deleteCacheDir() {
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	@Test
+	public void entriesSurviveRestart() {
+		byte[] one = loadBytesForClass("basic.Basic");
+		byte[] two = loadBytesForClass("basic.BasicB");
+		byte[] modified = new byte[] { 1, 2, 3 };
+		RewriteCache cache = new RewriteCache(cacheDir, "1.0");
+		cache.put(RewriteCache.digest(one), "basic/Basic", modified);
+		cache.put(RewriteCache.digest(two), "basic/BasicB", null);
+		// not in the mapping until the next run
+		assertNull(cache.read(cache.find(RewriteCache.digest(one))));
+
+		cache = new RewriteCache(cacheDir, "1.0");
+		assertEquals(2, cache.size());
+		assertArrayEquals(modified, cache.read(cache.find(RewriteCache.digest(one))));
+		assertFalse(cache.find(RewriteCache.digest(two)).modified);
+	}
+
+	/**
+	 * Two versions of a type with the same length must not share an entry.
+	 */
+	@Test
+	public void keyedOnContent() {
+		byte[] one = new byte[] { 1, 2, 3, 4 };
+		byte[] two = new byte[] { 1, 2, 3, 5 };
+		RewriteCache cache = new RewriteCache(cacheDir, "1.0");
+		cache.put(RewriteCache.digest(one), "a/B", new byte[] { 9 });
+		cache = new RewriteCache(cacheDir, "1.0");
+		assertNull(cache.find(RewriteCache.digest(two)));
+	}
+
+	@Test
+	public void discardedForOtherAgentVersion() {
+		RewriteCache cache = new RewriteCache(cacheDir, "1.0");
+		cache.put(RewriteCache.digest(new byte[] { 1 }), "a/B", new byte[] { 9 });
+		cache = new RewriteCache(cacheDir, "1.1");
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * A process dying part way through writing a record must not lose the records before it.
+	 */
+	@Test
+	public void partialRecordIgnored() throws Exception {
+		RewriteCache cache = new RewriteCache(cacheDir, "1.0");
+		cache.put(RewriteCache.digest(new byte[] { 1 }), "a/B", new byte[] { 9, 8, 7 });
+		cache.put(RewriteCache.digest(new byte[] { 2 }), "a/C", new byte[] { 6, 5, 4 });
+		RandomAccessFile raf = new RandomAccessFile(new File(cacheDir, "rewrites.pack"), "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+		cache = new RewriteCache(cacheDir, "1.0");
+		assertEquals(1, cache.size());
+		cache.put(RewriteCache.digest(new byte[] { 3 }), "a/D", new byte[] { 3 });
+		cache = new RewriteCache(cacheDir, "1.0");
+		assertEquals(2, cache.size());
+		assertArrayEquals(new byte[] { 9, 8, 7 }, cache.read(cache.find(RewriteCache.digest(new byte[] { 1 }))));
+		assertArrayEquals(new byte[] { 3 }, cache.read(cache.find(RewriteCache.digest(new byte[] { 3 }))));
+	}
+
+	/**
+	 * Two processes sharing a cacheDir see each other's entries and do not corrupt the pack.
+	 */
+	@Test
+	public void sharedBetweenInstances() {
+		RewriteCache one = new RewriteCache(cacheDir, "1.0");
+		RewriteCache two = new RewriteCache(cacheDir, "1.0");
+		for (int i = 0; i < 50; i++) {
+			one.put(RewriteCache.digest(new byte[] { 1, (byte) i }), "a/B" + i, new byte[] { (byte) i });
+			two.put(RewriteCache.digest(new byte[] { 2, (byte) i }), "a/C" + i, null);
+			// already added by 'one'
+			two.put(RewriteCache.digest(new byte[] { 1, (byte) i }), "a/B" + i, new byte[] { (byte) i });
+		}
+		assertEquals(100, two.size());
+		RewriteCache three = new RewriteCache(cacheDir, "1.0");
+		assertEquals(100, three.size());
+		for (int i = 0; i < 50; i++) {
+			assertArrayEquals(new byte[] { (byte) i },
+					three.read(three.find(RewriteCache.digest(new byte[] { 1, (byte) i }))));
+			assertFalse(three.find(RewriteCache.digest(new byte[] { 2, (byte) i })).modified);
+		}
+	}
+
+	/**
+	 * When the pack exceeds its maximum size the least recently used entries are evicted.
+	 */
+	@Test
+	public void boundedSize() {
+		long maxSize = 10000;
+		RewriteCache cache = new RewriteCache(cacheDir, "1.0", maxSize);
+		byte[] data = new byte[500];
+		cache.put(RewriteCache.digest(new byte[] { 0 }), "a/B0", data);
+		for (int i = 1; i < 100; i++) {
+			// keep using the first entry
+			assertNotNull(cache.find(RewriteCache.digest(new byte[] { 0 })));
+			cache.put(RewriteCache.digest(new byte[] { (byte) i }), "a/B" + i, data);
+			assertTrue(cache.getPackLength() <= maxSize);
+		}
+		cache = new RewriteCache(cacheDir, "1.0", maxSize);
+		assertTrue(cache.size() < 20);
+		assertNotNull(cache.find(RewriteCache.digest(new byte[] { 0 })));
+		assertNotNull(cache.find(RewriteCache.digest(new byte[] { 99 })));
+		assertNull(cache.find(RewriteCache.digest(new byte[] { 1 })));
+		assertArrayEquals(data, cache.read(cache.find(RewriteCache.digest(new byte[] { 0 }))));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springsource.loaded.BatchFileChangeListener;
+import org.springsource.loaded.ReloadableType;
+import org.springsource.loaded.agent.SharedFileSystemWatcher;
+
+
+/**
+ * Tests for the watcher shared between type registries.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class SharedFileSystemWatcherTests {
+
+	/**
+	 * Changes made in quick succession are delivered as one batch, to each listener just the files it registered.
+	 */
+	@Test
+	public void batches() throws IOException {
+		SharedFileSystemWatcher watcher = new SharedFileSystemWatcher(500);
+		TestBatchListener listenerOne = new TestBatchListener();
+		TestBatchListener listenerTwo = new TestBatchListener();
+		File dir = getTempDir();
+		File a = create(dir, "A.class");
+		File b = create(dir, "B.class");
+		File c = create(dir, "C.class");
+		watcher.register(a, listenerOne);
+		watcher.register(b, listenerOne);
+		watcher.register(c, listenerTwo);
+		pause(1100);
+		touch(a);
+		pause(100);
+		touch(b);
+		pause(100);
+		touch(c);
+		long stime = System.currentTimeMillis();
+		while ((listenerOne.getBatches().isEmpty() || listenerTwo.getBatches().isEmpty())
+				&& (System.currentTimeMillis() - stime) < 5000) {
+			pause(20);
+		}
+		pause(1500);
+		watcher.shutdown();
+		assertEquals(1, listenerOne.getBatches().size());
+		List<File> batch = listenerOne.getBatches().get(0);
+		assertEquals(2, batch.size());
+		assertTrue(batch.contains(a));
+		assertTrue(batch.contains(b));
+		assertEquals(1, listenerTwo.getBatches().size());
+		assertEquals(Collections.singletonList(c), listenerTwo.getBatches().get(0));
+	}
+
+	/**
+	 * Once the only listener for a file has been collected the file is no longer watched.
+	 */
+	@Test
+	public void collectedListenersNotWatched() throws IOException {
+		SharedFileSystemWatcher watcher = new SharedFileSystemWatcher(500);
+		TestBatchListener survivor = new TestBatchListener();
+		File dir = getTempDir();
+		File a = create(dir, "A.class");
+		File b = create(dir, "B.class");
+		watcher.register(a, new TestBatchListener());
+		watcher.register(b, survivor);
+		assertTrue(watcher.isWatching(a));
+		for (int i = 0; i < 50 && watcher.isWatching(a); i++) {
+			System.gc();
+			pause(20);
+			watcher.expungeStaleListeners();
+		}
+		watcher.shutdown();
+		assertFalse(watcher.isWatching(a));
+		assertTrue(watcher.isWatching(b));
+	}
+
+	private void touch(File f) {
+		try {
+			FileOutputStream fos = new FileOutputStream(f);
+			fos.write(3);
+			fos.close();
+			f.setLastModified(System.currentTimeMillis() + 2000);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private File create(File dir, String filename) throws IOException {
+		File f = new File(dir, filename);
+		assertTrue(f.createNewFile());
+		return f;
+	}
+
+	private void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (Exception e) {
+		}
+	}
+
+	private File getTempDir() throws IOException {
+		File tempFile = File.createTempFile("eternal", "");
+		tempFile.delete();
+		if (!tempFile.mkdir()) {
+			throw new RuntimeException("Failed to create folder " + tempFile);
+		}
+		return tempFile;
+	}
+
+	static class TestBatchListener implements BatchFileChangeListener {
+
+		private List<List<File>> batches = Collections.synchronizedList(new ArrayList<List<File>>());
+
+		public void filesChanged(List<File> files) {
+			batches.add(files);
+		}
+
+		public void fileChanged(File file) {
+			filesChanged(Collections.singletonList(file));
+		}
+
+		public void register(ReloadableType rtype, File file) {
+		}
+
+		List<List<File>> getBatches() {
+			return new ArrayList<List<File>>(batches);
+		}
+	}
+}
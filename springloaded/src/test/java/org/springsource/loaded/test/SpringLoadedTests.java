@@ -1043,7 +1043,7 @@ public abstract class SpringLoadedTests implements Constants {
 	 * Make a type reload itself - this does trigger creation of the dispatcher/executor.
 	 */
 	protected void reload(ReloadableType reloadableType, String versionstamp) {
-		reloadableType.loadNewVersion(versionstamp, reloadableType.bytesInitial);
+		reloadableType.loadNewVersion(versionstamp, reloadableType.getBytesInitial());
 	}
 
 	@SuppressWarnings("unchecked")
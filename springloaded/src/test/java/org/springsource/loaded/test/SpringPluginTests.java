@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springsource.loaded.ReloadableType;
+import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.agent.SpringPlugin;
+import org.springsource.loaded.ri.ReflectiveInterceptor;
+
+
+/**
+ * Tests for how the SpringPlugin keeps the handler methods of a RequestMappingHandlerMapping up to date as types are
+ * reloaded. The handler mapping here mimics the structure of the Spring one (the methods the plugin calls are declared
+ * two levels up its hierarchy) and the controllers are annotated with stand-ins for the Spring annotations.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class SpringPluginTests extends SpringLoadedTests {
+
+	/**
+	 * Only the handler methods of the reloaded controller are unregistered and detected again, the rest are left alone
+	 * and they are not all initialized again.
+	 */
+	@Test
+	public void controllerReloaded() throws Exception {
+		String g = "plugins.spring.Greeter";
+		String o = "plugins.spring.Other";
+		TypeRegistry typeRegistry = getTypeRegistry(g + "," + o);
+		ReloadableType gtype = typeRegistry.addType(g, loadBytesForClass(g));
+		ReloadableType otype = typeRegistry.addType(o, loadBytesForClass(o));
+		Object greeter = gtype.getClazz().newInstance();
+		Object other = otype.getClazz().newInstance();
+
+		HandlerMapping mapping = new HandlerMapping();
+		mapping.detectHandlerMethods(greeter);
+		mapping.detectHandlerMethods(other);
+		mapping.reset();
+		assertEquals(new HashSet<String>(Arrays.asList("Greeter.hello", "Other.other")),
+				mapping.getHandlerMethods().keySet());
+		SpringPlugin.requestMappingHandlerMappingInstances.register(mapping);
+
+		gtype.loadNewVersion("2", retrieveRename(g, g + "2"));
+
+		assertEquals(new HashSet<String>(Arrays.asList("Greeter.hello", "Greeter.goodbye", "Other.other")),
+				mapping.getHandlerMethods().keySet());
+		assertEquals(Arrays.asList("Greeter.hello"), mapping.unregistered);
+		assertEquals(1, mapping.detected.size());
+		assertSame(greeter, mapping.detected.get(0));
+		assertSame(other, mapping.getHandlerMethods().get("Other.other").getBean());
+		assertEquals(0, mapping.initCount);
+	}
+
+	/**
+	 * A type without request mappings that was not contributing handler methods leaves them all alone.
+	 */
+	@Test
+	public void nonControllerReloaded() throws Exception {
+		String h = "plugins.spring.Helper";
+		String o = "plugins.spring.Other";
+		TypeRegistry typeRegistry = getTypeRegistry(h + "," + o);
+		ReloadableType htype = typeRegistry.addType(h, loadBytesForClass(h));
+		ReloadableType otype = typeRegistry.addType(o, loadBytesForClass(o));
+
+		HandlerMapping mapping = new HandlerMapping();
+		mapping.detectHandlerMethods(otype.getClazz().newInstance());
+		mapping.reset();
+		SpringPlugin.requestMappingHandlerMappingInstances.register(mapping);
+
+		htype.loadNewVersion("2", retrieveRename(h, h + "2"));
+
+		assertEquals(new HashSet<String>(Arrays.asList("Other.other")), mapping.getHandlerMethods().keySet());
+		assertTrue(mapping.unregistered.isEmpty());
+		assertTrue(mapping.detected.isEmpty());
+		assertEquals(0, mapping.initCount);
+	}
+
+	/**
+	 * Reloading a type without request mappings that controllers extend detects the handler methods of those
+	 * controllers again, they are not lost.
+	 */
+	@Test
+	public void controllerSupertypeReloaded() throws Exception {
+		String b = "plugins.spring.Base";
+		String s = "plugins.spring.Sub";
+		TypeRegistry typeRegistry = getTypeRegistry(b + "," + s);
+		ReloadableType btype = typeRegistry.addType(b, loadBytesForClass(b));
+		ReloadableType stype = typeRegistry.addType(s, loadBytesForClass(s));
+		Object sub = stype.getClazz().newInstance();
+
+		HandlerMapping mapping = new HandlerMapping();
+		mapping.detectHandlerMethods(sub);
+		mapping.reset();
+		SpringPlugin.requestMappingHandlerMappingInstances.register(mapping);
+
+		btype.loadNewVersion("2", retrieveRename(b, b + "2"));
+
+		assertEquals(new HashSet<String>(Arrays.asList("Sub.sub")), mapping.getHandlerMethods().keySet());
+		assertSame(sub, mapping.getHandlerMethods().get("Sub.sub").getBean());
+		assertEquals(Arrays.asList("Sub.sub"), mapping.unregistered);
+		assertEquals(Arrays.asList(sub), mapping.detected);
+		assertEquals(0, mapping.initCount);
+		assertEquals("hi", runUnguarded(stype.getClazz(), "sub").returnValue);
+	}
+
+	/**
+	 * Plays the part of AbstractHandlerMethodMapping. Handler methods are keyed by type and method name.
+	 */
+	public static class AbstractHandlerMethodMapping {
+
+		private final Map<String, HandlerMethod> handlerMethods = new LinkedHashMap<String, HandlerMethod>();
+
+		List<String> unregistered = new ArrayList<String>();
+
+		List<Object> detected = new ArrayList<Object>();
+
+		int initCount = 0;
+
+		void reset() {
+			unregistered.clear();
+			detected.clear();
+			initCount = 0;
+		}
+
+		public Map<String, HandlerMethod> getHandlerMethods() {
+			return handlerMethods;
+		}
+
+		protected void unregisterMapping(Object mapping) {
+			unregistered.add((String) mapping);
+			handlerMethods.remove(mapping);
+		}
+
+		// the real detectHandlerMethods() is rewritten by the agent, so sees the reloaded methods and annotations
+		protected void detectHandlerMethods(Object handler) {
+			detected.add(handler);
+			Class<?> beanType = handler.getClass();
+			for (Method method : ReflectiveInterceptor.jlClassGetDeclaredMethods(beanType)) {
+				for (Annotation annotation : ReflectiveInterceptor.jlrMethodGetAnnotations(method)) {
+					if (annotation.annotationType().getSimpleName().equals("RequestMapping")) {
+						handlerMethods.put(beanType.getSimpleName() + "." + method.getName(),
+								new HandlerMethod(handler, beanType));
+					}
+				}
+			}
+		}
+
+		protected void initHandlerMethods() {
+			initCount++;
+		}
+	}
+
+	public static class RequestMappingInfoHandlerMapping extends AbstractHandlerMethodMapping {
+	}
+
+	public static class HandlerMapping extends RequestMappingInfoHandlerMapping {
+	}
+
+	public static class HandlerMethod {
+
+		private final Object bean;
+
+		private final Class<?> beanType;
+
+		HandlerMethod(Object bean, Class<?> beanType) {
+			this.bean = bean;
+			this.beanType = beanType;
+		}
+
+		public Object getBean() {
+			return bean;
+		}
+
+		public Class<?> getBeanType() {
+			return beanType;
+		}
+	}
+}
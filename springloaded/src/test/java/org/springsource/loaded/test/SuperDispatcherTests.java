@@ -50,17 +50,17 @@ public class SuperDispatcherTests extends SpringLoadedTests {
 		String t = "foo.ControllerB"; // supertype is in the grails/ package and so not reloadable
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
-		String rtypeDisassembled = toStringClass(rtype.bytesLoaded);
+		String rtypeDisassembled = toStringClass(rtype.getBytesLoaded());
 		// Should be one superdispatcher here
-		assertEquals(16, countMethods(rtype.bytesLoaded));
-		assertEquals(1, filter(getMethods(rtype.bytesLoaded), methodSuffixSuperDispatcher).size());
+		assertEquals(16, countMethods(rtype.getBytesLoaded()));
+		assertEquals(1, filter(getMethods(rtype.getBytesLoaded()), methodSuffixSuperDispatcher).size());
 		String expectedName = "foo" + methodSuffixSuperDispatcher;
 		assertContains("METHOD: 0x0001(public) " + expectedName + "()V", rtypeDisassembled);
 		assertContains(
 				"    ALOAD 0\n" +
 						"    INVOKESPECIAL grails/TopB.foo()V\n" +
 						"    RETURN\n",
-				toStringMethod(rtype.bytesLoaded, expectedName, false));
+				toStringMethod(rtype.getBytesLoaded(), expectedName, false));
 		String stdout = runOnInstance(rtype.getClazz(), rtype.getClazz().newInstance(), "foo").stdout;
 		assertEquals("TopB.foo() running\nControllerB.foo() running", stdout);
 		Assert.assertTrue(rtype.loadNewVersion("2", retrieveRename(t, t + "2")));
@@ -79,10 +79,10 @@ public class SuperDispatcherTests extends SpringLoadedTests {
 		TypeRegistry typeRegistry = getTypeRegistry("foo..*");
 		ReloadableType rtype0 = typeRegistry.addType(t0, loadBytesForClass(t0));
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
-		String rtypeDisassembled = toStringClass(rtype.bytesLoaded);
+		String rtypeDisassembled = toStringClass(rtype.getBytesLoaded());
 		String stdout = runOnInstance(rtype.getClazz(), rtype.getClazz().newInstance(), "foo").stdout;
 		assertEquals("TopB.foo() running\nControllerB.foo() running\nSubControllerB.foo() running", stdout);
-		assertEquals(1, filter(getMethods(rtype.bytesLoaded), methodSuffixSuperDispatcher).size());
+		assertEquals(1, filter(getMethods(rtype.getBytesLoaded()), methodSuffixSuperDispatcher).size());
 		Assert.assertTrue(rtype0.loadNewVersion("2", retrieveRename(t0, t0 + "2")));
 		stdout = runOnInstance(rtype.getClazz(), rtype.getClazz().newInstance(), "foo").stdout;
 		assertEquals("TopB.foo() running\nControllerB.foo() running again!\nSubControllerB.foo() running", stdout);
@@ -106,10 +106,10 @@ public class SuperDispatcherTests extends SpringLoadedTests {
 		String t = "foo.ControllerC"; // supertype is in the grails/ package and so not reloadable
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
-		String rtypeDisassembled = toStringClass(rtype.bytesLoaded);
+		String rtypeDisassembled = toStringClass(rtype.getBytesLoaded());
 		// Should be zero superdispatchers here
-		assertEquals(15, countMethods(rtype.bytesLoaded));
-		assertEquals(0, filter(getMethods(rtype.bytesLoaded), methodSuffixSuperDispatcher).size());
+		assertEquals(15, countMethods(rtype.getBytesLoaded()));
+		assertEquals(0, filter(getMethods(rtype.getBytesLoaded()), methodSuffixSuperDispatcher).size());
 		String expectedName = "foo" + methodSuffixSuperDispatcher;
 		assertDoesNotContain("METHOD: 0x0001(public) " + expectedName + "()V", rtypeDisassembled);
 		String stdout = runOnInstance(rtype.getClazz(), rtype.getClazz().newInstance(), "foo").stdout;
@@ -128,17 +128,17 @@ public class SuperDispatcherTests extends SpringLoadedTests {
 		String t = "foo.ControllerD"; // supertype is in the grails/ package and so not reloadable
 		TypeRegistry typeRegistry = getTypeRegistry(t);
 		ReloadableType rtype = typeRegistry.addType(t, loadBytesForClass(t));
-		String rtypeDisassembled = toStringClass(rtype.bytesLoaded);
+		String rtypeDisassembled = toStringClass(rtype.getBytesLoaded());
 		// Should be one superdispatcher here
-		assertEquals(17, countMethods(rtype.bytesLoaded));
-		assertEquals(1, filter(getMethods(rtype.bytesLoaded), methodSuffixSuperDispatcher).size());
+		assertEquals(17, countMethods(rtype.getBytesLoaded()));
+		assertEquals(1, filter(getMethods(rtype.getBytesLoaded()), methodSuffixSuperDispatcher).size());
 		String expectedName = "foo" + methodSuffixSuperDispatcher;
 		assertContains("METHOD: 0x0001(public) " + expectedName + "()V", rtypeDisassembled);
 		assertContains(
 				"    ALOAD 0\n" +
 						"    INVOKESPECIAL grails/TopD.foo()V\n" +
 						"    RETURN\n",
-				toStringMethod(rtype.bytesLoaded, expectedName, false));
+				toStringMethod(rtype.getBytesLoaded(), expectedName, false));
 		String stdout = runOnInstance(rtype.getClazz(), rtype.getClazz().newInstance(), "foo").stdout;
 		assertEquals("TopD.foo() running\nControllerD.foo() running", stdout);
 		Assert.assertTrue(rtype.loadNewVersion("2", retrieveRename(t, t + "2")));
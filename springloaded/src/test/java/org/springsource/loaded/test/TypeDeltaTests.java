@@ -178,4 +178,63 @@ public class TypeDeltaTests extends SpringLoadedTests {
 				.getChangedFields().get("i").toString());
 	}
 
+	@Test
+	public void changedMethods() {
+		byte[] bytes = loadBytesForClass("differs.DiffMethods");
+		byte[] bytes2 = retrieveRename("differs.DiffMethods", "differs.DiffMethodsX");
+		TypeDelta td = TypeDiffComputer.computeDifferences(bytes, bytes2);
+		assertTrue(td.hasAnythingChanged());
+		assertFalse(td.hasTypeDeclarationChanged());
+		assertFalse(td.haveFieldsChangedOrBeenAddedOrRemoved());
+		assertTrue(td.haveMethodsBeenAdded());
+		assertTrue(td.haveMethodsBeenDeleted());
+		assertTrue(td.haveMethodsChanged());
+		assertEquals(1, td.getChangedMethods().size());
+		assertEquals("MethodDelta[method:bodyChanged()Ljava/lang/String;]",
+				td.getChangedMethods().get("bodyChanged()Ljava/lang/String;").toString());
+	}
+
+	@Test
+	public void onlyMethodBodiesChanged() {
+		byte[] bytes = loadBytesForClass("ctors.Caller");
+		byte[] bytes2 = retrieveRename("ctors.Caller", "ctors.Caller2");
+		TypeDelta td = TypeDiffComputer.computeDifferences(bytes, bytes2);
+		assertTrue(td.haveOnlyMethodBodiesChanged());
+		assertTrue(td.getChangedMethods().get("runB()Ljava/lang/Object;").hasOnlyCodeChanged());
+
+		assertFalse(TypeDiffComputer.computeDifferences(bytes, bytes).haveOnlyMethodBodiesChanged());
+		bytes = loadBytesForClass("differs.DiffMethods");
+		bytes2 = retrieveRename("differs.DiffMethods", "differs.DiffMethodsX");
+		assertFalse(TypeDiffComputer.computeDifferences(bytes, bytes2).haveOnlyMethodBodiesChanged());
+		bytes = loadBytesForClass("differs.DiffTwo");
+		bytes2 = retrieveRename("differs.DiffTwo", "differs.DiffTwoX");
+		assertFalse(TypeDiffComputer.computeDifferences(bytes, bytes2).haveOnlyMethodBodiesChanged());
+	}
+
+	/**
+	 * "Aa" and "BB" have the same String.hashCode(), the change must still be seen.
+	 */
+	@Test
+	public void changedStringConstant() {
+		byte[] bytes = loadBytesForClass("differs.DiffBodies");
+		byte[] bytes2 = retrieveRename("differs.DiffBodies", "differs.DiffBodies2");
+		TypeDelta td = TypeDiffComputer.computeDifferences(bytes, bytes2);
+		assertTrue(td.hasAnythingChanged());
+		assertEquals(1, td.getChangedMethods().size());
+		assertTrue(td.getChangedMethods().get("constant()Ljava/lang/String;").hasOnlyCodeChanged());
+	}
+
+	/**
+	 * Only the exception table differs when just the type caught changes.
+	 */
+	@Test
+	public void changedCatchType() {
+		byte[] bytes = loadBytesForClass("differs.DiffBodies");
+		byte[] bytes2 = retrieveRename("differs.DiffBodies", "differs.DiffBodies3");
+		TypeDelta td = TypeDiffComputer.computeDifferences(bytes, bytes2);
+		assertTrue(td.hasAnythingChanged());
+		assertEquals(1, td.getChangedMethods().size());
+		assertTrue(td.getChangedMethods().get("catcher()Ljava/lang/String;").hasOnlyCodeChanged());
+	}
+
 }
@@ -19,20 +19,29 @@ package org.springsource.loaded.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Test;
 import org.springsource.loaded.GlobalConfiguration;
+import org.springsource.loaded.InvocationCache;
+import org.springsource.loaded.InvocationCache.MethodInvocation;
 import org.springsource.loaded.ReloadableType;
 import org.springsource.loaded.TypeDescriptor;
 import org.springsource.loaded.TypePattern;
 import org.springsource.loaded.TypeRegistry;
+import org.springsource.loaded.Utils;
+import org.springsource.loaded.ri.ReflectionSnapshot;
+import org.springsource.loaded.ri.ReflectiveInterceptor;
 
 
 /**
@@ -180,6 +189,38 @@ public class TypeRegistryTests extends SpringLoadedTests {
 		assertTrue(tps.get(0).matches("wibble"));
 	}
 
+	/**
+	 * Decisions are remembered, but not across a change of configuration.
+	 */
+	@Test
+	public void includesExcludesReconfigured() {
+		TypeRegistry typeRegistry = TypeRegistry.getTypeRegistryFor(binLoader);
+		assertNotNull(typeRegistry);
+
+		Properties p = new Properties();
+		p.setProperty(TypeRegistry.Key_Inclusions, "com.foo..*,org.Bar");
+		p.setProperty(TypeRegistry.Key_Exclusions, "com.foo.Goo,com.foo.internal..*");
+		typeRegistry.configure(p);
+		assertTrue(typeRegistry.isReloadableTypeName("com/foo/Bar"));
+		assertTrue(typeRegistry.isReloadableTypeName("com/foo/sub/Bar"));
+		assertTrue(typeRegistry.isReloadableTypeName("com/foo/Goo$Inner"));
+		assertFalse(typeRegistry.isReloadableTypeName("com/foo/Goo"));
+		assertFalse(typeRegistry.isReloadableTypeName("com/foo/internal/Bar"));
+		assertTrue(typeRegistry.isReloadableTypeName("org/Bar"));
+		assertFalse(typeRegistry.isReloadableTypeName("org/Barr"));
+		assertFalse(typeRegistry.isReloadableTypeName("org/Ba"));
+		assertFalse(typeRegistry.isReloadableTypeName("com/goo/Bar"));
+		// again, now they have been remembered
+		assertTrue(typeRegistry.isReloadableTypeName("com/foo/Bar"));
+		assertFalse(typeRegistry.isReloadableTypeName("com/foo/Goo"));
+
+		p.setProperty(TypeRegistry.Key_Inclusions, "com.goo..*");
+		p.remove(TypeRegistry.Key_Exclusions);
+		typeRegistry.configure(p);
+		assertFalse(typeRegistry.isReloadableTypeName("com/foo/Bar"));
+		assertTrue(typeRegistry.isReloadableTypeName("com/goo/Bar"));
+	}
+
 	@Test
 	public void loadTypeBadNames() {
 		TypeRegistry typeRegistry = getTypeRegistry("data.SimpleClass002");
@@ -236,31 +277,78 @@ public class TypeRegistryTests extends SpringLoadedTests {
 		assertEquals(2, typeRegistry.getChildClassLoader().getDefinedCount());
 		assertEquals(7, runUnguarded(tOne.getClazz(), "getValue").returnValue);
 
-		tTwo.loadNewVersion("002", tTwo.bytesInitial);
+		tTwo.loadNewVersion("002", tTwo.getBytesInitial());
 		assertEquals(4, typeRegistry.getChildClassLoader().getDefinedCount());
 		result = runUnguarded(tOne.getClazz(), "getValue");
 		assertEquals(5, runUnguarded(tTwo.getClazz(), "getValue").returnValue);
 
 		Class<?> cOneExecutor = tOne.getLatestExecutorClass();
 
-		tOne.loadNewVersion("003", tOne.bytesInitial);
+		tOne.loadNewVersion("003", retrieveRename(one, one + "002"));
 
 		// Now on this reload the child classloader should be recreated as it already has more
-		// than 2 defined.
-		// Note: this will currently cause us to redefine all the reloadable types
-		// according to their most recent version. An optimization may be to only
-		// define them on demand
-		tTwo.loadNewVersion("002", tTwo.bytesInitial);
-		assertEquals(4, typeRegistry.getChildClassLoader().getDefinedCount());
+		// than 2 defined. The other reloadable types are only redefined (according to their
+		// most recent version) when they are next used
+		tTwo.loadNewVersion("002", tTwo.getBytesInitial());
+		assertEquals(2, typeRegistry.getChildClassLoader().getDefinedCount());
 		assertEquals(5, runUnguarded(tTwo.getClazz(), "getValue").returnValue);
+		assertEquals(2, typeRegistry.getChildClassLoader().getDefinedCount());
 
 		// But what about calling the older types?
-		assertEquals(5, runUnguarded(tOne.getClazz(), "getValue").returnValue);
+		assertEquals(7, runUnguarded(tOne.getClazz(), "getValue").returnValue);
+		assertEquals(4, typeRegistry.getChildClassLoader().getDefinedCount());
 		if (cOneExecutor == tOne.getLatestExecutorClass()) {
 			fail("Why are we not using a new executor? the old one should have been removed, freeing up the classloader");
 		}
 	}
 
+	/**
+	 * Once the child classloader has been recreated nothing, including the caches, should keep the discarded one alive.
+	 */
+	@Test
+	public void discardedClassloaderCollected() throws Exception {
+		String one = "basic.Basic";
+		String two = "basic.BasicB";
+		int maxClassDefinitions = GlobalConfiguration.maxClassDefinitions;
+		GlobalConfiguration.maxClassDefinitions = 4;
+		try {
+			TypeRegistry typeRegistry = getTypeRegistry(one + "," + two);
+			ReloadableType tOne = typeRegistry.addType(one, loadBytesForClass(one));
+			ReloadableType tTwo = typeRegistry.addType(two, loadBytesForClass(two));
+
+			// Use the new version directly and reflectively, so the caches refer to it
+			tOne.loadNewVersion("002", retrieveRename(one, one + "002"));
+			assertEquals(7, runUnguarded(tOne.getClazz(), "getValue").returnValue);
+			Method getValue = tOne.getClazz().getMethod("getValue");
+			assertEquals(7, ReflectiveInterceptor.jlrMethodInvoke(getValue, tOne.getClazz().newInstance()));
+			assertEquals(1, ReflectiveInterceptor.jlClassGetDeclaredMethods(tOne.getClazz()).length);
+			int generation = tOne.getReloadGeneration();
+
+			tTwo.loadNewVersion("002", tTwo.getBytesInitial());
+			tTwo.loadNewVersion("003", tTwo.getBytesInitial());
+			WeakReference<ClassLoader> discarded = new WeakReference<ClassLoader>(typeRegistry.getChildClassLoader());
+			// This reload is over the limit so the loader is recreated
+			tTwo.loadNewVersion("004", tTwo.getBytesInitial());
+			assertNotSame(discarded.get(), typeRegistry.getChildClassLoader());
+			assertTrue(generation != tOne.getReloadGeneration());
+
+			long stime = System.currentTimeMillis();
+			while (discarded.get() != null && (System.currentTimeMillis() - stime) < 5000) {
+				System.gc();
+				Thread.sleep(20);
+			}
+			assertNull(discarded.get());
+
+			// Defined again on next use
+			assertEquals(7, ReflectiveInterceptor.jlrMethodInvoke(getValue, tOne.getClazz().newInstance()));
+			assertEquals(7, runUnguarded(tOne.getClazz(), "getValue").returnValue);
+			assertSame(typeRegistry.getChildClassLoader(), tOne.getLatestExecutorClass().getClassLoader());
+		}
+		finally {
+			GlobalConfiguration.maxClassDefinitions = maxClassDefinitions;
+		}
+	}
+
 	/**
 	 * Checking that the counting is working correctly for the managed classloader.
 	 */
@@ -286,10 +374,148 @@ public class TypeRegistryTests extends SpringLoadedTests {
 		// Should be dispatcher and executor for the reloaded type
 		assertEquals(2, typeRegistry.getChildClassLoader().getDefinedCount());
 
-		tTwo.loadNewVersion("002", tTwo.bytesInitial);
+		tTwo.loadNewVersion("002", tTwo.getBytesInitial());
 		assertEquals(4, typeRegistry.getChildClassLoader().getDefinedCount());
 
-		tThree.loadNewVersion("002", tThree.bytesInitial);
+		tThree.loadNewVersion("002", tThree.getBytesInitial());
 		assertEquals(6, typeRegistry.getChildClassLoader().getDefinedCount());
 	}
+
+	/**
+	 * The decisions made by the invocation guards are cached per reloadable type and recomputed after a further reload.
+	 */
+	@Test
+	public void invocationGuardDecisionsCached() throws Exception {
+		String tclass = "builder.DispatcherTestOne";
+		TypeRegistry typeRegistry = getTypeRegistry(tclass);
+		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
+		int ids = Utils.toCombined(typeRegistry.getId(), rtype.getId());
+
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
+		assertFalse(TypeRegistry.ivicheck(ids, "toString()Ljava/lang/String;"));
+		int generation = rtype.getReloadGeneration();
+		assertEquals(Boolean.FALSE, rtype.getInvocationCache().get(InvocationCache.IVICHECK,
+				"toString()Ljava/lang/String;", generation));
+		assertFalse(TypeRegistry.ivicheck(ids, "toString()Ljava/lang/String;"));
+
+		// The new version adds foo(I) so the decision must change
+		rtype.loadNewVersion("3", retrieveRename(tclass, "builder.DispatcherTestOne003"));
+		assertTrue(generation != rtype.getReloadGeneration());
+		assertNull(rtype.getInvocationCache().get(InvocationCache.IVICHECK, "foo(I)Ljava/lang/String;",
+				rtype.getReloadGeneration()));
+		assertTrue(TypeRegistry.ivicheck(ids, "foo(I)Ljava/lang/String;"));
+		assertEquals(Boolean.TRUE, rtype.getInvocationCache().get(InvocationCache.IVICHECK,
+				"foo(I)Ljava/lang/String;", rtype.getReloadGeneration()));
+		assertTrue(TypeRegistry.ivicheck(ids, "foo(I)Ljava/lang/String;"));
+	}
+
+	/**
+	 * The invoker used for a reflective call to a method of a reloaded type is cached and looked up again after a
+	 * further reload.
+	 */
+	@Test
+	public void reflectiveInvokersCached() throws Exception {
+		String tclass = "basic.Basic";
+		TypeRegistry typeRegistry = getTypeRegistry(tclass);
+		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
+		Object instance = rtype.getClazz().newInstance();
+		Method getValue = rtype.getClazz().getMethod("getValue");
+
+		// Until something is reloaded calls go straight to the method
+		rtype.loadNewVersion("2", rtype.getBytesInitial());
+		assertEquals(5, ReflectiveInterceptor.jlrMethodInvoke(getValue, instance));
+		int generation = rtype.getReloadGeneration();
+		MethodInvocation invocation = rtype.getInvocationCache().getMethodInvocation(getValue, generation, generation);
+		assertNotNull(invocation);
+		assertFalse(invocation.checkAccess);
+		assertEquals(5, ReflectiveInterceptor.jlrMethodInvoke(getValue, instance));
+		assertSame(invocation, rtype.getInvocationCache().getMethodInvocation(getValue, generation, generation));
+
+		rtype.loadNewVersion("3", retrieveRename(tclass, tclass + "002"));
+		assertTrue(generation != rtype.getReloadGeneration());
+		assertNull(rtype.getInvocationCache().getMethodInvocation(getValue, rtype.getReloadGeneration(),
+				rtype.getReloadGeneration()));
+		assertEquals(7, ReflectiveInterceptor.jlrMethodInvoke(getValue, instance));
+		assertNotSame(invocation, rtype.getInvocationCache().getMethodInvocation(getValue,
+				rtype.getReloadGeneration(), rtype.getReloadGeneration()));
+	}
+
+	/**
+	 * The members returned by reflection are computed once per reload generation, each caller getting its own copies.
+	 */
+	@Test
+	public void reflectionSnapshot() throws Exception {
+		String tclass = "basic.Basic";
+		TypeRegistry typeRegistry = getTypeRegistry(tclass);
+		ReloadableType rtype = typeRegistry.addType(tclass, loadBytesForClass(tclass));
+		Class<?> clazz = rtype.getClazz();
+
+		Method[] methods = ReflectiveInterceptor.jlClassGetDeclaredMethods(clazz);
+		assertEquals(2, methods.length);
+		ReflectionSnapshot snapshot = rtype.getReflectionSnapshot();
+		methods[0].setAccessible(true);
+		Method[] methods2 = ReflectiveInterceptor.jlClassGetDeclaredMethods(clazz);
+		assertEquals(methods[0], methods2[0]);
+		assertNotSame(methods[0], methods2[0]);
+		assertFalse(methods2[0].isAccessible());
+		assertSame(snapshot, rtype.getReflectionSnapshot());
+		assertEquals(0, ReflectiveInterceptor.jlClassGetDeclaredFields(clazz).length);
+		assertEquals(1, ReflectiveInterceptor.jlClassGetDeclaredConstructors(clazz).length);
+
+		// The new version no longer has foo()
+		rtype.loadNewVersion("2", retrieveRename(tclass, tclass + "002"));
+		assertNotSame(snapshot, rtype.getReflectionSnapshot());
+		methods = ReflectiveInterceptor.jlClassGetDeclaredMethods(clazz);
+		assertEquals(1, methods.length);
+		assertEquals("getValue", methods[0].getName());
+		assertEquals(7, ReflectiveInterceptor.jlrMethodInvoke(methods[0], clazz.newInstance()));
+		assertEquals(1, ReflectiveInterceptor.jlClassGetDeclaredConstructors(clazz).length);
+	}
+
+	/**
+	 * Reloading a type should only take the guards off the fast path for types in the same hierarchy.
+	 */
+	@Test
+	public void guardsArePerType() throws Exception {
+		String one = "basic.Basic";
+		String two = "basic.BasicB";
+		TypeRegistry typeRegistry = getTypeRegistry(one + "," + two);
+		ReloadableType tOne = typeRegistry.addType(one, loadBytesForClass(one));
+		ReloadableType tTwo = typeRegistry.addType(two, loadBytesForClass(two));
+		int idsOne = Utils.toCombined(typeRegistry.getId(), tOne.getId());
+		int idsTwo = Utils.toCombined(typeRegistry.getId(), tTwo.getId());
+
+		tOne.loadNewVersion("002", retrieveRename(one, one + "002"));
+		assertTrue(tOne.isAffectedByReload());
+		assertFalse(tTwo.isAffectedByReload());
+		assertEquals(0, tTwo.getReloadGeneration());
+		assertNotNull(TypeRegistry.idycheck(idsOne));
+		assertNull(TypeRegistry.idycheck(idsTwo));
+		assertFalse(TypeRegistry.instanceFieldInterceptionRequired(idsTwo, "anything"));
+		assertFalse(TypeRegistry.staticFieldInterceptionRequired(idsTwo, "anything"));
+	}
+
+	/**
+	 * The long (wide ids) variants of the guards must agree with the int variants.
+	 */
+	@Test
+	public void wideIdGuards() throws Exception {
+		String one = "basic.Basic";
+		String two = "basic.BasicB";
+		TypeRegistry typeRegistry = getTypeRegistry(one + "," + two);
+		ReloadableType tOne = typeRegistry.addType(one, loadBytesForClass(one));
+		ReloadableType tTwo = typeRegistry.addType(two, loadBytesForClass(two));
+		long idsOne = Utils.toCombinedWide(typeRegistry.getId(), tOne.getId());
+		long idsTwo = Utils.toCombinedWide(typeRegistry.getId(), tTwo.getId());
+
+		tOne.loadNewVersion("002", retrieveRename(one, one + "002"));
+		assertNotNull(TypeRegistry.idycheck(idsOne));
+		assertNull(TypeRegistry.idycheck(idsTwo));
+		assertFalse(TypeRegistry.ivicheck(idsTwo, "toString()Ljava/lang/String;"));
+		assertFalse(TypeRegistry.instanceFieldInterceptionRequired(idsTwo, "anything"));
+		assertFalse(TypeRegistry.staticFieldInterceptionRequired(idsTwo, "anything"));
+		int ids = Utils.toCombined(typeRegistry.getId(), tOne.getId());
+		assertEquals(TypeRegistry.ivicheck(ids, "toString()Ljava/lang/String;"),
+				TypeRegistry.ivicheck(idsOne, "toString()Ljava/lang/String;"));
+	}
 }
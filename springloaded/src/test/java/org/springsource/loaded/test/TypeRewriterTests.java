@@ -164,15 +164,15 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    LDC abc\n" +
 						"    INVOKEVIRTUAL java/io/PrintStream.println(Ljava/lang/String;)V\n" +
 						" L2\n" +
-						"    RETURN\n", toStringMethod(rtype.bytesLoaded, "<clinit>", false));
+						"    RETURN\n", toStringMethod(rtype.getBytesLoaded(), "<clinit>", false));
 		// @formatter:on
 
 		// Check that the top most reloadable type has the static state manager
 		assertEquals("0x19(public static final) r$sfields Lorg/springsource/loaded/SSMgr;",
-				toStringField(rtype.bytesLoaded, "r$sfields"));
-		assertNull(toStringField(subtype.bytesLoaded, "r$sfields"));
+				toStringField(rtype.getBytesLoaded(), "r$sfields"));
+		assertNull(toStringField(subtype.getBytesLoaded(), "r$sfields"));
 
-		System.out.println(toStringMethod(subtype.bytesLoaded, "<clinit>", false));
+		System.out.println(toStringMethod(subtype.getBytesLoaded(), "<clinit>", false));
 		// Check the format of the modified static initializer
 		// @formatter:off
 		assertEquals(
@@ -206,7 +206,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    LDC def\n" +
 						"    INVOKEVIRTUAL java/io/PrintStream.println(Ljava/lang/String;)V\n" +
 						" L2\n" +
-						"    RETURN\n", toStringMethod(subtype.bytesLoaded, "<clinit>", false));
+						"    RETURN\n", toStringMethod(subtype.getBytesLoaded(), "<clinit>", false));
 		// @formatter:on
 
 		// Now look at the set/get field accessing forwarders
@@ -250,7 +250,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    INVOKEVIRTUAL org/springsource/loaded/ISMgr.setValue(Lorg/springsource/loaded/ReloadableType;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/String;)V\n"
 						+
 						"    RETURN\n",
-				toStringMethod(rtype.bytesLoaded, "r$set", false));
+				toStringMethod(rtype.getBytesLoaded(), "r$set", false));
 		// @formatter:on
 
 		// The subtype and supertype one do vary, due to using different reloadabletype objects
@@ -294,7 +294,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    INVOKEVIRTUAL org/springsource/loaded/ISMgr.setValue(Lorg/springsource/loaded/ReloadableType;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/String;)V\n"
 						+
 						"    RETURN\n",
-				toStringMethod(subtype.bytesLoaded, "r$set", false));
+				toStringMethod(subtype.getBytesLoaded(), "r$set", false));
 		// @formatter:on
 	}
 
@@ -306,15 +306,15 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		ReloadableType itype = r.addType(t, loadBytesForClass(t));
 		ReloadableType subitype = r.addType(t2, loadBytesForClass(t2));
 
-		//		ClassPrinter.print(subitype.bytesLoaded);
+		//		ClassPrinter.print(subitype.getBytesLoaded());
 
 		// An interface will get the reloadable type field
 		assertEquals("0x19(public static final) r$type Lorg/springsource/loaded/ReloadableType;",
-				toStringField(itype.bytesLoaded, "r$type"));
+				toStringField(itype.getBytesLoaded(), "r$type"));
 
 		// An interface will get the reloadable static state manager instance
 		assertEquals("0x19(public static final) r$sfields Lorg/springsource/loaded/SSMgr;",
-				toStringField(itype.bytesLoaded, "r$sfields"));
+				toStringField(itype.getBytesLoaded(), "r$sfields"));
 
 		// The static initializer will be augmented to initialize both of these
 		// @formatter:off
@@ -345,17 +345,17 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    RETURN\n" +
 						" L1\n" +
 						"    RETURN\n",
-				toStringMethod(itype.bytesLoaded, "<clinit>", false));
+				toStringMethod(itype.getBytesLoaded(), "<clinit>", false));
 		// @formatter:on
 
 		// Sub interface should look identical
 		// An interface will get the reloadable type field
 		assertEquals("0x19(public static final) r$type Lorg/springsource/loaded/ReloadableType;",
-				toStringField(itype.bytesLoaded, "r$type"));
+				toStringField(itype.getBytesLoaded(), "r$type"));
 
 		// An interface will get the reloadable static state manager instance
 		assertEquals("0x19(public static final) r$sfields Lorg/springsource/loaded/SSMgr;",
-				toStringField(itype.bytesLoaded, "r$sfields"));
+				toStringField(itype.getBytesLoaded(), "r$sfields"));
 
 		// The static initializer will be augmented to initialize both of these
 		// @formatter:off
@@ -384,12 +384,12 @@ public class TypeRewriterTests extends SpringLoadedTests {
 						"    RETURN\n" +
 						" L1\n" +
 						"    RETURN\n",
-				toStringMethod(subitype.bytesLoaded, "<clinit>", false));
+				toStringMethod(subitype.getBytesLoaded(), "<clinit>", false));
 		// @formatter:on
 
 		// Although the interface has fields, they are constants and so there is no code to implement them
-		assertEquals("0x9(public static) i I 234", toStringField(itype.bytesLoaded, "i"));
-		assertEquals("0x9(public static) j I 456", toStringField(subitype.bytesLoaded, "j"));
+		assertEquals("0x9(public static) i I 234", toStringField(itype.getBytesLoaded(), "i"));
+		assertEquals("0x9(public static) j I 456", toStringField(subitype.getBytesLoaded(), "j"));
 	}
 
 	// Looking at a type with only a default ctor (so didn't originally declare anything)
@@ -418,7 +418,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals(rtype.getClazz().getName(), result.returnValue.getClass().getName());
 
 		// Just reload that same version (creates new CurrentLiveVersion)
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 
 		result = runConstructor(rtype.getClazz(), "");
 		assertEquals("Hello Andy", result.stdout);
@@ -443,7 +443,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals(rtype.getClazz().getName(), result.returnValue.getClass().getName());
 
 		// Just reload that same version (creates new CurrentLiveVersion)
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 
 		result = runConstructor(rtype.getClazz(), "java.lang.String", "Wobble");
 		assertEquals("Wobble", result.stdout);
@@ -581,7 +581,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals(rtype.getClazz().getName(), result.returnValue.getClass().getName());
 
 		// Just reload that same version (creates new CurrentLiveVersion)
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 
 		result = runConstructor(rtype.getClazz(), "");
 		assertEquals("Hello from SuperThree.Hello from Three.", result.stderr);
@@ -612,7 +612,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		res = runOnInstance(rtype.getClazz(), result.returnValue, "getString");
 		assertEquals("one", (res.returnValue));
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		result = runConstructor(rtype.getClazz(), "");
 		res = runOnInstance(rtype.getClazz(), result.returnValue, "getInteger");
 		assertEquals(1, ((Integer) res.returnValue).intValue());
@@ -650,8 +650,8 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals("3", (res.returnValue));
 
 		// reload the types 
-		rsubtype.loadNewVersion("000", rsubtype.bytesInitial);
-		rsupertype.loadNewVersion("000", rsupertype.bytesInitial);
+		rsubtype.loadNewVersion("000", rsubtype.getBytesInitial());
+		rsupertype.loadNewVersion("000", rsupertype.getBytesInitial());
 		result = runConstructor(rsubtype.getClazz(), "int", 5);
 		res = runOnInstance(rsubtype.getClazz(), result.returnValue, "getString");
 		assertEquals("5", (res.returnValue));
@@ -769,7 +769,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals("Hello Andy", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Just reload that same version (creates new CurrentLiveVersion)
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		assertEquals("Hello Andy", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Load a real new version
@@ -865,7 +865,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals("Hello Andy", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Just reload that same version (creates new CurrentLiveVersion)
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		assertEquals("Hello Andy", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Load a real new version 
@@ -889,7 +889,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		runUnguarded(rtype.getClazz(), "greet");
 
 		// Just transform the existing version into a dispatcher/executor
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		assertEquals("Greet from HelloWorld", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Load a real new version
@@ -908,7 +908,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		runUnguarded(rtype.getClazz(), "greet");
 
 		// Just transform the existing version into a dispatcher/executor
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		assertEquals("Greet from HelloWorldClinit", runUnguarded(rtype.getClazz(), "greet").stdout);
 
 		// Load a real new version
@@ -924,7 +924,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		Result r = runUnguarded(rtype.getClazz(), "getValue");
 		assertEquals("message from HelloWorld", r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValue");
 		assertEquals("message from HelloWorld", r.returnValue);
 	}
@@ -939,7 +939,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Integer);
 		assertEquals(42, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValue");
 		assertTrue(r.returnValue instanceof Integer);
 		assertEquals(42, r.returnValue);
@@ -960,7 +960,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Boolean);
 		assertEquals(true, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueBoolean");
 		assertTrue(r.returnValue instanceof Boolean);
 		assertEquals(true, r.returnValue);
@@ -981,7 +981,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Short);
 		assertEquals((short) 3, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueShort");
 		assertTrue(r.returnValue instanceof Short);
 		assertEquals((short) 3, r.returnValue);
@@ -1002,7 +1002,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Long);
 		assertEquals(3L, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueLong");
 		assertTrue(r.returnValue instanceof Long);
 		assertEquals(3L, r.returnValue);
@@ -1023,7 +1023,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Double);
 		assertEquals(3.0D, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueDouble");
 		assertTrue(r.returnValue instanceof Double);
 		assertEquals(3.0D, r.returnValue);
@@ -1044,7 +1044,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Character);
 		assertEquals('c', r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueChar");
 		assertTrue(r.returnValue instanceof Character);
 		assertEquals('c', r.returnValue);
@@ -1065,7 +1065,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof Byte);
 		assertEquals((byte) 3, r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueByte");
 		assertTrue(r.returnValue instanceof Byte);
 		assertEquals((byte) 3, r.returnValue);
@@ -1086,7 +1086,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof int[]);
 		assertEquals(3, ((int[]) r.returnValue)[0]);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getArrayInt");
 		assertTrue(r.returnValue instanceof int[]);
 		assertEquals(3, ((int[]) r.returnValue)[0]);
@@ -1107,7 +1107,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof String[]);
 		assertEquals("ABC", ((String[]) r.returnValue)[0]);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getArrayString");
 		assertTrue(r.returnValue instanceof String[]);
 		assertEquals("ABC", ((String[]) r.returnValue)[0]);
@@ -1127,7 +1127,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts aaa and bb", r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getValueWithParams", "c", "d");
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts c and d", r.returnValue);
@@ -1147,7 +1147,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("static message with inserts aaa and bb", r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getStaticValueWithParams", "c", "d");
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("static message with inserts c and d", r.returnValue);
@@ -1167,7 +1167,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts a and 2 and c", r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getStaticValueWithPrimitiveParams", "a", 2, 'c');
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts a and 2 and c", r.returnValue);
@@ -1187,7 +1187,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts 3 and a and 2.0 and true", r.returnValue);
 
-		rtype.loadNewVersion("000", rtype.bytesInitial);
+		rtype.loadNewVersion("000", rtype.getBytesInitial());
 		r = runUnguarded(rtype.getClazz(), "getStaticValueWithPrimitiveDSParams", 3L, "a", 2.0d, true);
 		assertTrue(r.returnValue instanceof String);
 		assertEquals("message with inserts 3 and a and 2.0 and true", r.returnValue);
@@ -1268,7 +1268,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		result = runUnguarded(rt.getClazz(), "run");
 		assertEquals("success", result.returnValue);
 		// reload itself, which means the executors will now be trying to access those fields
-		rt.loadNewVersion("2", rt.bytesInitial);
+		rt.loadNewVersion("2", rt.getBytesInitial());
 		result = runUnguarded(rt.getClazz(), "run");
 		assertEquals("success", result.returnValue);
 	}
@@ -1393,7 +1393,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		// a new version of the concrete type without method() in it
 		rAbsimpl.loadNewVersion("2", retrieveRename(absimpl, absimpl + "2"));
 		rImpl.loadNewVersion("2", retrieveRename(impl, impl + "2", absimpl + "2:" + absimpl));
-		//		ClassPrinter.print(rAbsimpl.bytesLoaded);
+		//		ClassPrinter.print(rAbsimpl.getBytesLoaded());
 		result = runUnguarded(rImpl.getClazz(), "run");
 		assertEquals("2", result.stdout);
 	}
@@ -1467,12 +1467,14 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertTrue(td.hasAnythingChanged());
 		Map<String, MethodDelta> changedMethods = td.getChangedMethods();
 		assertNotNull(changedMethods);
-		assertEquals(1, changedMethods.size());
+		assertEquals(2, changedMethods.size());
 		assertEquals("MethodDelta[method:<init>()V]", changedMethods.get("<init>()V").toString());
 		MethodDelta md = changedMethods.get("<init>()V");
 		assertTrue(md.hasAnyChanges());
 		assertFalse(md.hasInvokeSpecialChanged());
 		assertTrue(md.hasCodeChanged());
+		// the message printed has changed too
+		assertTrue(changedMethods.get("printMessage()V").hasOnlyCodeChanged());
 	}
 
 	/**
@@ -1490,7 +1492,7 @@ public class TypeRewriterTests extends SpringLoadedTests {
 		assertEquals("ctors.XX.<init>(XX.java:6)", result.stdout);
 
 		// Reload, no code changes
-		type.loadNewVersion("2", type.bytesInitial);
+		type.loadNewVersion("2", type.getBytesInitial());
 		result = runConstructor(type.getClazz(), "");
 		// Now, if running reloaded code, stack frame will be: ctors.XX__E2.___init___(XX.java:6)
 		// but we want it to be the same as before
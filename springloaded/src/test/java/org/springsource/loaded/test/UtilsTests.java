@@ -485,6 +485,32 @@ public class UtilsTests extends SpringLoadedTests implements Constants {
 	public void toCombined() {
 		assertEquals(1, Utils.toCombined(1, 2) >>> 16);
 		assertEquals(2, Utils.toCombined(1, 2) & 0xffff);
+		assertEquals(0xffff, Utils.toCombined(0xffff, 0xffff) >>> 16);
+		assertEquals(0xffff, Utils.toCombined(0xffff, 0xffff) & 0xffff);
+		try {
+			Utils.toCombined(1, 0x10000);
+			fail("Type id does not fit in 16 bits");
+		}
+		catch (IllegalStateException ise) {
+			// expected
+		}
+		try {
+			Utils.toCombined(0x10000, 1);
+			fail("Registry id does not fit in 16 bits");
+		}
+		catch (IllegalStateException ise) {
+			// expected
+		}
+	}
+
+	@Test
+	public void toCombinedWide() {
+		long ids = Utils.toCombinedWide(0x10000, 0x12345678);
+		assertEquals(0x10000, (int) (ids >>> 32));
+		assertEquals(0x12345678, (int) ids);
+		ids = Utils.toCombinedWide(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		assertEquals(Integer.MAX_VALUE, (int) (ids >>> 32));
+		assertEquals(Integer.MAX_VALUE, (int) ids);
 	}
 
 	@Test
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010-2012 VMware and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springsource.loaded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.springsource.loaded.FileChangeListener;
+import org.springsource.loaded.ReloadableType;
+import org.springsource.loaded.agent.WatchServiceFileSystemWatcher;
+
+
+/**
+ * Tests for the WatchService based file system watcher. Skipped on platforms without a native WatchService.
+ *
+ * @author Andy Clement
+ * @since 1.3.0
+ */
+public class WatchServiceFileSystemWatcherTests {
+
+	@Test
+	public void files() throws IOException {
+		TestFileChangeListener listener = new TestFileChangeListener();
+		WatchServiceFileSystemWatcher watcher = createWatcher(listener);
+		File dir = getTempDir();
+		File f1 = create(dir, "abc.txt");
+		File f2 = create(dir, "abcd.txt");
+		File unwatched = create(dir, "other.txt");
+		watcher.register(f1);
+		watcher.register(f2);
+		touch(f1);
+		touch(unwatched);
+		waitFor(listener, 1);
+		assertEquals("[abc.txt]", listener.getChangesDetected().toString());
+		touch(f2);
+		waitFor(listener, 2);
+		watcher.shutdown();
+		assertEquals("[abc.txt, abcd.txt]", listener.getChangesDetected().toString());
+	}
+
+	@Test
+	public void paused() throws IOException {
+		TestFileChangeListener listener = new TestFileChangeListener();
+		WatchServiceFileSystemWatcher watcher = createWatcher(listener);
+		File dir = getTempDir();
+		File f1 = create(dir, "Book$1.class");
+		File f2 = create(dir, "Book.class");
+		watcher.register(f1);
+		watcher.register(f2);
+		watcher.setPaused(true);
+		touch(f2);
+		touch(f1);
+		pause(500);
+		assertEquals(0, listener.getChangesDetected().size());
+		watcher.setPaused(false);
+		waitFor(listener, 2);
+		watcher.shutdown();
+		// Check that inners reported first
+		assertEquals("[Book$1.class, Book.class]", listener.getChangesDetected().toString());
+	}
+
+	@Test
+	public void jars() throws IOException {
+		TestFileChangeListener listener = new TestFileChangeListener();
+		WatchServiceFileSystemWatcher watcher = createWatcher(listener);
+		File dir = getTempDir();
+		File j1 = create(dir, "foo.jar");
+		File j2 = create(dir, "bar.jar");
+		watcher.register(j1);
+		watcher.register(j2);
+		touch(j2);
+		waitFor(listener, 1);
+		watcher.shutdown();
+		assertEquals("[bar.jar]", listener.getChangesDetected().toString());
+	}
+
+	private WatchServiceFileSystemWatcher createWatcher(FileChangeListener listener) {
+		WatchServiceFileSystemWatcher watcher = WatchServiceFileSystemWatcher.createIfNative(listener, -1, "test");
+		Assume.assumeTrue(watcher != null);
+		return watcher;
+	}
+
+	private void waitFor(TestFileChangeListener listener, int count) {
+		long stime = System.currentTimeMillis();
+		while (listener.getChangesDetected().size() < count && (System.currentTimeMillis() - stime) < 5000) {
+			pause(20);
+		}
+		long latency = System.currentTimeMillis() - stime;
+		System.out.println("Change observed after " + latency + "ms");
+		assertTrue("Change not observed within 5s", latency < 5000);
+	}
+
+	private void touch(File f) {
+		try {
+			FileOutputStream fos = new FileOutputStream(f);
+			fos.write(3);
+			fos.close();
+			// make sure the modification time moves on even on file systems with a coarse granularity
+			f.setLastModified(System.currentTimeMillis() + 2000);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private File create(File dir, String filename) throws IOException {
+		File f = new File(dir, filename);
+		assertTrue(f.createNewFile());
+		return f;
+	}
+
+	private void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (Exception e) {
+		}
+	}
+
+	private File getTempDir() throws IOException {
+		File tempFile = File.createTempFile("eternal", "");
+		tempFile.delete();
+		if (!tempFile.mkdir()) {
+			throw new RuntimeException("Failed to create folder " + tempFile);
+		}
+		return tempFile;
+	}
+
+	static class TestFileChangeListener implements FileChangeListener {
+
+		private List<String> changesDetected = Collections.synchronizedList(new ArrayList<String>());
+
+		public void fileChanged(File file) {
+			changesDetected.add(file.getName());
+		}
+
+		public void register(ReloadableType rtype, File file) {
+		}
+
+		List<String> getChangesDetected() {
+			return new ArrayList<String>(changesDetected);
+		}
+	}
+}
@@ -57,10 +57,10 @@ public class RewriteReflectUtilsDefineClass extends ClassVisitor implements Cons
 			boolean bb = tr.shouldDefineClasses();
 			tr.setShouldDefineClasses(false);
 			ReloadableType rt = tr.addType(className, b);
-			//	    	ClassPrinter.print(rt.bytesInitial);
-			//	    	ClassPrinter.print(rt.bytesLoaded);
+			//	    	ClassPrinter.print(rt.getBytesInitial());
+			//	    	ClassPrinter.print(rt.getBytesLoaded());
 			tr.setShouldDefineClasses(bb);
-			return rt.bytesLoaded;
+			return rt.getBytesLoaded();
 		}
 		return b;
 	}
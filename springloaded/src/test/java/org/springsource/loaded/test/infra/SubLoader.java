@@ -104,7 +104,7 @@ public class SubLoader extends ClassLoader {
 					if (tr != null) {
 						// not yet doing this - the testcase tends to do any client side rewriting for this
 						ReloadableType rtype = tr.addType(name, data);
-						data = rtype.bytesLoaded;
+						data = rtype.getBytesLoaded();
 					}
 					c = defineClass(name, data, 0, data.length);
 					break;
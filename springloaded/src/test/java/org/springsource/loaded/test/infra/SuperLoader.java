@@ -90,7 +90,7 @@ public class SuperLoader extends ClassLoader {
 					if (tr != null) {
 						// not yet doing this - the testcase tends to do any client side rewriting for this
 						ReloadableType rtype = tr.addType(name, data);
-						data = rtype.bytesLoaded;
+						data = rtype.getBytesLoaded();
 					}
 					if (SubLoader.DEBUG_LOADING) {
 						System.out.println("  SuperLoader: found in folder: '" + folders[i] + "'");
@@ -0,0 +1,14 @@
+package builder;
+
+public class DispatcherTestOne004 {
+
+	// Aa and BB have the same hashCode
+
+	public String Aa() {
+		return "Aa";
+	}
+
+	public String BB() {
+		return "BB";
+	}
+}
@@ -0,0 +1,18 @@
+package differs;
+
+public class DiffBodies2 {
+
+	public String constant() {
+		return "BB";
+	}
+
+	public String catcher() {
+		try {
+			Object o = null;
+			return ((String) o).trim();
+		}
+		catch (ClassCastException e) {
+			return "caught";
+		}
+	}
+}
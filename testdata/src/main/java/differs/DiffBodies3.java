@@ -0,0 +1,18 @@
+package differs;
+
+public class DiffBodies3 {
+
+	public String constant() {
+		return "Aa";
+	}
+
+	public String catcher() {
+		try {
+			Object o = null;
+			return ((String) o).trim();
+		}
+		catch (NullPointerException e) {
+			return "caught";
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package differs;
+
+public class DiffMethods {
+
+	public String same() {
+		return "same";
+	}
+
+	public String bodyChanged() {
+		return "old";
+	}
+
+	public void removed() {
+	}
+}
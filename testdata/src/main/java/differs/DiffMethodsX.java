@@ -0,0 +1,16 @@
+package differs;
+
+public class DiffMethodsX {
+
+	public String same() {
+		return "same";
+	}
+
+	public String bodyChanged() {
+		String s = "new";
+		return s + s;
+	}
+
+	public void added() {
+	}
+}
@@ -0,0 +1,8 @@
+package plugins.spring;
+
+public class Base {
+
+	public String greeting() {
+		return "hello";
+	}
+}
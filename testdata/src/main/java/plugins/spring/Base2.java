@@ -0,0 +1,8 @@
+package plugins.spring;
+
+public class Base2 {
+
+	public String greeting() {
+		return "hi";
+	}
+}
@@ -0,0 +1,18 @@
+package plugins.spring;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+@Controller
+public class Greeter2 {
+
+	@RequestMapping
+	public String hello() {
+		return "hello";
+	}
+
+	@RequestMapping
+	public String goodbye() {
+		return "goodbye";
+	}
+}
@@ -0,0 +1,8 @@
+package plugins.spring;
+
+public class Helper {
+
+	public String help() {
+		return "help";
+	}
+}
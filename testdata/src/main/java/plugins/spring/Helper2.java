@@ -0,0 +1,12 @@
+package plugins.spring;
+
+public class Helper2 {
+
+	public String help() {
+		return "more help";
+	}
+
+	public String extra() {
+		return "extra";
+	}
+}
@@ -0,0 +1,13 @@
+package plugins.spring;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+@Controller
+public class Other {
+
+	@RequestMapping
+	public String other() {
+		return "other";
+	}
+}